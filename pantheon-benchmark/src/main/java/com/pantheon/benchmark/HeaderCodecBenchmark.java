@@ -0,0 +1,217 @@
+package com.pantheon.benchmark;
+
+import com.pantheon.common.protocol.header.GetDeltaAppRequestHeader;
+import com.pantheon.common.protocol.header.GetSlotsResponseHeader;
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.annotation.CFNotNull;
+import com.pantheon.remoting.exception.RemotingCommandException;
+import com.pantheon.remoting.protocol.CommandCustomHeaderCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc time to decode a custom header from the ext fields of a command and to encode it back, through the codec
+ * built once per header class against the reflective path it replaced, kept here as {@link ReflectiveHeaderCodec}.
+ * <p>
+ * {@code GetSlotsResponseHeader} has a single string, {@code GetDeltaAppRequestHeader} strings, a long and a boolean.
+ * Run with {@code java -jar target/benchmarks.jar HeaderCodecBenchmark}, add {@code -prof gc} for the allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderCodecBenchmark {
+
+    @Param({"GetSlotsResponseHeader", "GetDeltaAppRequestHeader"})
+    public String header;
+
+    private Class<? extends CommandCustomHeader> headerClass;
+    private CommandCustomHeader decoded;
+    private HashMap<String, String> extFields;
+
+    @Setup
+    public void setUp() throws RemotingCommandException {
+        if ("GetSlotsResponseHeader".equals(header)) {
+            GetSlotsResponseHeader slots = new GetSlotsResponseHeader();
+            slots.setSlotsAllocation("{\"1\":[0,5460],\"2\":[5461,10922],\"3\":[10923,16383]}");
+            decoded = slots;
+        } else {
+            GetDeltaAppRequestHeader delta = new GetDeltaAppRequestHeader();
+            delta.setRegistryVersions("7f3a:1=1024,2=998,3=1311");
+            delta.setAcceptCompression("deflate,gzip,lz4");
+            delta.setSubscribeChanges(Boolean.TRUE);
+            delta.setHoldMillis(30000L);
+            decoded = delta;
+        }
+        headerClass = decoded.getClass();
+        extFields = new HashMap<String, String>();
+        CommandCustomHeaderCodec.forClass(headerClass).encode(decoded, extFields);
+        // both paths decode and encode the same ext fields
+        HashMap<String, String> reflective = new HashMap<String, String>();
+        ReflectiveHeaderCodec.encode(ReflectiveHeaderCodec.decode(extFields, headerClass), reflective);
+        if (!reflective.equals(extFields)) {
+            throw new IllegalStateException(reflective + " instead of " + extFields);
+        }
+    }
+
+    @Benchmark
+    public CommandCustomHeader decodeCodec() throws RemotingCommandException {
+        // looked up per call like RemotingCommand#decodeCommandCustomHeader does
+        return CommandCustomHeaderCodec.forClass(headerClass).decode(extFields);
+    }
+
+    @Benchmark
+    public CommandCustomHeader decodeReflective() throws RemotingCommandException {
+        return ReflectiveHeaderCodec.decode(extFields, headerClass);
+    }
+
+    @Benchmark
+    public HashMap<String, String> encodeCodec() {
+        HashMap<String, String> fields = new HashMap<String, String>();
+        CommandCustomHeaderCodec.forClass(headerClass).encode(decoded, fields);
+        return fields;
+    }
+
+    @Benchmark
+    public HashMap<String, String> encodeReflective() {
+        HashMap<String, String> fields = new HashMap<String, String>();
+        ReflectiveHeaderCodec.encode(decoded, fields);
+        return fields;
+    }
+
+    /**
+     * the reflective decode and encode of custom headers as they were before the codecs, with their caches
+     */
+    static class ReflectiveHeaderCodec {
+        private static final HashMap<Class<?>, Field[]> CLASS_HASH_MAP = new HashMap<Class<?>, Field[]>();
+        private static final HashMap<Class<?>, String> CANONICAL_NAME_CACHE = new HashMap<Class<?>, String>();
+        private static final HashMap<Field, Boolean> NULLABLE_FIELD_CACHE = new HashMap<Field, Boolean>();
+        private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
+        private static final String DOUBLE_CANONICAL_NAME_1 = Double.class.getCanonicalName();
+        private static final String DOUBLE_CANONICAL_NAME_2 = double.class.getCanonicalName();
+        private static final String INTEGER_CANONICAL_NAME_1 = Integer.class.getCanonicalName();
+        private static final String INTEGER_CANONICAL_NAME_2 = int.class.getCanonicalName();
+        private static final String LONG_CANONICAL_NAME_1 = Long.class.getCanonicalName();
+        private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
+        private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
+        private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
+
+        static CommandCustomHeader decode(HashMap<String, String> extFields,
+                                          Class<? extends CommandCustomHeader> classHeader) throws RemotingCommandException {
+            CommandCustomHeader objectHeader;
+            try {
+                objectHeader = classHeader.newInstance();
+            } catch (InstantiationException e) {
+                return null;
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+            if (extFields != null) {
+                for (Field field : getClazzFields(classHeader)) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                        continue;
+                    }
+                    String fieldName = field.getName();
+                    try {
+                        String value = extFields.get(fieldName);
+                        if (null == value) {
+                            if (!isFieldNullable(field)) {
+                                throw new RemotingCommandException("the custom field <" + fieldName + "> is null");
+                            }
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        String type = getCanonicalName(field.getType());
+                        Object valueParsed;
+                        if (type.equals(STRING_CANONICAL_NAME)) {
+                            valueParsed = value;
+                        } else if (type.equals(INTEGER_CANONICAL_NAME_1) || type.equals(INTEGER_CANONICAL_NAME_2)) {
+                            valueParsed = Integer.parseInt(value);
+                        } else if (type.equals(LONG_CANONICAL_NAME_1) || type.equals(LONG_CANONICAL_NAME_2)) {
+                            valueParsed = Long.parseLong(value);
+                        } else if (type.equals(BOOLEAN_CANONICAL_NAME_1) || type.equals(BOOLEAN_CANONICAL_NAME_2)) {
+                            valueParsed = Boolean.parseBoolean(value);
+                        } else if (type.equals(DOUBLE_CANONICAL_NAME_1) || type.equals(DOUBLE_CANONICAL_NAME_2)) {
+                            valueParsed = Double.parseDouble(value);
+                        } else {
+                            throw new RemotingCommandException("the custom field <" + fieldName + "> type is not supported");
+                        }
+                        field.set(objectHeader, valueParsed);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("Failed field [" + fieldName + "] decoding", e);
+                    }
+                }
+                objectHeader.checkFields();
+            }
+            return objectHeader;
+        }
+
+        static void encode(CommandCustomHeader customHeader, HashMap<String, String> extFields) {
+            for (Field field : getClazzFields(customHeader.getClass())) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                    continue;
+                }
+                Object value;
+                try {
+                    field.setAccessible(true);
+                    value = field.get(customHeader);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to access field [" + field.getName() + "]", e);
+                }
+                if (value != null) {
+                    extFields.put(field.getName(), value.toString());
+                }
+            }
+        }
+
+        private static Field[] getClazzFields(Class<?> classHeader) {
+            Field[] field = CLASS_HASH_MAP.get(classHeader);
+            if (field == null) {
+                field = classHeader.getDeclaredFields();
+                synchronized (CLASS_HASH_MAP) {
+                    CLASS_HASH_MAP.put(classHeader, field);
+                }
+            }
+            return field;
+        }
+
+        private static boolean isFieldNullable(Field field) {
+            if (!NULLABLE_FIELD_CACHE.containsKey(field)) {
+                boolean nullable = field.getAnnotation(CFNotNull.class) == null;
+                synchronized (NULLABLE_FIELD_CACHE) {
+                    NULLABLE_FIELD_CACHE.put(field, nullable);
+                }
+            }
+            return NULLABLE_FIELD_CACHE.get(field);
+        }
+
+        private static String getCanonicalName(Class<?> clazz) {
+            String name = CANONICAL_NAME_CACHE.get(clazz);
+            if (name == null) {
+                name = clazz.getCanonicalName();
+                synchronized (CANONICAL_NAME_CACHE) {
+                    CANONICAL_NAME_CACHE.put(clazz, name);
+                }
+            }
+            return name;
+        }
+    }
+}
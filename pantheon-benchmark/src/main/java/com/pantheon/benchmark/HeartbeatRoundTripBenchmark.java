@@ -0,0 +1,113 @@
+package com.pantheon.benchmark;
+
+import com.pantheon.common.protocol.RequestCode;
+import com.pantheon.common.protocol.ResponseCode;
+import com.pantheon.common.protocol.heartBeat.LeaseHeartBeat;
+import com.pantheon.remoting.netty.NettyClientConfig;
+import com.pantheon.remoting.netty.NettyRemotingClient;
+import com.pantheon.remoting.netty.NettyRemotingServer;
+import com.pantheon.remoting.netty.NettyRequestProcessor;
+import com.pantheon.remoting.netty.NettyServerConfig;
+import com.pantheon.remoting.protocol.RemotingCommand;
+import io.netty.channel.ChannelHandlerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc round trip of a lease heartbeat between a remoting client and server over loopback, on the nio or the native
+ * epoll transport and with the pooled or the unpooled allocator on both ends.
+ * <p>
+ * The server answers the heartbeat the way the lease renewal fast path does, with a bare SUCCESS, so the time is
+ * the transport, the codec and the hand-off to the processor executor. epoll falls back to nio where the native
+ * transport does not load. Run with {@code java -jar target/benchmarks.jar HeartbeatRoundTripBenchmark}, add
+ * {@code -prof gc} for the allocation per heartbeat.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeartbeatRoundTripBenchmark {
+
+    @Param({"nio", "epoll"})
+    public String transport;
+
+    @Param({"pooled", "unpooled"})
+    public String allocator;
+
+    private NettyRemotingServer server;
+    private NettyRemotingClient client;
+    private ExecutorService heartbeatExecutor;
+    private String addr;
+
+    @Setup
+    public void setUp() {
+        boolean epoll = "epoll".equals(transport);
+        boolean pooled = "pooled".equals(allocator);
+
+        NettyServerConfig serverConfig = new NettyServerConfig();
+        serverConfig.setListenPort(0);
+        serverConfig.setUseEpollNativeSelector(epoll);
+        serverConfig.setServerPooledByteBufAllocatorEnable(pooled);
+        server = new NettyRemotingServer(serverConfig);
+        heartbeatExecutor = Executors.newFixedThreadPool(2);
+        server.registerProcessor(RequestCode.SERVICE_HEART_BEAT, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                LeaseHeartBeat.getLeaseHandle(request.getBody());
+                RemotingCommand response = RemotingCommand.createResponseCommand(null);
+                response.setCode(ResponseCode.SUCCESS);
+                response.setOpaque(request.getOpaque());
+                return response;
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, heartbeatExecutor);
+        server.start();
+        addr = "127.0.0.1:" + server.localListenPort();
+
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setUseEpollNativeSelector(epoll);
+        clientConfig.setClientPooledByteBufAllocatorEnable(pooled);
+        client = new NettyRemotingClient(clientConfig);
+        client.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.shutdown();
+        server.shutdown();
+        heartbeatExecutor.shutdown();
+    }
+
+    @Benchmark
+    public int heartbeat() throws Exception {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_HEART_BEAT, null);
+        request.setBody(LeaseHeartBeat.encode(42L, "benchmark-service", "benchmark-service-instance-1"));
+        RemotingCommand response = client.invokeSync(addr, request, 3000);
+        if (response.getCode() != ResponseCode.SUCCESS) {
+            throw new IllegalStateException("heartbeat failed: " + response);
+        }
+        return response.getOpaque();
+    }
+}
@@ -0,0 +1,95 @@
+package com.pantheon.benchmark;
+
+import com.pantheon.server.registry.InstanceRegistryImpl;
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc throughput of routing a service to its registry shard, the lookup every register, renew, cancel and status
+ * update goes through, against the same lookup behind the monitor it used to take.
+ * <p>
+ * {@link #main} runs both with 1 thread up to one per core but at least 4. The lock free routing should scale with
+ * the threads while the monitor stays flat or drops, which needs as many cores as threads to show. Run with
+ * {@code java -cp target/benchmarks.jar com.pantheon.benchmark.RoutingContentionBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingContentionBenchmark {
+    private static final int SERVICE_COUNT = 10000;
+
+    @State(Scope.Benchmark)
+    public static class Registry {
+        RouteInstanceToSlotRegistry registry;
+        String[] serviceNames;
+        final Object monitor = new Object();
+
+        @Setup
+        public void setUp() {
+            registry = RouteInstanceToSlotRegistry.getInstance();
+            serviceNames = new String[SERVICE_COUNT];
+            for (int i = 0; i < SERVICE_COUNT; i++) {
+                serviceNames[i] = "service-" + i;
+                registry.getSpecificInstanceRegistry(serviceNames[i]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup
+        public void setUp() {
+            next = (int) (Thread.currentThread().getId() * 7919 % SERVICE_COUNT);
+        }
+
+        String nextServiceName(Registry registry) {
+            next = next + 1 == SERVICE_COUNT ? 0 : next + 1;
+            return registry.serviceNames[next];
+        }
+    }
+
+    @Benchmark
+    public InstanceRegistryImpl lockFree(Registry registry, Cursor cursor) {
+        return registry.registry.getSpecificInstanceRegistry(cursor.nextServiceName(registry));
+    }
+
+    @Benchmark
+    public InstanceRegistryImpl synchronizedBaseline(Registry registry, Cursor cursor) {
+        String serviceName = cursor.nextServiceName(registry);
+        synchronized (registry.monitor) {
+            return registry.registry.getSpecificInstanceRegistry(serviceName);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(RoutingContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
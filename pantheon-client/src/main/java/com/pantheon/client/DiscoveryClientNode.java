@@ -10,10 +10,13 @@ import com.pantheon.client.discovery.DiscoveryClient;
 import com.pantheon.client.transport.ClientAPIImpl;
 import com.pantheon.client.transport.ClientRemotingProcessor;
 import com.pantheon.client.transport.HeartBeatSender;
+import com.pantheon.client.transport.RegistryChangeReceiver;
 import com.pantheon.client.transport.Server;
 import com.pantheon.common.ObjectUtils;
 import com.pantheon.common.ThreadFactoryImpl;
 import com.pantheon.common.lifecycle.AbstractLifecycleComponent;
+import com.pantheon.common.protocol.header.RegistryChangedRequestHeader;
+import com.pantheon.common.protocol.heartBeat.LeaseHeartBeat;
 import com.pantheon.remoting.exception.RemotingCommandException;
 import com.pantheon.remoting.exception.RemotingConnectException;
 import com.pantheon.remoting.exception.RemotingSendRequestException;
@@ -24,24 +27,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author Anthony
  * @create 2021/11/19
- * @desc todo load specific instances not all
+ * @desc The registry is gathered from every server node owning slots, see {@link ServerNodeRegistry}, the nodes are
+ * fetched from in parallel and the applications they hold merged into the local registry.
  * todo throw PantheonException
  **/
-public class DiscoveryClientNode extends AbstractLifecycleComponent implements DiscoveryClient, HeartBeatSender {
+public class DiscoveryClientNode extends AbstractLifecycleComponent implements DiscoveryClient, HeartBeatSender, RegistryChangeReceiver {
     public static final int INSTANCE_REQUEST_TIMOUT_MILLS = 10000;
     private NettyClientConfig nettyClientConfig;
     private PantheonInstanceConfig instanceConfig;
@@ -49,17 +58,35 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
             "InstanceControllerScheduledThread"));
     private static final Logger logger = LoggerFactory.getLogger(ServerBootstrap.class);
     private ClientAPIImpl clientAPI;
-    private Server server;
+    private volatile Server server;
     private String serviceName;
-    private final Lock lockHeartbeat = new ReentrantLock();
+    /**
+     * heartbeats and fetches are sent asynchronously, the scheduled thread only starts them, and skips one while the
+     * last of its kind is still in flight
+     */
+    private final AtomicBoolean heartbeatInFlight = new AtomicBoolean(false);
     private final String clientId;
-    private final AtomicLong fetchRegistryGeneration;
+    private final AtomicLong leaseHandle = new AtomicLong(LeaseHeartBeat.NO_LEASE_HANDLE);
+    /**
+     * the applications of all server nodes, copied from their registries whenever changed
+     */
     private final AtomicReference<Applications> localRegionApps = new AtomicReference<Applications>();
-    private final ConcurrentHashMap<String/*serviceId*/, Applications> appMap = new ConcurrentHashMap<>();
+    /**
+     * registries of the server nodes fetched from by server node id, the owners of all slots, or of the slots of the
+     * subscribed services only if there are some
+     */
+    private volatile Map<String/*serverId*/, ServerNodeRegistry> serverNodeRegistries = Collections.emptyMap();
+    /**
+     * the slots allocation and the server addresses are fetched again after a failed fetch, one at a time
+     */
+    private final AtomicBoolean rerouteInFlight = new AtomicBoolean(false);
+    /**
+     * id of the server node the local copy of each application is from, guards merging
+     */
+    private final Map<String/*app name*/, String/*serverId*/> appOwners = new HashMap<String, String>();
     private volatile int registrySize = 0;
     private volatile long lastSuccessfulRegistryFetchTimestamp = -1;
     private volatile long lastSuccessfulHeartbeatTimestamp = -1;
-    private final Lock fetchRegistryUpdateLock = new ReentrantLock();
     private InstanceInfo instanceInfo;
     private volatile InstanceInfo.InstanceStatus lastRemoteInstanceStatus = InstanceInfo.InstanceStatus.UNKNOWN;
     private final AtomicBoolean isShutdown = new AtomicBoolean(false);
@@ -70,18 +97,16 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
         this.nettyClientConfig = new NettyClientConfig();
         this.instanceConfig = instanceConfig;
         this.clientId = ClientManager.getInstance().buildClientId();
-        fetchRegistryGeneration = new AtomicLong(0);
         localRegionApps.set(new Applications());
-        clientAPI = new ClientAPIImpl(nettyClientConfig, instanceConfig, new ClientRemotingProcessor(), null);
+        clientAPI = new ClientAPIImpl(nettyClientConfig, instanceConfig, new ClientRemotingProcessor(this), null);
     }
 
     public DiscoveryClientNode(DefaultInstanceConfig instanceConfig, String clientId) {
         this.nettyClientConfig = new NettyClientConfig();
         this.instanceConfig = instanceConfig;
         this.clientId = clientId;
-        fetchRegistryGeneration = new AtomicLong(0);
         localRegionApps.set(new Applications());
-        clientAPI = new ClientAPIImpl(nettyClientConfig, instanceConfig, new ClientRemotingProcessor(), null);
+        clientAPI = new ClientAPIImpl(nettyClientConfig, instanceConfig, new ClientRemotingProcessor(this), null);
     }
 
 
@@ -89,9 +114,8 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
         this.nettyClientConfig = nettyClientConfig;
         this.instanceConfig = instanceConfig;
         this.clientId = clientId;
-        fetchRegistryGeneration = new AtomicLong(0);
         localRegionApps.set(new Applications());
-        clientAPI = new ClientAPIImpl(nettyClientConfig, instanceConfig, new ClientRemotingProcessor(), null);
+        clientAPI = new ClientAPIImpl(nettyClientConfig, instanceConfig, new ClientRemotingProcessor(this), null);
     }
 
     @Override
@@ -113,6 +137,8 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
 
             String serviceName = instanceConfig.getServiceName();
             server = this.clientAPI.routeServer(serviceName);
+            serverNodeRegistries = buildServerNodeRegistries(Collections.<String, ServerNodeRegistry>emptyMap());
+            logger.info("fetch registry from server nodes: {}", serverNodeRegistries.keySet());
 
             sendRegister();
 
@@ -133,16 +159,17 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
     @Override
     protected void doStop() {
         if (isShutdown.compareAndSet(false, true)) {
-            if (this.clientAPI != null) {
-                this.clientAPI.shutdown();
-            }
             if (scheduledExecutorService != null) {
                 scheduledExecutorService.shutdown();
             }
+            // unregister while the connection is still there
             if (this.instanceInfo != null) {
                 this.instanceInfo.setInstanceStatus(InstanceInfo.InstanceStatus.DOWN);
                 sendUnRegister();
             }
+            if (this.clientAPI != null) {
+                this.clientAPI.shutdown();
+            }
             logger.info("Completed the shutdown of PantheonClient");
         }
     }
@@ -158,42 +185,80 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
     }
 
     private void startScheduledTask() {
+        CompletableFuture<Boolean> initialFetch = null;
         if (instanceConfig.shouldFetchRegistry()) {
-            boolean fetchRegistryResult = fetchRegistry(true);
-            if (fetchRegistryResult) {
-                logger.info("service fetch registry success!!!");
-                if (localRegionApps.get().size() > 0) {
-                    logger.info("register success , then fetch {} apps !!!", localRegionApps.get());
-                }
+            initialFetch = fetchRegistryAsync(true);
+            if (instanceConfig.getRegistryLongPollHoldSeconds() > 0) {
+                initialFetch.whenComplete((success, e) -> {
+                    for (ServerNodeRegistry registry : serverNodeRegistries.values()) {
+                        scheduleLongPoll(registry, success);
+                    }
+                });
+            } else {
+                scheduledExecutorService.scheduleAtFixedRate(new CacheRefreshThread(), instanceConfig.getRegistryFetchIntervalSeconds(), instanceConfig.getRegistryFetchIntervalSeconds(), TimeUnit.SECONDS);
             }
-            scheduledExecutorService.scheduleAtFixedRate(new CacheRefreshThread(), instanceConfig.getRegistryFetchIntervalSeconds(), instanceConfig.getRegistryFetchIntervalSeconds(), TimeUnit.SECONDS);
         }
 
+        //heartbeat
         this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-               sendHeartbeat();
+                sendHeartbeatAsync();
             }
         }, 1000, intervalMs(), TimeUnit.MILLISECONDS);
-        //heartbeat
+
+        // the registry is there once started, unless the first fetch is too slow, then it is there once fetched
+        if (initialFetch != null) {
+            try {
+                if (initialFetch.get(INSTANCE_REQUEST_TIMOUT_MILLS, TimeUnit.MILLISECONDS)) {
+                    logger.info("service fetch registry success!!!");
+                    if (localRegionApps.get().size() > 0) {
+                        logger.info("register success , then fetch {} apps !!!", localRegionApps.get());
+                    }
+                }
+            } catch (TimeoutException e) {
+                logger.warn("first registry fetch is not done in {}ms, go on without waiting", INSTANCE_REQUEST_TIMOUT_MILLS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("first registry fetch failed", e.getCause());
+            }
+        }
     }
 
 
     @Override
-    public boolean sendHeartbeat(){
-        if (this.lockHeartbeat.tryLock()) {
-            try {
-                boolean successResult = this.clientAPI.sendHeartBeatToServer(getServer(), getInstanceInfo().getAppName(), this.getClientId(), 3000L);
-                return successResult;
-            } catch (final Exception e) {
-                logger.error("sendHeartBeatToServer exception", e);
-            } finally {
-                this.lockHeartbeat.unlock();
-            }
-        } else {
-            logger.warn("lock heartBeat, but failed. [{}]", instanceConfig.getServiceName());
+    public boolean sendHeartbeat() {
+        return sendHeartbeatAsync().join();
+    }
+
+    /**
+     * send a heartbeat without waiting for the response, skipped while the last one is still in flight
+     *
+     * @return completed with whether the heartbeat succeeded, never exceptionally
+     */
+    public CompletableFuture<Boolean> sendHeartbeatAsync() {
+        if (!heartbeatInFlight.compareAndSet(false, true)) {
+            logger.warn("last heartBeat still in flight, skip this one. [{}]", instanceConfig.getServiceName());
+            return CompletableFuture.completedFuture(false);
         }
-        return false;
+        CompletableFuture<Boolean> heartbeat;
+        try {
+            heartbeat = this.clientAPI.sendHeartBeatToServerAsync(getServer(), getInstanceInfo().getAppName(), this.getClientId(), leaseHandle, 3000L);
+        } catch (Throwable e) {
+            heartbeat = failedFuture(e);
+        }
+        return heartbeat.handle((success, e) -> {
+            heartbeatInFlight.set(false);
+            if (e != null) {
+                logger.error("sendHeartBeatToServer exception", unwrap(e));
+                return false;
+            }
+            if (success) {
+                lastSuccessfulHeartbeatTimestamp = System.currentTimeMillis();
+            }
+            return success;
+        });
     }
 
     @Override
@@ -202,59 +267,83 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
     }
 
     private void sendUnRegister() {
+        sendUnRegisterAsync().join();
+    }
+
+    /**
+     * @return completed with whether the instance was unregistered, never exceptionally
+     */
+    private CompletableFuture<Boolean> sendUnRegisterAsync() {
+        CompletableFuture<Boolean> unRegister;
         try {
-            boolean unRegister = this.clientAPI.unRegister(getServer(), getServiceName(), getInstanceInfo().getInstanceId(), 3000);
-            if (unRegister) {
+            unRegister = this.clientAPI.unRegisterAsync(getServer(), getServiceName(), getInstanceInfo().getInstanceId(), 3000);
+        } catch (Throwable e) {
+            unRegister = failedFuture(e);
+        }
+        return unRegister.handle((success, e) -> {
+            if (e != null) {
+                logger.error("unregister to server: {} failed", server, unwrap(e));
+                return false;
+            }
+            if (success) {
                 logger.info("unregister to server: {} successfully with instance info: {}", server, instanceInfo);
             } else {
                 logger.info("unregister to server: {} failed with instance info: {}", server, instanceInfo);
             }
-        } catch (RemotingConnectException e) {
-            e.printStackTrace();
-        } catch (RemotingSendRequestException e) {
-            e.printStackTrace();
-        } catch (RemotingTimeoutException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+            return success;
+        });
     }
 
     /**
      * default 30s to refresh registry info
      */
     public void sendRegister() {
-        try {
-            boolean register = this.clientAPI.register(getServer(), getInstanceInfo(), INSTANCE_REQUEST_TIMOUT_MILLS);
-            if (register) {
-                logger.info("register to server: {} successfully with instance info: {}", server, instanceInfo);
-                //todo unregister process in thread,which is just for test ,
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            Thread.sleep(60000);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                        sendUnRegister();
-                    }
-                }).start();
+        sendRegisterAsync();
+    }
 
-            } else {
+    /**
+     * register without waiting for the response, heartbeats sent meanwhile renew by the names until the lease handle
+     * is there
+     *
+     * @return completed with whether the instance was registered, never exceptionally
+     */
+    public CompletableFuture<Boolean> sendRegisterAsync() {
+        CompletableFuture<Long> registration;
+        try {
+            registration = this.clientAPI.registerAsync(getServer(), getInstanceInfo(), INSTANCE_REQUEST_TIMOUT_MILLS);
+        } catch (Throwable e) {
+            registration = failedFuture(e);
+        }
+        return registration.handle((registeredLeaseHandle, e) -> {
+            if (e != null) {
+                logger.error("register to server: {} failed", server, unwrap(e));
+                return false;
+            }
+            if (registeredLeaseHandle == null) {
                 logger.info("register to server: {} failed with instance info: {}", server, instanceInfo);
+                return false;
             }
-        } catch (RemotingConnectException e) {
-            e.printStackTrace();
-        } catch (RemotingSendRequestException e) {
-            e.printStackTrace();
-        } catch (RemotingTimeoutException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+            leaseHandle.set(registeredLeaseHandle);
+            logger.info("register to server: {} successfully with instance info: {}", server, instanceInfo);
+            //todo unregister process in thread,which is just for test ,
+            scheduledExecutorService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sendUnRegisterAsync();
+                }
+            }, 60000, TimeUnit.MILLISECONDS);
+            return true;
+        });
+    }
 
+    static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(e);
+        return future;
+    }
 
+    static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 
     private InstanceInfo getInstanceInfo() throws InterruptedException {
@@ -309,20 +398,227 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
      */
     class CacheRefreshThread implements Runnable {
         public void run() {
+            if (clientAPI.isRegistryChangesPushed() && lastSuccessfulRegistryFetchTimestamp > 0
+                    && System.currentTimeMillis() - lastSuccessfulRegistryFetchTimestamp < pushedRegistryFetchIntervalMillis()) {
+                // changes are pushed, polling is only the safety net
+                return;
+            }
             refreshRegistry();
         }
     }
 
-    void refreshRegistry() {
+    private long pushedRegistryFetchIntervalMillis() {
+        return TimeUnit.SECONDS.toMillis(Math.max(instanceConfig.getPushedRegistryFetchIntervalSeconds(),
+                instanceConfig.getRegistryFetchIntervalSeconds()));
+    }
+
+    /**
+     * @param current registries kept for the nodes still fetched from at the same address for the same services
+     * @return a registry for every server node to fetch from, the owners of all slots, or the owners of the slots of
+     * the subscribed services with the names of the ones routed to them
+     */
+    private Map<String, ServerNodeRegistry> buildServerNodeRegistries(Map<String, ServerNodeRegistry> current) {
+        Map<String, ServerNodeRegistry> registries = new LinkedHashMap<String, ServerNodeRegistry>();
+        if (clientAPI.getSubscribedServices() == null) {
+            for (Server owner : clientAPI.getSlotOwners()) {
+                registries.put(owner.getId(), serverNodeRegistry(current, owner, null));
+            }
+        } else {
+            for (Map.Entry<String, String> routed : clientAPI.routeSubscribedServices().entrySet()) {
+                registries.put(routed.getKey(), serverNodeRegistry(current, clientAPI.getServer(routed.getKey()), routed.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(registries);
+    }
+
+    private ServerNodeRegistry serverNodeRegistry(Map<String, ServerNodeRegistry> current, Server server, String serviceNames) {
+        ServerNodeRegistry registry = current.get(server.getId());
+        if (registry != null
+                && registry.getServer().getRemoteSocketAddress().equals(server.getRemoteSocketAddress())
+                && Objects.equals(registry.getServiceNames(), serviceNames)) {
+            return registry;
+        }
+        return new ServerNodeRegistry(server, serviceNames, clientAPI, instanceConfig, this::scheduleRefresh);
+    }
+
+    /**
+     * re-route on the scheduled thread, the slots allocation is fetched synchronously
+     */
+    private void scheduleReroute() {
+        if (isShutdown.get() || !rerouteInFlight.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            boolean success = fetchRegistry(true);
-            if (success) {
-                registrySize = localRegionApps.get().size();
-                lastSuccessfulRegistryFetchTimestamp = System.currentTimeMillis();
+            scheduledExecutorService.execute(() -> {
+                try {
+                    reroute();
+                } finally {
+                    rerouteInFlight.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rerouteInFlight.set(false);
+            logger.debug("client is shut down, not re-routed");
+        }
+    }
+
+    /**
+     * Fetches the slots allocation and the server addresses again once a fetch failed, the slots may have moved to
+     * other server nodes. The registries of the nodes no longer fetched from are dropped along with the applications
+     * merged from them, and the new ones are fetched right away.
+     */
+    private void reroute() {
+        if (isShutdown.get()) {
+            return;
+        }
+        String controllerCandidate = clientAPI.chooseControllerCandidate();
+        try {
+            if (clientAPI.fetchSlotsAllocation(controllerCandidate, INSTANCE_REQUEST_TIMOUT_MILLS) == null
+                    || clientAPI.fetchServerAddresses(controllerCandidate, INSTANCE_REQUEST_TIMOUT_MILLS) == null) {
+                logger.warn("re-route failed, no slots allocation or server addresses from {}", controllerCandidate);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            logger.warn("re-route failed, fetch slots allocation from " + controllerCandidate + " failed", e);
+            return;
+        }
+        server = clientAPI.routeServer(instanceConfig.getServiceName());
+
+        Map<String, ServerNodeRegistry> current = serverNodeRegistries;
+        Map<String, ServerNodeRegistry> rebuilt = buildServerNodeRegistries(current);
+        List<ServerNodeRegistry> added = new ArrayList<ServerNodeRegistry>();
+        for (ServerNodeRegistry registry : rebuilt.values()) {
+            if (current.get(registry.getServer().getId()) != registry) {
+                added.add(registry);
+            }
+        }
+        if (added.isEmpty() && rebuilt.size() == current.size()) {
+            return;
+        }
+        logger.info("slots allocation changed, fetch registry from server nodes: {}", rebuilt.keySet());
+        serverNodeRegistries = rebuilt;
+
+        Applications applications = getApplications();
+        synchronized (appOwners) {
+            for (Iterator<Map.Entry<String, String>> it = appOwners.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, String> owner = it.next();
+                ServerNodeRegistry registry = current.get(owner.getValue());
+                if (registry != null && rebuilt.get(owner.getValue()) != registry) {
+                    applications.removeApplication(owner.getKey());
+                    it.remove();
+                }
             }
+            applications.setAppsHashCode(applications.getReconcileHashCode());
+        }
 
-        } catch (Throwable e) {
-            logger.error("Cannot fetch registry from server", e);
+        if (!instanceConfig.shouldFetchRegistry()) {
+            return;
+        }
+        for (ServerNodeRegistry registry : added) {
+            if (instanceConfig.getRegistryLongPollHoldSeconds() > 0) {
+                scheduleLongPoll(registry, true);
+            } else {
+                fetchServerNodeAsync(registry, true, 0).thenApply(this::onRegistryFetched);
+            }
+        }
+    }
+
+    /**
+     * fetch from all server nodes on the scheduled thread instead of waiting for the next poll
+     */
+    private void scheduleRefresh() {
+        try {
+            scheduledExecutorService.execute(this::refreshRegistry);
+        } catch (RejectedExecutionException e) {
+            logger.debug("client is shut down, registry not refreshed");
+        }
+    }
+
+    /**
+     * fetch from one server node on the scheduled thread
+     */
+    private void scheduleRefresh(final ServerNodeRegistry registry) {
+        try {
+            scheduledExecutorService.execute(() -> fetchServerNodeAsync(registry, false, 0).thenApply(this::onRegistryFetched));
+        } catch (RejectedExecutionException e) {
+            logger.debug("client is shut down, registry of {} not refreshed", registry.getServer());
+        }
+    }
+
+    /**
+     * Applies the changes of a shard a server node pushed to the registry of that node, the one the incarnation of
+     * the changes belongs to. The node is fetched from instead if there is no such node, and all of them if the
+     * incarnation is not unique.
+     * A client holding the applications of the subscribed services only fetches their delta instead, the pushed
+     * one carries the changes of the whole shard.
+     */
+    @Override
+    public void onRegistryChanged(RegistryChangedRequestHeader header, Applications delta) {
+        if (isShutdown.get() || !instanceConfig.shouldFetchRegistry()) {
+            return;
+        }
+        if (clientAPI.getSubscribedServices() != null) {
+            scheduleRefresh();
+            return;
+        }
+        ServerNodeRegistry pushedBy = null;
+        for (ServerNodeRegistry registry : serverNodeRegistries.values()) {
+            if (Long.valueOf(registry.getIncarnation()).equals(header.getIncarnation())) {
+                if (pushedBy != null) {
+                    scheduleRefresh();
+                    return;
+                }
+                pushedBy = registry;
+            }
+        }
+        if (pushedBy == null) {
+            logger.info("changes of shard {} pushed by an unknown incarnation {}, fetch them", header.getShardId(), header.getIncarnation());
+            scheduleRefresh();
+            return;
+        }
+        if (pushedBy.applyPushed(header, delta)) {
+            mergeChangedApps(pushedBy);
+            onCacheRefreshed();
+            updateInstanceRemoteStatus();
+        }
+    }
+
+    void refreshRegistry() {
+        fetchRegistryAsync(false, 0);
+    }
+
+    /**
+     * The registry of every server node is fetched with a delta the node holds until something changes, and fetched
+     * again as soon as it is answered, so a change arrives within the coalesce window of the node while only one
+     * fetch waits at a time for each node. A failed fetch is tried again after the fetch interval.
+     */
+    private void longPollRegistry(final ServerNodeRegistry registry) {
+        if (isShutdown.get()) {
+            return;
+        }
+        if (serverNodeRegistries.get(registry.getServer().getId()) != registry) {
+            logger.info("server node {} re-routed, registry long poll stopped", registry.getServer());
+            return;
+        }
+        long holdMillis = TimeUnit.SECONDS.toMillis(instanceConfig.getRegistryLongPollHoldSeconds());
+        fetchServerNodeAsync(registry, false, holdMillis).thenApply(this::onRegistryFetched)
+                .whenComplete((success, e) -> {
+                    if (!Boolean.TRUE.equals(success)) {
+                        scheduleReroute();
+                    }
+                    scheduleLongPoll(registry, success);
+                });
+    }
+
+    private void scheduleLongPoll(final ServerNodeRegistry registry, Boolean lastSuccess) {
+        long delaySeconds = Boolean.TRUE.equals(lastSuccess) ? 0 : instanceConfig.getRegistryFetchIntervalSeconds();
+        try {
+            scheduledExecutorService.schedule(() -> longPollRegistry(registry), delaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("client is shut down, registry long poll stopped");
         }
     }
 
@@ -331,47 +627,109 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
      * Fetches the registry information.
      *
      * <p>
-     * This method tries to get only deltas after the first fetch unless there
-     * is an issue in reconciling pantheon server and client registry information.
+     * The server nodes are fetched from in parallel, each only for the changes after the registry versions seen last
+     * time from it, unless there is an issue in reconciling with it. The fetch takes as long as the slowest node,
+     * and the applications of every node are merged as soon as they are there.
+     * The fetches are sent without waiting for the responses, and a node is skipped while the last fetch from it is
+     * still in flight.
      * </p>
-     * todo load delta with correct step
      *
      * @param forceFullRegistryFetch Forces a full registry fetch.
-     * @return true if the registry was fetched
+     * @return completed with whether the registry was fetched from all server nodes, never exceptionally
      */
-    private boolean fetchRegistry(boolean forceFullRegistryFetch) {
+    private CompletableFuture<Boolean> fetchRegistryAsync(boolean forceFullRegistryFetch) {
+        return fetchRegistryAsync(forceFullRegistryFetch, 0);
+    }
 
-        try {
-            // If the delta is disabled or if it is the first time, get all
-            // applications
-            Applications applications = getApplications();
-
-            if (forceFullRegistryFetch
-                    || (applications == null)
-                    || (applications.getRegisteredApplications().size() == 0)) {
-                logger.info("Force full registry fetch : {}", forceFullRegistryFetch);
-                logger.info("Application is null : {}", (applications == null));
-                logger.info("Registered Applications size is zero : {}",
-                        (applications.getRegisteredApplications().size() == 0));
-                getAndStoreFullRegistry();
-            } else {
-                getAndUpdateDelta(applications);
+    /**
+     * @param holdMillis how long a server node may hold a delta fetch while nothing changed, 0 to be answered at once
+     */
+    private CompletableFuture<Boolean> fetchRegistryAsync(boolean forceFullRegistryFetch, long holdMillis) {
+        Collection<ServerNodeRegistry> registries = serverNodeRegistries.values();
+        if (registries.isEmpty()) {
+            logger.warn("no server node to fetch the registry from. [{}]", instanceConfig.getServiceName());
+            return CompletableFuture.completedFuture(false);
+        }
+        final List<CompletableFuture<Boolean>> fetches = new ArrayList<CompletableFuture<Boolean>>(registries.size());
+        for (ServerNodeRegistry registry : registries) {
+            fetches.add(fetchServerNodeAsync(registry, forceFullRegistryFetch, holdMillis));
+        }
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[fetches.size()])).thenApply(ignored -> {
+            boolean success = true;
+            for (CompletableFuture<Boolean> fetch : fetches) {
+                success &= fetch.join();
+            }
+            if (!success) {
+                scheduleReroute();
+            }
+            return onRegistryFetched(success);
+        });
+    }
+
+    /**
+     * @return completed with whether the registry of the node was fetched once its changes are merged, never
+     * exceptionally
+     */
+    private CompletableFuture<Boolean> fetchServerNodeAsync(final ServerNodeRegistry registry, boolean forceFullRegistryFetch,
+                                                            long holdMillis) {
+        return registry.fetch(forceFullRegistryFetch, holdMillis).thenApply(success -> {
+            try {
+                mergeChangedApps(registry);
+            } catch (Throwable e) {
+                logger.error("merge the registry of server node " + registry.getServer() + " failed", e);
+                return false;
+            }
+            return success;
+        });
+    }
+
+    /**
+     * Copies the applications the last fetches or pushes changed in the registry of the node into the local
+     * registry, and removes the ones the node no longer holds, unless another node holds them by now.
+     */
+    private void mergeChangedApps(ServerNodeRegistry registry) {
+        String serverId = registry.getServer().getId();
+        Applications applications = getApplications();
+        synchronized (appOwners) {
+            Set<String> changedApps = registry.drainChangedApps();
+            if (changedApps.isEmpty()) {
+                return;
+            }
+            for (String appName : changedApps) {
+                String key = appName.toUpperCase(Locale.ROOT);
+                Application app = registry.getApplications().getRegisteredApplications(appName);
+                if (app != null) {
+                    Application copy = new Application(app.getName(), app.getInstancesAsIsFromPantheon());
+                    copy.shuffleAndStoreInstances(instanceConfig.shouldFilterOnlyUpInstances());
+                    applications.addApplication(copy);
+                    appOwners.put(key, serverId);
+                } else if (serverId.equals(appOwners.get(key))) {
+                    applications.removeApplication(appName);
+                    appOwners.remove(key);
+                }
             }
             applications.setAppsHashCode(applications.getReconcileHashCode());
-            logTotalInstances();
-        } catch (Throwable e) {
-            logger.error("ClientNode was unable to refresh its cache! status = " + e.getMessage(), e);
-            return false;
         }
+    }
+
+    /**
+     * Notify about the cache refresh and update the remote status, unless nothing was fetched.
+     *
+     * @return whether the registry was fetched
+     */
+    private boolean onRegistryFetched(boolean success) {
+        if (success) {
+            registrySize = localRegionApps.get().size();
+            lastSuccessfulRegistryFetchTimestamp = System.currentTimeMillis();
+        }
+        logTotalInstances();
 
         // Notify about cache refresh before updating the instance remote status
         onCacheRefreshed();
 
         // Update remote status based on refreshed data held in the cache
         updateInstanceRemoteStatus();
-
-        // registry was fetched successfully, so return true
-        return true;
+        return success;
     }
 
     /**
@@ -436,9 +794,13 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
         return localRegionApps.get();
     }
 
+    /**
+     * the registry of this instance is the one of its service, holding the applications of the subscribed services
+     * only if there are some, see {@link PantheonInstanceConfig#getSubscribedServices()}
+     */
     @Override
     public Applications getSubscribeApplications(String serviceId) {
-        return appMap.get(serviceId);
+        return getServiceName().equals(serviceId) ? getApplications() : null;
     }
 
     @Override
@@ -455,196 +817,6 @@ public class DiscoveryClientNode extends AbstractLifecycleComponent implements D
         return getApplications().getRegisteredApplications(appName);
     }
 
-    /**
-     * Gets the full registry information from the pantheon server and stores it locally.
-     * When applying the full registry, the following flow is observed:
-     * <p>
-     * if (update generation have not advanced (due to another thread))
-     * atomically set the registry to the new registry
-     * fi
-     *
-     * @return the full registry information.
-     * @throws Throwable on error.
-     */
-    private void getAndStoreFullRegistry() throws Throwable {
-        long currentUpdateGeneration = fetchRegistryGeneration.get();
-
-        logger.info("Getting all instance registry info from the pantheon server");
-
-        Applications apps = this.clientAPI.getApplications(server, 3000L);
-
-        if (apps == null) {
-            logger.error("The application is null for some reason. Not storing this information");
-            //AtomicLong fetchRegistryGeneration to  fix multi-thread data conflict
-        } else if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
-            apps.shuffleInstances(instanceConfig.shouldFilterOnlyUpInstances());
-            localRegionApps.set(apps);
-
-            logger.debug("Got full registry with apps hashcode {}", apps.getAppsHashCode());
-        } else {
-            logger.warn("Not updating applications as another thread is updating it already");
-        }
-    }
-
-
-    /**
-     * Get the delta registry information from the pantheon server and update it locally.
-     * When applying the delta, the following flow is observed:
-     * <p>
-     * if (update generation have not advanced (due to another thread))
-     * atomically try to: update application with the delta and get reconcileHashCode
-     * abort entire processing otherwise
-     * do reconciliation if reconcileHashCode clash
-     * fi
-     *
-     * @return the client response
-     * @throws Throwable on error
-     */
-    private void getAndUpdateDelta(Applications applications) throws Throwable {
-        long currentUpdateGeneration = fetchRegistryGeneration.get();
-
-        Applications delta = this.clientAPI.getDelta(server, 3000L);
-
-        if (delta == null) {
-            logger.warn("The server does not allow the delta revision to be applied because it is not safe. "
-                    + "Hence got the full registry.");
-            getAndStoreFullRegistry();
-        } else if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
-            logger.debug("Got delta update with apps hashcode {}", delta.getAppsHashCode());
-            String reconcileHashCode = "";
-            if (fetchRegistryUpdateLock.tryLock()) {
-                try {
-                    updateDelta(delta);
-                    reconcileHashCode = getReconcileHashCode(applications);
-                } finally {
-                    fetchRegistryUpdateLock.unlock();
-                }
-            } else {
-                logger.warn("Cannot acquire update lock, aborting getAndUpdateDelta");
-            }
-            // There is a diff in number of instances for some reason
-            if (!reconcileHashCode.equals(delta.getAppsHashCode())) {
-                reconcileAndLogDifference(delta, reconcileHashCode);  // this makes a remoteCall
-            }
-        } else {
-            logger.warn("Not updating application delta as another thread is updating it already");
-            logger.debug("Ignoring delta update with apps hashcode {}, as another thread is updating it already", delta.getAppsHashCode());
-        }
-    }
-
-
-    private String getReconcileHashCode(Applications applications) {
-
-        TreeMap<String, AtomicInteger> instanceCountMap = new TreeMap<String, AtomicInteger>();
-        applications.populateInstanceCountMap(instanceCountMap);
-        return Applications.getReconcileHashCode(instanceCountMap);
-    }
-
-    /**
-     * Reconcile the pantheon server and client registry information and logs the differences if any.
-     * When reconciling, the following flow is observed:
-     * <p>
-     * 1. make a remote call to the server for the full registry
-     * 2. calculate and log differences
-     * 3. if (update generation have not advanced (due to another thread) atomically set the registry to the new registry
-     *
-     * @param delta             the last delta registry information received from the pantheon
-     *                          server.
-     * @param reconcileHashCode the hashcode generated by the server for reconciliation.
-     * @return ClientResponse the HTTP response object.
-     * @throws Throwable on any error.
-     */
-    private void reconcileAndLogDifference(Applications delta, String reconcileHashCode) throws Throwable {
-        logger.debug("The Reconcile hashcodes do not match, client : {}, server : {}. Getting the full registry",
-                reconcileHashCode, delta.getAppsHashCode());
-
-
-        long currentUpdateGeneration = fetchRegistryGeneration.get();
-
-        Applications serverApps = getApplications();
-
-        if (serverApps == null) {
-            logger.warn("Cannot fetch full registry from the server; reconciliation failure");
-            return;
-        }
-
-        if (logger.isDebugEnabled()) {
-            try {
-                Map<String, List<String>> reconcileDiffMap = getApplications().getReconcileMapDiff(serverApps);
-                StringBuilder reconcileBuilder = new StringBuilder("");
-                for (Map.Entry<String, List<String>> mapEntry : reconcileDiffMap.entrySet()) {
-                    reconcileBuilder.append(mapEntry.getKey()).append(": ");
-                    for (String displayString : mapEntry.getValue()) {
-                        reconcileBuilder.append(displayString);
-                    }
-                    reconcileBuilder.append('\n');
-                }
-                String reconcileString = reconcileBuilder.toString();
-                logger.debug("The reconcile string is {}", reconcileString);
-            } catch (Throwable e) {
-                logger.error("Could not calculate reconcile string ", e);
-            }
-        }
-
-        if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
-            serverApps.shuffleInstances(true);
-            localRegionApps.set(serverApps);
-            logger.debug(
-                    "The Reconcile hashcodes after complete sync up, client : {}, server : {}.",
-                    getApplications().getReconcileHashCode(),
-                    delta.getAppsHashCode());
-        } else {
-            logger.warn("Not setting the applications map as another thread has advanced the update generation");
-        }
-    }
-
-
-    /**
-     * Updates the delta information fetches from the pantheon server into the
-     * local cache.
-     *
-     * @param delta the delta information received from pantheon server in the last
-     *              poll cycle.
-     */
-    private void updateDelta(Applications delta) {
-        int deltaCount = 0;
-        for (Application app : delta.getRegisteredApplications()) {
-            for (InstanceInfo instance : app.getInstances()) {
-                Applications applications = getApplications();
-
-                ++deltaCount;
-                if (InstanceInfo.ActionType.ADDED.equals(instance.getActionType())) {
-                    Application existingApp = applications.getRegisteredApplications(instance.getAppName());
-                    if (existingApp == null) {
-                        applications.addApplication(app);
-                    }
-                    logger.debug("Added instance {} to the existing apps ", instance.getId());
-                    applications.getRegisteredApplications(instance.getAppName()).addInstance(instance);
-                } else if (InstanceInfo.ActionType.MODIFIED.equals(instance.getActionType())) {
-                    Application existingApp = applications.getRegisteredApplications(instance.getAppName());
-                    if (existingApp == null) {
-                        applications.addApplication(app);
-                    }
-                    logger.debug("Modified instance {} to the existing apps ", instance.getId());
-
-                    applications.getRegisteredApplications(instance.getAppName()).addInstance(instance);
-
-                } else if (InstanceInfo.ActionType.DELETED.equals(instance.getActionType())) {
-                    Application existingApp = applications.getRegisteredApplications(instance.getAppName());
-                    if (existingApp == null) {
-                        applications.addApplication(app);
-                    }
-                    logger.debug("Deleted instance {} to the existing apps ", instance.getId());
-                    applications.getRegisteredApplications(instance.getAppName()).removeInstance(instance);
-                }
-            }
-        }
-        logger.debug("The total number of instances fetched by the delta processor : {}", deltaCount);
-
-        getApplications().shuffleInstances(instanceConfig.shouldFilterOnlyUpInstances());
-
-    }
-
     /**
      * Invoked when the remote status of this client has changed.
      * Subclasses may override this method to implement custom behavior if needed.
@@ -0,0 +1,372 @@
+package com.pantheon.client;
+
+import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.client.config.PantheonInstanceConfig;
+import com.pantheon.client.transport.ClientAPIImpl;
+import com.pantheon.client.transport.Server;
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.common.protocol.header.RegistryChangedRequestHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * @author Anthony
+ * @create 2022/01/02
+ * @desc The part of the registry one server node holds, the applications of the services routed to the slots it owns.
+ * It is fetched from that node only, with the registry versions of that node, so every node is refreshed by its own
+ * deltas and reconciled with its own hashcode.
+ * <p>
+ * The names of the applications a fetch or a push changed are collected until {@link #drainChangedApps()} takes them.
+ */
+class ServerNodeRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ServerNodeRegistry.class);
+    private final Server server;
+    /**
+     * encoded names of the subscribed services routed to the node, null to fetch all it holds
+     */
+    private final String serviceNames;
+    private final ClientAPIImpl clientAPI;
+    private final PantheonInstanceConfig instanceConfig;
+    /**
+     * asks for a fetch on the scheduled thread, after a push that could not be applied
+     */
+    private final Consumer<ServerNodeRegistry> refresher;
+    private final AtomicReference<Applications> localApps = new AtomicReference<Applications>(new Applications());
+    /**
+     * encoded registry versions of the node the local applications are up to date with
+     */
+    private final AtomicReference<String> registryVersions = new AtomicReference<String>();
+    private final AtomicLong fetchRegistryGeneration = new AtomicLong(0);
+    private final Lock fetchRegistryUpdateLock = new ReentrantLock();
+    private final AtomicBoolean fetchInFlight = new AtomicBoolean(false);
+    // a change was pushed while a fetch was in flight, fetch again once it is done
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private final Set<String> changedApps = ConcurrentHashMap.newKeySet();
+
+    ServerNodeRegistry(Server server, String serviceNames, ClientAPIImpl clientAPI, PantheonInstanceConfig instanceConfig,
+                       Consumer<ServerNodeRegistry> refresher) {
+        this.server = server;
+        this.serviceNames = serviceNames;
+        this.clientAPI = clientAPI;
+        this.instanceConfig = instanceConfig;
+        this.refresher = refresher;
+    }
+
+    Server getServer() {
+        return server;
+    }
+
+    String getServiceNames() {
+        return serviceNames;
+    }
+
+    Applications getApplications() {
+        return localApps.get();
+    }
+
+    /**
+     * @return incarnation of the node the registry versions belong to, -1 before the first fetch
+     */
+    long getIncarnation() {
+        RegistryVersions versions = RegistryVersions.decode(registryVersions.get());
+        return versions == null ? -1 : versions.getIncarnation();
+    }
+
+    /**
+     * @return names of the applications changed since the last call
+     */
+    Set<String> drainChangedApps() {
+        Set<String> drained = new HashSet<String>();
+        for (String appName : changedApps) {
+            changedApps.remove(appName);
+            drained.add(appName);
+        }
+        return drained;
+    }
+
+    /**
+     * Fetches the full registry of the node the first time, only the deltas afterwards unless the reconcile
+     * hashcodes differ. Skipped while the last fetch is still in flight.
+     *
+     * @param holdMillis how long the node may hold a delta fetch while nothing changed, 0 to be answered at once
+     * @return completed with whether the registry was fetched, never exceptionally
+     */
+    CompletableFuture<Boolean> fetch(boolean forceFullRegistryFetch, long holdMillis) {
+        if (!fetchInFlight.compareAndSet(false, true)) {
+            logger.warn("last registry fetch from {} still in flight, skip this one", server);
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Void> fetch;
+        try {
+            Applications applications = getApplications();
+            // the subscribed services may have no instances yet, the versions tell whether they were fetched
+            if (forceFullRegistryFetch
+                    || registryVersions.get() == null
+                    || (applications.getRegisteredApplications().size() == 0 && serviceNames == null)) {
+                logger.info("Force full registry fetch from {} : {}", server, forceFullRegistryFetch);
+                fetch = getAndStoreFullRegistry();
+            } else {
+                fetch = getAndUpdateDelta(applications, holdMillis);
+            }
+        } catch (Throwable e) {
+            fetch = DiscoveryClientNode.failedFuture(e);
+        }
+        return fetch.handle((ignored, fetchError) -> {
+            try {
+                if (fetchError != null) {
+                    throw DiscoveryClientNode.unwrap(fetchError);
+                }
+                Applications applications = getApplications();
+                applications.setAppsHashCode(applications.getReconcileHashCode());
+                return true;
+            } catch (Throwable e) {
+                logger.error("unable to refresh the registry of server node " + server + "! status = " + e.getMessage(), e);
+                return false;
+            } finally {
+                fetchInFlight.set(false);
+                if (refreshPending.getAndSet(false)) {
+                    refresher.accept(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies the changes of a shard the node pushed.
+     * <p>
+     * The delta is only applied on top of the version of the shard it was computed from, a change pushed while a
+     * fetch is in flight, or a gap in the versions, fetches the delta instead, and a reconcile hashcode that differs
+     * from the one of the node afterwards too. The hashcode is the one of the whole registry, so a change of another
+     * shard not pushed yet also makes it differ, costing a delta fetch of changes that were on their way.
+     *
+     * @return whether the delta was applied
+     */
+    boolean applyPushed(RegistryChangedRequestHeader header, Applications delta) {
+        if (!fetchInFlight.compareAndSet(false, true)) {
+            refreshPending.set(true);
+            return false;
+        }
+        boolean refresh = false;
+        boolean applied = false;
+        try {
+            RegistryVersions versions = RegistryVersions.decode(registryVersions.get());
+            long shardVersion = versions == null || versions.getIncarnation() != header.getIncarnation()
+                    ? -1 : versions.getVersion(header.getShardId());
+            if (shardVersion >= header.getToVersion()) {
+                logger.debug("changes of shard {} up to version {} already seen", header.getShardId(), header.getToVersion());
+            } else if (delta == null || shardVersion != header.getFromVersion()) {
+                logger.info("missed changes of shard {} before version {}, fetch them", header.getShardId(), header.getFromVersion());
+                refresh = true;
+            } else {
+                fetchRegistryGeneration.incrementAndGet();
+                Applications applications = getApplications();
+                fetchRegistryUpdateLock.lock();
+                try {
+                    updateDelta(delta);
+                    applications.setAppsHashCode(applications.getReconcileHashCode());
+                } finally {
+                    fetchRegistryUpdateLock.unlock();
+                }
+                versions.putVersion(header.getShardId(), header.getToVersion());
+                registryVersions.set(versions.encode());
+                if (header.getAppsHashCode() != null && !header.getAppsHashCode().equals(applications.getAppsHashCode())) {
+                    logger.debug("The Reconcile hashcodes after a push do not match, client : {}, server : {}",
+                            applications.getAppsHashCode(), header.getAppsHashCode());
+                    refresh = true;
+                }
+                logger.debug("applied pushed changes of shard {} up to version {}", header.getShardId(), header.getToVersion());
+                applied = true;
+            }
+        } catch (Throwable e) {
+            logger.error("apply pushed changes of shard " + header.getShardId() + " failed", e);
+            refresh = true;
+        } finally {
+            fetchInFlight.set(false);
+        }
+        if (refresh || refreshPending.getAndSet(false)) {
+            refresher.accept(this);
+        }
+        return applied;
+    }
+
+    /**
+     * Gets the full registry of the node and stores it locally, unless the update generation advanced meanwhile.
+     *
+     * @return completed once the full registry is stored, exceptionally on error.
+     */
+    private CompletableFuture<Void> getAndStoreFullRegistry() {
+        final long currentUpdateGeneration = fetchRegistryGeneration.get();
+
+        logger.info("Getting all instance registry info from the pantheon server {}", server);
+
+        final Applications localApplications = getApplications();
+        return clientAPI.getApplicationsAsync(server, 3000L, registryVersions, localApplications, serviceNames).thenAccept(apps -> {
+            if (apps == null) {
+                logger.error("The application is null for some reason. Not storing this information");
+            } else if (apps == localApplications) {
+                logger.debug("Full registry not modified, keeping apps hashcode {}", apps.getAppsHashCode());
+            } else if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
+                apps.shuffleInstances(instanceConfig.shouldFilterOnlyUpInstances());
+                replaceApplications(apps);
+
+                logger.debug("Got full registry with apps hashcode {}", apps.getAppsHashCode());
+            } else {
+                logger.warn("Not updating applications as another thread is updating it already");
+            }
+        });
+    }
+
+    /**
+     * Gets the changes of the node and applies them locally, unless the update generation advanced meanwhile, and
+     * reconciles with the full registry of the node if the reconcile hashcodes differ afterwards.
+     *
+     * @return completed once the delta is applied and reconciled, exceptionally on error
+     */
+    private CompletableFuture<Void> getAndUpdateDelta(final Applications applications, long holdMillis) {
+        final long currentUpdateGeneration = fetchRegistryGeneration.get();
+
+        return clientAPI.getDeltaAsync(server, 3000L + holdMillis, registryVersions, holdMillis, serviceNames).thenCompose(delta -> {
+            if (delta == null) {
+                logger.warn("The registry versions are too old for a delta to be applied. "
+                        + "Hence got the full registry.");
+                return getAndStoreFullRegistry();
+            } else if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
+                logger.debug("Got delta update with apps hashcode {}", delta.getAppsHashCode());
+                String reconcileHashCode = "";
+                if (fetchRegistryUpdateLock.tryLock()) {
+                    try {
+                        updateDelta(delta);
+                        reconcileHashCode = applications.getReconcileHashCode();
+                    } finally {
+                        fetchRegistryUpdateLock.unlock();
+                    }
+                } else {
+                    logger.warn("Cannot acquire update lock, aborting getAndUpdateDelta");
+                }
+                // There is a diff in number of instances for some reason
+                if (!reconcileHashCode.equals(delta.getAppsHashCode())) {
+                    return reconcileAndLogDifference(delta, reconcileHashCode);  // this makes a remoteCall
+                }
+            } else {
+                logger.warn("Not updating application delta as another thread is updating it already");
+                logger.debug("Ignoring delta update with apps hashcode {}, as another thread is updating it already", delta.getAppsHashCode());
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Gets the full registry of the node, logs the differences and stores it, unless the update generation advanced
+     * meanwhile.
+     *
+     * @return completed once reconciled, exceptionally on any error.
+     */
+    private CompletableFuture<Void> reconcileAndLogDifference(final Applications delta, String reconcileHashCode) {
+        logger.debug("The Reconcile hashcodes do not match, client : {}, server : {}. Getting the full registry",
+                reconcileHashCode, delta.getAppsHashCode());
+
+        final long currentUpdateGeneration = fetchRegistryGeneration.get();
+
+        return clientAPI.getApplicationsAsync(server, 3000L, registryVersions, null, serviceNames).thenAccept(serverApps -> {
+            if (serverApps == null) {
+                logger.warn("Cannot fetch full registry from the server; reconciliation failure");
+                return;
+            }
+
+            if (logger.isDebugEnabled()) {
+                try {
+                    Map<String, List<String>> reconcileDiffMap = getApplications().getReconcileMapDiff(serverApps);
+                    StringBuilder reconcileBuilder = new StringBuilder("");
+                    for (Map.Entry<String, List<String>> mapEntry : reconcileDiffMap.entrySet()) {
+                        reconcileBuilder.append(mapEntry.getKey()).append(": ");
+                        for (String displayString : mapEntry.getValue()) {
+                            reconcileBuilder.append(displayString);
+                        }
+                        reconcileBuilder.append('\n');
+                    }
+                    logger.debug("The reconcile string is {}", reconcileBuilder);
+                } catch (Throwable e) {
+                    logger.error("Could not calculate reconcile string ", e);
+                }
+            }
+
+            if (fetchRegistryGeneration.compareAndSet(currentUpdateGeneration, currentUpdateGeneration + 1)) {
+                serverApps.shuffleInstances(true);
+                replaceApplications(serverApps);
+                logger.debug(
+                        "The Reconcile hashcodes after complete sync up, client : {}, server : {}.",
+                        getApplications().getReconcileHashCode(),
+                        delta.getAppsHashCode());
+            } else {
+                logger.warn("Not setting the applications map as another thread has advanced the update generation");
+            }
+        });
+    }
+
+    private void replaceApplications(Applications apps) {
+        for (Application app : localApps.getAndSet(apps).getRegisteredApplications()) {
+            changedApps.add(app.getName());
+        }
+        for (Application app : apps.getRegisteredApplications()) {
+            changedApps.add(app.getName());
+        }
+    }
+
+    /**
+     * Updates the delta information fetched from the node into the local applications.
+     *
+     * @param delta the delta information received from the node in the last poll cycle.
+     */
+    private void updateDelta(Applications delta) {
+        int deltaCount = 0;
+        Applications applications = getApplications();
+        for (Application app : delta.getRegisteredApplications()) {
+            changedApps.add(app.getName());
+            for (InstanceInfo instance : app.getInstances()) {
+                ++deltaCount;
+                if (InstanceInfo.ActionType.ADDED.equals(instance.getActionType())) {
+                    Application existingApp = applications.getRegisteredApplications(instance.getAppName());
+                    if (existingApp == null) {
+                        applications.addApplication(app);
+                    }
+                    logger.debug("Added instance {} to the existing apps ", instance.getId());
+                    applications.getRegisteredApplications(instance.getAppName()).addInstance(instance);
+                } else if (InstanceInfo.ActionType.MODIFIED.equals(instance.getActionType())) {
+                    Application existingApp = applications.getRegisteredApplications(instance.getAppName());
+                    if (existingApp == null) {
+                        applications.addApplication(app);
+                    }
+                    logger.debug("Modified instance {} to the existing apps ", instance.getId());
+
+                    applications.getRegisteredApplications(instance.getAppName()).addInstance(instance);
+
+                } else if (InstanceInfo.ActionType.DELETED.equals(instance.getActionType())) {
+                    Application existingApp = applications.getRegisteredApplications(instance.getAppName());
+                    if (existingApp == null) {
+                        applications.addApplication(app);
+                    }
+                    logger.debug("Deleted instance {} to the existing apps ", instance.getId());
+                    applications.getRegisteredApplications(instance.getAppName()).removeInstance(instance);
+                }
+            }
+        }
+        logger.debug("The total number of instances fetched by the delta processor : {}", deltaCount);
+
+        applications.shuffleInstances(instanceConfig.shouldFilterOnlyUpInstances());
+    }
+}
@@ -0,0 +1,139 @@
+package com.pantheon.client.appinfo;
+
+import com.pantheon.remoting.protocol.CompactCodec;
+import com.pantheon.remoting.protocol.CompactReader;
+import com.pantheon.remoting.protocol.CompactWriter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Anthony
+ * @create 2021/12/27
+ * @desc compact binary codecs of {@link InstanceInfo} and {@link Applications}, registered by those classes.
+ * <p>
+ * App names, group names, hostnames and metadata go through the dictionary of the payload, so in a full registry
+ * each of them is written once. Fields are written in a fixed order, a field added later goes to the end and needs
+ * a new {@link com.pantheon.remoting.protocol.RemotingSerializable#COMPACT_VERSION}.
+ */
+public class AppInfoCompactCodecs {
+    private static final InstanceInfo.InstanceStatus[] INSTANCE_STATUSES = InstanceInfo.InstanceStatus.values();
+    private static final InstanceInfo.ActionType[] ACTION_TYPES = InstanceInfo.ActionType.values();
+
+    public static final CompactCodec<InstanceInfo> INSTANCE_INFO = new CompactCodec<InstanceInfo>() {
+        @Override
+        public void write(InstanceInfo info, CompactWriter out) throws IOException {
+            out.writeString(info.getInstanceId());
+            out.writeSharedString(info.getAppName());
+            out.writeSharedString(info.getAppGroupName());
+            out.writeString(info.getIPAddr());
+            out.writeSharedString(info.getHostName());
+            out.writeVarInt(info.getPort());
+            out.writeVarInt(info.getSecurePort());
+            out.writeNullableInt(info.getSlotNum());
+            out.writeEnum(info.getInstanceStatus());
+            out.writeEnum(info.getStatus());
+            out.writeEnum(info.getOverriddenStatus());
+            out.writeEnum(info.getActionType());
+            out.writeBoolean(info.isInstanceInfoDirty());
+            out.writeVarLong(info.getLastUpdatedTimestamp());
+            out.writeNullableLong(info.getLastDirtyTimestamp());
+            writeLeaseInfo(info.getLeaseInfo(), out);
+            out.writeSharedStringMap(info.getMetadata());
+        }
+
+        @Override
+        public InstanceInfo read(CompactReader in) throws IOException {
+            InstanceInfo info = new InstanceInfo();
+            InstanceInfo.Builder builder = InstanceInfo.Builder.newBuilder(info);
+            info.setInstanceId(in.readString());
+            info.setAppName(in.readSharedString());
+            info.setAppGroupName(in.readSharedString());
+            info.setIpAddr(in.readString());
+            info.setHostName(in.readSharedString());
+            info.setPort(in.readVarInt());
+            info.setSecurePort(in.readVarInt());
+            builder.setSlotNum(in.readNullableInt());
+            info.setInstanceStatus(in.readEnum(INSTANCE_STATUSES));
+            info.setStatusWithoutDirty(in.readEnum(INSTANCE_STATUSES));
+            info.setOverriddenStatus(in.readEnum(INSTANCE_STATUSES));
+            info.setActionType(in.readEnum(ACTION_TYPES));
+            info.setInstanceInfoDirty(in.readBoolean());
+            info.setLastUpdatedTimestamp(in.readVarLong());
+            info.setLastDirtyTimestamp(in.readNullableLong());
+            info.setLeaseInfo(readLeaseInfo(in));
+            Map<String, String> metadata = in.readSharedStringMap();
+            if (metadata != null) {
+                for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                    if (entry.getKey() != null && entry.getValue() != null) {
+                        builder.add(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            return info;
+        }
+    };
+
+    public static final CompactCodec<Applications> APPLICATIONS = new CompactCodec<Applications>() {
+        @Override
+        public void write(Applications apps, CompactWriter out) throws IOException {
+            out.writeString(apps.getAppsHashCode());
+            List<Application> registeredApplications = apps.getRegisteredApplications();
+            out.writeVarInt(registeredApplications.size());
+            for (Application app : registeredApplications) {
+                List<InstanceInfo> instances = app.getInstancesAsIsFromPantheon();
+                out.writeSharedString(app.getName());
+                out.writeVarInt(instances.size());
+                for (InstanceInfo instanceInfo : instances) {
+                    INSTANCE_INFO.write(instanceInfo, out);
+                }
+            }
+        }
+
+        @Override
+        public Applications read(CompactReader in) throws IOException {
+            Applications apps = new Applications();
+            apps.setAppsHashCode(in.readString());
+            int appCount = in.readCount();
+            for (int i = 0; i < appCount; i++) {
+                Application app = new Application(in.readSharedString());
+                int instanceCount = in.readCount();
+                for (int j = 0; j < instanceCount; j++) {
+                    app.addInstance(INSTANCE_INFO.read(in));
+                }
+                apps.addApplication(app);
+            }
+            return apps;
+        }
+    };
+
+    private AppInfoCompactCodecs() {
+    }
+
+    private static void writeLeaseInfo(LeaseInfo leaseInfo, CompactWriter out) throws IOException {
+        out.writeBoolean(leaseInfo != null);
+        if (leaseInfo != null) {
+            out.writeVarInt(leaseInfo.getRenewalIntervalInSecs());
+            out.writeVarInt(leaseInfo.getDurationInSecs());
+            out.writeVarLong(leaseInfo.getRegistrationTimestamp());
+            out.writeVarLong(leaseInfo.getRenewalTimestamp());
+            out.writeVarLong(leaseInfo.getEvictionTimestamp());
+            out.writeVarLong(leaseInfo.getServiceUpTimestamp());
+        }
+    }
+
+    private static LeaseInfo readLeaseInfo(CompactReader in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int renewalIntervalInSecs = in.readVarInt();
+        int durationInSecs = in.readVarInt();
+        long registrationTimestamp = in.readVarLong();
+        long lastRenewalTimestamp = in.readVarLong();
+        long evictionTimestamp = in.readVarLong();
+        long serviceUpTimestamp = in.readVarLong();
+        return new LeaseInfo(renewalIntervalInSecs, durationInSecs, registrationTimestamp, lastRenewalTimestamp,
+                lastRenewalTimestamp, evictionTimestamp, serviceUpTimestamp);
+    }
+}
@@ -34,6 +34,11 @@ public class Application {
 
     private Map<String, InstanceInfo> instancesMap;
 
+    /**
+     * digest of the {@link Applications} this application was added to last, kept up to date with the instances
+     */
+    private volatile RegistryDigest digest;
+
     public Application() {
         instances = new LinkedHashSet<InstanceInfo>();
         instancesMap = new ConcurrentHashMap<String, InstanceInfo>();
@@ -59,11 +64,73 @@ public class Application {
      * @param i the instance info object to be added.
      */
     public void addInstance(InstanceInfo i) {
-        instancesMap.put(i.getId(), i);
         synchronized (instances) {
+            InstanceInfo old = instancesMap.put(i.getId(), i);
             instances.remove(i);
             instances.add(i);
             isDirty = true;
+            RegistryDigest currentDigest = digest;
+            if (currentDigest != null) {
+                if (old != null) {
+                    currentDigest.remove(old);
+                }
+                currentDigest.add(i);
+            }
+        }
+    }
+
+    /**
+     * Sets the instances, used when the application is decoded.
+     *
+     * @param instances the instances to be added.
+     */
+    public void setInstances(List<InstanceInfo> instances) {
+        for (InstanceInfo instanceInfo : instances) {
+            addInstance(instanceInfo);
+        }
+    }
+
+    /**
+     * Count the instances into the digest, which is kept up to date from now on. Instances are expected to be
+     * replaced by {@link #addInstance(InstanceInfo)} instead of being changed in place.
+     *
+     * @param digest the digest of the {@link Applications} this application is added to.
+     */
+    void attachDigest(RegistryDigest digest) {
+        synchronized (instances) {
+            this.digest = digest;
+            for (InstanceInfo instanceInfo : instancesMap.values()) {
+                digest.add(instanceInfo);
+            }
+        }
+    }
+
+    /**
+     * Count the instances into the digest, or take them out of it, once and without keeping it up to date, for a
+     * snapshot that is never changed again. Unlike {@link #attachDigest(RegistryDigest)} nothing of the application is
+     * written, so a snapshot can be counted by several lists at the same time.
+     */
+    void countInto(RegistryDigest digest, boolean add) {
+        for (InstanceInfo instanceInfo : instancesMap.values()) {
+            if (add) {
+                digest.add(instanceInfo);
+            } else {
+                digest.remove(instanceInfo);
+            }
+        }
+    }
+
+    /**
+     * Stop updating the digest, and take the instances out of it.
+     */
+    void detachDigest(RegistryDigest digest) {
+        synchronized (instances) {
+            if (this.digest == digest) {
+                for (InstanceInfo instanceInfo : instancesMap.values()) {
+                    digest.remove(instanceInfo);
+                }
+                this.digest = null;
+            }
         }
     }
 
@@ -177,12 +244,16 @@ public class Application {
     }
 
     private void removeInstance(InstanceInfo i, boolean markAsDirty) {
-        instancesMap.remove(i.getId());
         synchronized (instances) {
+            InstanceInfo old = instancesMap.remove(i.getId());
             instances.remove(i);
             if (markAsDirty) {
                 isDirty = true;
             }
+            RegistryDigest currentDigest = digest;
+            if (currentDigest != null && old != null) {
+                currentDigest.remove(old);
+            }
         }
     }
 }
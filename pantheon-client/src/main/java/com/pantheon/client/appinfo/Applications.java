@@ -1,5 +1,6 @@
 package com.pantheon.client.appinfo;
 
+import com.alibaba.fastjson.annotation.JSONField;
 import com.pantheon.client.config.DefaultInstanceConfig;
 import com.pantheon.remoting.protocol.RemotingSerializable;
 import org.slf4j.Logger;
@@ -38,6 +39,16 @@ public class Applications extends RemotingSerializable {
 
     private String appsHashCode;
 
+    private final RegistryDigest digest = new RegistryDigest();
+    /**
+     * applications added by {@link #addApplicationSnapshot(Application)}, counted into the digest but not attached
+     */
+    private final Set<Application> snapshots = Collections.newSetFromMap(new IdentityHashMap<Application, Boolean>());
+
+    static {
+        registerCompactCodec(Applications.class, AppInfoCompactCodecs.APPLICATIONS);
+    }
+
     /**
      * Create a new, empty Pantheon application list.
      */
@@ -68,7 +79,9 @@ public class Applications extends RemotingSerializable {
      */
     public Applications(List<Application> apps) {
         this.applications = new ConcurrentLinkedQueue<Application>();
-        this.applications.addAll(apps);
+        for (Application app : apps) {
+            this.addApplication(app);
+        }
     }
 
     /**
@@ -77,10 +90,77 @@ public class Applications extends RemotingSerializable {
      * @param app the <em>application</em> to be added.
      */
     public void addApplication(Application app) {
-        appNameApplicationMap.put(app.getName().toUpperCase(Locale.ROOT), app);
+        Application previous = appNameApplicationMap.put(app.getName().toUpperCase(Locale.ROOT), app);
+        if (previous == app) {
+            return;
+        }
+        if (previous != null) {
+            release(previous);
+        }
+        app.attachDigest(digest);
+        applications.add(app);
+    }
+
+    /**
+     * Add a published snapshot <em>application</em>, which is never changed again and may be in several lists at
+     * once. Its instances are counted into the reconcile hash code without attaching the application to this list,
+     * so the snapshot itself is not written to.
+     *
+     * @param app the snapshot <em>application</em> to be added.
+     */
+    public void addApplicationSnapshot(Application app) {
+        Application previous = appNameApplicationMap.put(app.getName().toUpperCase(Locale.ROOT), app);
+        if (previous == app) {
+            return;
+        }
+        if (previous != null) {
+            release(previous);
+        }
+        synchronized (snapshots) {
+            snapshots.add(app);
+        }
+        app.countInto(digest, true);
         applications.add(app);
     }
 
+    private void release(Application previous) {
+        applications.remove(previous);
+        boolean snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.remove(previous);
+        }
+        if (snapshot) {
+            previous.countInto(digest, false);
+        } else {
+            previous.detachDigest(digest);
+        }
+    }
+
+    /**
+     * Remove the <em>application</em> of the name from the list.
+     *
+     * @param appName the name of the <em>application</em> to be removed.
+     * @return the removed application, null if there was none
+     */
+    public Application removeApplication(String appName) {
+        Application previous = appNameApplicationMap.remove(appName.toUpperCase(Locale.ROOT));
+        if (previous != null) {
+            release(previous);
+        }
+        return previous;
+    }
+
+    /**
+     * Sets the applications, used when the applications are decoded.
+     *
+     * @param registeredApplications the applications to be added.
+     */
+    public void setRegisteredApplications(List<Application> registeredApplications) {
+        for (Application app : registeredApplications) {
+            addApplication(app);
+        }
+    }
+
 
     /**
      * Gets the list of all registered <em>applications</em> from pantheon.
@@ -140,14 +220,14 @@ public class Applications extends RemotingSerializable {
     /**
      * Gets the hash code for this <em>applications</em> instance. Used for
      * comparison of instances between pantheon server and pantheon client.
+     * Built from the {@link RegistryDigest} kept up to date with the instances, without walking them.
      *
      * @return the internal hash code representation indicating the information
      * about the instances.
      */
+    @JSONField(serialize = false)
     public String getReconcileHashCode() {
-        TreeMap<String, AtomicInteger> instanceCountMap = new TreeMap<String, AtomicInteger>();
-        populateInstanceCountMap(instanceCountMap);
-        return getReconcileHashCode(instanceCountMap);
+        return digest.getReconcileHashCode();
     }
 
     /**
@@ -14,6 +14,10 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class InstanceInfo extends RemotingSerializable {
 
+    static {
+        registerCompactCodec(InstanceInfo.class, AppInfoCompactCodecs.INSTANCE_INFO);
+    }
+
     private String hostName;
 
     // one instance bind to one slot
@@ -69,6 +73,8 @@ public class InstanceInfo extends RemotingSerializable {
         this.port = ii.port;
         this.securePort = ii.securePort;
         this.hostName = ii.hostName;
+        this.slotNum = ii.slotNum;
+        this.instanceStatus = ii.instanceStatus;
         this.status = ii.status;
         this.overriddenstatus = ii.overriddenstatus;
         this.isInstanceInfoDirty = ii.isInstanceInfoDirty;
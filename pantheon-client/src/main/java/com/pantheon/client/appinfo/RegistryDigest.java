@@ -0,0 +1,122 @@
+package com.pantheon.client.appinfo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Anthony
+ * @create 2021/12/24
+ * @desc incrementally maintained digest of a registry, the source of the reconcile hash code.
+ * <p>
+ * Instead of walking every instance into a {@code TreeMap} when the hash code is asked for, the count of every
+ * {@link InstanceInfo.InstanceStatus} and a 64 bit sum of the hashes of instance id and status are updated when an
+ * instance is added, removed or changes its status, so the hash code is built in constant time. The sum can be
+ * undone by subtraction, and it tells two registries apart even when their status counts are equal.
+ * <p>
+ * Server and client build the same hash code for the same instances. Updates are handed on to the parent digest
+ * if there is one, which lets a registry made of several parts keep one digest of the whole.
+ */
+public class RegistryDigest {
+    private static final String STATUS_DELIMITER = "_";
+    private static final String INSTANCE_HASH_KEY = "HASH";
+    /**
+     * statuses in name order, the order of the status counts in the hash code
+     */
+    private static final InstanceInfo.InstanceStatus[] STATUSES_BY_NAME;
+
+    static {
+        STATUSES_BY_NAME = InstanceInfo.InstanceStatus.values();
+        Arrays.sort(STATUSES_BY_NAME, new Comparator<InstanceInfo.InstanceStatus>() {
+            @Override
+            public int compare(InstanceInfo.InstanceStatus o1, InstanceInfo.InstanceStatus o2) {
+                return o1.name().compareTo(o2.name());
+            }
+        });
+    }
+
+    private final RegistryDigest parent;
+    private final AtomicLongArray statusCounts = new AtomicLongArray(STATUSES_BY_NAME.length);
+    private final AtomicLong instanceHash = new AtomicLong(0);
+
+    public RegistryDigest() {
+        this(null);
+    }
+
+    public RegistryDigest(RegistryDigest parent) {
+        this.parent = parent;
+    }
+
+    public void add(InstanceInfo info) {
+        add(info.getId(), info.getStatus());
+    }
+
+    public void remove(InstanceInfo info) {
+        remove(info.getId(), info.getStatus());
+    }
+
+    public void add(String id, InstanceInfo.InstanceStatus status) {
+        statusCounts.incrementAndGet(status.ordinal());
+        instanceHash.addAndGet(hash(id, status));
+        if (parent != null) {
+            parent.add(id, status);
+        }
+    }
+
+    public void remove(String id, InstanceInfo.InstanceStatus status) {
+        statusCounts.decrementAndGet(status.ordinal());
+        instanceHash.addAndGet(-hash(id, status));
+        if (parent != null) {
+            parent.remove(id, status);
+        }
+    }
+
+    public void statusChanged(String id, InstanceInfo.InstanceStatus oldStatus, InstanceInfo.InstanceStatus newStatus) {
+        if (oldStatus != newStatus) {
+            remove(id, oldStatus);
+            add(id, newStatus);
+        }
+    }
+
+    public long getCount(InstanceInfo.InstanceStatus status) {
+        return statusCounts.get(status.ordinal());
+    }
+
+    /**
+     * the count of every status present in name order followed by the instance hash, like
+     * {@code DOWN_1_UP_12_HASH_5f3a09c2e1d4b877_}
+     */
+    public String getReconcileHashCode() {
+        StringBuilder sb = new StringBuilder();
+        for (InstanceInfo.InstanceStatus status : STATUSES_BY_NAME) {
+            long count = statusCounts.get(status.ordinal());
+            if (count > 0) {
+                sb.append(status.name()).append(STATUS_DELIMITER).append(count).append(STATUS_DELIMITER);
+            }
+        }
+        sb.append(INSTANCE_HASH_KEY).append(STATUS_DELIMITER)
+                .append(Long.toHexString(instanceHash.get())).append(STATUS_DELIMITER);
+        return sb.toString();
+    }
+
+    /**
+     * 64 bit FNV-1a over the id, mixed with the status by the murmur3 finalizer
+     */
+    private static long hash(String id, InstanceInfo.InstanceStatus status) {
+        long h = 0xcbf29ce484222325L;
+        if (id != null) {
+            for (int i = 0; i < id.length(); i++) {
+                h ^= id.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        }
+        h ^= status.ordinal() + 1;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -39,6 +39,11 @@ public class DefaultInstanceConfig extends AbstractInstanceConfig implements Pan
     final String CONFIG_KEY_INSTANCE_PORT = namespace + "instancePort";
     final String CONFIG_KEY_SHOULD_FETCH_REGISTRY = namespace + "shouldFetchRegistry";
     final String CONFIG_KEY_REGISTRY_FETCH_INTERVAL_SECONDS = namespace + "registryFetchIntervalSeconds";
+    final String CONFIG_KEY_ACCEPTED_COMPRESSION_CODECS = namespace + "acceptedCompressionCodecs";
+    final String CONFIG_KEY_SUBSCRIBE_REGISTRY_CHANGES = namespace + "subscribeRegistryChanges";
+    final String CONFIG_KEY_PUSHED_REGISTRY_FETCH_INTERVAL_SECONDS = namespace + "pushedRegistryFetchIntervalSeconds";
+    final String CONFIG_KEY_REGISTRY_LONG_POLL_HOLD_SECONDS = namespace + "registryLongPollHoldSeconds";
+    final String CONFIG_KEY_SUBSCRIBED_SERVICES = namespace + "subscribedServices";
 
 
     private List<String> serverList = new ArrayList<>();
@@ -147,6 +152,31 @@ public class DefaultInstanceConfig extends AbstractInstanceConfig implements Pan
 
     }
 
+    @Override
+    public String getAcceptedCompressionCodecs() {
+        return configInstance.getStringProperty(CONFIG_KEY_ACCEPTED_COMPRESSION_CODECS, "deflate,gzip,lz4").get();
+    }
+
+    @Override
+    public boolean shouldSubscribeRegistryChanges() {
+        return configInstance.getBooleanProperty(CONFIG_KEY_SUBSCRIBE_REGISTRY_CHANGES, true).get();
+    }
+
+    @Override
+    public int getPushedRegistryFetchIntervalSeconds() {
+        return configInstance.getIntProperty(CONFIG_KEY_PUSHED_REGISTRY_FETCH_INTERVAL_SECONDS, 300).get();
+    }
+
+    @Override
+    public int getRegistryLongPollHoldSeconds() {
+        return configInstance.getIntProperty(CONFIG_KEY_REGISTRY_LONG_POLL_HOLD_SECONDS, 0).get();
+    }
+
+    @Override
+    public String getSubscribedServices() {
+        return configInstance.getStringProperty(CONFIG_KEY_SUBSCRIBED_SERVICES, "").get();
+    }
+
     @Override
     public Integer setInstancePort(Integer port) {
         return null;
@@ -58,5 +58,46 @@ public interface PantheonInstanceConfig {
      */
     int getRegistryFetchIntervalSeconds();
 
+    /**
+     * Compression codecs accepted for the fetched registry information, the server picks the first of its own
+     * preference among them, and sends payloads below its minimum size uncompressed.
+     *
+     * @return comma separated codec names, like deflate,gzip,lz4.
+     */
+    String getAcceptedCompressionCodecs();
+
+    /**
+     * Whether to ask the server to push the registry changes, they are applied as they come then.
+     *
+     * @return true to subscribe to the registry changes, default true
+     */
+    boolean shouldSubscribeRegistryChanges();
+
+    /**
+     * How often(in seconds) to fetch the registry information while the server pushes its changes, as a safety
+     * net for a push that got lost. Never less often than {@link #getRegistryFetchIntervalSeconds()}.
+     *
+     * @return the fetch interval in seconds while the changes are pushed.
+     */
+    int getPushedRegistryFetchIntervalSeconds();
+
+    /**
+     * Indicates how long the server holds a delta fetch while nothing changed. If set, the registry is fetched in a
+     * loop of held fetches instead of every {@link #getRegistryFetchIntervalSeconds()}, for clients that cannot take
+     * pushed changes, see {@link #shouldSubscribeRegistryChanges()}.
+     *
+     * @return the hold in seconds, 0 to fetch at the interval.
+     */
+    int getRegistryLongPollHoldSeconds();
+
+    /**
+     * Indicates the services this instance depends on. If set, only their applications are fetched, kept and
+     * diffed instead of the full registry, and the changes of the registry are not pushed. The remote status of
+     * this instance is only known if its own service is among them.
+     *
+     * @return comma separated service names, empty to fetch the full registry.
+     */
+    String getSubscribedServices();
+
     Map<String, String> getMetadataMap();
 }
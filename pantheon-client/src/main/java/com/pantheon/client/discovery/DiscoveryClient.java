@@ -32,10 +32,11 @@ public interface DiscoveryClient {
     Applications getApplications();
 
     /**
-     * return the {@link Applications} object which the service is subscribing
+     * return the {@link Applications} object which the service is subscribing, the applications of the services it
+     * depends on only if it declared them
      *
-     * @param serviceId
-     * @return
+     * @param serviceId the service subscribing
+     * @return null if the client does not fetch the registry of the service
      */
     Applications getSubscribeApplications(String serviceId);
 
@@ -1,7 +1,7 @@
 package com.pantheon.client.transport;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import com.pantheon.common.ThreadFactoryImpl;
 import com.pantheon.client.appinfo.Applications;
 import com.pantheon.client.appinfo.InstanceInfo;
 import com.pantheon.client.config.DefaultInstanceConfig;
@@ -9,24 +9,41 @@ import com.pantheon.client.config.PantheonInstanceConfig;
 import com.pantheon.common.protocol.RequestCode;
 import com.pantheon.common.protocol.ResponseCode;
 import com.pantheon.common.protocol.header.*;
-import com.pantheon.common.protocol.heartBeat.HeartBeat;
+import com.pantheon.common.protocol.heartBeat.LeaseHeartBeat;
+import com.pantheon.common.protocol.heartBeat.ServiceUnregister;
+import com.pantheon.remoting.ChannelEventListener;
 import com.pantheon.remoting.RPCHook;
 import com.pantheon.remoting.RemotingClient;
+import com.pantheon.remoting.compression.CompressionCodec;
+import com.pantheon.remoting.compression.CompressionCodecs;
+import com.pantheon.remoting.compression.GzipCompressionCodec;
 import com.pantheon.remoting.exception.*;
 import com.pantheon.remoting.netty.NettyClientConfig;
 import com.pantheon.remoting.netty.NettyRemotingClient;
 import com.pantheon.remoting.protocol.RemotingCommand;
+import com.pantheon.remoting.protocol.SystemBusyResponseHeader;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.zip.GZIPInputStream;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * @author Anthony
@@ -41,22 +58,62 @@ public class ClientAPIImpl {
     private String serverAddress = null;
     private NettyClientConfig nettyClientConfig;
     private PantheonInstanceConfig pantheonInstanceConfig;
-    private Map<String/*serverNodeId*/, List<String>> slotsAllocation;
+    private volatile Map<String/*serverNodeId*/, List<String>> slotsAllocation;
     private static final Integer SLOT_COUNT = 16384;
+    /**
+     * an asynchronous request the server answers busy is sent again at most this many times, after a jittered delay
+     */
+    private static final int MAX_BUSY_RETRIES = 3;
+    private static final long BUSY_RETRY_BASE_MILLIS = 100;
+    private static final long BUSY_RETRY_CAP_MILLIS = 2000;
+    /**
+     * whether each server node said in the last fetch response that it pushes the registry changes, until a
+     * connection is lost
+     */
+    private final Map<String/*server address*/, Boolean> registryChangesPushed = new ConcurrentHashMap<String, Boolean>();
+    /**
+     * encoded names of the services the registry is fetched for, null to fetch the full registry
+     */
+    private final String subscribedServices;
+    private final ScheduledExecutorService busyRetryScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryImpl("ClientBusyRetryThread", true));
     private PantheonInstanceConfig instanceConfig;
     /**
      * server addresses
      */
-    private Map<String/*server node id*/, Server> servers = new HashMap<String, Server>();
+    private volatile Map<String/*server node id*/, Server> servers = new HashMap<String, Server>();
 
     public ClientAPIImpl(final NettyClientConfig nettyClientConfig, PantheonInstanceConfig instanceConfig, ClientRemotingProcessor clientRemotingProcessor, RPCHook rpcHook) {
         this.clientRemotingProcessor = clientRemotingProcessor;
         this.nettyClientConfig = nettyClientConfig;
         this.instanceConfig = instanceConfig;
-        this.remotingClient = new NettyRemotingClient(nettyClientConfig, null);
+        String services = instanceConfig.getSubscribedServices();
+        this.subscribedServices = services == null ? null
+                : GetInNeedAppRequestHeader.encodeServiceNames(Arrays.asList(services.split(",")));
+        this.remotingClient = new NettyRemotingClient(nettyClientConfig, new ChannelEventListener() {
+            @Override
+            public void onChannelConnect(String remoteAddr, Channel channel) {
+            }
+
+            @Override
+            public void onChannelClose(String remoteAddr, Channel channel) {
+                // the subscription went with the connection
+                registryChangesPushed.clear();
+            }
+
+            @Override
+            public void onChannelException(String remoteAddr, Channel channel) {
+                registryChangesPushed.clear();
+            }
+
+            @Override
+            public void onChannelIdle(String remoteAddr, Channel channel) {
+            }
+        });
         this.pantheonInstanceConfig = DefaultInstanceConfig.getInstance();
         this.remotingClient.registerRPCHook(rpcHook);
         this.remotingClient.registerProcessor(RequestCode.GET_CONSUMER_RUNNING_INFO, this.clientRemotingProcessor, null);
+        this.remotingClient.registerProcessor(RequestCode.NOTIFY_REGISTRY_CHANGED, this.clientRemotingProcessor, null);
     }
 
     public void start() {
@@ -70,6 +127,7 @@ public class ClientAPIImpl {
 
 
     public void shutdown() {
+        this.busyRetryScheduler.shutdownNow();
         if (remotingClient != null) {
             this.remotingClient.shutdown();
         }
@@ -138,6 +196,8 @@ public class ClientAPIImpl {
                 GetServerAddressResponseHeader responseHeader =
                         (GetServerAddressResponseHeader) response.decodeCommandCustomHeader(GetServerAddressResponseHeader.class);
                 List<String> serverAddresses = (List<String>) JSON.parse(responseHeader.getServerAddresses());
+                // replaced as a whole, the servers are looked up while fetched again
+                Map<String, Server> fetched = new HashMap<String, Server>();
                 for (String serverAddress : serverAddresses) {
                     String[] serverAddressSplited = serverAddress.split(":");
 
@@ -147,9 +207,10 @@ public class ClientAPIImpl {
                     Integer port = Integer.valueOf(serverAddressSplited[2]);
                     Server server = new Server(id, ip, port);
 
-                    servers.put(id, server);
+                    fetched.put(id, server);
                 }
-                return servers;
+                servers = fetched;
+                return fetched;
             }
             default:
                 break;
@@ -167,6 +228,57 @@ public class ClientAPIImpl {
         return server;
     }
 
+    /**
+     * @return the server nodes owning slots, every one holds the applications of the services routed to its slots
+     */
+    public List<Server> getSlotOwners() {
+        List<Server> owners = new ArrayList<Server>();
+        Map<String, Server> servers = this.servers;
+        for (String serverNodeId : slotsAllocation.keySet()) {
+            Server server = servers.get(serverNodeId);
+            if (server == null) {
+                logger.warn("no address of server node {} owning slots", serverNodeId);
+                continue;
+            }
+            owners.add(server);
+        }
+        return owners;
+    }
+
+    /**
+     * @return encoded names of the subscribed services by the id of the server node owning their slots, empty if the
+     * full registry is fetched
+     */
+    public Map<String/*server node id*/, String> routeSubscribedServices() {
+        Map<String, String> routed = new HashMap<String, String>();
+        SortedSet<String> serviceNames = GetInNeedAppRequestHeader.decodeServiceNames(subscribedServices);
+        if (serviceNames == null) {
+            return routed;
+        }
+        Map<String, List<String>> namesByServer = new HashMap<String, List<String>>();
+        for (String serviceName : serviceNames) {
+            String serverNodeId = locateServerBySlot(routeSlot(serviceName));
+            if (serverNodeId == null || !servers.containsKey(serverNodeId)) {
+                logger.warn("no server node owns the slot of subscribed service {}", serviceName);
+                continue;
+            }
+            List<String> names = namesByServer.get(serverNodeId);
+            if (names == null) {
+                names = new ArrayList<String>();
+                namesByServer.put(serverNodeId, names);
+            }
+            names.add(serviceName);
+        }
+        for (Map.Entry<String, List<String>> entry : namesByServer.entrySet()) {
+            routed.put(entry.getKey(), GetInNeedAppRequestHeader.encodeServiceNames(entry.getValue()));
+        }
+        return routed;
+    }
+
+    public Server getServer(String serverNodeId) {
+        return servers.get(serverNodeId);
+    }
+
     /**
      * route server to a specific slot
      *
@@ -191,8 +303,9 @@ public class ClientAPIImpl {
      * @return
      */
     private String locateServerBySlot(Integer slot) {
-        for (String serverNodeId : slotsAllocation.keySet()) {
-            List<String> slotsList = slotsAllocation.get(serverNodeId);
+        for (Map.Entry<String, List<String>> allocation : slotsAllocation.entrySet()) {
+            String serverNodeId = allocation.getKey();
+            List<String> slotsList = allocation.getValue();
 
             for (String slots : slotsList) {
                 String[] slotsSpited = slots.split(",");
@@ -221,16 +334,36 @@ public class ClientAPIImpl {
         return null;
     }
 
-    public boolean sendHeartBeatToServer(final Server server, String appName, String id, final Long timoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
-        HeartBeat heartBeat = new HeartBeat();
-        heartBeat.setServiceName(appName);
-        heartBeat.setInstanceId(id);
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_HEART_BEAT, null);
-        request.setBody(heartBeat.encode());
-        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), request, timoutMills);
+    /**
+     * send a fixed layout {@link LeaseHeartBeat}, the server renews by the lease handle and falls back to the names
+     * when the handle is stale, in which case the lease handle is updated with the one sent back
+     */
+    public boolean sendHeartBeatToServer(final Server server, String appName, String id, final AtomicLong leaseHandle, final Long timoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException, RemotingCommandException {
+        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), heartBeatRequest(appName, id, leaseHandle), timoutMills);
         assert response != null;
+        return processHeartBeatResponse(response, leaseHandle);
+    }
+
+    /**
+     * {@link #sendHeartBeatToServer} without waiting for the response
+     */
+    public CompletableFuture<Boolean> sendHeartBeatToServerAsync(final Server server, String appName, String id, final AtomicLong leaseHandle, final long timoutMills) {
+        return invokeAsync(server, () -> heartBeatRequest(appName, id, leaseHandle), timoutMills, response -> processHeartBeatResponse(response, leaseHandle));
+    }
+
+    private RemotingCommand heartBeatRequest(String appName, String id, AtomicLong leaseHandle) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_HEART_BEAT, null);
+        request.setBody(LeaseHeartBeat.encode(leaseHandle.get(), appName, id));
+        return request;
+    }
+
+    private boolean processHeartBeatResponse(RemotingCommand response, AtomicLong leaseHandle) throws RemotingCommandException {
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
+                Long newLeaseHandle = getLeaseHandle(response);
+                if (newLeaseHandle != null) {
+                    leaseHandle.set(newLeaseHandle);
+                }
                 logger.info("heartbeat success!!!");
                 return true;
             }
@@ -244,16 +377,81 @@ public class ClientAPIImpl {
     }
 
 
-    public Applications getApplications(Server server, long timeoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException, IOException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_APP, null);
-        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), request, timeoutMills);
+    /**
+     * fetch the full registry, or the applications of the subscribed services only if there are some, conditionally
+     * if the applications the registry versions belong to are given
+     *
+     * @param registryVersions  set to the registry versions the applications are up to date with
+     * @param localApplications applications held for the registry versions, returned as they are if the server
+     *                          answers they are not modified, null to always get the full registry
+     */
+    public Applications getApplications(Server server, long timeoutMills, AtomicReference<String> registryVersions,
+                                        Applications localApplications) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException, IOException, RemotingCommandException {
+        RemotingCommand request = applicationsRequest(registryVersions, localApplications, subscribedServices);
+        RemotingCommand response = this.remotingClient.invokeSyncRetainBody(server.getRemoteSocketAddress(), request, timeoutMills);
 
         assert response != null;
+        try {
+            return processApplicationsResponse(server, response, registryVersions, localApplications);
+        } finally {
+            response.releaseBodyBuffer();
+        }
+    }
+
+    /**
+     * {@link #getApplications} without waiting for the response, the registry is decoded in the callback thread
+     */
+    public CompletableFuture<Applications> getApplicationsAsync(Server server, long timeoutMills, final AtomicReference<String> registryVersions,
+                                                                final Applications localApplications) {
+        return getApplicationsAsync(server, timeoutMills, registryVersions, localApplications, subscribedServices);
+    }
+
+    /**
+     * {@link #getApplicationsAsync(Server, long, AtomicReference, Applications)} of the given services only
+     *
+     * @param serviceNames encoded names of the services, null for the full registry of the server
+     */
+    public CompletableFuture<Applications> getApplicationsAsync(final Server server, long timeoutMills, final AtomicReference<String> registryVersions,
+                                                                final Applications localApplications, final String serviceNames) {
+        return invokeAsync(server, () -> applicationsRequest(registryVersions, localApplications, serviceNames), timeoutMills,
+                response -> processApplicationsResponse(server, response, registryVersions, localApplications));
+    }
+
+    private RemotingCommand applicationsRequest(AtomicReference<String> registryVersions, Applications localApplications,
+                                                String serviceNames) {
+        if (serviceNames != null) {
+            GetInNeedAppRequestHeader requestHeader = new GetInNeedAppRequestHeader();
+            requestHeader.setServiceNames(serviceNames);
+            requestHeader.setAcceptCompression(instanceConfig.getAcceptedCompressionCodecs());
+            if (localApplications != null) {
+                requestHeader.setRegistryVersions(registryVersions.get());
+            }
+            return RemotingCommand.createRequestCommand(RequestCode.GET_IN_NEED_APP, requestHeader);
+        }
+        GetAllAppRequestHeader requestHeader = new GetAllAppRequestHeader();
+        requestHeader.setAcceptCompression(instanceConfig.getAcceptedCompressionCodecs());
+        requestHeader.setSubscribeChanges(instanceConfig.shouldSubscribeRegistryChanges() ? Boolean.TRUE : null);
+        if (localApplications != null) {
+            requestHeader.setRegistryVersions(registryVersions.get());
+        }
+        return RemotingCommand.createRequestCommand(RequestCode.GET_ALL_APP, requestHeader);
+    }
+
+    private Applications processApplicationsResponse(Server server, RemotingCommand response, AtomicReference<String> registryVersions,
+                                                     Applications localApplications) throws IOException, RemotingCommandException {
+        noteChangesPushed(server, response);
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
-                String string = unzipBytesToStr(response.getBody());
-                logger.info("receive all apps info :{} ", string);
-                return JSONObject.parseObject(string, Applications.class);
+                RegistryVersionsResponseHeader responseHeader =
+                        (RegistryVersionsResponseHeader) response.decodeCommandCustomHeader(RegistryVersionsResponseHeader.class);
+                registryVersions.set(responseHeader.getRegistryVersions());
+                byte[] body = decompress(responseHeader, response);
+                logger.info("receive all apps info, {} bytes", body.length);
+                return Applications.decode(body, Applications.class);
+            }
+            case ResponseCode.NOT_MODIFIED: {
+                logger.debug("all apps info not modified since {}", registryVersions.get());
+                return localApplications;
             }
             default:
                 break;
@@ -261,41 +459,140 @@ public class ClientAPIImpl {
         return null;
     }
 
+    /**
+     * every fetch response says whether the server pushes the registry changes to the connection
+     */
+    private void noteChangesPushed(Server server, RemotingCommand response) throws RemotingCommandException {
+        if (response.getCode() == ResponseCode.SUCCESS || response.getCode() == ResponseCode.NOT_MODIFIED) {
+            RegistryVersionsResponseHeader responseHeader =
+                    (RegistryVersionsResponseHeader) response.decodeCommandCustomHeader(RegistryVersionsResponseHeader.class);
+            registryChangesPushed.put(server.getRemoteSocketAddress(), Boolean.TRUE.equals(responseHeader.getChangesPushed()));
+        }
+    }
 
-    public String unzipBytesToStr(byte[] inputBuf) throws IOException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(inputBuf);
-        // Open the compressed stream
-        GZIPInputStream gin = new GZIPInputStream(bis);
+    /**
+     * @return whether every server node fetched from pushes the registry changes
+     */
+    public boolean isRegistryChangesPushed() {
+        return !registryChangesPushed.isEmpty() && !registryChangesPushed.containsValue(Boolean.FALSE);
+    }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    /**
+     * @return encoded names of the services the registry is fetched for, null if the full registry is fetched
+     */
+    public String getSubscribedServices() {
+        return subscribedServices;
+    }
 
-        // Transfer bytes from the compressed stream to the output stream
-        byte[] buf = new byte[inputBuf.length];
-        int len;
-        while ((len = gin.read(buf)) > 0) {
-            out.write(buf, 0, len);
+    /**
+     * decompress the body straight from the received frame if it was decoded without copying
+     *
+     * @return json or compact bytes, depending on the serialize type of the request
+     */
+    private byte[] decompress(RegistryVersionsResponseHeader responseHeader, RemotingCommand response) throws IOException {
+        // servers that do not negotiate a codec always gzip
+        String name = responseHeader.getCompression() == null ? GzipCompressionCodec.NAME : responseHeader.getCompression();
+        CompressionCodec codec = CompressionCodecs.get(name);
+        if (codec == null) {
+            response.releaseBodyBuffer();
+            throw new IOException("unknown compression codec " + name + " of the response");
         }
+        ByteBuf bodyBuffer = response.getBodyBuffer();
+        if (bodyBuffer == null) {
+            return CompressionCodecs.decompress(codec, response.getBody());
+        }
+        try {
+            return CompressionCodecs.decompress(codec, bodyBuffer);
+        } finally {
+            response.releaseBodyBuffer();
+        }
+    }
+
+    /**
+     * fetch the changes after the registry versions seen last time, which are then moved forward
+     *
+     * @return null if the versions are too old for a delta and a full fetch is required
+     */
+    public Applications getDelta(Server server, long timeoutMills, AtomicReference<String> registryVersions) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException, IOException, RemotingCommandException {
+        RemotingCommand response = this.remotingClient.invokeSyncRetainBody(server.getRemoteSocketAddress(), deltaRequest(registryVersions), timeoutMills);
 
-        // Close the file and stream
-        gin.close();
-        out.close();
+        assert response != null;
+        try {
+            return processDeltaResponse(server, response, registryVersions);
+        } finally {
+            response.releaseBodyBuffer();
+        }
+    }
 
-        byte[] bytes = out.toByteArray();
-        String string = new String(bytes);
-        return string;
+    /**
+     * {@link #getDelta} without waiting for the response
+     */
+    public CompletableFuture<Applications> getDeltaAsync(Server server, long timeoutMills, final AtomicReference<String> registryVersions) {
+        return getDeltaAsync(server, timeoutMills, registryVersions, 0);
     }
 
-    public Applications getDelta(Server server, long timeoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException, IOException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_DELTA_APP, null);
-        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), request, timeoutMills);
+    /**
+     * {@link #getDeltaAsync(Server, long, AtomicReference)} the server holds until the registry changes
+     *
+     * @param holdMillis how long the server may hold it while nothing changed, the timeout has to cover it
+     */
+    public CompletableFuture<Applications> getDeltaAsync(Server server, long timeoutMills, final AtomicReference<String> registryVersions,
+                                                         final long holdMillis) {
+        return getDeltaAsync(server, timeoutMills, registryVersions, holdMillis, subscribedServices);
+    }
 
-        assert response != null;
+    /**
+     * {@link #getDeltaAsync(Server, long, AtomicReference, long)} of the given services only
+     *
+     * @param serviceNames encoded names of the services, null for the changes of the full registry of the server
+     */
+    public CompletableFuture<Applications> getDeltaAsync(final Server server, long timeoutMills, final AtomicReference<String> registryVersions,
+                                                         final long holdMillis, final String serviceNames) {
+        return invokeAsync(server, () -> deltaRequest(registryVersions, holdMillis, serviceNames), timeoutMills,
+                response -> processDeltaResponse(server, response, registryVersions));
+    }
+
+    private RemotingCommand deltaRequest(AtomicReference<String> registryVersions) {
+        return deltaRequest(registryVersions, 0, subscribedServices);
+    }
+
+    private RemotingCommand deltaRequest(AtomicReference<String> registryVersions, long holdMillis, String serviceNames) {
+        GetDeltaAppRequestHeader requestHeader = new GetDeltaAppRequestHeader();
+        requestHeader.setRegistryVersions(registryVersions.get());
+        requestHeader.setHoldMillis(holdMillis > 0 ? holdMillis : null);
+        requestHeader.setAcceptCompression(instanceConfig.getAcceptedCompressionCodecs());
+        requestHeader.setServiceNames(serviceNames);
+        // the changes pushed are the ones of the whole registry
+        requestHeader.setSubscribeChanges(serviceNames == null && instanceConfig.shouldSubscribeRegistryChanges()
+                ? Boolean.TRUE : null);
+        return RemotingCommand.createRequestCommand(RequestCode.GET_DELTA_APP, requestHeader);
+    }
+
+    private Applications processDeltaResponse(Server server, RemotingCommand response, AtomicReference<String> registryVersions) throws IOException, RemotingCommandException {
+        noteChangesPushed(server, response);
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
-                String string = unzipBytesToStr(response.getBody());
-                logger.info("receive delta apps info :{} ", string);
-
-                return JSONObject.parseObject(string, Applications.class);
+                RegistryVersionsResponseHeader responseHeader =
+                        (RegistryVersionsResponseHeader) response.decodeCommandCustomHeader(RegistryVersionsResponseHeader.class);
+                if (Boolean.TRUE.equals(responseHeader.getFullFetchRequired())) {
+                    logger.info("registry versions {} are too old for a delta", registryVersions.get());
+                    return null;
+                }
+                registryVersions.set(responseHeader.getRegistryVersions());
+                byte[] body = decompress(responseHeader, response);
+                logger.info("receive delta apps info, {} bytes", body.length);
+                return Applications.decode(body, Applications.class);
+            }
+            case ResponseCode.NOT_MODIFIED: {
+                RegistryVersionsResponseHeader responseHeader =
+                        (RegistryVersionsResponseHeader) response.decodeCommandCustomHeader(RegistryVersionsResponseHeader.class);
+                if (responseHeader.getRegistryVersions() != null) {
+                    // moved forward over the changes of the services not subscribed to
+                    registryVersions.set(responseHeader.getRegistryVersions());
+                }
+                Applications emptyDelta = new Applications();
+                emptyDelta.setAppsHashCode(responseHeader.getAppsHashCode());
+                return emptyDelta;
             }
             default:
                 break;
@@ -303,36 +600,133 @@ public class ClientAPIImpl {
         return null;
     }
 
-    public boolean register(Server server, InstanceInfo instanceInfo, long timoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_REGISTRY, null);
-        request.setBody(instanceInfo.encode());
-        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), request, timoutMills);
+    /**
+     * @return lease handle to send heartbeats with, {@link LeaseHeartBeat#NO_LEASE_HANDLE} if the server gave none,
+     * null if the registration failed
+     */
+    public Long register(Server server, InstanceInfo instanceInfo, long timoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException, RemotingCommandException {
+        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), registerRequest(instanceInfo), timoutMills);
         assert response != null;
+        return processRegisterResponse(response);
+    }
+
+    /**
+     * {@link #register} without waiting for the response
+     */
+    public CompletableFuture<Long> registerAsync(Server server, InstanceInfo instanceInfo, long timoutMills) {
+        return invokeAsync(server, () -> registerRequest(instanceInfo), timoutMills, this::processRegisterResponse);
+    }
+
+    private RemotingCommand registerRequest(InstanceInfo instanceInfo) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_REGISTRY, null);
+        request.setBody(instanceInfo.encode(request.getSerializeTypeCurrentRPC()));
+        return request;
+    }
+
+    private Long processRegisterResponse(RemotingCommand response) throws RemotingCommandException {
         switch (response.getCode()) {
             case ResponseCode.SUCCESS: {
-                return true;
+                Long leaseHandle = getLeaseHandle(response);
+                return leaseHandle == null ? LeaseHeartBeat.NO_LEASE_HANDLE : leaseHandle;
             }
             default:
                 break;
         }
-        return false;
+        return null;
+    }
+
+    private Long getLeaseHandle(RemotingCommand response) throws RemotingCommandException {
+        if (response.getExtFields() == null) {
+            return null;
+        }
+        LeaseHandleResponseHeader responseHeader =
+                (LeaseHandleResponseHeader) response.decodeCommandCustomHeader(LeaseHandleResponseHeader.class);
+        return responseHeader.getLeaseHandle();
     }
 
     public boolean unRegister(Server server, String appName, String instanceId, long timoutMills) throws RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
-        HeartBeat heartBeat = new HeartBeat();
-        heartBeat.setInstanceId(instanceId);
-        heartBeat.setServiceName(appName);
-        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_UNREGISTER, null);
-        request.setBody(heartBeat.encode());
-        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), request, timoutMills);
+        RemotingCommand response = this.remotingClient.invokeSync(server.getRemoteSocketAddress(), unRegisterRequest(appName, instanceId), timoutMills);
         assert response != null;
-        switch (response.getCode()) {
-            case ResponseCode.SUCCESS: {
-                return true;
+        return response.getCode() == ResponseCode.SUCCESS;
+    }
+
+    /**
+     * {@link #unRegister} without waiting for the response
+     */
+    public CompletableFuture<Boolean> unRegisterAsync(Server server, String appName, String instanceId, long timoutMills) {
+        return invokeAsync(server, () -> unRegisterRequest(appName, instanceId), timoutMills,
+                response -> response.getCode() == ResponseCode.SUCCESS);
+    }
+
+    private RemotingCommand unRegisterRequest(String appName, String instanceId) {
+        ServiceUnregister serviceUnregister = new ServiceUnregister();
+        serviceUnregister.setInstanceId(instanceId);
+        serviceUnregister.setServiceName(appName);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SERVICE_UNREGISTER, null);
+        request.setBody(serviceUnregister.encode(request.getSerializeTypeCurrentRPC()));
+        return request;
+    }
+
+    /**
+     * send the request and process the response in the callback thread, no thread waits for the network meanwhile.
+     * The body of the response is released once processed, whether it was read or not.
+     * <p>
+     * A request the server answers busy is built and sent again after the delay the server asks for, or a backoff
+     * if it asks for none, both with jitter so that the clients it shed do not all come back at once. The last busy
+     * response is processed like any other.
+     */
+    private <T> CompletableFuture<T> invokeAsync(Server server, Supplier<RemotingCommand> requestFactory, long timeoutMills,
+                                                 final ResponseProcessor<T> processor) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        invokeAsync(server, requestFactory, timeoutMills, processor, 0, result);
+        return result;
+    }
+
+    private <T> void invokeAsync(final Server server, final Supplier<RemotingCommand> requestFactory, final long timeoutMills,
+                                 final ResponseProcessor<T> processor, final int attempt, final CompletableFuture<T> result) {
+        this.remotingClient.invokeAsync(server.getRemoteSocketAddress(), requestFactory.get(), timeoutMills).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                if (response.getCode() == ResponseCode.SYSTEM_BUSY && attempt < MAX_BUSY_RETRIES) {
+                    long delay = busyRetryDelay(response, attempt);
+                    logger.warn("server {} busy, {}, retry in {}ms", new Object[]{server.getRemoteSocketAddress(), response.getRemark(), delay});
+                    busyRetryScheduler.schedule(() -> invokeAsync(server, requestFactory, timeoutMills, processor, attempt + 1, result),
+                            delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                result.complete(processor.process(response));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                response.releaseBodyBuffer();
+            }
+        });
+    }
+
+    /**
+     * between the retry-after hint and twice of it, full jitter over an exponential backoff without a hint
+     */
+    private static long busyRetryDelay(RemotingCommand response, int attempt) {
+        Long retryAfterMillis = null;
+        if (response.getExtFields() != null) {
+            try {
+                retryAfterMillis = ((SystemBusyResponseHeader) response.decodeCommandCustomHeader(SystemBusyResponseHeader.class))
+                        .getRetryAfterMillis();
+            } catch (RemotingCommandException e) {
+                logger.warn("decode busy response header failed", e);
             }
-            default:
-                break;
         }
-        return false;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (retryAfterMillis != null && retryAfterMillis > 0) {
+            return retryAfterMillis + random.nextLong(retryAfterMillis + 1);
+        }
+        return random.nextLong(Math.min(BUSY_RETRY_CAP_MILLIS, BUSY_RETRY_BASE_MILLIS << attempt) + 1);
+    }
+
+    private interface ResponseProcessor<T> {
+        T process(RemotingCommand response) throws Exception;
     }
 }
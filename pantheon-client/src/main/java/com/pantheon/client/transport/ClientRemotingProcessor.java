@@ -1,8 +1,10 @@
 package com.pantheon.client.transport;
 
+import com.pantheon.client.appinfo.Applications;
 import com.pantheon.common.protocol.RequestCode;
 import com.pantheon.common.protocol.ResponseCode;
 import com.pantheon.common.protocol.header.GetConsumerRunningInfoRequestHeader;
+import com.pantheon.common.protocol.header.RegistryChangedRequestHeader;
 import com.pantheon.remoting.exception.RemotingCommandException;
 import com.pantheon.remoting.netty.AsyncNettyRequestProcessor;
 import com.pantheon.remoting.netty.NettyRequestProcessor;
@@ -18,12 +20,26 @@ import org.slf4j.LoggerFactory;
  */
 public class ClientRemotingProcessor extends AsyncNettyRequestProcessor implements NettyRequestProcessor {
     private static final Logger logger = LoggerFactory.getLogger(ClientRemotingProcessor.class);
+    private final RegistryChangeReceiver registryChangeReceiver;
+
+    public ClientRemotingProcessor() {
+        this(null);
+    }
+
+    /**
+     * @param registryChangeReceiver receiver of the registry changes the server pushes, null to ignore them
+     */
+    public ClientRemotingProcessor(RegistryChangeReceiver registryChangeReceiver) {
+        this.registryChangeReceiver = registryChangeReceiver;
+    }
 
     @Override
     public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) throws Exception {
         switch (request.getCode()) {
             case RequestCode.GET_CONSUMER_RUNNING_INFO:
                 return this.getConsumerRunningInfo(ctx, request);
+            case RequestCode.NOTIFY_REGISTRY_CHANGED:
+                return this.registryChanged(ctx, request);
             default:
                 break;
         }
@@ -46,6 +62,28 @@ public class ClientRemotingProcessor extends AsyncNettyRequestProcessor implemen
         return response;
     }
 
+    /**
+     * oneway, nothing is sent back. A delta that cannot be decoded is handed on as missing, so that it is fetched
+     */
+    private RemotingCommand registryChanged(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
+        final RegistryChangedRequestHeader requestHeader =
+                (RegistryChangedRequestHeader) request.decodeCommandCustomHeader(RegistryChangedRequestHeader.class);
+        if (registryChangeReceiver == null) {
+            return null;
+        }
+        Applications delta = null;
+        byte[] body = request.getBody();
+        if (body != null) {
+            try {
+                delta = Applications.decode(body, Applications.class);
+            } catch (RuntimeException e) {
+                logger.warn("decode pushed changes of shard {} failed", requestHeader.getShardId(), e);
+            }
+        }
+        registryChangeReceiver.onRegistryChanged(requestHeader, delta);
+        return null;
+    }
+
     @Override
     public boolean rejectRequest() {
         return false;
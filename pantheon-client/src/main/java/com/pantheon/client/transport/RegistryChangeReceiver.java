@@ -0,0 +1,17 @@
+package com.pantheon.client.transport;
+
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.common.protocol.header.RegistryChangedRequestHeader;
+
+/**
+ * @author Anthony
+ * @create 2021/12/31
+ * @desc The receiver of the registry changes the server pushes once the client subscribed to them.
+ */
+public interface RegistryChangeReceiver {
+
+    /**
+     * @param delta changes of the shard between the versions of the header, null if the server no longer keeps them
+     */
+    void onRegistryChanged(RegistryChangedRequestHeader header, Applications delta);
+}
@@ -0,0 +1,127 @@
+package com.pantheon.client.appinfo;
+
+import com.alibaba.fastjson.JSON;
+import com.pantheon.remoting.protocol.RemotingSerializable;
+import com.pantheon.remoting.protocol.SerializeType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class AppInfoCompactCodecsTest {
+
+    private static Applications registry() {
+        Applications apps = new Applications();
+        Application orders = new Application("orders");
+        int port = 8080;
+        for (InstanceInfo.InstanceStatus status : InstanceInfo.InstanceStatus.values()) {
+            LeaseInfo leaseInfo = LeaseInfo.Builder.newBuilder().setRenewalIntervalInSecs(30).setDurationInSecs(90)
+                    .setRegistrationTimestamp(1640995200000L).setRenewalTimestamp(1640995230000L)
+                    .setServiceUpTimestamp(1640995201000L).build();
+            orders.addInstance(InstanceInfo.Builder.newBuilder().setAppName("orders").setAppGroupName("shop")
+                    .setInstanceId("orders-" + status.name()).setHostName("orders.local").setIPAddr("10.0.0." + port % 256)
+                    .setPort(port++).setSlotNum(port % 16384).setStatus(status)
+                    .setOverriddenStatus(InstanceInfo.InstanceStatus.UNKNOWN).setActionType(InstanceInfo.ActionType.ADDED)
+                    .setLastUpdatedTimestamp(1640995200000L + port).setLastDirtyTimestamp(1640995100000L)
+                    .setLeaseInfo(leaseInfo).add("zone", "eu-1").add("version", "1.2." + port).build());
+        }
+        apps.addApplication(orders);
+
+        // null group name, slot, lease, dirty time and no metadata
+        InstanceInfo bare = InstanceInfo.Builder.newBuilder().setAppName("billing").setInstanceId("billing-1")
+                .setHostName("billing.local").setIPAddr("10.0.1.1").setPort(9090).build();
+        bare.setLastDirtyTimestamp(null);
+        Application billing = new Application("billing");
+        billing.addInstance(bare);
+        apps.addApplication(billing);
+        apps.setAppsHashCode(apps.getReconcileHashCode());
+        return apps;
+    }
+
+    @Test
+    public void aRegistryDecodesToTheSameAsItsJson() {
+        Applications apps = registry();
+        byte[] compact = apps.encode(SerializeType.PANTHEON);
+        byte[] json = apps.encode(SerializeType.JSON);
+        assertTrue(RemotingSerializable.isCompact(compact));
+        assertFalse(RemotingSerializable.isCompact(json));
+
+        Applications fromCompact = RemotingSerializable.decode(compact, Applications.class);
+        assertEquals(JSON.toJSONString(apps), JSON.toJSONString(fromCompact));
+        assertEquals(apps.getReconcileHashCode(), fromCompact.getReconcileHashCode());
+
+        // the json decode drops the status, slot and lease and fills in a missing dirty time, compare the rest
+        Applications fromJson = RemotingSerializable.decode(json, Applications.class);
+        assertEquals(fromJson.getAppsHashCode(), fromCompact.getAppsHashCode());
+        assertEquals(fromJson.size(), fromCompact.size());
+        for (Application app : fromJson.getRegisteredApplications()) {
+            Application compactApp = fromCompact.getRegisteredApplications(app.getName());
+            for (InstanceInfo info : app.getInstancesAsIsFromPantheon()) {
+                InstanceInfo compactInfo = compactApp.getByInstanceId(info.getId());
+                assertEquals(info.getAppName(), compactInfo.getAppName());
+                assertEquals(info.getAppGroupName(), compactInfo.getAppGroupName());
+                assertEquals(info.getHostName(), compactInfo.getHostName());
+                assertEquals(info.getIPAddr(), compactInfo.getIPAddr());
+                assertEquals(info.getPort(), compactInfo.getPort());
+                assertEquals(info.getSecurePort(), compactInfo.getSecurePort());
+                assertEquals(info.getActionType(), compactInfo.getActionType());
+                assertEquals(info.getOverriddenStatus(), compactInfo.getOverriddenStatus());
+                assertEquals(info.getLastUpdatedTimestamp(), compactInfo.getLastUpdatedTimestamp());
+                assertEquals(info.getMetadata(), compactInfo.getMetadata());
+            }
+        }
+    }
+
+    @Test
+    public void nullFieldsAndMetadataSurviveTheRoundTrip() {
+        Applications decoded = RemotingSerializable.decode(registry().encode(SerializeType.PANTHEON), Applications.class);
+        InstanceInfo bare = decoded.getRegisteredApplications("billing").getByInstanceId("billing-1");
+        assertNull(bare.getAppGroupName());
+        assertNull(bare.getSlotNum());
+        assertNull(bare.getLeaseInfo());
+        assertNull(bare.getLastDirtyTimestamp());
+        assertTrue(bare.getMetadata().isEmpty());
+
+        Application orders = decoded.getRegisteredApplications("orders");
+        for (InstanceInfo.InstanceStatus status : InstanceInfo.InstanceStatus.values()) {
+            InstanceInfo info = orders.getByInstanceId("orders-" + status.name());
+            assertEquals(status, info.getStatus());
+            assertEquals("eu-1", info.getMetadata().get("zone"));
+            assertEquals(90, info.getLeaseInfo().getDurationInSecs());
+        }
+    }
+
+    @Test
+    public void theBodyStartsWithTheMagicAndVersion() {
+        byte[] compact = registry().encode(SerializeType.PANTHEON);
+        assertEquals(RemotingSerializable.COMPACT_MAGIC, compact[0]);
+        assertEquals(RemotingSerializable.COMPACT_VERSION, compact[1]);
+
+        compact[1] = RemotingSerializable.COMPACT_VERSION + 1;
+        try {
+            RemotingSerializable.decode(compact, Applications.class);
+            fail("a newer version is not decoded");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void aTruncatedBodyIsRejected() {
+        byte[] compact = registry().encode(SerializeType.PANTHEON);
+        byte[] truncated = new byte[compact.length / 2];
+        System.arraycopy(compact, 0, truncated, 0, truncated.length);
+        try {
+            RemotingSerializable.decode(truncated, Applications.class);
+            fail("a truncated body is not decoded");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
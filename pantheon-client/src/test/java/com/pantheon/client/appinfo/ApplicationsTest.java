@@ -0,0 +1,97 @@
+package com.pantheon.client.appinfo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class ApplicationsTest {
+
+    private static InstanceInfo instance(String appName, String id, InstanceInfo.InstanceStatus status) {
+        return InstanceInfo.Builder.newBuilder().setAppName(appName).setInstanceId(id).setHostName("host")
+                .setIPAddr("10.0.0.1").setPort(8080).setStatus(status).build();
+    }
+
+    private static Application application(String appName, int up) {
+        Application app = new Application(appName);
+        for (int i = 0; i < up; i++) {
+            app.addInstance(instance(appName, appName + i, InstanceInfo.InstanceStatus.UP));
+        }
+        return app;
+    }
+
+    /**
+     * hash code of a list holding copies of the applications, as a client decoding them computes it
+     */
+    private static String hashOf(Application... apps) {
+        Applications expected = new Applications();
+        for (Application app : apps) {
+            Application copy = new Application(app.getName());
+            for (InstanceInfo instanceInfo : app.getInstancesAsIsFromPantheon()) {
+                copy.addInstance(instanceInfo);
+            }
+            expected.addApplication(copy);
+        }
+        return expected.getReconcileHashCode();
+    }
+
+    @Test
+    public void theHashCodeCountsTheInstancesByStatus() {
+        Applications apps = new Applications();
+        Application a = application("a", 2);
+        apps.addApplication(a);
+        Application b = application("b", 1);
+        b.addInstance(instance("b", "b-down", InstanceInfo.InstanceStatus.DOWN));
+        apps.addApplication(b);
+        assertTrue(apps.getReconcileHashCode().startsWith("DOWN_1_UP_3_"));
+        assertEquals(hashOf(a, b), apps.getReconcileHashCode());
+        apps.removeApplication("B");
+        assertEquals(hashOf(a), apps.getReconcileHashCode());
+    }
+
+    @Test
+    public void aSnapshotIsCountedWithoutBeingTakenFromItsOwner() {
+        Applications owner = new Applications();
+        Application app = application("a", 2);
+        owner.addApplication(app);
+
+        Applications merged = new Applications();
+        merged.addApplicationSnapshot(app);
+        Applications other = new Applications();
+        other.addApplicationSnapshot(app);
+        String counted = hashOf(app);
+        assertEquals(counted, merged.getReconcileHashCode());
+        assertEquals(counted, other.getReconcileHashCode());
+
+        // the owner still follows the application, the snapshot lists keep what they counted
+        app.addInstance(instance("a", "a-late", InstanceInfo.InstanceStatus.UP));
+        assertEquals(hashOf(app), owner.getReconcileHashCode());
+        assertEquals(counted, merged.getReconcileHashCode());
+    }
+
+    @Test
+    public void aReplacedOrRemovedSnapshotIsTakenOutOfTheCount() {
+        Application snapshot = application("a", 2);
+        Applications apps = new Applications();
+        apps.addApplicationSnapshot(snapshot);
+        apps.addApplicationSnapshot(snapshot);
+        assertEquals(hashOf(snapshot), apps.getReconcileHashCode());
+
+        Application live = application("a", 1);
+        apps.addApplication(live);
+        assertEquals(hashOf(live), apps.getReconcileHashCode());
+
+        Application bigger = application("a", 3);
+        apps.addApplicationSnapshot(bigger);
+        assertEquals(hashOf(bigger), apps.getReconcileHashCode());
+        apps.removeApplication("a");
+        assertEquals(new Applications().getReconcileHashCode(), apps.getReconcileHashCode());
+        assertNull(apps.getRegisteredApplications("a"));
+    }
+}
@@ -7,20 +7,27 @@ public class ThreadFactoryImpl implements ThreadFactory {
     private final AtomicLong threadIndex = new AtomicLong(0);
     private final String threadNamePrefix;
     private final boolean daemon;
+    private final int priority;
 
     public ThreadFactoryImpl(final String threadNamePrefix) {
         this(threadNamePrefix, false);
     }
 
     public ThreadFactoryImpl(final String threadNamePrefix, boolean daemon) {
+        this(threadNamePrefix, daemon, Thread.NORM_PRIORITY);
+    }
+
+    public ThreadFactoryImpl(final String threadNamePrefix, boolean daemon, int priority) {
         this.threadNamePrefix = threadNamePrefix;
         this.daemon = daemon;
+        this.priority = Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority));
     }
 
     @Override
     public Thread newThread(Runnable r) {
         Thread thread = new Thread(r, threadNamePrefix + this.threadIndex.incrementAndGet());
         thread.setDaemon(daemon);
+        thread.setPriority(priority);
         return thread;
     }
 }
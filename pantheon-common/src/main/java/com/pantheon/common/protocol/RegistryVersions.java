@@ -0,0 +1,104 @@
+package com.pantheon.common.protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Anthony
+ * @create 2021/12/23
+ * @desc versions of the registry shards of a server a client has seen, sent back on the next delta fetch.
+ * <p>
+ * The incarnation tells registries of different servers or server restarts apart, versions of another
+ * incarnation mean nothing to the server. Encoded as {@code incarnation|shardId:version,shardId:version}.
+ */
+public class RegistryVersions {
+    private final long incarnation;
+    private final Map<Integer/*shardId*/, Long/*version*/> shardVersions;
+
+    public RegistryVersions(long incarnation) {
+        this(incarnation, new HashMap<Integer, Long>());
+    }
+
+    private RegistryVersions(long incarnation, Map<Integer, Long> shardVersions) {
+        this.incarnation = incarnation;
+        this.shardVersions = shardVersions;
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public void putVersion(int shardId, long version) {
+        shardVersions.put(shardId, version);
+    }
+
+    /**
+     * @return version of the shard, 0 if the client has not seen it, every change of the shard is missing then
+     */
+    public long getVersion(int shardId) {
+        Long version = shardVersions.get(shardId);
+        return version == null ? 0 : version;
+    }
+
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(incarnation).append('|');
+        boolean first = true;
+        for (Map.Entry<Integer, Long> entry : shardVersions.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append(':').append(entry.getValue());
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return null if there is nothing to decode or the value is malformed
+     */
+    public static RegistryVersions decode(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            int separator = value.indexOf('|');
+            RegistryVersions versions = new RegistryVersions(Long.parseLong(value.substring(0, separator)));
+            String shards = value.substring(separator + 1);
+            if (!shards.isEmpty()) {
+                for (String shard : shards.split(",")) {
+                    int colon = shard.indexOf(':');
+                    versions.putVersion(Integer.parseInt(shard.substring(0, colon)), Long.parseLong(shard.substring(colon + 1)));
+                }
+            }
+            return versions;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * equal versions mean the registry has not changed in between
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RegistryVersions)) {
+            return false;
+        }
+        RegistryVersions other = (RegistryVersions) o;
+        return incarnation == other.incarnation && shardVersions.equals(other.shardVersions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (incarnation ^ (incarnation >>> 32)) + shardVersions.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -15,5 +15,12 @@ public class RequestCode {
     public static final int SERVICE_UNREGISTER = 16;
     public static final int GET_ALL_APP = 17;
     public static final int GET_DELTA_APP = 18;
+    /**
+     * only the applications of the services a client depends on
+     */
     public static final int GET_IN_NEED_APP = 19;
+    /**
+     * oneway from server to client, the registry changed
+     */
+    public static final int NOTIFY_REGISTRY_CHANGED = 20;
 }
@@ -9,4 +9,6 @@ import com.pantheon.remoting.protocol.RemotingSysResponseCode;
  **/
 public class ResponseCode extends RemotingSysResponseCode {
     public static final int CONSUME_MSG_TIMEOUT = 100;
+    // the client holds the requested data already, sent without body
+    public static final int NOT_MODIFIED = 101;
 }
@@ -0,0 +1,52 @@
+package com.pantheon.common.protocol.header;
+
+
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/25
+ * @desc encoded {@link RegistryVersions} of the registry the client holds, the server answers not modified if they
+ * are still current. Without it the full registry is always sent.
+ */
+public class GetAllAppRequestHeader implements CommandCustomHeader {
+    private String registryVersions;
+    /**
+     * comma separated compression codecs the client accepts, gzip is used without it
+     */
+    private String acceptCompression;
+    /**
+     * the server pushes the changes of the registry to the connection once it is fetched with it
+     */
+    private Boolean subscribeChanges;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getRegistryVersions() {
+        return registryVersions;
+    }
+
+    public void setRegistryVersions(String registryVersions) {
+        this.registryVersions = registryVersions;
+    }
+
+    public String getAcceptCompression() {
+        return acceptCompression;
+    }
+
+    public void setAcceptCompression(String acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    public Boolean getSubscribeChanges() {
+        return subscribeChanges;
+    }
+
+    public void setSubscribeChanges(Boolean subscribeChanges) {
+        this.subscribeChanges = subscribeChanges;
+    }
+}
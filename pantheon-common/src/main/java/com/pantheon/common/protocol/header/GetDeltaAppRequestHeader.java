@@ -0,0 +1,77 @@
+package com.pantheon.common.protocol.header;
+
+
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/23
+ * @desc encoded {@link RegistryVersions} the client has seen, without it the server answers with its delta window
+ */
+public class GetDeltaAppRequestHeader implements CommandCustomHeader {
+    private String registryVersions;
+    /**
+     * comma separated compression codecs the client accepts, gzip is used without it
+     */
+    private String acceptCompression;
+    /**
+     * the server pushes the changes of the registry to the connection once it is fetched with it
+     */
+    private Boolean subscribeChanges;
+    /**
+     * how long the server may hold the request while nothing changed since the registry versions, answered at once
+     * without it
+     */
+    private Long holdMillis;
+    /**
+     * only the changes of these services, comma separated like {@link GetInNeedAppRequestHeader#getServiceNames()},
+     * the changes of the whole registry without it
+     */
+    private String serviceNames;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getRegistryVersions() {
+        return registryVersions;
+    }
+
+    public void setRegistryVersions(String registryVersions) {
+        this.registryVersions = registryVersions;
+    }
+
+    public String getAcceptCompression() {
+        return acceptCompression;
+    }
+
+    public void setAcceptCompression(String acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    public Boolean getSubscribeChanges() {
+        return subscribeChanges;
+    }
+
+    public void setSubscribeChanges(Boolean subscribeChanges) {
+        this.subscribeChanges = subscribeChanges;
+    }
+
+    public Long getHoldMillis() {
+        return holdMillis;
+    }
+
+    public void setHoldMillis(Long holdMillis) {
+        this.holdMillis = holdMillis;
+    }
+
+    public String getServiceNames() {
+        return serviceNames;
+    }
+
+    public void setServiceNames(String serviceNames) {
+        this.serviceNames = serviceNames;
+    }
+}
@@ -0,0 +1,103 @@
+package com.pantheon.common.protocol.header;
+
+
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * @author Anthony
+ * @create 2022/01/01
+ * @desc the services a client depends on, only their applications are sent instead of the full registry. With the
+ * encoded {@link RegistryVersions} of the applications the client holds, the server answers not modified if they
+ * are still current.
+ */
+public class GetInNeedAppRequestHeader implements CommandCustomHeader {
+    private static final String SERVICE_NAME_DELIMITER = ",";
+
+    /**
+     * comma separated names of the services, see {@link #encodeServiceNames(Collection)}
+     */
+    private String serviceNames;
+    private String registryVersions;
+    /**
+     * comma separated compression codecs the client accepts, gzip is used without it
+     */
+    private String acceptCompression;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+        if (decodeServiceNames(serviceNames) == null) {
+            throw new RemotingCommandException("the services to fetch the applications of are missing");
+        }
+    }
+
+    /**
+     * @return the names sorted and without duplicates, so the same services are always the same string, null if
+     * there is no name
+     */
+    public static String encodeServiceNames(Collection<String> serviceNames) {
+        SortedSet<String> names = new TreeSet<String>();
+        for (String serviceName : serviceNames) {
+            if (serviceName != null && !serviceName.trim().isEmpty()) {
+                names.add(serviceName.trim());
+            }
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        StringBuilder encoded = new StringBuilder();
+        for (String name : names) {
+            if (encoded.length() > 0) {
+                encoded.append(SERVICE_NAME_DELIMITER);
+            }
+            encoded.append(name);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @return the names sorted, null if there is none
+     */
+    public static SortedSet<String> decodeServiceNames(String serviceNames) {
+        if (serviceNames == null) {
+            return null;
+        }
+        SortedSet<String> names = new TreeSet<String>();
+        for (String name : serviceNames.split(SERVICE_NAME_DELIMITER)) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names.isEmpty() ? null : Collections.unmodifiableSortedSet(names);
+    }
+
+    public String getServiceNames() {
+        return serviceNames;
+    }
+
+    public void setServiceNames(String serviceNames) {
+        this.serviceNames = serviceNames;
+    }
+
+    public String getRegistryVersions() {
+        return registryVersions;
+    }
+
+    public void setRegistryVersions(String registryVersions) {
+        this.registryVersions = registryVersions;
+    }
+
+    public String getAcceptCompression() {
+        return acceptCompression;
+    }
+
+    public void setAcceptCompression(String acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+}
@@ -0,0 +1,26 @@
+package com.pantheon.common.protocol.header;
+
+
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/22
+ * @desc lease handle given out by the server on registration, or on a heartbeat whose handle was stale
+ */
+public class LeaseHandleResponseHeader implements CommandCustomHeader {
+    private Long leaseHandle;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public Long getLeaseHandle() {
+        return leaseHandle;
+    }
+
+    public void setLeaseHandle(Long leaseHandle) {
+        this.leaseHandle = leaseHandle;
+    }
+}
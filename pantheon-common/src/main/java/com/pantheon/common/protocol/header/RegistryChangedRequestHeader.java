@@ -0,0 +1,74 @@
+package com.pantheon.common.protocol.header;
+
+
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.annotation.CFNotNull;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/31
+ * @desc header of a registry change pushed to a client, the body is the delta of the shard between the two versions,
+ * or absent if the server no longer keeps it. A client whose {@link RegistryVersions} of the shard are at
+ * {@code fromVersion} applies the delta, any other client fetches a delta instead.
+ */
+public class RegistryChangedRequestHeader implements CommandCustomHeader {
+    @CFNotNull
+    private Long incarnation;
+    @CFNotNull
+    private Integer shardId;
+    @CFNotNull
+    private Long fromVersion;
+    @CFNotNull
+    private Long toVersion;
+    /**
+     * reconcile hash code of the whole registry once the delta is applied, read after the delta so it also covers
+     * changes of other shards the client may not have been pushed yet
+     */
+    private String appsHashCode;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public Long getIncarnation() {
+        return incarnation;
+    }
+
+    public void setIncarnation(Long incarnation) {
+        this.incarnation = incarnation;
+    }
+
+    public Integer getShardId() {
+        return shardId;
+    }
+
+    public void setShardId(Integer shardId) {
+        this.shardId = shardId;
+    }
+
+    public Long getFromVersion() {
+        return fromVersion;
+    }
+
+    public void setFromVersion(Long fromVersion) {
+        this.fromVersion = fromVersion;
+    }
+
+    public Long getToVersion() {
+        return toVersion;
+    }
+
+    public void setToVersion(Long toVersion) {
+        this.toVersion = toVersion;
+    }
+
+    public String getAppsHashCode() {
+        return appsHashCode;
+    }
+
+    public void setAppsHashCode(String appsHashCode) {
+        this.appsHashCode = appsHashCode;
+    }
+}
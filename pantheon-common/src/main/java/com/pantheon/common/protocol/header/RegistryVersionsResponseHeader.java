@@ -0,0 +1,71 @@
+package com.pantheon.common.protocol.header;
+
+
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/23
+ * @desc encoded {@link RegistryVersions} the fetched registry data is up to date with, or the signal that the
+ * client is too far behind for a delta and has to do a full fetch. A not modified response carries the apps hash code
+ * instead of a body.
+ */
+public class RegistryVersionsResponseHeader implements CommandCustomHeader {
+    private String registryVersions;
+    private Boolean fullFetchRequired;
+    private String appsHashCode;
+    /**
+     * compression codec of the body, gzip if there is none
+     */
+    private String compression;
+    /**
+     * the server pushes the registry changes to the connection
+     */
+    private Boolean changesPushed;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public String getRegistryVersions() {
+        return registryVersions;
+    }
+
+    public void setRegistryVersions(String registryVersions) {
+        this.registryVersions = registryVersions;
+    }
+
+    public Boolean getFullFetchRequired() {
+        return fullFetchRequired;
+    }
+
+    public void setFullFetchRequired(Boolean fullFetchRequired) {
+        this.fullFetchRequired = fullFetchRequired;
+    }
+
+    public String getAppsHashCode() {
+        return appsHashCode;
+    }
+
+    public void setAppsHashCode(String appsHashCode) {
+        this.appsHashCode = appsHashCode;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public Boolean getChangesPushed() {
+        return changesPushed;
+    }
+
+    public void setChangesPushed(Boolean changesPushed) {
+        this.changesPushed = changesPushed;
+    }
+}
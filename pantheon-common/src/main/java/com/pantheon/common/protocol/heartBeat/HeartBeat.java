@@ -2,8 +2,12 @@
 package com.pantheon.common.protocol.heartBeat;
 
 
+import com.pantheon.remoting.protocol.CompactCodec;
+import com.pantheon.remoting.protocol.CompactReader;
+import com.pantheon.remoting.protocol.CompactWriter;
 import com.pantheon.remoting.protocol.RemotingSerializable;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -11,6 +15,43 @@ import java.util.Set;
  * locate a instance with a appName and instanceId
  */
 public class HeartBeat extends RemotingSerializable {
+    static {
+        registerCompactCodec(HeartBeat.class, new CompactCodec<HeartBeat>() {
+            @Override
+            public void write(HeartBeat heartBeat, CompactWriter out) throws IOException {
+                out.writeSharedString(heartBeat.getServiceName());
+                out.writeString(heartBeat.getInstanceId());
+                Set<SubscriptionData> subscriptionDataSet = heartBeat.getSubscriptionDataSet();
+                out.writeVarInt(subscriptionDataSet == null ? 0 : subscriptionDataSet.size());
+                if (subscriptionDataSet != null) {
+                    for (SubscriptionData subscriptionData : subscriptionDataSet) {
+                        out.writeNullableInt(subscriptionData.getSlotNum());
+                        out.writeSharedString(subscriptionData.getServiceName());
+                        out.writeString(subscriptionData.getInstanceId());
+                        out.writeSharedString(subscriptionData.getClientId());
+                    }
+                }
+            }
+
+            @Override
+            public HeartBeat read(CompactReader in) throws IOException {
+                HeartBeat heartBeat = new HeartBeat();
+                heartBeat.setServiceName(in.readSharedString());
+                heartBeat.setInstanceId(in.readString());
+                int count = in.readCount();
+                for (int i = 0; i < count; i++) {
+                    SubscriptionData subscriptionData = new SubscriptionData();
+                    subscriptionData.setSlotNum(in.readNullableInt());
+                    subscriptionData.setServiceName(in.readSharedString());
+                    subscriptionData.setInstanceId(in.readString());
+                    subscriptionData.setClientId(in.readSharedString());
+                    heartBeat.getSubscriptionDataSet().add(subscriptionData);
+                }
+                return heartBeat;
+            }
+        });
+    }
+
     private String serviceName;
     private String instanceId;
     private Set<SubscriptionData> subscriptionDataSet = new HashSet<SubscriptionData>();
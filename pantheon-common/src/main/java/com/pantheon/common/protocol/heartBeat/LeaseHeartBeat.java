@@ -0,0 +1,68 @@
+package com.pantheon.common.protocol.heartBeat;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * @author Anthony
+ * @create 2021/12/22
+ * @desc fixed layout heartbeat body, read by offset instead of being decoded as json like {@link HeartBeat}.
+ * <pre>
+ * | version(1) | leaseHandle(8) | serviceName length(2) | serviceName | instanceId length(2) | instanceId |
+ * </pre>
+ * The server renews by the lease handle and only reads the names when the handle is stale. A json body starts with
+ * '{' and never with {@link #VERSION}, so both kinds of heartbeat can be told apart.
+ */
+public class LeaseHeartBeat {
+    public static final byte VERSION = 1;
+    public static final long NO_LEASE_HANDLE = -1L;
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+    private static final int HANDLE_OFFSET = 1;
+    private static final int NAMES_OFFSET = HANDLE_OFFSET + 8;
+
+    private LeaseHeartBeat() {
+    }
+
+    public static byte[] encode(long leaseHandle, String serviceName, String instanceId) {
+        byte[] serviceNameBytes = serviceName.getBytes(CHARSET_UTF8);
+        byte[] instanceIdBytes = instanceId.getBytes(CHARSET_UTF8);
+        ByteBuffer buffer = ByteBuffer.allocate(NAMES_OFFSET + 2 + serviceNameBytes.length + 2 + instanceIdBytes.length);
+        buffer.put(VERSION);
+        buffer.putLong(leaseHandle);
+        buffer.putShort((short) serviceNameBytes.length);
+        buffer.put(serviceNameBytes);
+        buffer.putShort((short) instanceIdBytes.length);
+        buffer.put(instanceIdBytes);
+        return buffer.array();
+    }
+
+    public static boolean isLeaseHeartBeat(byte[] body) {
+        return body != null && body.length >= NAMES_OFFSET && body[0] == VERSION;
+    }
+
+    public static long getLeaseHandle(byte[] body) {
+        long handle = 0;
+        for (int i = HANDLE_OFFSET; i < NAMES_OFFSET; i++) {
+            handle = (handle << 8) | (body[i] & 0xFF);
+        }
+        return handle;
+    }
+
+    public static String getServiceName(byte[] body) {
+        return readString(body, NAMES_OFFSET);
+    }
+
+    public static String getInstanceId(byte[] body) {
+        int serviceNameLength = readLength(body, NAMES_OFFSET);
+        return readString(body, NAMES_OFFSET + 2 + serviceNameLength);
+    }
+
+    private static int readLength(byte[] body, int offset) {
+        return ((body[offset] & 0xFF) << 8) | (body[offset + 1] & 0xFF);
+    }
+
+    private static String readString(byte[] body, int offset) {
+        return new String(body, offset + 2, readLength(body, offset), CHARSET_UTF8);
+    }
+}
@@ -2,12 +2,35 @@
 package com.pantheon.common.protocol.heartBeat;
 
 
+import com.pantheon.remoting.protocol.CompactCodec;
+import com.pantheon.remoting.protocol.CompactReader;
+import com.pantheon.remoting.protocol.CompactWriter;
 import com.pantheon.remoting.protocol.RemotingSerializable;
 
+import java.io.IOException;
+
 /**
  * locate a instance with a appName and instanceId
  */
 public class ServiceUnregister extends RemotingSerializable {
+    static {
+        registerCompactCodec(ServiceUnregister.class, new CompactCodec<ServiceUnregister>() {
+            @Override
+            public void write(ServiceUnregister serviceUnregister, CompactWriter out) throws IOException {
+                out.writeString(serviceUnregister.getServiceName());
+                out.writeString(serviceUnregister.getInstanceId());
+            }
+
+            @Override
+            public ServiceUnregister read(CompactReader in) throws IOException {
+                ServiceUnregister serviceUnregister = new ServiceUnregister();
+                serviceUnregister.setServiceName(in.readString());
+                serviceUnregister.setInstanceId(in.readString());
+                return serviceUnregister;
+            }
+        });
+    }
+
     private String serviceName;
     private String instanceId;
 
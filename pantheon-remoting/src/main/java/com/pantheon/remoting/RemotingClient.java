@@ -25,6 +25,7 @@ import com.pantheon.remoting.netty.NettyRequestProcessor;
 import com.pantheon.remoting.protocol.RemotingCommand;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -38,14 +39,43 @@ public interface RemotingClient extends RemotingService {
 
     List<String> getServerAddressList();
 
+    /**
+     * @return the response, a body decoded without copying is copied to the heap and the frame released
+     */
     RemotingCommand invokeSync(final String addr, final RemotingCommand request,
                                final long timeoutMillis) throws InterruptedException, RemotingConnectException,
             RemotingSendRequestException, RemotingTimeoutException;
 
+    /**
+     * {@link #invokeSync(String, RemotingCommand, long)} leaving a body decoded without copying in the received frame,
+     * see {@link RemotingCommand#getBodyBuffer()}. The caller owns the response and releases its body with
+     * {@link RemotingCommand#releaseBodyBuffer()} once read, on every path
+     */
+    RemotingCommand invokeSyncRetainBody(final String addr, final RemotingCommand request,
+                                         final long timeoutMillis) throws InterruptedException, RemotingConnectException,
+            RemotingSendRequestException, RemotingTimeoutException;
+
     void invokeAsync(final String addr, final RemotingCommand request, final long timeoutMillis,
         final InvokeCallback invokeCallback) throws InterruptedException, RemotingConnectException,
             RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException;
 
+    /**
+     * send the request without waiting for the response, the future completes in a callback thread with the response,
+     * or exceptionally with the {@link com.pantheon.remoting.exception.RemotingException} the request failed with.
+     * Like a synchronous caller, whoever takes the response owns its body and releases it once read
+     */
+    CompletableFuture<RemotingCommand> invokeAsync(final String addr, final RemotingCommand request,
+                                                   final long timeoutMillis);
+
+    /**
+     * {@link #invokeAsync(String, RemotingCommand, long)} for requests fanned out to one address, they are written
+     * together and flushed once, so they leave in as few writes to the socket as it takes
+     *
+     * @return the future of every request, in the order of the requests
+     */
+    List<CompletableFuture<RemotingCommand>> invokeAsyncBatch(final String addr, final List<RemotingCommand> requests,
+                                                              final long timeoutMillis);
+
     void invokeOneway(final String addr, final RemotingCommand request, final long timeoutMillis)
         throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException,
         RemotingTimeoutException, RemotingSendRequestException;
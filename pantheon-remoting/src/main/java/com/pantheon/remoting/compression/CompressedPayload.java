@@ -0,0 +1,25 @@
+package com.pantheon.remoting.compression;
+
+/**
+ * @author Anthony
+ * @create 2021/12/28
+ * @desc payload bytes and the codec they are compressed with, {@link CompressionCodecs#NONE} for a payload below the
+ * minimum size.
+ */
+public class CompressedPayload {
+    private final CompressionCodec codec;
+    private final byte[] data;
+
+    public CompressedPayload(CompressionCodec codec, byte[] data) {
+        this.codec = codec;
+        this.data = data;
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
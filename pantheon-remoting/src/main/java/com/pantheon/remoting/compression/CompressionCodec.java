@@ -0,0 +1,30 @@
+package com.pantheon.remoting.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author Anthony
+ * @create 2021/12/28
+ * @desc compression of payload bodies, registered in {@link CompressionCodecs} under its name, which is what client
+ * and server negotiate with.
+ */
+public interface CompressionCodec {
+
+    /**
+     * @return name of the codec on the wire, lower case
+     */
+    String getName();
+
+    /**
+     * @return stream compressing into the given one, the compressed data is complete once it is closed, which closes
+     * the given stream as well
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * @return stream decompressing what is read from the given one
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
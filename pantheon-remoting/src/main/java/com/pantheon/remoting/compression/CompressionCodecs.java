@@ -0,0 +1,201 @@
+package com.pantheon.remoting.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+
+/**
+ * @author Anthony
+ * @create 2021/12/28
+ * @desc the registered {@link CompressionCodec}s, and the negotiation of the codec of a connection.
+ * <p>
+ * A client sends the codecs it accepts as a comma separated list of names, the server answers with the first codec
+ * of its own preference the client accepts, and says which one in the response. The choice is kept on the channel,
+ * so the list is only parsed again if the client sends another one. A client that sends no list gets
+ * {@link #LEGACY_GZIP}.
+ * <p>
+ * A payload smaller than the minimum size is sent uncompressed, with codec none, which every client that sends a
+ * list accepts.
+ */
+public class CompressionCodecs {
+    public static final CompressionCodec NONE = new CompressionCodec() {
+        @Override
+        public String getName() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    };
+    public static final CompressionCodec GZIP = new GzipCompressionCodec();
+    /**
+     * gzip for a client that does not say which codecs it accepts, never skipped for a small payload, since such a
+     * client cannot take an uncompressed one
+     */
+    public static final CompressionCodec LEGACY_GZIP = new GzipCompressionCodec();
+    private static final int BUFFER_SIZE = 8192;
+    private static final AttributeKey<Negotiated> NEGOTIATED_CODEC = AttributeKey.valueOf("pantheonCompressionCodec");
+    private static final ConcurrentMap<String, CompressionCodec> CODECS = new ConcurrentHashMap<String, CompressionCodec>();
+
+    static {
+        register(NONE);
+        register(GZIP);
+        register(new DeflateCompressionCodec(Deflater.BEST_SPEED));
+        register(new Lz4CompressionCodec());
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * register a codec, replacing the one of the same name, like deflate at another level
+     */
+    public static void register(CompressionCodec codec) {
+        CODECS.put(codec.getName().toLowerCase(Locale.ROOT), codec);
+    }
+
+    /**
+     * @return null if there is no codec of the name
+     */
+    public static CompressionCodec get(String name) {
+        return name == null ? null : CODECS.get(name.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the known codecs of a comma separated list of names in the order of the list
+     */
+    public static List<CompressionCodec> parse(String names) {
+        if (names == null || names.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CompressionCodec> codecs = new ArrayList<CompressionCodec>();
+        for (String name : names.split(",")) {
+            CompressionCodec codec = get(name);
+            if (codec != null && !codecs.contains(codec)) {
+                codecs.add(codec);
+            }
+        }
+        return codecs;
+    }
+
+    /**
+     * @param accepted   names of the codecs the client accepts, null for a client that does not say
+     * @param preference codecs of the server, most preferred first
+     * @return the first codec of the preference the client accepts, {@link #LEGACY_GZIP} if the client does not say,
+     * none if it accepts none of them
+     */
+    public static CompressionCodec negotiate(String accepted, List<CompressionCodec> preference) {
+        if (accepted == null) {
+            return LEGACY_GZIP;
+        }
+        List<CompressionCodec> acceptedCodecs = parse(accepted);
+        for (CompressionCodec codec : preference) {
+            if (acceptedCodecs.contains(codec)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * {@link #negotiate(String, List)} once per connection, and again only if the client sends another list
+     */
+    public static CompressionCodec negotiate(Channel channel, String accepted, List<CompressionCodec> preference) {
+        Attribute<Negotiated> attribute = channel.attr(NEGOTIATED_CODEC);
+        Negotiated negotiated = attribute.get();
+        if (negotiated == null || !equals(negotiated.accepted, accepted)) {
+            negotiated = new Negotiated(accepted, negotiate(accepted, preference));
+            attribute.set(negotiated);
+        }
+        return negotiated.codec;
+    }
+
+    /**
+     * @param minSize payloads smaller than this are not compressed, compressing them costs more than it saves
+     */
+    public static boolean shouldCompress(CompressionCodec codec, int size, int minSize) {
+        return codec != NONE && (size >= minSize || codec == LEGACY_GZIP);
+    }
+
+    public static CompressedPayload compress(CompressionCodec codec, byte[] data, int minSize) throws IOException {
+        if (!shouldCompress(codec, data.length, minSize)) {
+            return new CompressedPayload(NONE, data);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        OutputStream out = codec.compress(bos);
+        out.write(data);
+        out.close();
+        return new CompressedPayload(codec, bos.toByteArray());
+    }
+
+    public static byte[] decompress(CompressionCodec codec, byte[] data) throws IOException {
+        if (codec == NONE) {
+            return data;
+        }
+        return decompress(codec.decompress(new ByteArrayInputStream(data)), data.length);
+    }
+
+    /**
+     * decompress straight from the buffer, which is left as it is
+     */
+    public static byte[] decompress(CompressionCodec codec, ByteBuf data) throws IOException {
+        int length = data.readableBytes();
+        if (codec == NONE) {
+            byte[] bytes = new byte[length];
+            data.getBytes(data.readerIndex(), bytes);
+            return bytes;
+        }
+        return decompress(codec.decompress(new ByteBufInputStream(data.duplicate())), length);
+    }
+
+    private static byte[] decompress(InputStream in, int length) throws IOException {
+        try {
+            // compressed payloads are mostly json or compact bodies, a few times larger than the input
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(BUFFER_SIZE, length * 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static class Negotiated {
+        private final String accepted;
+        private final CompressionCodec codec;
+
+        private Negotiated(String accepted, CompressionCodec codec) {
+            this.accepted = accepted;
+            this.codec = codec;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.pantheon.remoting.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @author Anthony
+ * @create 2021/12/28
+ * @desc zlib deflate at a configurable level, {@link Deflater#BEST_SPEED} costs a fraction of the cpu of the default
+ * level for a slightly larger payload.
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+    public static final String NAME = "deflate";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int level;
+
+    /**
+     * @param level 0-9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateCompressionCodec(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("illegal deflate level " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        final Deflater deflater = new Deflater(level);
+        // a deflater passed in is not ended by the stream
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        final Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
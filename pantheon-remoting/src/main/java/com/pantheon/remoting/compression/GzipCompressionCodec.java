@@ -0,0 +1,54 @@
+package com.pantheon.remoting.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Anthony
+ * @create 2021/12/28
+ * @desc gzip, what payloads were always compressed with, so it is what a client that does not say which codecs it
+ * accepts gets.
+ */
+public class GzipCompressionCodec implements CompressionCodec {
+    public static final String NAME = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int level;
+
+    public GzipCompressionCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level 0-9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public GzipCompressionCodec(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("illegal gzip level " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,223 @@
+package com.pantheon.remoting.compression;
+
+import com.pantheon.remoting.netty.NettySystemConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * @author Anthony
+ * @create 2021/12/28
+ * @desc fast LZ77 compression in the LZ4 block format, a single hash probe per position and no entropy coding, so it
+ * compresses many times faster than deflate for a larger payload.
+ * <pre>
+ * | uncompressed length(4) | lz4 block |
+ * </pre>
+ * The whole payload is one block, it is compressed once the stream is closed and decompressed when the stream is
+ * opened. A block longer than a frame, or a length the block cannot expand to, is rejected before anything is
+ * allocated for it.
+ */
+public class Lz4CompressionCodec implements CompressionCodec {
+    public static final String NAME = "lz4";
+    private static final int MIN_MATCH = 4;
+    // the last match starts at least this far from the end, and the last literals are at least LAST_LITERALS long
+    private static final int MF_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int RUN_MASK = 15;
+    // every byte of a block stands for at most this many bytes of the payload, a 255 byte of a match length
+    private static final int MAX_RATIO = 255;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream out) throws IOException {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                byte[] block = compressBlock(buf, count);
+                out.write(count >>> 24);
+                out.write(count >>> 16);
+                out.write(count >>> 8);
+                out.write(count);
+                out.write(block);
+                out.close();
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        int length = dataIn.readInt();
+        if (length < 0) {
+            throw new IOException("illegal lz4 payload length " + length);
+        }
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = dataIn.read(buffer)) != -1) {
+            if (read > NettySystemConfig.FRAME_MAX_LENGTH - block.size()) {
+                throw new IOException("lz4 block longer than " + NettySystemConfig.FRAME_MAX_LENGTH);
+            }
+            block.write(buffer, 0, read);
+        }
+        if (length > (long) block.size() * MAX_RATIO) {
+            throw new IOException("illegal lz4 payload length " + length + " of a " + block.size() + " bytes block");
+        }
+        return new ByteArrayInputStream(decompressBlock(block.toByteArray(), block.size(), length));
+    }
+
+    static byte[] compressBlock(byte[] src, int length) {
+        // worst case, every byte a literal
+        byte[] dest = new byte[length + length / 255 + 16];
+        int op = 0;
+        int anchor = 0;
+        if (length >= MF_LIMIT + 1) {
+            int[] table = new int[1 << HASH_LOG];
+            Arrays.fill(table, -1);
+            int matchLimit = length - LAST_LITERALS;
+            int mfLimit = length - MF_LIMIT;
+            int ip = 0;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash];
+                table[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+                // extend the match backwards into the pending literals, and forwards
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dest, op);
+                ip += matchLength;
+                anchor = ip;
+                if (ip - 2 >= 0 && ip - 2 < mfLimit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+        op = writeLastLiterals(src, anchor, length - anchor, dest, op);
+        return Arrays.copyOf(dest, op);
+    }
+
+    static byte[] decompressBlock(byte[] src, int srcLength, int length) throws IOException {
+        byte[] dest = new byte[length];
+        int ip = 0;
+        int op = 0;
+        try {
+            while (ip < srcLength) {
+                int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (literalLength > srcLength - ip || literalLength > length - op) {
+                    throw new IOException("malformed lz4 block, literals out of bounds");
+                }
+                System.arraycopy(src, ip, dest, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip == srcLength) {
+                    break;
+                }
+                int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+                ip += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (offset == 0 || offset > op || matchLength > length - op) {
+                    throw new IOException("malformed lz4 block, match out of bounds");
+                }
+                int from = op - offset;
+                // byte by byte, a match may overlap what it copies
+                for (int i = 0; i < matchLength; i++) {
+                    dest[op++] = dest[from + i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("malformed lz4 block, truncated", e);
+        }
+        if (op != length) {
+            throw new IOException("malformed lz4 block, " + op + " bytes instead of " + length);
+        }
+        return dest;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength,
+                                     byte[] dest, int op) {
+        int tokenPosition = op++;
+        int matchCode = matchLength - MIN_MATCH;
+        int token = (Math.min(literalLength, RUN_MASK) << 4) | Math.min(matchCode, RUN_MASK);
+        dest[tokenPosition] = (byte) token;
+        op = writeLength(literalLength, dest, op);
+        System.arraycopy(src, literalStart, dest, op, literalLength);
+        op += literalLength;
+        dest[op++] = (byte) offset;
+        dest[op++] = (byte) (offset >>> 8);
+        return writeLength(matchCode, dest, op);
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalStart, int literalLength, byte[] dest, int op) {
+        dest[op++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        op = writeLength(literalLength, dest, op);
+        System.arraycopy(src, literalStart, dest, op, literalLength);
+        return op + literalLength;
+    }
+
+    /**
+     * the part of a length the token has no room for
+     */
+    private static int writeLength(int length, byte[] dest, int op) {
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 255) {
+                dest[op++] = (byte) 255;
+                remaining -= 255;
+            }
+            dest[op++] = (byte) remaining;
+        }
+        return op;
+    }
+
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xFF) | ((src[i + 1] & 0xFF) << 8) | ((src[i + 2] & 0xFF) << 16) | ((src[i + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
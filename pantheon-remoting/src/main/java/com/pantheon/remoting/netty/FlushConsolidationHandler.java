@@ -0,0 +1,135 @@
+package com.pantheon.remoting.netty;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * @author Anthony
+ * @create 2021/12/30
+ * @desc consolidates the flushes of a channel, so frames written close together leave in one write to the socket.
+ * <p>
+ * Responses and requests are written from worker threads, every write and flush reaching the channel is a task of
+ * its event loop. A flush with no other task queued goes out right away, so an idle channel pays nothing. Otherwise
+ * it is scheduled behind the tasks already queued and the flushes until then only count, so under load one flush goes
+ * out for all the frames queued meanwhile. A flush within a read is held back until the read is complete. At most
+ * {@code explicitFlushAfterFlushes} flushes are consolidated before one goes out anyway.
+ * <p>
+ * Runs in the event loop of the channel, in front of the handlers of any executor group.
+ */
+public class FlushConsolidationHandler extends ChannelDuplexHandler {
+    private final int explicitFlushAfterFlushes;
+    private final Runnable flushTask;
+    private ChannelHandlerContext ctx;
+    private int flushPendingCount;
+    private boolean readInProgress;
+    private boolean flushScheduled;
+
+    /**
+     * @param explicitFlushAfterFlushes flushes consolidated at most before one goes out
+     */
+    public FlushConsolidationHandler(int explicitFlushAfterFlushes) {
+        if (explicitFlushAfterFlushes <= 0) {
+            throw new IllegalArgumentException("explicitFlushAfterFlushes: " + explicitFlushAfterFlushes + " (expected: > 0)");
+        }
+        this.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+        this.flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled = false;
+                if (flushPendingCount > 0 && !readInProgress) {
+                    flushNow(ctx);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (++flushPendingCount >= explicitFlushAfterFlushes) {
+            flushNow(ctx);
+        } else if (!readInProgress && !flushScheduled) {
+            EventLoop eventLoop = ctx.channel().eventLoop();
+            if (hasPendingTasks(eventLoop)) {
+                flushScheduled = true;
+                eventLoop.execute(flushTask);
+            } else {
+                flushNow(ctx);
+            }
+        }
+    }
+
+    /**
+     * more writes may be queued if the event loop has tasks, it has none when the channel is idle
+     */
+    private static boolean hasPendingTasks(EventLoop eventLoop) {
+        return !(eventLoop instanceof SingleThreadEventExecutor) || ((SingleThreadEventExecutor) eventLoop).pendingTasks() > 0;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // the frames held back make the channel unwritable, let them out
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfNeeded(ctx);
+    }
+
+    private void resetReadAndFlushIfNeeded(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (flushPendingCount > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushPendingCount = 0;
+        ctx.flush();
+    }
+}
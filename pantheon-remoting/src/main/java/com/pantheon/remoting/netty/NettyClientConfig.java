@@ -35,8 +35,29 @@ public class NettyClientConfig {
 
     private int clientSocketSndBufSize = NettySystemConfig.socketSndbufSize;
     private int clientSocketRcvBufSize = NettySystemConfig.socketRcvbufSize;
-    private boolean clientPooledByteBufAllocatorEnable = false;
+    /**
+     * encode into pooled, direct where the platform allows, buffers instead of allocating one per request
+     */
+    private boolean clientPooledByteBufAllocatorEnable = true;
+    /**
+     * a channel turns unwritable once more than the high water mark is pending to be written, and writable again
+     * once less than the low water mark is
+     */
+    private int clientWriteBufferHighWaterMark = NettySystemConfig.writeBufferHighWaterMark;
+    private int clientWriteBufferLowWaterMark = NettySystemConfig.writeBufferLowWaterMark;
+    /**
+     * native epoll on linux if the native transport loads, nio otherwise
+     */
+    private boolean useEpollNativeSelector = true;
     private boolean clientCloseSocketIfTimeout = false;
+    /**
+     * flushes of a connection consolidated at most before one goes out, 0 to flush every request right away
+     */
+    private int clientFlushConsolidationLimit = NettySystemConfig.FLUSH_CONSOLIDATION_LIMIT;
+    /**
+     * tick of the timer expiring asynchronous requests, a request fires at most a tick after its timeout
+     */
+    private int clientResponseTimeoutTickMillis = NettySystemConfig.RESPONSE_TIMEOUT_TICK_MILLIS;
 
     private boolean useTLS;
 
@@ -128,6 +149,46 @@ public class NettyClientConfig {
         this.clientPooledByteBufAllocatorEnable = clientPooledByteBufAllocatorEnable;
     }
 
+    public int getClientFlushConsolidationLimit() {
+        return clientFlushConsolidationLimit;
+    }
+
+    public void setClientFlushConsolidationLimit(int clientFlushConsolidationLimit) {
+        this.clientFlushConsolidationLimit = clientFlushConsolidationLimit;
+    }
+
+    public int getClientResponseTimeoutTickMillis() {
+        return clientResponseTimeoutTickMillis;
+    }
+
+    public void setClientResponseTimeoutTickMillis(int clientResponseTimeoutTickMillis) {
+        this.clientResponseTimeoutTickMillis = clientResponseTimeoutTickMillis;
+    }
+
+    public int getClientWriteBufferHighWaterMark() {
+        return clientWriteBufferHighWaterMark;
+    }
+
+    public void setClientWriteBufferHighWaterMark(int clientWriteBufferHighWaterMark) {
+        this.clientWriteBufferHighWaterMark = clientWriteBufferHighWaterMark;
+    }
+
+    public int getClientWriteBufferLowWaterMark() {
+        return clientWriteBufferLowWaterMark;
+    }
+
+    public void setClientWriteBufferLowWaterMark(int clientWriteBufferLowWaterMark) {
+        this.clientWriteBufferLowWaterMark = clientWriteBufferLowWaterMark;
+    }
+
+    public boolean isUseEpollNativeSelector() {
+        return useEpollNativeSelector;
+    }
+
+    public void setUseEpollNativeSelector(boolean useEpollNativeSelector) {
+        this.useEpollNativeSelector = useEpollNativeSelector;
+    }
+
     public boolean isUseTLS() {
         return useTLS;
     }
@@ -30,15 +30,26 @@ import java.nio.ByteBuffer;
 public class NettyDecoder extends LengthFieldBasedFrameDecoder {
     private static final Logger logger = LoggerFactory.getLogger(RemotingHelper.PANTHEON_REMOTING);
 
-    private static final int FRAME_MAX_LENGTH =
-        Integer.parseInt(System.getProperty("com.pantheon.remoting.frameMaxLength", "16777216"));
+    private final boolean zeroCopy;
 
     public NettyDecoder() {
-        super(FRAME_MAX_LENGTH, 0, 4, 0, 4);
+        this(NettySystemConfig.ZERO_COPY_DECODE);
+    }
+
+    /**
+     * @param zeroCopy keep the body of a command as a slice of the frame, released once the command is processed,
+     *                 see {@link RemotingCommand#decode(ByteBuf)}
+     */
+    public NettyDecoder(boolean zeroCopy) {
+        super(NettySystemConfig.FRAME_MAX_LENGTH, 0, 4, 0, 4);
+        this.zeroCopy = zeroCopy;
     }
 
     @Override
     public Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (zeroCopy) {
+            return decodeRetained(ctx, in);
+        }
         ByteBuf frame = null;
         try {
             frame = (ByteBuf) super.decode(ctx, in);
@@ -60,4 +71,20 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
 
         return null;
     }
+
+    private Object decodeRetained(ChannelHandlerContext ctx, ByteBuf in) {
+        try {
+            ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+            if (null == frame) {
+                return null;
+            }
+            // the command takes over the frame
+            return RemotingCommand.decode(frame);
+        } catch (Exception e) {
+            logger.error("decode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
+            RemotingUtil.closeChannel(ctx.channel());
+        }
+
+        return null;
+    }
 }
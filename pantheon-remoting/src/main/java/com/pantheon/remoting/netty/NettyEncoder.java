@@ -22,28 +22,42 @@ import com.pantheon.remoting.protocol.RemotingCommand;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 
+/**
+ * header and byte array body are written into one buffer, a body buffer of the command is passed on after it as it
+ * is, so a cached payload is sent without being copied
+ */
 @ChannelHandler.Sharable
-public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
+public class NettyEncoder extends MessageToMessageEncoder<RemotingCommand> {
     private static final Logger logger = LoggerFactory.getLogger(RemotingHelper.PANTHEON_REMOTING);
 
     @Override
-    public void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out)
+    public void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, List<Object> out)
         throws Exception {
+        ByteBuf bodyBuffer = remotingCommand.takeBodyBuffer();
+        ByteBuf headerAndBody = null;
         try {
             //encode header then write to ByteBuf
-            ByteBuffer header = remotingCommand.encodeHeader();
-            out.writeBytes(header);
-            //body write to ByteBuf
+            ByteBuffer header = remotingCommand.encodeHeader(getBodyLength(remotingCommand, bodyBuffer));
             byte[] body = remotingCommand.getBody();
+            headerAndBody = ctx.alloc().ioBuffer(header.remaining() + (body != null ? body.length : 0));
+            headerAndBody.writeBytes(header);
+            //body write to ByteBuf
             if (body != null) {
-                out.writeBytes(body);
+                headerAndBody.writeBytes(body);
+            }
+            out.add(headerAndBody);
+            headerAndBody = null;
+            if (bodyBuffer != null) {
+                out.add(bodyBuffer);
+                bodyBuffer = null;
             }
         } catch (Exception e) {
             logger.error("encode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
@@ -51,6 +65,21 @@ public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
                 logger.error(remotingCommand.toString());
             }
             RemotingUtil.closeChannel(ctx.channel());
+        } finally {
+            if (headerAndBody != null) {
+                headerAndBody.release();
+            }
+            if (bodyBuffer != null) {
+                bodyBuffer.release();
+            }
+        }
+    }
+
+    private static int getBodyLength(RemotingCommand remotingCommand, ByteBuf bodyBuffer) {
+        int bodyLength = remotingCommand.getBody() != null ? remotingCommand.getBody().length : 0;
+        if (bodyBuffer != null) {
+            bodyLength += bodyBuffer.readableBytes();
         }
+        return bodyLength;
     }
 }
@@ -28,12 +28,16 @@ import com.pantheon.remoting.exception.RemotingTimeoutException;
 import com.pantheon.remoting.exception.RemotingTooMuchRequestException;
 import com.pantheon.remoting.protocol.RemotingCommand;
 import com.pantheon.remoting.protocol.RemotingSysResponseCode;
+import com.pantheon.remoting.protocol.SystemBusyResponseHeader;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +45,6 @@ import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -50,6 +53,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 public abstract class NettyRemotingAbstract {
@@ -75,6 +79,12 @@ public abstract class NettyRemotingAbstract {
     protected final ConcurrentMap<Integer /* opaque */, ResponseFuture> responseTable =
         new ConcurrentHashMap<Integer, ResponseFuture>(256);
 
+    /**
+     * Expires on-going asynchronous requests, scheduling and cancelling one costs O(1) and it fires within a tick of
+     * its timeout. Synchronous requests time out in the waiting thread. Created by {@link #startResponseTimeoutTimer}.
+     */
+    protected volatile HashedWheelTimer responseTimeoutTimer;
+
     /**
      * This container holds all processors per request code, aka, for each incoming request, we may look up the
      * responding processor in this map to handle the request.
@@ -184,7 +194,8 @@ public abstract class NettyRemotingAbstract {
 
 
     /**
-     * Process incoming request command issued by remote peer.
+     * Process incoming request command issued by remote peer. The body buffer of the request is released once the
+     * response callback is called, an asynchronous processor reads the body before that.
      *
      * @param ctx channel handler context.
      * @param cmd request command.
@@ -193,30 +204,44 @@ public abstract class NettyRemotingAbstract {
         final Pair<NettyRequestProcessor, ExecutorService> matched = this.processorTable.get(cmd.getCode());
         final Pair<NettyRequestProcessor, ExecutorService> pair = null == matched ? this.defaultRequestProcessor : matched;
         final int opaque = cmd.getOpaque();
+        final long receiveTimestamp = System.currentTimeMillis();
 
         if (pair != null) {
             Runnable run = new Runnable() {
                 @Override
                 public void run() {
                     try {
+                        long queueingDelay = System.currentTimeMillis() - receiveTimestamp;
+                        if (pair.getObject1().dropRequest(cmd, queueingDelay)) {
+                            cmd.releaseBodyBuffer();
+                            if (!cmd.isOnewayRPC()) {
+                                ctx.writeAndFlush(busyResponse(pair.getObject1(), cmd,
+                                    "[QUEUEING]system busy, request waited " + queueingDelay + "ms, start flow control for a while"));
+                            }
+                            return;
+                        }
                         doBeforeRpcHooks(RemotingHelper.parseChannelRemoteAddr(ctx.channel()), cmd);
                         final RemotingResponseCallback callback = new RemotingResponseCallback() {
                             @Override
                             public void callback(RemotingCommand response) {
                                 doAfterRpcHooks(RemotingHelper.parseChannelRemoteAddr(ctx.channel()), cmd, response);
+                                cmd.releaseBodyBuffer();
                                 if (!cmd.isOnewayRPC()) {
                                     if (response != null) {
                                         response.setOpaque(opaque);
                                         response.markResponseType();
                                         try {
-                                            ctx.writeAndFlush(response);
+                                            ctx.writeAndFlush(response).addListener(response.releaseBodyOnFailure());
                                         } catch (Throwable e) {
                                             log.error("process request over, but response failed", e);
                                             log.error(cmd.toString());
                                             log.error(response.toString());
+                                            response.releaseBodyBuffer();
                                         }
                                     } else {
                                     }
+                                } else if (response != null) {
+                                    response.releaseBodyBuffer();
                                 }
                             }
                         };
@@ -231,6 +256,7 @@ public abstract class NettyRemotingAbstract {
                     } catch (Throwable e) {
                         log.error("process request exception", e);
                         log.error(cmd.toString());
+                        cmd.releaseBodyBuffer();
 
                         if (!cmd.isOnewayRPC()) {
                             final RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_ERROR,
@@ -242,11 +268,12 @@ public abstract class NettyRemotingAbstract {
                 }
             };
 
-            if (pair.getObject1().rejectRequest()) {
-                final RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_BUSY,
-                    "[REJECTREQUEST]system busy, start flow control for a while");
-                response.setOpaque(opaque);
-                ctx.writeAndFlush(response);
+            if (pair.getObject1().rejectRequest(cmd)) {
+                cmd.releaseBodyBuffer();
+                if (!cmd.isOnewayRPC()) {
+                    ctx.writeAndFlush(busyResponse(pair.getObject1(), cmd,
+                        "[REJECTREQUEST]system busy, start flow control for a while"));
+                }
                 return;
             }
 
@@ -254,6 +281,7 @@ public abstract class NettyRemotingAbstract {
                 final RequestTask requestTask = new RequestTask(run, ctx.channel(), cmd);
                 pair.getObject2().submit(requestTask);
             } catch (RejectedExecutionException e) {
+                cmd.releaseBodyBuffer();
                 if ((System.currentTimeMillis() % 10000) == 0) {
                     log.warn(RemotingHelper.parseChannelRemoteAddr(ctx.channel())
                         + ", too many requests and system thread pool busy, RejectedExecutionException "
@@ -262,13 +290,12 @@ public abstract class NettyRemotingAbstract {
                 }
 
                 if (!cmd.isOnewayRPC()) {
-                    final RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_BUSY,
-                        "[OVERLOAD]system busy, start flow control for a while");
-                    response.setOpaque(opaque);
-                    ctx.writeAndFlush(response);
+                    ctx.writeAndFlush(busyResponse(pair.getObject1(), cmd,
+                        "[OVERLOAD]system busy, start flow control for a while"));
                 }
             }
         } else {
+            cmd.releaseBodyBuffer();
             String error = " request type " + cmd.getCode() + " not supported";
             final RemotingCommand response =
                 RemotingCommand.createResponseCommand(RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED, error);
@@ -279,19 +306,33 @@ public abstract class NettyRemotingAbstract {
     }
 
     /**
-     * Process response from remote peer to the previous issued requests.
+     * SYSTEM_BUSY with the retry-after hint of the processor, if it gives one
+     */
+    private RemotingCommand busyResponse(NettyRequestProcessor processor, RemotingCommand request, String remark) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_BUSY, remark,
+            SystemBusyResponseHeader.class);
+        long retryAfterMillis = processor.retryAfterMillis(request);
+        if (retryAfterMillis > 0) {
+            ((SystemBusyResponseHeader) response.readCustomHeader()).setRetryAfterMillis(retryAfterMillis);
+        }
+        response.setOpaque(request.getOpaque());
+        return response;
+    }
+
+    /**
+     * Process response from remote peer to the previous issued requests. The body buffer of a response is released
+     * after its callback, a synchronous caller owns the response it gets.
      *
      * @param ctx channel handler context.
      * @param cmd response command instance.
      */
     public void processResponseCommand(ChannelHandlerContext ctx, RemotingCommand cmd) {
         final int opaque = cmd.getOpaque();
-        final ResponseFuture responseFuture = responseTable.get(opaque);
+        final ResponseFuture responseFuture = responseTable.remove(opaque);
         if (responseFuture != null) {
+            responseFuture.cancelTimeout();
             responseFuture.setResponseCommand(cmd);
 
-            responseTable.remove(opaque);
-
             if (responseFuture.getInvokeCallback() != null) {
                 executeInvokeCallback(responseFuture);
             } else {
@@ -301,6 +342,7 @@ public abstract class NettyRemotingAbstract {
         } else {
             log.warn("receive response, but not matched any request, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
             log.warn(cmd.toString());
+            cmd.releaseBodyBuffer();
         }
     }
 
@@ -374,37 +416,73 @@ public abstract class NettyRemotingAbstract {
     public abstract ExecutorService getCallbackExecutor();
 
     /**
-     * <p>
-     * This method is periodically invoked to scan and expire deprecated request.
-     * </p>
+     * Expire the asynchronous request when its timeout has passed, unless the response or a failure completes it
+     * first.
      */
-    public void scanResponseTable() {
-        final List<ResponseFuture> rfList = new LinkedList<ResponseFuture>();
-        Iterator<Entry<Integer, ResponseFuture>> it = this.responseTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Integer, ResponseFuture> next = it.next();
-            ResponseFuture rep = next.getValue();
-
-            if ((rep.getBeginTimestamp() + rep.getTimeoutMillis() + 1000) <= System.currentTimeMillis()) {
-                rep.release();
-                it.remove();
-                rfList.add(rep);
-                log.warn("remove timeout request, " + rep);
+    private void scheduleTimeout(final ResponseFuture responseFuture) {
+        responseFuture.setTimeout(this.responseTimeoutTimer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                if (!responseTable.remove(responseFuture.getOpaque(), responseFuture)) {
+                    return;
+                }
+                responseFuture.release();
+                log.warn("remove timeout request, " + responseFuture);
+                try {
+                    executeInvokeCallback(responseFuture);
+                } catch (Throwable e) {
+                    log.warn("expire timeout request, operationComplete Exception", e);
+                }
             }
-        }
+        }, responseFuture.getTimeoutMillis(), TimeUnit.MILLISECONDS));
+    }
 
-        for (ResponseFuture rf : rfList) {
-            try {
-                executeInvokeCallback(rf);
-            } catch (Throwable e) {
-                log.warn("scanResponseTable, operationComplete Exception", e);
+    /**
+     * Start expiring asynchronous requests, checking for expired ones every tick.
+     *
+     * @param tickMillis tick of the timer in milliseconds
+     */
+    protected void startResponseTimeoutTimer(long tickMillis) {
+        HashedWheelTimer timer = new HashedWheelTimer(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "NettyResponseTimeoutTimer");
+                thread.setDaemon(true);
+                return thread;
             }
+        }, tickMillis, TimeUnit.MILLISECONDS, 512);
+        timer.start();
+        this.responseTimeoutTimer = timer;
+    }
+
+    /**
+     * Stop expiring requests, the requests still on-going are left to the caller.
+     */
+    protected void stopResponseTimeoutTimer() {
+        HashedWheelTimer timer = this.responseTimeoutTimer;
+        if (timer != null) {
+            timer.stop();
         }
     }
 
+    /**
+     * @return the response, with a body decoded without copying copied to the heap and the frame released, so the
+     * caller has nothing to release
+     */
     public RemotingCommand invokeSyncImpl(final Channel channel, final RemotingCommand request,
         final long timeoutMillis)
         throws InterruptedException, RemotingSendRequestException, RemotingTimeoutException {
+        return invokeSyncImpl(channel, request, timeoutMillis, false);
+    }
+
+    /**
+     * @param retainBody true to leave a body decoded without copying in the frame, the caller then owns it and
+     *                   releases it with {@link RemotingCommand#releaseBodyBuffer()} once read, on every path
+     * @return the response
+     */
+    public RemotingCommand invokeSyncImpl(final Channel channel, final RemotingCommand request,
+        final long timeoutMillis, final boolean retainBody)
+        throws InterruptedException, RemotingSendRequestException, RemotingTimeoutException {
         final int opaque = request.getOpaque();
 
         try {
@@ -412,7 +490,7 @@ public abstract class NettyRemotingAbstract {
             //treat opaque as request id, save to responseTable for later process
             this.responseTable.put(opaque, responseFuture);
             final SocketAddress addr = channel.remoteAddress();
-            channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+            channel.writeAndFlush(request).addListener(request.releaseBodyOnFailure()).addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture f) throws Exception {
                     if (f.isSuccess()) {
@@ -432,6 +510,11 @@ public abstract class NettyRemotingAbstract {
             //use  countDownLatch.await(timeoutMillis) wait for result, responseFuture.putResponse will be called by processResponseCommand(ChannelHandlerContext ctx, RemotingCommand cmd)
             // from which the countDownLatch.countDown() will be triggered
             RemotingCommand responseCommand = responseFuture.waitResponse(timeoutMillis);
+            if (null == responseCommand && this.responseTable.remove(opaque) == null) {
+                // taken out of the table by the response or the failed write right after the wait timed out, it is
+                // put right away and nobody else would release it
+                responseCommand = responseFuture.waitResponse(timeoutMillis);
+            }
             if (null == responseCommand) {
                 if (responseFuture.isSendRequestOK()) {
                     throw new RemotingTimeoutException(RemotingHelper.parseSocketAddressAddr(addr), timeoutMillis,
@@ -440,7 +523,10 @@ public abstract class NettyRemotingAbstract {
                     throw new RemotingSendRequestException(RemotingHelper.parseSocketAddressAddr(addr), responseFuture.getCause());
                 }
             }
-
+            if (!retainBody) {
+                // copies the body to the heap and releases the frame
+                responseCommand.getBody();
+            }
             return responseCommand;
         } finally {
             this.responseTable.remove(opaque);
@@ -450,6 +536,15 @@ public abstract class NettyRemotingAbstract {
     public void invokeAsyncImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis,
         final InvokeCallback invokeCallback)
         throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
+        invokeAsyncImpl(channel, request, timeoutMillis, invokeCallback, true);
+    }
+
+    /**
+     * @param flush false to only write the request, for a caller that flushes a batch of requests at once
+     */
+    protected void invokeAsyncImpl(final Channel channel, final RemotingCommand request, final long timeoutMillis,
+        final InvokeCallback invokeCallback, final boolean flush)
+        throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
         long beginStartTime = System.currentTimeMillis();
         final int opaque = request.getOpaque();
         //use semaphore for timeout event，semaphoreAsync default value 64
@@ -464,8 +559,11 @@ public abstract class NettyRemotingAbstract {
 
             final ResponseFuture responseFuture = new ResponseFuture(channel, opaque, timeoutMillis - costTime, invokeCallback, once);
             this.responseTable.put(opaque, responseFuture);
+            scheduleTimeout(responseFuture);
             try {
-                channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+                ChannelFuture writeFuture = flush ? channel.writeAndFlush(request) : channel.write(request);
+                writeFuture.addListener(request.releaseBodyOnFailure());
+                writeFuture.addListener(new ChannelFutureListener() {
                     @Override
                     public void operationComplete(ChannelFuture f) throws Exception {
                         if (f.isSuccess()) {
@@ -477,6 +575,8 @@ public abstract class NettyRemotingAbstract {
                     }
                 });
             } catch (Exception e) {
+                this.responseTable.remove(opaque);
+                responseFuture.cancelTimeout();
                 responseFuture.release();
                 log.warn("send a request command to channel <" + RemotingHelper.parseChannelRemoteAddr(channel) + "> Exception", e);
                 throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
@@ -500,6 +600,7 @@ public abstract class NettyRemotingAbstract {
     private void requestFail(final int opaque) {
         ResponseFuture responseFuture = responseTable.remove(opaque);
         if (responseFuture != null) {
+            responseFuture.cancelTimeout();
             responseFuture.setSendRequestOK(false);
             responseFuture.putResponse(null);
             try {
@@ -547,7 +648,7 @@ public abstract class NettyRemotingAbstract {
             //semaphore to process one time message num
             final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreOneway);
             try {
-                channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+                channel.writeAndFlush(request).addListener(request.releaseBodyOnFailure()).addListener(new ChannelFutureListener() {
                     @Override
                     public void operationComplete(ChannelFuture f) throws Exception {
                         once.release();
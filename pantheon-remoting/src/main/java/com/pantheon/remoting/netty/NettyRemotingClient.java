@@ -24,12 +24,15 @@ import com.pantheon.remoting.common.Pair;
 import com.pantheon.remoting.common.RemotingHelper;
 import com.pantheon.remoting.common.RemotingUtil;
 import com.pantheon.remoting.exception.RemotingConnectException;
+import com.pantheon.remoting.exception.RemotingException;
 import com.pantheon.remoting.exception.RemotingSendRequestException;
 import com.pantheon.remoting.exception.RemotingTimeoutException;
 import com.pantheon.remoting.exception.RemotingTooMuchRequestException;
 import com.pantheon.remoting.protocol.RemotingCommand;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -39,6 +42,9 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -53,12 +59,12 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -74,6 +80,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     private static final Logger log = LoggerFactory.getLogger(RemotingHelper.PANTHEON_REMOTING);
 
     private static final long LOCK_TIMEOUT_MILLIS = 3000;
+    private static final String FLUSH_CONSOLIDATION_HANDLER_NAME = "flushConsolidationHandler";
 
     private final NettyClientConfig nettyClientConfig;
     private final Bootstrap bootstrap = new Bootstrap();
@@ -81,7 +88,6 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     private final Lock lockChannelTables = new ReentrantLock();
     private final ConcurrentMap<String /* address */, ChannelWrapper> channelTables = new ConcurrentHashMap<String, ChannelWrapper>();
 
-    private final Timer timer = new Timer("ClientHouseKeepingService", true);
 
     private final AtomicReference<List<String>> serverAddressList = new AtomicReference<List<String>>();
     private final AtomicReference<String> serverAddressChoosed = new AtomicReference<String>();
@@ -121,14 +127,24 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             }
         });
 
-        this.eventLoopGroupWorker = new NioEventLoopGroup(1, new ThreadFactory() {
+        if (nettyClientConfig.getClientWriteBufferLowWaterMark() > nettyClientConfig.getClientWriteBufferHighWaterMark()) {
+            throw new IllegalArgumentException("write buffer low water mark " + nettyClientConfig.getClientWriteBufferLowWaterMark()
+                    + " above the high water mark " + nettyClientConfig.getClientWriteBufferHighWaterMark());
+        }
+
+        ThreadFactory selectorThreadFactory = new ThreadFactory() {
             private AtomicInteger threadIndex = new AtomicInteger(0);
 
             @Override
             public Thread newThread(Runnable r) {
                 return new Thread(r, String.format("NettyClientSelector_%d", this.threadIndex.incrementAndGet()));
             }
-        });
+        };
+        if (useEpoll()) {
+            this.eventLoopGroupWorker = new EpollEventLoopGroup(1, selectorThreadFactory);
+        } else {
+            this.eventLoopGroupWorker = new NioEventLoopGroup(1, selectorThreadFactory);
+        }
 
         if (nettyClientConfig.isUseTLS()) {
             try {
@@ -143,6 +159,12 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
     }
 
+    private boolean useEpoll() {
+        return RemotingUtil.isLinuxPlatform()
+                && nettyClientConfig.isUseEpollNativeSelector()
+                && Epoll.isAvailable();
+    }
+
     private static int initValueIndex() {
         Random r = new Random();
 
@@ -154,6 +176,8 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
      */
     @Override
     public void start() {
+        this.startResponseTimeoutTimer(nettyClientConfig.getClientResponseTimeoutTickMillis());
+
         this.defaultEventExecutorGroup = new DefaultEventExecutorGroup(
                 nettyClientConfig.getClientWorkerThreads(),
                 new ThreadFactory() {
@@ -166,7 +190,8 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     }
                 });
 
-        Bootstrap handler = this.bootstrap.group(this.eventLoopGroupWorker).channel(NioSocketChannel.class)
+        Bootstrap handler = this.bootstrap.group(this.eventLoopGroupWorker)
+                .channel(useEpoll() ? EpollSocketChannel.class : NioSocketChannel.class)
                 .option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.SO_KEEPALIVE, false)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, nettyClientConfig.getConnectTimeoutMillis()) //3s
@@ -175,6 +200,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 .handler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel ch) throws Exception {
+                        configureWriteBufferWaterMark(ch.config());
                         ChannelPipeline pipeline = ch.pipeline();
                         if (nettyClientConfig.isUseTLS()) {
                             if (null != sslContext) {
@@ -184,6 +210,10 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                                 log.warn("Connections are insecure as SSLContext is null!");
                             }
                         }
+                        if (nettyClientConfig.getClientFlushConsolidationLimit() > 0) {
+                            pipeline.addLast(FLUSH_CONSOLIDATION_HANDLER_NAME,
+                                    new FlushConsolidationHandler(nettyClientConfig.getClientFlushConsolidationLimit()));
+                        }
                         pipeline.addLast(
                                 defaultEventExecutorGroup,
                                 new NettyEncoder(),
@@ -194,26 +224,34 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     }
                 });
 
-        this.timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    NettyRemotingClient.this.scanResponseTable();
-                } catch (Throwable e) {
-                    log.error("scanResponseTable exception", e);
-                }
-            }
-        }, 1000 * 3, 1000);
+        if (nettyClientConfig.isClientPooledByteBufAllocatorEnable()) {
+            handler.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        }
 
         if (this.channelEventListener != null) {
             this.nettyEventExecutor.start();
         }
     }
 
+    /**
+     * the high water mark can not go below the low one at any time, so which is set first depends on the current low
+     */
+    private void configureWriteBufferWaterMark(ChannelConfig config) {
+        int high = nettyClientConfig.getClientWriteBufferHighWaterMark();
+        int low = nettyClientConfig.getClientWriteBufferLowWaterMark();
+        if (high < config.getWriteBufferLowWaterMark()) {
+            config.setWriteBufferLowWaterMark(low);
+            config.setWriteBufferHighWaterMark(high);
+        } else {
+            config.setWriteBufferHighWaterMark(high);
+            config.setWriteBufferLowWaterMark(low);
+        }
+    }
+
     @Override
     public void shutdown() {
         try {
-            this.timer.cancel();
+            this.stopResponseTimeoutTimer();
 
             for (ChannelWrapper cw : this.channelTables.values()) {
                 this.closeChannel(null, cw.getChannel());
@@ -386,6 +424,17 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     @Override
     public RemotingCommand invokeSync(String addr, final RemotingCommand request, long timeoutMillis)
             throws InterruptedException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException {
+        return invokeSync(addr, request, timeoutMillis, false);
+    }
+
+    @Override
+    public RemotingCommand invokeSyncRetainBody(String addr, final RemotingCommand request, long timeoutMillis)
+            throws InterruptedException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException {
+        return invokeSync(addr, request, timeoutMillis, true);
+    }
+
+    private RemotingCommand invokeSync(String addr, final RemotingCommand request, long timeoutMillis, boolean retainBody)
+            throws InterruptedException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException {
         // sync message
         long beginStartTime = System.currentTimeMillis();
         //use ip address to get netty channel, in which Netty's Bootstrap.connect() is triggered
@@ -399,9 +448,14 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     throw new RemotingTimeoutException("invokeSync call timeout");
                 }
                 //actual call
-                RemotingCommand response = this.invokeSyncImpl(channel, request, timeoutMillis - costTime);
+                RemotingCommand response = this.invokeSyncImpl(channel, request, timeoutMillis - costTime, retainBody);
                 //post process
-                doAfterRpcHooks(RemotingHelper.parseChannelRemoteAddr(channel), request, response);
+                try {
+                    doAfterRpcHooks(RemotingHelper.parseChannelRemoteAddr(channel), request, response);
+                } catch (RuntimeException e) {
+                    response.releaseBodyBuffer();
+                    throw e;
+                }
                 return response;
             } catch (RemotingSendRequestException e) {
                 log.warn("invokeSync: send request exception, so close the channel[{}]", addr);
@@ -584,6 +638,97 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
 
+    @Override
+    public CompletableFuture<RemotingCommand> invokeAsync(final String addr, final RemotingCommand request,
+                                                          final long timeoutMillis) {
+        final CompletableFuture<RemotingCommand> future = new CompletableFuture<RemotingCommand>();
+        try {
+            this.invokeAsync(addr, request, timeoutMillis, completing(addr, future));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public List<CompletableFuture<RemotingCommand>> invokeAsyncBatch(final String addr, final List<RemotingCommand> requests,
+                                                                     final long timeoutMillis) {
+        List<CompletableFuture<RemotingCommand>> futures = new ArrayList<CompletableFuture<RemotingCommand>>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            futures.add(new CompletableFuture<RemotingCommand>());
+        }
+        long beginStartTime = System.currentTimeMillis();
+        Channel channel = null;
+        int sent = 0;
+        try {
+            channel = this.getAndCreateChannel(addr);
+            if (channel == null || !channel.isActive()) {
+                this.closeChannel(addr, channel);
+                throw new RemotingConnectException(addr);
+            }
+            for (; sent < requests.size(); sent++) {
+                RemotingCommand request = requests.get(sent);
+                doBeforeRpcHooks(addr, request);
+                long costTime = System.currentTimeMillis() - beginStartTime;
+                if (timeoutMillis < costTime) {
+                    throw new RemotingTooMuchRequestException("invokeAsyncBatch call timeout");
+                }
+                if (this.semaphoreAsync.availablePermits() == 0) {
+                    // the permits come back with the responses to the requests written so far
+                    channel.flush();
+                }
+                this.invokeAsyncImpl(channel, request, timeoutMillis - costTime, completing(addr, futures.get(sent)), false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failRemaining(futures, sent, e);
+        } catch (RemotingSendRequestException e) {
+            log.warn("invokeAsyncBatch: send request exception, so close the channel[{}]", addr);
+            this.closeChannel(addr, channel);
+            failRemaining(futures, sent, e);
+        } catch (Throwable e) {
+            failRemaining(futures, sent, e);
+        } finally {
+            if (channel != null && sent > 0) {
+                channel.flush();
+            }
+        }
+        return futures;
+    }
+
+    private static void failRemaining(List<CompletableFuture<RemotingCommand>> futures, int from, Throwable cause) {
+        for (int i = from; i < futures.size(); i++) {
+            futures.get(i).completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * complete the future with the response, which then belongs to whoever takes it, or with why there is none
+     */
+    private static InvokeCallback completing(final String addr, final CompletableFuture<RemotingCommand> future) {
+        return new InvokeCallback() {
+            @Override
+            public void operationComplete(ResponseFuture responseFuture) {
+                RemotingCommand response = responseFuture.detachResponseCommand();
+                if (response != null) {
+                    future.complete(response);
+                } else if (!responseFuture.isSendRequestOK()) {
+                    future.completeExceptionally(new RemotingSendRequestException(addr, responseFuture.getCause()));
+                } else if (responseFuture.isTimeout()) {
+                    future.completeExceptionally(new RemotingTimeoutException(addr, responseFuture.getTimeoutMillis(),
+                            responseFuture.getCause()));
+                } else {
+                    future.completeExceptionally(new RemotingException("unknown reason of the failed request to <"
+                            + addr + ">", responseFuture.getCause()));
+                }
+            }
+        };
+    }
+
+
     @Override
     public void invokeOneway(String addr, RemotingCommand request, long timeoutMillis) throws InterruptedException,
             RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
@@ -31,4 +31,28 @@ public interface NettyRequestProcessor {
 
     boolean rejectRequest();
 
+    /**
+     * whether to answer the request with SYSTEM_BUSY instead of queueing it, {@link #rejectRequest()} unless overridden
+     */
+    default boolean rejectRequest(RemotingCommand request) {
+        return rejectRequest();
+    }
+
+    /**
+     * called once the request is taken off the queue of its executor, before it is processed
+     *
+     * @param queueingDelayMillis how long the request waited for a thread
+     * @return whether to answer SYSTEM_BUSY instead of processing a request that waited too long
+     */
+    default boolean dropRequest(RemotingCommand request, long queueingDelayMillis) {
+        return false;
+    }
+
+    /**
+     * @return how long the sender of a rejected or dropped request is told to wait before retrying, 0 for no hint
+     */
+    default long retryAfterMillis(RemotingCommand request) {
+        return 0;
+    }
+
 }
@@ -28,6 +28,14 @@ public class NettyServerConfig implements Cloneable {
     private int serverSocketSndBufSize = NettySystemConfig.socketSndbufSize;
     private int serverSocketRcvBufSize = NettySystemConfig.socketRcvbufSize;
     private boolean serverPooledByteBufAllocatorEnable = true;
+    /**
+     * flushes of a connection consolidated at most before one goes out, 0 to flush every response right away
+     */
+    private int serverFlushConsolidationLimit = NettySystemConfig.FLUSH_CONSOLIDATION_LIMIT;
+    /**
+     * tick of the timer expiring asynchronous requests, a request fires at most a tick after its timeout
+     */
+    private int serverResponseTimeoutTickMillis = NettySystemConfig.RESPONSE_TIMEOUT_TICK_MILLIS;
 
     /**
      * make make install
@@ -118,6 +126,22 @@ public class NettyServerConfig implements Cloneable {
         this.serverPooledByteBufAllocatorEnable = serverPooledByteBufAllocatorEnable;
     }
 
+    public int getServerFlushConsolidationLimit() {
+        return serverFlushConsolidationLimit;
+    }
+
+    public void setServerFlushConsolidationLimit(int serverFlushConsolidationLimit) {
+        this.serverFlushConsolidationLimit = serverFlushConsolidationLimit;
+    }
+
+    public int getServerResponseTimeoutTickMillis() {
+        return serverResponseTimeoutTickMillis;
+    }
+
+    public void setServerResponseTimeoutTickMillis(int serverResponseTimeoutTickMillis) {
+        this.serverResponseTimeoutTickMillis = serverResponseTimeoutTickMillis;
+    }
+
     public boolean isUseEpollNativeSelector() {
         return useEpollNativeSelector;
     }
@@ -28,6 +28,18 @@ public class NettySystemConfig {
         "com.pantheon.remoting.clientAsyncSemaphoreValue";
     public static final String COM_PANTHEON_REMOTING_CLIENT_ONEWAY_SEMAPHORE_VALUE =
         "com.pantheon.remoting.clientOnewaySemaphoreValue";
+    public static final String COM_PANTHEON_REMOTING_FRAME_MAX_LENGTH =
+        "com.pantheon.remoting.frameMaxLength";
+    public static final String COM_PANTHEON_REMOTING_ZERO_COPY_DECODE =
+        "com.pantheon.remoting.zeroCopyDecode";
+    public static final String COM_PANTHEON_REMOTING_FLUSH_CONSOLIDATION_LIMIT =
+        "com.pantheon.remoting.flushConsolidationLimit";
+    public static final String COM_PANTHEON_REMOTING_RESPONSE_TIMEOUT_TICK_MILLIS =
+        "com.pantheon.remoting.responseTimeoutTickMillis";
+    public static final String COM_PANTHEON_REMOTING_WRITE_BUFFER_HIGH_WATER_MARK =
+        "com.pantheon.remoting.write.buffer.high.water.mark";
+    public static final String COM_PANTHEON_REMOTING_WRITE_BUFFER_LOW_WATER_MARK =
+        "com.pantheon.remoting.write.buffer.low.water.mark";
 
     public static final boolean NETTY_POOLED_BYTE_BUF_ALLOCATOR_ENABLE = //
         Boolean.parseBoolean(System.getProperty(COM_PANTHEON_REMOTING_NETTY_POOLED_BYTE_BUF_ALLOCATOR_ENABLE, "false"));
@@ -35,6 +47,30 @@ public class NettySystemConfig {
         Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_CLIENT_ASYNC_SEMAPHORE_VALUE, "65535"));
     public static final int CLIENT_ONEWAY_SEMAPHORE_VALUE =
         Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_CLIENT_ONEWAY_SEMAPHORE_VALUE, "65535"));
+    /**
+     * longest frame decoded, and longest compressed payload decompressed
+     */
+    public static final int FRAME_MAX_LENGTH =
+        Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_FRAME_MAX_LENGTH, "16777216"));
+    /**
+     * decoded commands keep their body as a slice of the received frame instead of a copy on the heap
+     */
+    public static final boolean ZERO_COPY_DECODE =
+        Boolean.parseBoolean(System.getProperty(COM_PANTHEON_REMOTING_ZERO_COPY_DECODE, "true"));
+    /**
+     * flushes consolidated at most before one goes out, 0 to flush every write right away
+     */
+    public static final int FLUSH_CONSOLIDATION_LIMIT =
+        Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_FLUSH_CONSOLIDATION_LIMIT, "256"));
+    /**
+     * tick of the timer expiring asynchronous requests, a request fires at most a tick after its timeout
+     */
+    public static final int RESPONSE_TIMEOUT_TICK_MILLIS =
+        Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_RESPONSE_TIMEOUT_TICK_MILLIS, "10"));
+    public static int writeBufferHighWaterMark =
+        Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_WRITE_BUFFER_HIGH_WATER_MARK, "65536"));
+    public static int writeBufferLowWaterMark =
+        Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_WRITE_BUFFER_LOW_WATER_MARK, "32768"));
     public static int socketSndbufSize =
         Integer.parseInt(System.getProperty(COM_PANTHEON_REMOTING_SOCKET_SNDBUF_SIZE, "65535"));
     public static int socketRcvbufSize =
@@ -20,6 +20,7 @@ import com.pantheon.remoting.InvokeCallback;
 import com.pantheon.remoting.common.SemaphoreReleaseOnlyOnce;
 import com.pantheon.remoting.protocol.RemotingCommand;
 import io.netty.channel.Channel;
+import io.netty.util.Timeout;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +41,8 @@ public class ResponseFuture {
     private volatile RemotingCommand responseCommand;
     private volatile boolean sendRequestOK = true;
     private volatile Throwable cause;
+    // expiry of an asynchronous request in the timing wheel
+    private volatile Timeout timeout;
 
     public ResponseFuture(Channel channel, int opaque, long timeoutMillis, InvokeCallback invokeCallback,
                           SemaphoreReleaseOnlyOnce once) {
@@ -53,17 +56,48 @@ public class ResponseFuture {
     public void executeInvokeCallback() {
         if (invokeCallback != null) {
             if (this.executeCallbackOnlyOnce.compareAndSet(false, true)) {
-                invokeCallback.operationComplete(this);
+                try {
+                    invokeCallback.operationComplete(this);
+                } finally {
+                    RemotingCommand response = this.responseCommand;
+                    if (response != null) {
+                        response.releaseBodyBuffer();
+                    }
+                }
             }
         }
     }
 
+    /**
+     * hand the response over to the callback, which then owns its body like a synchronous caller, instead of having
+     * it released once the callback returns
+     */
+    public RemotingCommand detachResponseCommand() {
+        RemotingCommand response = this.responseCommand;
+        this.responseCommand = null;
+        return response;
+    }
+
     public void release() {
         if (this.once != null) {
             this.once.release();
         }
     }
 
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * take the future out of the timing wheel once it is completed otherwise
+     */
+    public void cancelTimeout() {
+        Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
     public boolean isTimeout() {
         long diff = System.currentTimeMillis() - this.beginTimestamp;
         return diff > this.timeoutMillis;
@@ -0,0 +1,306 @@
+package com.pantheon.remoting.protocol;
+
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.annotation.CFNotNull;
+import com.pantheon.remoting.common.RemotingHelper;
+import com.pantheon.remoting.exception.RemotingCommandException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @author Anthony
+ * @create 2021/12/29
+ * @desc encoder and decoder between a {@link CommandCustomHeader} class and the ext fields of a command, built once
+ * per class.
+ * <p>
+ * The constructor, setters and getters of the header are bound to accessors generated by {@link LambdaMetafactory},
+ * a field without a public setter or getter is accessed through a {@link MethodHandle}. The type of every field is
+ * resolved when the codec is built, so decoding a header does no reflection and compares no type names.
+ */
+public class CommandCustomHeaderCodec {
+    private static final Logger logger = LoggerFactory.getLogger(RemotingHelper.PANTHEON_REMOTING);
+    private static final ConcurrentMap<Class<?>, CommandCustomHeaderCodec> CODECS =
+            new ConcurrentHashMap<Class<?>, CommandCustomHeaderCodec>();
+
+    private final Class<? extends CommandCustomHeader> headerClass;
+    // null if the header has no no-arg constructor that can be called
+    private final Supplier<?> constructor;
+    private final FieldCodec[] fields;
+
+    private CommandCustomHeaderCodec(Class<? extends CommandCustomHeader> headerClass) {
+        this.headerClass = headerClass;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.constructor = constructor(lookup, headerClass);
+        List<FieldCodec> fieldCodecs = new ArrayList<FieldCodec>();
+        for (Field field : headerClass.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !field.getName().startsWith("this")) {
+                fieldCodecs.add(new FieldCodec(lookup, headerClass, field));
+            }
+        }
+        this.fields = fieldCodecs.toArray(new FieldCodec[0]);
+    }
+
+    public static CommandCustomHeaderCodec forClass(Class<? extends CommandCustomHeader> headerClass) {
+        CommandCustomHeaderCodec codec = CODECS.get(headerClass);
+        if (codec == null) {
+            codec = new CommandCustomHeaderCodec(headerClass);
+            CommandCustomHeaderCodec existing = CODECS.putIfAbsent(headerClass, codec);
+            if (existing != null) {
+                codec = existing;
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * @return the header with the fields found in the ext fields, null if the header can not be instantiated
+     */
+    public CommandCustomHeader decode(HashMap<String, String> extFields) throws RemotingCommandException {
+        if (constructor == null) {
+            return null;
+        }
+        CommandCustomHeader header = (CommandCustomHeader) constructor.get();
+        if (extFields == null) {
+            return header;
+        }
+        for (FieldCodec field : fields) {
+            try {
+                String value = extFields.get(field.name);
+                if (null == value) {
+                    if (!field.nullable) {
+                        throw new RemotingCommandException("the custom field <" + field.name + "> is null");
+                    }
+                    continue;
+                }
+                if (field.type == null) {
+                    throw new RemotingCommandException("the custom field <" + field.name + "> type is not supported");
+                }
+                field.setter.accept(header, field.type.parse(value));
+            } catch (Throwable e) {
+                logger.error("Failed field [{}] decoding", field.name, e);
+            }
+        }
+        header.checkFields();
+        return header;
+    }
+
+    /**
+     * put the fields of the header that are not null into the ext fields
+     */
+    public void encode(CommandCustomHeader header, Map<String, String> extFields) {
+        for (FieldCodec field : fields) {
+            Object value = null;
+            try {
+                value = field.getter.apply(header);
+            } catch (Throwable e) {
+                logger.error("Failed to access field [{}]", field.name, e);
+            }
+            if (value != null) {
+                extFields.put(field.name, value.toString());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CommandCustomHeaderCodec [headerClass=" + headerClass.getName() + ", fields=" + fields.length + "]";
+    }
+
+    private static Supplier<?> constructor(MethodHandles.Lookup lookup, Class<?> headerClass) {
+        try {
+            MethodHandle handle = lookup.findConstructor(headerClass, MethodType.methodType(void.class));
+            return (Supplier<?>) LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), handle, MethodType.methodType(headerClass))
+                    .getTarget().invoke();
+        } catch (Throwable e) {
+            // not public, fall back to the constructor made accessible
+        }
+        try {
+            Constructor<?> ctor = headerClass.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            final MethodHandle handle = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+            return new Supplier<Object>() {
+                @Override
+                public Object get() {
+                    try {
+                        return handle.invokeExact();
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("instantiate " + handle.type().returnType() + " failed", e);
+                    }
+                }
+            };
+        } catch (Throwable e) {
+            logger.error("no accessible no-arg constructor of header {}", headerClass.getName());
+            return null;
+        }
+    }
+
+    private enum FieldType {
+        STRING {
+            @Override
+            Object parse(String value) {
+                return value;
+            }
+        },
+        INTEGER {
+            @Override
+            Object parse(String value) {
+                return Integer.parseInt(value);
+            }
+        },
+        LONG {
+            @Override
+            Object parse(String value) {
+                return Long.parseLong(value);
+            }
+        },
+        BOOLEAN {
+            @Override
+            Object parse(String value) {
+                return Boolean.parseBoolean(value);
+            }
+        },
+        DOUBLE {
+            @Override
+            Object parse(String value) {
+                return Double.parseDouble(value);
+            }
+        };
+
+        abstract Object parse(String value);
+
+        /**
+         * @return null if fields of the type can not be decoded
+         */
+        static FieldType of(Class<?> type) {
+            if (type == String.class) {
+                return STRING;
+            } else if (type == Integer.class || type == int.class) {
+                return INTEGER;
+            } else if (type == Long.class || type == long.class) {
+                return LONG;
+            } else if (type == Boolean.class || type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == Double.class || type == double.class) {
+                return DOUBLE;
+            }
+            return null;
+        }
+    }
+
+    private static class FieldCodec {
+        private final String name;
+        private final FieldType type;
+        private final boolean nullable;
+        private final BiConsumer<Object, Object> setter;
+        private final Function<Object, Object> getter;
+
+        private FieldCodec(MethodHandles.Lookup lookup, Class<?> headerClass, Field field) {
+            this.name = field.getName();
+            this.type = FieldType.of(field.getType());
+            this.nullable = field.getAnnotation(CFNotNull.class) == null;
+            this.setter = setter(lookup, headerClass, field);
+            this.getter = getter(lookup, headerClass, field);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static BiConsumer<Object, Object> setter(MethodHandles.Lookup lookup, Class<?> headerClass, Field field) {
+            try {
+                Method method = headerClass.getMethod("set" + capitalize(field.getName()), field.getType());
+                return (BiConsumer<Object, Object>) LambdaMetafactory.metafactory(lookup, "accept",
+                        MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class), lookup.unreflect(method),
+                        MethodType.methodType(void.class, headerClass, box(field.getType())))
+                        .getTarget().invoke();
+            } catch (Throwable e) {
+                // no public setter, fall back to the field
+            }
+            final MethodHandle handle;
+            try {
+                field.setAccessible(true);
+                handle = lookup.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (Throwable e) {
+                throw new IllegalStateException("no access to field " + field, e);
+            }
+            return new BiConsumer<Object, Object>() {
+                @Override
+                public void accept(Object header, Object value) {
+                    try {
+                        handle.invokeExact(header, value);
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object> getter(MethodHandles.Lookup lookup, Class<?> headerClass, Field field) {
+            Class<?> type = field.getType();
+            String prefix = type == boolean.class ? "is" : "get";
+            try {
+                Method method = headerClass.getMethod(prefix + capitalize(field.getName()));
+                if (method.getReturnType() == type) {
+                    return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply",
+                            MethodType.methodType(Function.class),
+                            MethodType.methodType(Object.class, Object.class), lookup.unreflect(method),
+                            MethodType.methodType(box(type), headerClass))
+                            .getTarget().invoke();
+                }
+            } catch (Throwable e) {
+                // no public getter, fall back to the field
+            }
+            final MethodHandle handle;
+            try {
+                field.setAccessible(true);
+                handle = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            } catch (Throwable e) {
+                throw new IllegalStateException("no access to field " + field, e);
+            }
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object header) {
+                    try {
+                        return handle.invokeExact(header);
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+
+        private static String capitalize(String name) {
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private static Class<?> box(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return type;
+            }
+            return MethodType.methodType(type).wrap().returnType();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.pantheon.remoting.protocol;
+
+import java.io.IOException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/27
+ * @desc compact binary codec of a body type, registered by {@link RemotingSerializable#registerCompactCodec} and used
+ * for bodies of commands with {@link SerializeType#PANTHEON}.
+ */
+public interface CompactCodec<T> {
+
+    void write(T value, CompactWriter out) throws IOException;
+
+    T read(CompactReader in) throws IOException;
+}
@@ -0,0 +1,145 @@
+package com.pantheon.remoting.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Anthony
+ * @create 2021/12/27
+ * @desc reader of the compact binary body format written by {@link CompactWriter}.
+ */
+public class CompactReader {
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] data;
+    private int position;
+    private final int limit;
+    private final List<String> dictionary = new ArrayList<String>();
+
+    public CompactReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() throws IOException {
+        if (position >= limit) {
+            throw new EOFException("compact body is truncated");
+        }
+        return data[position++] & 0xFF;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in compact body");
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varlong in compact body");
+    }
+
+    public Integer readNullableInt() throws IOException {
+        return readBoolean() ? readVarInt() : null;
+    }
+
+    public Long readNullableLong() throws IOException {
+        return readBoolean() ? readVarLong() : null;
+    }
+
+    /**
+     * @param values the values of the enum in ordinal order
+     * @return null for an ordinal the reader does not know, written by a newer version
+     */
+    public <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+        int ordinal = readVarInt() - 1;
+        if (ordinal < 0 || ordinal >= values.length) {
+            return null;
+        }
+        return values[ordinal];
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        return readUtf8(length);
+    }
+
+    public String readSharedString() throws IOException {
+        int tag = readVarInt();
+        if (tag == 0) {
+            return null;
+        }
+        if (tag == 1) {
+            String value = readUtf8(readVarInt());
+            dictionary.add(value);
+            return value;
+        }
+        int index = tag - 2;
+        if (index < 0 || index >= dictionary.size()) {
+            throw new IOException("unknown dictionary index " + index + " in compact body");
+        }
+        return dictionary.get(index);
+    }
+
+    /**
+     * @return null if null was written
+     */
+    public Map<String, String> readSharedStringMap() throws IOException {
+        int size = readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            map.put(readSharedString(), readSharedString());
+        }
+        return map;
+    }
+
+    /**
+     * @return a count read from the body, checked against what is left so that a corrupt body fails instead of
+     * allocating a huge collection
+     */
+    public int readCount() throws IOException {
+        int count = readVarInt();
+        if (count < 0 || count > limit - position) {
+            throw new IOException("malformed count " + count + " in compact body");
+        }
+        return count;
+    }
+
+    private String readUtf8(int length) throws IOException {
+        if (length < 0 || length > limit - position) {
+            throw new EOFException("compact body is truncated");
+        }
+        String value = new String(data, position, length, CHARSET_UTF8);
+        position += length;
+        return value;
+    }
+}
@@ -0,0 +1,153 @@
+package com.pantheon.remoting.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Anthony
+ * @create 2021/12/27
+ * @desc writer of the compact binary body format, read back by {@link CompactReader}.
+ * <p>
+ * Numbers are written as base 128 varints, enums as ordinals. Strings repeated throughout a payload, like app names,
+ * hostnames and metadata keys, are written by {@link #writeSharedString(String)}: the first time in full, and from
+ * then on as the index into the dictionary of the payload. Output is buffered, call {@link #flush()} when done.
+ */
+public class CompactWriter {
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 4096;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    public CompactWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * unsigned varint, a negative value takes 5 bytes
+     */
+    public void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * unsigned varint, a negative value takes 10 bytes
+     */
+    public void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    public void writeNullableInt(Integer value) throws IOException {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeVarInt(value);
+        }
+    }
+
+    public void writeNullableLong(Long value) throws IOException {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeVarLong(value);
+        }
+    }
+
+    /**
+     * ordinal + 1, 0 for null
+     */
+    public void writeEnum(Enum<?> value) throws IOException {
+        writeVarInt(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    /**
+     * byte length + 1 and the utf-8 bytes, 0 for null
+     */
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(CHARSET_UTF8);
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    /**
+     * 0 for null, 1 and the string for one not in the dictionary yet, which adds it, otherwise its index + 2
+     */
+    public void writeSharedString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarInt(index + 2);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        writeVarInt(1);
+        byte[] bytes = value.getBytes(CHARSET_UTF8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    public void writeSharedStringMap(Map<String, String> map) throws IOException {
+        if (map == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(map.size() + 1);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeSharedString(entry.getKey());
+            writeSharedString(entry.getValue());
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+}
@@ -16,6 +16,8 @@
  */
 package com.pantheon.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
@@ -164,6 +166,53 @@ public class PantheonSerializable {
         return cmd;
     }
 
+    /**
+     * same as {@link #pantheonProtocolDecode(byte[])}, reading the header straight from the frame
+     */
+    public static RemotingCommand pantheonProtocolDecode(final ByteBuf frame, final int index, final int length) {
+        RemotingCommand cmd = new RemotingCommand();
+        ByteBuf headerBuffer = frame.slice(index, length);
+        // int code(~32767)
+        cmd.setCode(headerBuffer.readShort());
+        // LanguageCode language
+        cmd.setLanguage(LanguageCode.valueOf(headerBuffer.readByte()));
+        // int version(~32767)
+        cmd.setVersion(headerBuffer.readShort());
+        // int opaque
+        cmd.setOpaque(headerBuffer.readInt());
+        // int flag
+        cmd.setFlag(headerBuffer.readInt());
+        // String remark
+        int remarkLength = headerBuffer.readInt();
+        if (remarkLength > 0) {
+            cmd.setRemark(headerBuffer.toString(headerBuffer.readerIndex(), remarkLength, CHARSET_UTF8));
+            headerBuffer.skipBytes(remarkLength);
+        }
+
+        // HashMap<String, String> extFields
+        int extFieldsLength = headerBuffer.readInt();
+        if (extFieldsLength > 0) {
+            cmd.setExtFields(mapDeserialize(headerBuffer.readSlice(extFieldsLength)));
+        }
+        return cmd;
+    }
+
+    private static HashMap<String, String> mapDeserialize(ByteBuf buffer) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        while (buffer.isReadable()) {
+            short keySize = buffer.readShort();
+            String key = buffer.toString(buffer.readerIndex(), keySize, CHARSET_UTF8);
+            buffer.skipBytes(keySize);
+
+            int valSize = buffer.readInt();
+            String val = buffer.toString(buffer.readerIndex(), valSize, CHARSET_UTF8);
+            buffer.skipBytes(valSize);
+
+            map.put(key, val);
+        }
+        return map;
+    }
+
     public static HashMap<String, String> mapDeserialize(byte[] bytes) {
         if (bytes == null || bytes.length <= 0)
             return null;
@@ -2,21 +2,20 @@ package com.pantheon.remoting.protocol;
 
 import com.alibaba.fastjson.annotation.JSONField;
 import com.pantheon.remoting.CommandCustomHeader;
-import com.pantheon.remoting.annotation.CFNotNull;
 import com.pantheon.remoting.common.RemotingHelper;
 import com.pantheon.remoting.exception.RemotingCommandException;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -37,19 +36,7 @@ public class RemotingCommand {
     public static final String REMOTING_VERSION_KEY = "pantheon.remoting.version";
     private static final int RPC_TYPE = 0; // 0, REQUEST_COMMAND
     private static final int RPC_ONEWAY = 1; // 0, RPC
-    private static final Map<Class<? extends CommandCustomHeader>, Field[]> CLASS_HASH_MAP =
-            new HashMap<Class<? extends CommandCustomHeader>, Field[]>();
-    private static final Map<Class, String> CANONICAL_NAME_CACHE = new HashMap<Class, String>();
-    private static final Map<Field, Boolean> NULLABLE_FIELD_CACHE = new HashMap<Field, Boolean>();
-    private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_1 = Double.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_2 = double.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_1 = Integer.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_2 = int.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_1 = Long.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
     private static volatile int configVersion = -1;
     private static AtomicInteger requestId = new AtomicInteger(0);
 
@@ -78,6 +65,10 @@ public class RemotingCommand {
     private SerializeType serializeTypeCurrentRPC = serializeTypeConfigInThisServer;
 
     private transient byte[] body;
+    /**
+     * body sent after {@link #body} without being copied, owned by the command until the encoder writes it
+     */
+    private transient ByteBuf bodyBuffer;
 
     protected RemotingCommand() {
     }
@@ -161,6 +152,34 @@ public class RemotingCommand {
         return cmd;
     }
 
+    /**
+     * Decode a frame without copying the body, the body of the command is a slice of the frame and the header is read
+     * straight from the frame. The command takes over the reference of the frame, it is released right away if there
+     * is no body, and otherwise with the body, see {@link #releaseBodyBuffer()}.
+     */
+    public static RemotingCommand decode(final ByteBuf frame) {
+        boolean bodyRetained = false;
+        try {
+            int length = frame.readableBytes();
+            int oriHeaderLen = frame.readInt();
+            int headerLength = getHeaderLength(oriHeaderLen);
+            int headerIndex = frame.readerIndex();
+            RemotingCommand cmd = headerDecode(frame, headerIndex, headerLength, getProtocolType(oriHeaderLen));
+            frame.readerIndex(headerIndex + headerLength);
+
+            int bodyLength = length - 4 - headerLength;
+            if (cmd != null && bodyLength > 0) {
+                cmd.bodyBuffer = frame.slice(frame.readerIndex(), bodyLength);
+                bodyRetained = true;
+            }
+            return cmd;
+        } finally {
+            if (!bodyRetained) {
+                frame.release();
+            }
+        }
+    }
+
     public static int getHeaderLength(int length) {
         return length & 0xFFFFFF;
     }
@@ -182,6 +201,24 @@ public class RemotingCommand {
         return null;
     }
 
+    private static RemotingCommand headerDecode(ByteBuf frame, int index, int length, SerializeType type) {
+        switch (type) {
+            case JSON:
+                String json = frame.toString(index, length, CHARSET_UTF8);
+                RemotingCommand resultJson = RemotingSerializable.fromJson(json, RemotingCommand.class);
+                resultJson.setSerializeTypeCurrentRPC(type);
+                return resultJson;
+            case PANTHEON:
+                RemotingCommand resultPantheon = PantheonSerializable.pantheonProtocolDecode(frame, index, length);
+                resultPantheon.setSerializeTypeCurrentRPC(type);
+                return resultPantheon;
+            default:
+                break;
+        }
+
+        return null;
+    }
+
     public static SerializeType getProtocolType(int source) {
         return SerializeType.valueOf((byte) ((source >> 24) & 0xFF));
     }
@@ -232,100 +269,9 @@ public class RemotingCommand {
 
     public CommandCustomHeader decodeCommandCustomHeader(
             Class<? extends CommandCustomHeader> classHeader) throws RemotingCommandException {
-        CommandCustomHeader objectHeader;
-        try {
-            objectHeader = classHeader.newInstance();
-        } catch (InstantiationException e) {
-            return null;
-        } catch (IllegalAccessException e) {
-            return null;
-        }
-
-        if (this.extFields != null) {
-
-            Field[] fields = getClazzFields(classHeader);
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String fieldName = field.getName();
-                    if (!fieldName.startsWith("this")) {
-                        try {
-                            String value = this.extFields.get(fieldName);
-                            if (null == value) {
-                                //解析字段是否为空逻辑处理
-                                if (!isFieldNullable(field)) {
-                                    throw new RemotingCommandException("the custom field <" + fieldName + "> is null");
-                                }
-                                continue;
-                            }
-
-                            field.setAccessible(true);
-                            String type = getCanonicalName(field.getType());
-                            Object valueParsed;
-
-                            if (type.equals(STRING_CANONICAL_NAME)) {
-                                valueParsed = value;
-                            } else if (type.equals(INTEGER_CANONICAL_NAME_1) || type.equals(INTEGER_CANONICAL_NAME_2)) {
-                                valueParsed = Integer.parseInt(value);
-                            } else if (type.equals(LONG_CANONICAL_NAME_1) || type.equals(LONG_CANONICAL_NAME_2)) {
-                                valueParsed = Long.parseLong(value);
-                            } else if (type.equals(BOOLEAN_CANONICAL_NAME_1) || type.equals(BOOLEAN_CANONICAL_NAME_2)) {
-                                valueParsed = Boolean.parseBoolean(value);
-                            } else if (type.equals(DOUBLE_CANONICAL_NAME_1) || type.equals(DOUBLE_CANONICAL_NAME_2)) {
-                                valueParsed = Double.parseDouble(value);
-                            } else {
-                                throw new RemotingCommandException("the custom field <" + fieldName + "> type is not supported");
-                            }
-
-                            field.set(objectHeader, valueParsed);
-
-                        } catch (Throwable e) {
-                            logger.error("Failed field [{}] decoding", fieldName, e);
-                        }
-                    }
-                }
-            }
-
-            objectHeader.checkFields();
-        }
-
-        return objectHeader;
+        return CommandCustomHeaderCodec.forClass(classHeader).decode(this.extFields);
     }
 
-    private Field[] getClazzFields(Class<? extends CommandCustomHeader> classHeader) {
-        Field[] field = CLASS_HASH_MAP.get(classHeader);
-
-        if (field == null) {
-            field = classHeader.getDeclaredFields();
-            synchronized (CLASS_HASH_MAP) {
-                CLASS_HASH_MAP.put(classHeader, field);
-            }
-        }
-        return field;
-    }
-
-    private boolean isFieldNullable(Field field) {
-        if (!NULLABLE_FIELD_CACHE.containsKey(field)) {
-            Annotation annotation = field.getAnnotation(CFNotNull.class);
-            synchronized (NULLABLE_FIELD_CACHE) {
-                NULLABLE_FIELD_CACHE.put(field, annotation == null);
-            }
-        }
-        return NULLABLE_FIELD_CACHE.get(field);
-    }
-
-    private String getCanonicalName(Class clazz) {
-        String name = CANONICAL_NAME_CACHE.get(clazz);
-
-        if (name == null) {
-            name = clazz.getCanonicalName();
-            synchronized (CANONICAL_NAME_CACHE) {
-                CANONICAL_NAME_CACHE.put(clazz, name);
-            }
-        }
-        return name;
-    }
-
-
     public ByteBuffer encode() {
         // 1> header length size
         int length = 4;
@@ -371,34 +317,19 @@ public class RemotingCommand {
 
     public void makeCustomHeaderToNet() {
         if (this.customHeader != null) {
-            Field[] fields = getClazzFields(customHeader.getClass());
             if (null == this.extFields) {
                 this.extFields = new HashMap<String, String>();
             }
-
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(this.customHeader);
-                        } catch (Exception e) {
-                            logger.error("Failed to access field [{}]", name, e);
-                        }
-
-                        if (value != null) {
-                            this.extFields.put(name, value.toString());
-                        }
-                    }
-                }
-            }
+            CommandCustomHeaderCodec.forClass(customHeader.getClass()).encode(customHeader, extFields);
         }
     }
 
     public ByteBuffer encodeHeader() {
-        return encodeHeader(this.body != null ? this.body.length : 0);
+        int bodyLength = this.body != null ? this.body.length : 0;
+        if (this.bodyBuffer != null) {
+            bodyLength += this.bodyBuffer.readableBytes();
+        }
+        return encodeHeader(bodyLength);
     }
 
     public ByteBuffer encodeHeader(final int bodyLength) {
@@ -504,14 +435,84 @@ public class RemotingCommand {
         this.remark = remark;
     }
 
-    public byte[] getBody() {
+    /**
+     * @return body of the command, a body decoded as a slice of the frame is copied to the heap on the first call and
+     * the frame released. Guarded with the body buffer, so concurrent callers copy and release it once.
+     */
+    public synchronized byte[] getBody() {
+        if (this.body == null && this.bodyBuffer != null) {
+            ByteBuf buffer = this.bodyBuffer;
+            this.bodyBuffer = null;
+            try {
+                byte[] bytes = new byte[buffer.readableBytes()];
+                buffer.getBytes(buffer.readerIndex(), bytes);
+                this.body = bytes;
+            } finally {
+                buffer.release();
+            }
+        }
         return body;
     }
 
-    public void setBody(byte[] body) {
+    public synchronized void setBody(byte[] body) {
         this.body = body;
     }
 
+    /**
+     * @return body written after {@link #getBody()}, or the body of a command decoded without copying, see
+     * {@link #decode(ByteBuf)}. It stays owned by the command.
+     */
+    public synchronized ByteBuf getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * Sets a body which is written to the channel as it is, only supported by {@link com.pantheon.remoting.netty.NettyEncoder}.
+     * The command takes over one reference of the buffer, it is released once written. A write that fails before it
+     * reaches the encoder does not release it, the writer adds {@link #releaseBodyOnFailure()} to the write future.
+     */
+    public synchronized void setBodyBuffer(ByteBuf bodyBuffer) {
+        this.bodyBuffer = bodyBuffer;
+    }
+
+    /**
+     * Take the body buffer over, for the encoder writing it.
+     *
+     * @return the body buffer the caller now releases, null if there is none
+     */
+    public synchronized ByteBuf takeBodyBuffer() {
+        ByteBuf buffer = this.bodyBuffer;
+        this.bodyBuffer = null;
+        return buffer;
+    }
+
+    /**
+     * Release the body buffer of a command that is not going to be written, or of a decoded command once it is
+     * processed.
+     */
+    public synchronized void releaseBodyBuffer() {
+        ByteBuf buffer = this.bodyBuffer;
+        this.bodyBuffer = null;
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * @return listener of the write of this command releasing the body buffer if the write fails, a no-op if the
+     * encoder has taken the buffer over already
+     */
+    public ChannelFutureListener releaseBodyOnFailure() {
+        return new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    releaseBodyBuffer();
+                }
+            }
+        };
+    }
+
     public HashMap<String, String> getExtFields() {
         return extFields;
     }
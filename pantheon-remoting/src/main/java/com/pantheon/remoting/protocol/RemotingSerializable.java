@@ -18,15 +18,92 @@ package com.pantheon.remoting.protocol;
 
 import com.alibaba.fastjson.JSON;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Anthony
  * @create 2021/11/17
  * @desc fastjson to serialize and deserialize data
+ * <p>
+ * Types with a registered {@link CompactCodec} are written in the compact binary format instead when the command
+ * carrying them uses {@link SerializeType#PANTHEON}. A compact body starts with {@link #COMPACT_MAGIC} and the format
+ * version, which a json body never starts with, so decoding tells the formats apart by itself.
  **/
 public abstract class RemotingSerializable {
     private final static Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+    public static final byte COMPACT_MAGIC = (byte) 0xC7;
+    public static final byte COMPACT_VERSION = 1;
+    private static final ConcurrentMap<Class<?>, CompactCodec<?>> COMPACT_CODECS =
+            new ConcurrentHashMap<Class<?>, CompactCodec<?>>();
+
+    public static <T> void registerCompactCodec(Class<T> type, CompactCodec<T> codec) {
+        COMPACT_CODECS.put(type, codec);
+    }
+
+    /**
+     * @return null if the type has no compact codec
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> CompactCodec<T> getCompactCodec(Class<T> type) {
+        CompactCodec<?> codec = COMPACT_CODECS.get(type);
+        if (codec == null) {
+            // codecs are registered by the static initializer of their type, which may not have run yet
+            try {
+                Class.forName(type.getName(), true, type.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+            codec = COMPACT_CODECS.get(type);
+        }
+        return (CompactCodec<T>) codec;
+    }
+
+    /**
+     * @return json bytes, or the compact bytes for {@link SerializeType#PANTHEON} if the type has a compact codec
+     */
+    public static byte[] encode(final Object obj, SerializeType serializeType) {
+        if (serializeType != SerializeType.PANTHEON || getCompactCodec(obj.getClass()) == null) {
+            return encode(obj);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(obj, serializeType, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("compact encode of " + obj.getClass().getSimpleName() + " failed", e);
+        }
+    }
+
+    /**
+     * write the body to a stream without building it in memory first, the stream is flushed but not closed
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeTo(final Object obj, SerializeType serializeType, OutputStream out) throws IOException {
+        CompactCodec<Object> codec = serializeType == SerializeType.PANTHEON
+                ? (CompactCodec<Object>) getCompactCodec(obj.getClass()) : null;
+        if (codec == null) {
+            Writer writer = new OutputStreamWriter(out, CHARSET_UTF8);
+            JSON.writeJSONString(writer, obj);
+            writer.flush();
+            return;
+        }
+        CompactWriter writer = new CompactWriter(out);
+        writer.writeByte(COMPACT_MAGIC);
+        writer.writeByte(COMPACT_VERSION);
+        codec.write(obj, writer);
+        writer.flush();
+    }
+
+    public static boolean isCompact(final byte[] data) {
+        return data != null && data.length >= 2 && data[0] == COMPACT_MAGIC;
+    }
 
     public static byte[] encode(final Object obj) {
         final String json = toJson(obj, false);
@@ -40,11 +117,32 @@ public abstract class RemotingSerializable {
         return JSON.toJSONString(obj, prettyFormat);
     }
 
+    /**
+     * @param data json or compact bytes
+     */
     public static <T> T decode(final byte[] data, Class<T> classOfT) {
+        if (isCompact(data)) {
+            return decodeCompact(data, classOfT);
+        }
         final String json = new String(data, CHARSET_UTF8);
         return fromJson(json, classOfT);
     }
 
+    private static <T> T decodeCompact(final byte[] data, Class<T> classOfT) {
+        if (data[1] != COMPACT_VERSION) {
+            throw new IllegalArgumentException("unsupported compact body version " + data[1]);
+        }
+        CompactCodec<T> codec = getCompactCodec(classOfT);
+        if (codec == null) {
+            throw new IllegalArgumentException("no compact codec for " + classOfT.getName());
+        }
+        try {
+            return codec.read(new CompactReader(data, 2, data.length - 2));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed compact body of " + classOfT.getSimpleName(), e);
+        }
+    }
+
     public static <T> T fromJson(String json, Class<T> classOfT) {
         return JSON.parseObject(json, classOfT);
     }
@@ -57,6 +155,10 @@ public abstract class RemotingSerializable {
         return null;
     }
 
+    public byte[] encode(SerializeType serializeType) {
+        return encode(this, serializeType);
+    }
+
     public String toJson() {
         return toJson(false);
     }
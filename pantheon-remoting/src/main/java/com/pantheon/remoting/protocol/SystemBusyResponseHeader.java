@@ -0,0 +1,26 @@
+package com.pantheon.remoting.protocol;
+
+import com.pantheon.remoting.CommandCustomHeader;
+import com.pantheon.remoting.exception.RemotingCommandException;
+
+/**
+ * @author Anthony
+ * @create 2021/12/30
+ * @desc header of a {@link RemotingSysResponseCode#SYSTEM_BUSY} response, how long the server asks the client to wait
+ * before retrying
+ */
+public class SystemBusyResponseHeader implements CommandCustomHeader {
+    private Long retryAfterMillis;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {
+    }
+
+    public Long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public void setRetryAfterMillis(Long retryAfterMillis) {
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
@@ -0,0 +1,135 @@
+package com.pantheon.remoting.compression;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class Lz4CompressionCodecTest {
+    private final Lz4CompressionCodec codec = new Lz4CompressionCodec();
+
+    private byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OutputStream out = codec.compress(bos);
+        out.write(data);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private byte[] roundTrip(byte[] data) throws IOException {
+        byte[] compressed = compress(data);
+        byte[] decompressed = CompressionCodecs.decompress(codec, compressed);
+        assertArrayEquals(data, decompressed);
+        return compressed;
+    }
+
+    private void assertRejected(byte[] compressed) {
+        try {
+            CompressionCodecs.decompress(codec, compressed);
+            fail("a malformed payload is not decompressed");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] registryLike(int size) {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; json.length() < size; i++) {
+            json.append("{\"appName\":\"service-").append(i % 37).append("\",\"instanceId\":\"i-").append(i)
+                    .append("\",\"ipAddr\":\"10.0.").append(i % 256).append('.').append(i * 7 % 256)
+                    .append("\",\"port\":").append(8000 + i % 100).append(",\"status\":\"UP\"},");
+        }
+        return Arrays.copyOf(json.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    @Test
+    public void emptyAndTinyPayloads() throws IOException {
+        roundTrip(new byte[0]);
+        roundTrip(new byte[]{42});
+        // shorter than the last literals and match limits
+        roundTrip("abcdabcdabcd".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void incompressiblePayload() throws IOException {
+        byte[] random = new byte[100000];
+        new Random(7).nextBytes(random);
+        byte[] compressed = roundTrip(random);
+        assertTrue(compressed.length <= random.length + random.length / 255 + 16 + 4);
+    }
+
+    @Test
+    public void highlyRepetitivePayload() throws IOException {
+        byte[] zeros = new byte[1 << 20];
+        byte[] compressed = roundTrip(zeros);
+        assertTrue(compressed.length < zeros.length / 200);
+        byte[] pattern = new byte[300000];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) "abc".charAt(i % 3);
+        }
+        roundTrip(pattern);
+    }
+
+    @Test
+    public void payloadLongerThanTheMatchWindow() throws IOException {
+        byte[] registry = registryLike(512 * 1024);
+        byte[] compressed = roundTrip(registry);
+        assertTrue(compressed.length < registry.length / 2);
+    }
+
+    @Test
+    public void truncatedBlocksAreRejected() throws IOException {
+        byte[] compressed = compress(registryLike(100000));
+        for (int length : new int[]{2, 4, 5, compressed.length / 2, compressed.length - 1}) {
+            assertRejected(Arrays.copyOf(compressed, length));
+        }
+    }
+
+    @Test
+    public void aLengthTheBlockCannotExpandToIsRejected() throws IOException {
+        byte[] compressed = compress(registryLike(1000));
+        // claims 2 GB, rejected without allocating it
+        compressed[0] = 0x7F;
+        assertRejected(compressed);
+        compressed[0] = (byte) 0x80;
+        assertRejected(compressed);
+    }
+
+    @Test
+    public void aLengthTheBlockDoesNotMatchIsRejected() throws IOException {
+        byte[] compressed = compress(registryLike(1000));
+        compressed[3]++;
+        assertRejected(compressed);
+        compressed[3] -= 2;
+        assertRejected(compressed);
+    }
+
+    @Test
+    public void corruptedBlocksFailWithAnIOException() throws IOException {
+        byte[] original = registryLike(20000);
+        byte[] compressed = compress(original);
+        Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            byte[] corrupted = compressed.clone();
+            int position = 4 + random.nextInt(corrupted.length - 4);
+            corrupted[position] = (byte) random.nextInt(256);
+            try {
+                CompressionCodecs.decompress(codec, corrupted);
+            } catch (IOException expected) {
+                // a corrupted literal decodes to other bytes of the same length, anything else is rejected
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.pantheon.remoting.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class FlushConsolidationHandlerTest {
+
+    /**
+     * counts the flushes that get past the handler in front of it
+     */
+    @ChannelHandler.Sharable
+    private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+        private final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.incrementAndGet();
+            ctx.flush();
+        }
+    }
+
+    @Test
+    public void aFlushOnAnIdleEventLoopGoesOutAtOnce() throws Exception {
+        LocalEventLoopGroup serverGroup = new LocalEventLoopGroup(1);
+        LocalEventLoopGroup clientGroup = new LocalEventLoopGroup(1);
+        final FlushCounter counter = new FlushCounter();
+        try {
+            LocalAddress address = new LocalAddress("flush-consolidation-test");
+            new ServerBootstrap().group(serverGroup).channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter()).bind(address).sync();
+            final Channel channel = new Bootstrap().group(clientGroup).channel(LocalChannel.class)
+                    .handler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            ch.pipeline().addLast(counter, new FlushConsolidationHandler(256));
+                        }
+                    }).connect(address).sync().channel();
+
+            int flushesRightAfter = channel.eventLoop().submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    channel.write(Unpooled.wrappedBuffer(new byte[]{1}));
+                    channel.flush();
+                    return counter.flushes.get();
+                }
+            }).get();
+            assertEquals(1, flushesRightAfter);
+
+            // with a task queued the flush waits behind it, and goes out with the writes of that task
+            flushesRightAfter = channel.eventLoop().submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    channel.eventLoop().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            channel.write(Unpooled.wrappedBuffer(new byte[]{2}));
+                            channel.flush();
+                        }
+                    });
+                    channel.write(Unpooled.wrappedBuffer(new byte[]{3}));
+                    channel.flush();
+                    return counter.flushes.get();
+                }
+            }).get();
+            assertEquals(1, flushesRightAfter);
+            channel.eventLoop().submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).sync();
+            assertEquals(2, counter.flushes.get());
+            channel.close().sync();
+        } finally {
+            clientGroup.shutdownGracefully().sync();
+            serverGroup.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    public void aFlushDuringAReadWaitsForTheReadToComplete() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidationHandler(256));
+        channel.pipeline().fireChannelRead("request");
+        channel.write("response 1");
+        channel.flush();
+        channel.write("response 2");
+        channel.flush();
+        channel.runPendingTasks();
+        assertEquals(0, counter.flushes.get());
+
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(1, counter.flushes.get());
+        assertEquals("response 1", channel.readOutbound());
+        assertEquals("response 2", channel.readOutbound());
+        channel.finish();
+    }
+
+    @Test
+    public void theLimitForcesAFlush() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidationHandler(3));
+        channel.pipeline().fireChannelRead("request");
+        for (int i = 0; i < 2; i++) {
+            channel.write("response " + i);
+            channel.flush();
+        }
+        assertEquals(0, counter.flushes.get());
+        channel.write("response 2");
+        channel.flush();
+        assertEquals(1, counter.flushes.get());
+
+        // the count starts over after a flush
+        channel.write("response 3");
+        channel.flush();
+        assertEquals(1, counter.flushes.get());
+        channel.pipeline().fireChannelReadComplete();
+        assertEquals(2, counter.flushes.get());
+        channel.finish();
+    }
+
+    @Test
+    public void theHeldFramesGoOutOnceTheChannelTurnsUnwritable() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidationHandler(256));
+        channel.config().setWriteBufferLowWaterMark(8);
+        channel.config().setWriteBufferHighWaterMark(16);
+        channel.pipeline().fireChannelRead("request");
+        channel.write(Unpooled.wrappedBuffer(new byte[8]));
+        channel.flush();
+        assertEquals(0, counter.flushes.get());
+
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+        assertEquals(1, counter.flushes.get());
+        channel.finish();
+        for (Object written; (written = channel.readOutbound()) != null; ) {
+            ReferenceCountUtil.release(written);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.pantheon.remoting.netty;
+
+import com.pantheon.remoting.ChannelEventListener;
+import com.pantheon.remoting.RPCHook;
+import com.pantheon.remoting.protocol.RemotingCommand;
+import com.pantheon.remoting.protocol.RemotingSysResponseCode;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class NettyRemotingClientTest {
+    private static final int REQUEST_CODE = 1;
+    private static final String FAIL_REMARK = "fail";
+
+    private NettyRemotingServer server;
+    private NettyRemotingClient client;
+    private ExecutorService processorExecutor;
+    private String addr;
+    private final AtomicReference<Channel> clientChannel = new AtomicReference<Channel>();
+    private final CountDownLatch connected = new CountDownLatch(1);
+
+    /**
+     * counts the writes and flushes reaching the socket
+     */
+    @ChannelHandler.Sharable
+    private static class WriteCounter extends ChannelOutboundHandlerAdapter {
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            writes.incrementAndGet();
+            ctx.write(msg, promise);
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.incrementAndGet();
+            ctx.flush();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NettyServerConfig serverConfig = new NettyServerConfig();
+        serverConfig.setListenPort(0);
+        server = new NettyRemotingServer(serverConfig);
+        processorExecutor = Executors.newSingleThreadExecutor();
+        server.registerProcessor(REQUEST_CODE, new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SUCCESS, null);
+                response.setOpaque(request.getOpaque());
+                return response;
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, processorExecutor);
+        server.start();
+        addr = "127.0.0.1:" + server.localListenPort();
+
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        // every flush reaches the socket, so the ones of the batch are counted as they are
+        clientConfig.setClientFlushConsolidationLimit(0);
+        client = new NettyRemotingClient(clientConfig, new ChannelEventListener() {
+            @Override
+            public void onChannelConnect(String remoteAddr, Channel channel) {
+                clientChannel.set(channel);
+                connected.countDown();
+            }
+
+            @Override
+            public void onChannelClose(String remoteAddr, Channel channel) {
+            }
+
+            @Override
+            public void onChannelException(String remoteAddr, Channel channel) {
+            }
+
+            @Override
+            public void onChannelIdle(String remoteAddr, Channel channel) {
+            }
+        });
+        client.registerRPCHook(new RPCHook() {
+            @Override
+            public void doBeforeRequest(String remoteAddr, RemotingCommand request) {
+                if (FAIL_REMARK.equals(request.getRemark())) {
+                    throw new IllegalStateException("refused by the hook");
+                }
+            }
+
+            @Override
+            public void doAfterResponse(String remoteAddr, RemotingCommand request, RemotingCommand response) {
+            }
+        });
+        client.start();
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.shutdown();
+        processorExecutor.shutdown();
+    }
+
+    private WriteCounter connectAndCount() throws Exception {
+        assertEquals(RemotingSysResponseCode.SUCCESS, client.invokeSync(addr, request(null), 3000).getCode());
+        assertTrue(connected.await(3, TimeUnit.SECONDS));
+        WriteCounter counter = new WriteCounter();
+        clientChannel.get().pipeline().addFirst(counter);
+        return counter;
+    }
+
+    private static RemotingCommand request(String remark) {
+        RemotingCommand request = RemotingCommand.createRequestCommand(REQUEST_CODE, null);
+        request.setRemark(remark);
+        return request;
+    }
+
+    @Test
+    public void aBatchIsWrittenWithOneFlush() throws Exception {
+        WriteCounter counter = connectAndCount();
+        List<RemotingCommand> requests = new ArrayList<RemotingCommand>();
+        for (int i = 0; i < 16; i++) {
+            requests.add(request(null));
+        }
+        List<CompletableFuture<RemotingCommand>> futures = client.invokeAsyncBatch(addr, requests, 3000);
+        for (CompletableFuture<RemotingCommand> future : futures) {
+            assertEquals(RemotingSysResponseCode.SUCCESS, future.get(3, TimeUnit.SECONDS).getCode());
+        }
+        assertEquals(16, counter.writes.get());
+        assertEquals(1, counter.flushes.get());
+    }
+
+    @Test
+    public void theRequestsPastAFailureFailWithIt() throws Exception {
+        WriteCounter counter = connectAndCount();
+        List<RemotingCommand> requests = new ArrayList<RemotingCommand>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(request(i == 3 ? FAIL_REMARK : null));
+        }
+        List<CompletableFuture<RemotingCommand>> futures = client.invokeAsyncBatch(addr, requests, 3000);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RemotingSysResponseCode.SUCCESS, futures.get(i).get(3, TimeUnit.SECONDS).getCode());
+        }
+        Throwable cause = null;
+        for (int i = 3; i < 5; i++) {
+            try {
+                futures.get(i).get(3, TimeUnit.SECONDS);
+                fail("request " + i + " was sent past the failure");
+            } catch (ExecutionException e) {
+                if (cause == null) {
+                    cause = e.getCause();
+                }
+                assertSame(cause, e.getCause());
+            }
+        }
+        assertTrue(cause instanceof IllegalStateException);
+        // the requests written before the failure still go out, with one flush
+        assertEquals(3, counter.writes.get());
+        assertEquals(1, counter.flushes.get());
+    }
+}
@@ -0,0 +1,114 @@
+package com.pantheon.remoting.protocol;
+
+import com.pantheon.remoting.netty.NettyEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class RemotingCommandTest {
+
+    private static RemotingCommand responseWithBodyBuffer(ByteBuf body) {
+        RemotingCommand response = RemotingCommand.createResponseCommand(0, null);
+        response.setBodyBuffer(body);
+        return response;
+    }
+
+    @Test
+    public void aFailedWriteReleasesTheBodyBuffer() {
+        ByteBuf body = PooledByteBufAllocator.DEFAULT.directBuffer(16).writeLong(42L);
+        RemotingCommand response = responseWithBodyBuffer(body);
+        // no encoder, so the write fails at the closed channel without anyone taking the buffer over
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.close();
+        assertFalse(channel.writeAndFlush(response).addListener(response.releaseBodyOnFailure()).isSuccess());
+        assertEquals(0, body.refCnt());
+        assertNull(response.getBodyBuffer());
+    }
+
+    @Test
+    public void anEncodedBodyBufferIsWrittenAsItIs() {
+        ByteBuf body = PooledByteBufAllocator.DEFAULT.directBuffer(16).writeLong(42L);
+        RemotingCommand response = responseWithBodyBuffer(body);
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyEncoder());
+        assertTrue(channel.writeAndFlush(response).addListener(response.releaseBodyOnFailure()).isSuccess());
+        ByteBuf header = (ByteBuf) channel.readOutbound();
+        ByteBuf written = (ByteBuf) channel.readOutbound();
+        assertEquals(body, written);
+        assertEquals(1, body.refCnt());
+        header.release();
+        written.release();
+        assertEquals(0, body.refCnt());
+    }
+
+    /**
+     * decoded like a received frame, the body a slice of a pooled buffer
+     */
+    private static RemotingCommand decodeWithBody(byte[] body) {
+        RemotingCommand command = RemotingCommand.createResponseCommand(0, null);
+        command.setBody(body);
+        ByteBuffer encoded = command.encode();
+        encoded.getInt();
+        ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(encoded.remaining());
+        frame.writeBytes(encoded);
+        return RemotingCommand.decode(frame);
+    }
+
+    @Test
+    public void theBodyIsCopiedOnceAndTheFrameReleased() {
+        RemotingCommand decoded = decodeWithBody(new byte[]{1, 2, 3});
+        ByteBuf frame = decoded.getBodyBuffer();
+        assertEquals(1, frame.refCnt());
+        byte[] body = decoded.getBody();
+        assertArrayEquals(new byte[]{1, 2, 3}, body);
+        assertEquals(0, frame.refCnt());
+        assertNull(decoded.getBodyBuffer());
+        assertSame(body, decoded.getBody());
+    }
+
+    @Test
+    public void concurrentReadersReleaseTheFrameOnce() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            final RemotingCommand decoded = decodeWithBody(new byte[64]);
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread[] readers = new Thread[4];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            assertEquals(64, decoded.getBody().length);
+                            decoded.releaseBodyBuffer();
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                });
+                readers[i].start();
+            }
+            start.countDown();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertNull(failure.get());
+        }
+    }
+}
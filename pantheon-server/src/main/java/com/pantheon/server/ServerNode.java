@@ -12,14 +12,19 @@ import com.pantheon.remoting.netty.NettyServerConfig;
 import com.pantheon.remoting.protocol.RemotingCommand;
 import com.pantheon.server.client.ClientHousekeepingService;
 import com.pantheon.server.client.ConsumerInfoManager;
+import com.pantheon.server.client.RegistryChangePusher;
 import com.pantheon.server.client.ServerToClient;
 import com.pantheon.server.config.CachedPantheonServerConfig;
 import com.pantheon.server.config.PantheonServerConfig;
+import com.pantheon.server.lease.LeaseEvictionManager;
 import com.pantheon.server.network.ServerMessageReceiver;
 import com.pantheon.server.network.ServerNetworkManager;
 import com.pantheon.server.node.*;
+import com.pantheon.server.processor.AdmissionController;
 import com.pantheon.server.processor.ClientManageProcessor;
+import com.pantheon.server.processor.DeltaLongPollHolder;
 import com.pantheon.server.processor.ServerNodeProcessor;
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
 import com.pantheon.server.slot.SlotManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,16 +37,18 @@ import java.util.concurrent.*;
  * @create 2021/11/18
  * @desc
  *  1 todo building slots mechanism and treat it as something like topic in RocketMq
- *  2 todo server side push services clients' register
- *  3 todo heartbeat check and heartbeat past due
- *  4 todo rebuild master election mechanism  reference from ElasticSearch
+ *  3 todo rebuild master election mechanism  reference from ElasticSearch
  **/
 public class ServerNode extends AbstractLifecycleComponent {
     private final ThreadPoolExecutor heartbeatExecutor;
-    private final ThreadPoolExecutor serviceManageExecutor;
+    private final ThreadPoolExecutor writeExecutor;
+    private final ThreadPoolExecutor readExecutor;
+    private final AdmissionController admissionController;
+    private final DeltaLongPollHolder deltaLongPollHolder;
     private final ServerToClient serverToClient;
     private final ConsumerInfoManager consumerInfoManager;
     private final ClientHousekeepingService clientHousekeepingService;
+    private RegistryChangePusher registryChangePusher;
     private NettyServerConfig nettyServerConfig;
     private PantheonServerConfig serverConfig;
     private RemotingServer remotingServer;
@@ -49,6 +56,8 @@ public class ServerNode extends AbstractLifecycleComponent {
     private ClientManageProcessor clientManageProcessor;
     private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl(
             "ServerControllerScheduledThread"));
+    private final ScheduledExecutorService evictionScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl(
+            "LeaseEvictionScheduledThread", true));
     private static final Logger logger = LoggerFactory.getLogger(ServerBootstrap.class);
 
     private volatile static ServerNodeRole serverNodeRole = ServerNodeRole.COMMON_NODE;
@@ -59,21 +68,34 @@ public class ServerNode extends AbstractLifecycleComponent {
         this.serverToClient = new ServerToClient(this);
         this.consumerInfoManager = new ConsumerInfoManager(this);
         this.clientHousekeepingService = new ClientHousekeepingService(this);
+        //heartbeat, write and read requests run in separate lanes, a burst of fetches never delays a renew
         this.heartbeatExecutor = new ThreadPoolExecutor(
-                1,
-                1,
+                serverConfig.getHeartbeatThreadPoolNums(),
+                serverConfig.getHeartbeatThreadPoolNums(),
                 1000 * 60,
                 TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>(5000),
-                new ThreadFactoryImpl("InstanceHeartbeatThread_", true));
+                new LinkedBlockingQueue<Runnable>(serverConfig.getHeartbeatThreadPoolQueueCapacity()),
+                new ThreadFactoryImpl("InstanceHeartbeatThread_", true, serverConfig.getHeartbeatThreadPriority()));
 
-        this.serviceManageExecutor = new ThreadPoolExecutor(
-                1,
-                1,
+        this.writeExecutor = new ThreadPoolExecutor(
+                serverConfig.getWriteThreadPoolNums(),
+                serverConfig.getWriteThreadPoolNums(),
                 1000 * 60,
                 TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>(5000),
-                new ThreadFactoryImpl("ServiceManageThread_", true));
+                new LinkedBlockingQueue<Runnable>(serverConfig.getWriteThreadPoolQueueCapacity()),
+                new ThreadFactoryImpl("ServiceManageThread_", true, serverConfig.getWriteThreadPriority()));
+
+        this.readExecutor = new ThreadPoolExecutor(
+                serverConfig.getReadThreadPoolNums(),
+                serverConfig.getReadThreadPoolNums(),
+                1000 * 60,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(serverConfig.getReadThreadPoolQueueCapacity()),
+                new ThreadFactoryImpl("RegistryFetchThread_", true, serverConfig.getReadThreadPriority()));
+        this.admissionController = new AdmissionController(serverConfig.getAdmissionTargetDelayMs(),
+                serverConfig.getAdmissionIntervalMs());
+        this.deltaLongPollHolder = new DeltaLongPollHolder(RouteInstanceToSlotRegistry.getInstance(), readExecutor,
+                serverConfig.getDeltaMaxHoldMs(), serverConfig.getRegistryPushCoalesceMs());
     }
 
     private static class Singleton {
@@ -94,12 +116,26 @@ public class ServerNode extends AbstractLifecycleComponent {
         //use threadpool to process management event
         clientManageProcessor = new ClientManageProcessor(this);
         remotingServer.registerProcessor(RequestCode.SERVICE_HEART_BEAT, clientManageProcessor, heartbeatExecutor);
-        remotingServer.registerProcessor(RequestCode.GET_ALL_APP, clientManageProcessor, heartbeatExecutor);
-        remotingServer.registerProcessor(RequestCode.GET_DELTA_APP, clientManageProcessor, heartbeatExecutor);
-        remotingServer.registerProcessor(RequestCode.SERVICE_UNREGISTER, clientManageProcessor, heartbeatExecutor);
-        remotingServer.registerProcessor(RequestCode.SERVICE_REGISTRY, clientManageProcessor, heartbeatExecutor);
+        remotingServer.registerProcessor(RequestCode.SERVICE_REGISTRY, clientManageProcessor, writeExecutor);
+        remotingServer.registerProcessor(RequestCode.SERVICE_UNREGISTER, clientManageProcessor, writeExecutor);
+        remotingServer.registerProcessor(RequestCode.GET_ALL_APP, clientManageProcessor, readExecutor);
+        remotingServer.registerProcessor(RequestCode.GET_DELTA_APP, clientManageProcessor, readExecutor);
+        remotingServer.registerProcessor(RequestCode.GET_IN_NEED_APP, clientManageProcessor, readExecutor);
+        //shed full fetches first and heartbeats never, the lanes not assigned here are routing requests
+        admissionController.assign(RequestCode.SERVICE_HEART_BEAT, AdmissionController.Lane.HEARTBEAT);
+        admissionController.assign(RequestCode.SERVICE_REGISTRY, AdmissionController.Lane.WRITE);
+        admissionController.assign(RequestCode.SERVICE_UNREGISTER, AdmissionController.Lane.WRITE);
+        admissionController.assign(RequestCode.GET_ALL_APP, AdmissionController.Lane.READ);
+        admissionController.assign(RequestCode.GET_DELTA_APP, AdmissionController.Lane.READ);
+        admissionController.assign(RequestCode.GET_IN_NEED_APP, AdmissionController.Lane.READ);
+        //delta fetches of up to date clients are held until the registry changes
+        RouteInstanceToSlotRegistry.getInstance().addChangeListener(deltaLongPollHolder);
 
         remotingServer.start();
+        //push registry changes to the connections subscribed to them
+        registryChangePusher = new RegistryChangePusher(this, RouteInstanceToSlotRegistry.getInstance(),
+                serverConfig.getRegistryPushCoalesceMs());
+        RouteInstanceToSlotRegistry.getInstance().addChangeListener(registryChangePusher);
         logger.info("server with id :{}, listen to client connection on tcp port :{}", serverConfig.getNodeId(), serverConfig.getNodeClientTcpPort());
     }
 
@@ -174,18 +210,30 @@ public class ServerNode extends AbstractLifecycleComponent {
                 }
             }
         }, 5000, serverConfig.getHeartBeatCheckInterval(), TimeUnit.MILLISECONDS);
+
+        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    ServerNode.this.printThreadPoolStatus();
+                } catch (Exception e) {
+                    logger.error("ScheduledTask printThreadPoolStatus exception", e);
+                }
+            }
+        }, 10000, serverConfig.getThreadPoolStatsIntervalMs(), TimeUnit.MILLISECONDS);
         //heartbeat check with connected instances，remove expired ones
-//        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
-//
-//            @Override
-//            public void run() {
-//                try {
-//                    ServerNode.this.heartBeatCheck();
-//                } catch (Exception e) {
-//                    logger.error("ScheduledTask heartBeatCheck exception", e);
-//                }
-//            }
-//        }, 5000, serverConfig.getHeartBeatCheckInterval(), TimeUnit.MILLISECONDS);
+        this.evictionScheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    ServerNode.this.heartBeatCheck();
+                } catch (Exception e) {
+                    logger.error("ScheduledTask heartBeatCheck exception", e);
+                }
+            }
+        }, 5, serverConfig.getHeartBeatCheckInterval(), TimeUnit.SECONDS);
 
     }
 
@@ -202,11 +250,49 @@ public class ServerNode extends AbstractLifecycleComponent {
     }
 
 
-    //todo heartbeat check and cache evict when timeout
+    /**
+     * print queue depth of every request lane, so that a lane falling behind can be spotted before [OVERLOAD]
+     */
+    public void printThreadPoolStatus() {
+        logger.info("[LANE] heartbeat queue size: {}, active: {}", getHeartbeatThreadPoolQueueSize(), heartbeatExecutor.getActiveCount());
+        logger.info("[LANE] write queue size: {}, active: {}", getWriteThreadPoolQueueSize(), writeExecutor.getActiveCount());
+        logger.info("[LANE] read queue size: {}, active: {}, held delta fetches: {}", new Object[]{getReadThreadPoolQueueSize(),
+                readExecutor.getActiveCount(), deltaLongPollHolder.getHeldFetchCount()});
+        for (AdmissionController.Lane lane : AdmissionController.Lane.values()) {
+            if (admissionController.isOverloaded(lane)) {
+                logger.warn("[LANE] {} overloaded, shedding its requests and the ones of less important lanes", lane);
+            }
+        }
+        logger.info("[PAYLOAD] registry payload {}", RouteInstanceToSlotRegistry.getInstance().getRegistryPayloadBuildMetrics());
+    }
+
+    public int getHeartbeatThreadPoolQueueSize() {
+        return this.heartbeatExecutor.getQueue().size();
+    }
+
+    public int getWriteThreadPoolQueueSize() {
+        return this.writeExecutor.getQueue().size();
+    }
+
+    public int getReadThreadPoolQueueSize() {
+        return this.readExecutor.getQueue().size();
+    }
+
+    /**
+     * evict instances whose lease expired, see {@link LeaseEvictionManager}
+     */
     private void heartBeatCheck() {
+        LeaseEvictionManager.getInstance().evict();
+    }
+
 
+    public AdmissionController getAdmissionController() {
+        return admissionController;
     }
 
+    public DeltaLongPollHolder getDeltaLongPollHolder() {
+        return deltaLongPollHolder;
+    }
 
     public PantheonServerConfig getServerConfig() {
         return serverConfig;
@@ -266,12 +352,21 @@ public class ServerNode extends AbstractLifecycleComponent {
 
     @Override
     protected void doStop() {
+        if (registryChangePusher != null) {
+            this.registryChangePusher.shutdown();
+        }
+        this.deltaLongPollHolder.shutdown();
         if (remotingServer != null) {
             this.remotingServer.shutdown();
         }
         if (remotingExecutor != null) {
             this.remotingExecutor.shutdown();
         }
+        this.heartbeatExecutor.shutdown();
+        this.writeExecutor.shutdown();
+        this.readExecutor.shutdown();
+        this.scheduledExecutorService.shutdown();
+        this.evictionScheduledExecutorService.shutdown();
         if (clientHousekeepingService != null) {
             this.clientHousekeepingService.shutdown();
         }
@@ -19,6 +19,9 @@ package com.pantheon.server.client;
 import com.pantheon.remoting.protocol.LanguageCode;
 import io.netty.channel.Channel;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * 对于每一个客户端，会根据clientID和连接对象Channel关联到一个ClientChannelInfo，用于标识该客户端实例。
  */
@@ -28,6 +31,8 @@ public class ClientChannelInfo {
     private final LanguageCode language;
     private final int version;
     private volatile long lastUpdateTimestamp = System.currentTimeMillis();
+    // slots the client subscribed to with its last heartbeat, indexed by ConsumerInfoManager
+    private volatile Set<Integer> subscribedSlots = Collections.emptySet();
 
     public ClientChannelInfo(Channel channel) {
         this(channel, null, null, 0);
@@ -64,16 +69,21 @@ public class ClientChannelInfo {
         this.lastUpdateTimestamp = lastUpdateTimestamp;
     }
 
+    public Set<Integer> getSubscribedSlots() {
+        return subscribedSlots;
+    }
+
+    public void setSubscribedSlots(Set<Integer> subscribedSlots) {
+        this.subscribedSlots = subscribedSlots;
+    }
+
+    /**
+     * consistent with {@link #equals(Object)}, only the channel, so the info keeps its place in the subscriber sets while
+     * its timestamp is updated
+     */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((channel == null) ? 0 : channel.hashCode());
-        result = prime * result + ((clientId == null) ? 0 : clientId.hashCode());
-        result = prime * result + ((language == null) ? 0 : language.hashCode());
-        result = prime * result + (int) (lastUpdateTimestamp ^ (lastUpdateTimestamp >>> 32));
-        result = prime * result + version;
-        return result;
+        return (channel == null) ? 0 : channel.hashCode();
     }
 
     @Override
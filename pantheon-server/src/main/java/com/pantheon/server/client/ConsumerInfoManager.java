@@ -21,10 +21,14 @@ import com.pantheon.remoting.common.RemotingHelper;
 import com.pantheon.remoting.common.RemotingUtil;
 import com.pantheon.server.ServerNode;
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
@@ -32,14 +36,27 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+/**
+ * the connected clients and what they subscribed to.
+ * <p>
+ * Every client is one {@link ClientChannelInfo}, found by its channel through a channel attribute, by its clientId, and
+ * by every slot it subscribed to, so no lookup scans the clients. A heartbeat only updates the slots whose
+ * subscription changed.
+ */
 public class ConsumerInfoManager {
     private static final long CHANNEL_EXPIRED_TIMEOUT = 1000 * 120;
     private static final Logger log = LoggerFactory.getLogger(ConsumerInfoManager.class);
-    private final ConcurrentMap<Integer/*slotNum*/, SubscriptionData> subscriptionTable =
-        new ConcurrentHashMap<Integer, SubscriptionData>();
+    private static final AttributeKey<ClientChannelInfo> CLIENT_CHANNEL_INFO = AttributeKey.valueOf("pantheonClientChannelInfo");
+    //clients subscribed to every slot
+    private final ConcurrentMap<Integer/*slotNum*/, Set<ClientChannelInfo>> subscriptionTable =
+        new ConcurrentHashMap<Integer, Set<ClientChannelInfo>>();
     //bind channel with clientId
     private final ConcurrentMap<Channel, ClientChannelInfo> channelInfoTable =
         new ConcurrentHashMap<Channel, ClientChannelInfo>(16);
+    private final ConcurrentMap<String/*clientId*/, ClientChannelInfo> clientIdTable =
+        new ConcurrentHashMap<String, ClientChannelInfo>(16);
+    //channels the changes of the whole registry are pushed to
+    private final Set<Channel> registrySubscribers = ConcurrentHashMap.<Channel>newKeySet();
     private final ServerNode serverNode;
     private volatile long lastUpdateTimestamp = System.currentTimeMillis();
 
@@ -48,28 +65,12 @@ public class ConsumerInfoManager {
     }
 
     public ClientChannelInfo findChannel(final String clientId) {
-        Iterator<Entry<Channel, ClientChannelInfo>> it = this.channelInfoTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Channel, ClientChannelInfo> next = it.next();
-            if (next.getValue().getClientId().equals(clientId)) {
-                return next.getValue();
-            }
-        }
-
-        return null;
+        return clientId == null ? null : this.clientIdTable.get(clientId);
     }
 
     public String findClientId(final Channel channel) {
-        Iterator<Entry<Channel, ClientChannelInfo>> it = this.channelInfoTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Channel, ClientChannelInfo> next = it.next();
-            if (next.getKey().equals(channel)) {
-                ClientChannelInfo value = next.getValue();
-                return value.getClientId();
-            }
-        }
-
-        return null;
+        ClientChannelInfo info = channel.attr(CLIENT_CHANNEL_INFO).get();
+        return info == null ? null : info.getClientId();
     }
 
 
@@ -84,7 +85,9 @@ public class ConsumerInfoManager {
                             "SCAN: remove expired channel from ConsumerManager consumerTable. channel={}, consumerGroup={}",
                             RemotingHelper.parseChannelRemoteAddr(clientChannelInfo.getChannel()));
                     RemotingUtil.closeChannel(clientChannelInfo.getChannel());
+                    registrySubscribers.remove(clientChannelInfo.getChannel());
                     itChannel.remove();
+                    unbind(clientChannelInfo);
                 }
             }
 
@@ -96,7 +99,7 @@ public class ConsumerInfoManager {
     }
 
 
-    public ConcurrentMap<Integer, SubscriptionData> getSubscriptionTable() {
+    public ConcurrentMap<Integer, Set<ClientChannelInfo>> getSubscriptionTable() {
         return subscriptionTable;
     }
 
@@ -127,15 +130,21 @@ public class ConsumerInfoManager {
     }
 
     public void unregisterChannel(final ClientChannelInfo clientChannelInfo) {
+        registrySubscribers.remove(clientChannelInfo.getChannel());
         ClientChannelInfo old = this.channelInfoTable.remove(clientChannelInfo.getChannel());
         if (old != null) {
+            unbind(old);
             log.info("unregister a consumer from consumerInfo {}",  old.toString());
         }
     }
 
     public boolean doChannelCloseEvent(final String remoteAddr, final Channel channel) {
+        if (registrySubscribers.remove(channel)) {
+            log.info("NETTY EVENT: remove registry subscriber channel[{}]", remoteAddr);
+        }
         final ClientChannelInfo info = this.channelInfoTable.remove(channel);
         if (info != null) {
+            unbind(info);
             log.warn(
                 "NETTY EVENT: remove not active channel[{}] fromchannelInfoTable",
                 info.toString());
@@ -149,21 +158,26 @@ public class ConsumerInfoManager {
         boolean updated = false;
 
 
-        ClientChannelInfo infoOld = this.channelInfoTable.get(infoNew.getChannel());
+        ClientChannelInfo infoOld = infoNew.getChannel().attr(CLIENT_CHANNEL_INFO).get();
         if (null == infoOld) {
-            ClientChannelInfo prev = this.channelInfoTable.put(infoNew.getChannel(), infoNew);
+            ClientChannelInfo prev = this.channelInfoTable.putIfAbsent(infoNew.getChannel(), infoNew);
             if (null == prev) {
+                bind(infoNew);
                 log.info("new consumer connected, channel: {}", infoNew.toString());
                 updated = true;
+                infoOld = infoNew;
+            } else {
+                infoOld = prev;
             }
-
-            infoOld = infoNew;
         } else {
-            if (!infoOld.getClientId().equals(infoNew.getClientId())) {
+            if (!equals(infoOld.getClientId(), infoNew.getClientId())) {
                 log.error("[BUG] consumer channel exist in server, but clientId not equal.OLD: {} NEW: {} ",
                     infoOld.toString(),
                     infoNew.toString());
+                unbind(infoOld);
                 this.channelInfoTable.put(infoNew.getChannel(), infoNew);
+                bind(infoNew);
+                infoOld = infoNew;
             }
         }
 
@@ -174,53 +188,64 @@ public class ConsumerInfoManager {
     }
 
 
+    /**
+     * refresh the timestamp of a known channel without building a new {@link ClientChannelInfo}
+     *
+     * @return false if the channel is not known yet and has to be registered
+     */
+    public boolean touchChannel(final Channel channel) {
+        ClientChannelInfo info = channel.attr(CLIENT_CHANNEL_INFO).get();
+        if (info == null) {
+            return false;
+        }
+        this.lastUpdateTimestamp = System.currentTimeMillis();
+        info.setLastUpdateTimestamp(this.lastUpdateTimestamp);
+        return true;
+    }
+
     public boolean registerConsumer(final ClientChannelInfo clientChannelInfo,
                                     final Set<SubscriptionData> subList) {
 
         boolean r1 =
                 updateChannel(clientChannelInfo);
-        boolean r2 = updateSubscription(subList);
+        ClientChannelInfo info = clientChannelInfo.getChannel().attr(CLIENT_CHANNEL_INFO).get();
+        boolean r2 = info != null && updateSubscription(info, subList);
 
         return r1 || r2;
     }
 
-    public boolean updateSubscription(final Set<SubscriptionData> subList) {
-        boolean updated = false;
-
+    /**
+     * replace the slots the client subscribed to, only the slots added or removed are touched
+     */
+    public boolean updateSubscription(final ClientChannelInfo info, final Set<SubscriptionData> subList) {
+        Set<Integer> slots = new HashSet<Integer>();
         for (SubscriptionData sub : subList) {
-            SubscriptionData old = this.subscriptionTable.get(sub.getSlotNum());
-            if (old == null) {
-                SubscriptionData prev = this.subscriptionTable.putIfAbsent(sub.getSlotNum(), sub);
-                if (null == prev) {
-                    updated = true;
-                    log.info("subscription changed, add new topic, {}",
-                        sub.toString());
-                }
+            if (sub.getSlotNum() != null) {
+                slots.add(sub.getSlotNum());
             }
         }
 
-        Iterator<Entry<Integer, SubscriptionData>> it = this.subscriptionTable.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Integer, SubscriptionData> next = it.next();
-            Integer oldSlot = next.getKey();
-
-            boolean exist = false;
-            for (SubscriptionData sub : subList) {
-                if (sub.getSlotNum().equals(oldSlot)) {
-                    exist = true;
-                    break;
+        boolean updated = false;
+        synchronized (info) {
+            Set<Integer> oldSlots = info.getSubscribedSlots();
+            if (oldSlots.equals(slots)) {
+                return false;
+            }
+            for (Integer slot : slots) {
+                if (!oldSlots.contains(slot)) {
+                    addSubscriber(slot, info);
+                    log.info("subscription changed, {} add slot {}", info.getClientId(), slot);
+                    updated = true;
                 }
             }
-
-            if (!exist) {
-                log.warn("subscription changed, remove slot {} {}",
-                    oldSlot,
-                    next.getValue().toString()
-                );
-
-                it.remove();
-                updated = true;
+            for (Integer oldSlot : oldSlots) {
+                if (!slots.contains(oldSlot)) {
+                    removeSubscriber(oldSlot, info);
+                    log.warn("subscription changed, {} remove slot {}", info.getClientId(), oldSlot);
+                    updated = true;
+                }
             }
+            info.setSubscribedSlots(slots.isEmpty() ? Collections.<Integer>emptySet() : Collections.unmodifiableSet(slots));
         }
 
         this.lastUpdateTimestamp = System.currentTimeMillis();
@@ -228,12 +253,87 @@ public class ConsumerInfoManager {
         return updated;
     }
 
+    private void addSubscriber(Integer slot, final ClientChannelInfo info) {
+        subscriptionTable.compute(slot, (key, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = ConcurrentHashMap.<ClientChannelInfo>newKeySet();
+            }
+            subscribers.add(info);
+            return subscribers;
+        });
+    }
+
+    private void removeSubscriber(Integer slot, final ClientChannelInfo info) {
+        subscriptionTable.computeIfPresent(slot, (key, subscribers) -> {
+            subscribers.remove(info);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private void bind(ClientChannelInfo info) {
+        info.getChannel().attr(CLIENT_CHANNEL_INFO).set(info);
+        if (info.getClientId() != null) {
+            clientIdTable.put(info.getClientId(), info);
+        }
+    }
+
+    /**
+     * drop the client from every index
+     */
+    private void unbind(ClientChannelInfo info) {
+        info.getChannel().attr(CLIENT_CHANNEL_INFO).compareAndSet(info, null);
+        if (info.getClientId() != null) {
+            clientIdTable.remove(info.getClientId(), info);
+        }
+        updateSubscription(info, Collections.<SubscriptionData>emptySet());
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * push the changes of the whole registry to the channel, until it is closed
+     */
+    public boolean subscribeRegistry(final Channel channel) {
+        if (registrySubscribers.add(channel)) {
+            log.info("registry subscriber added, channel: {}", RemotingHelper.parseChannelRemoteAddr(channel));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the channels subscribed to the whole registry, and the ones of the clients subscribed to one of the
+     * slots
+     */
+    public Set<Channel> findSubscriberChannels(final Collection<Integer> slots) {
+        Set<Channel> channels = new HashSet<Channel>(registrySubscribers);
+        for (Integer slot : slots) {
+            Set<ClientChannelInfo> subscribers = subscriptionTable.get(slot);
+            if (subscribers != null) {
+                for (ClientChannelInfo info : subscribers) {
+                    channels.add(info.getChannel());
+                }
+            }
+        }
+        return channels;
+    }
+
+    public Set<Channel> getRegistrySubscribers() {
+        return registrySubscribers;
+    }
+
     public Set<Integer> getSubscribeTopics() {
         return subscriptionTable.keySet();
     }
 
-    public SubscriptionData findSubscriptionData(final String topic) {
-        return this.subscriptionTable.get(topic);
+    /**
+     * @return the clients subscribed to the slot, empty if there is none
+     */
+    public Set<ClientChannelInfo> findSubscribers(final int slot) {
+        Set<ClientChannelInfo> subscribers = this.subscriptionTable.get(slot);
+        return subscribers == null ? Collections.<ClientChannelInfo>emptySet() : subscribers;
     }
 
     public long getLastUpdateTimestamp() {
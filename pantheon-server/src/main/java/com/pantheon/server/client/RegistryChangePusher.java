@@ -0,0 +1,335 @@
+package com.pantheon.server.client;
+
+import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.common.ThreadFactoryImpl;
+import com.pantheon.common.protocol.RequestCode;
+import com.pantheon.common.protocol.header.RegistryChangedRequestHeader;
+import com.pantheon.remoting.common.RemotingHelper;
+import com.pantheon.remoting.protocol.RemotingCommand;
+import com.pantheon.server.ServerNode;
+import com.pantheon.server.registry.ChangeLog;
+import com.pantheon.server.registry.RegistryChangeListener;
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
+import com.pantheon.server.slot.SlotManager;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Anthony
+ * @create 2021/12/31
+ * @desc pushes the changes of every registry shard to the subscribed clients as oneway
+ * {@link RequestCode#NOTIFY_REGISTRY_CHANGED} requests, so they learn about a change in milliseconds instead of at
+ * their next poll.
+ * <p>
+ * A change only marks its shard dirty, the dirty shards are flushed once the coalesce window after the first change is
+ * over, so a burst of changes, like a deploy of many instances, goes out as one delta per shard. The delta is read
+ * from the {@link ChangeLog} after the version flushed last, and goes to the registry subscribers and to the clients
+ * subscribed to the slot of a changed application. If the change log no longer keeps the changes, a notification
+ * without delta tells the registry subscribers to fetch.
+ * <p>
+ * Every channel has an outbox with at most one push in flight. Changes of a shard waiting in the outbox merge with the
+ * ones that follow, and a channel that is not writable is not written to until it is again, so a slow client gets
+ * fewer and larger pushes instead of an unbounded queue. All the push state is touched by the push thread only.
+ */
+public class RegistryChangePusher implements RegistryChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(RegistryChangePusher.class);
+    private static final AttributeKey<PushOutbox> PUSH_OUTBOX = AttributeKey.valueOf("pantheonPushOutbox");
+
+    private final ServerNode serverNode;
+    private final RouteInstanceToSlotRegistry registry;
+    private final long coalesceMillis;
+    private final ScheduledExecutorService pushExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryImpl("RegistryChangePushThread", true));
+    private final Set<Integer> dirtyShards = ConcurrentHashMap.<Integer>newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    // version of every shard flushed last
+    private final Map<Integer/*shardId*/, Long/*version*/> flushedVersions = new ConcurrentHashMap<Integer, Long>();
+    // change of every shard flushed last, shared by the outboxes that were up to date
+    private final Map<Integer/*shardId*/, ShardChange> lastChanges = new HashMap<Integer, ShardChange>();
+    // outboxes waiting for their channel to be writable
+    private final Set<PushOutbox> backlog = new HashSet<PushOutbox>();
+    private boolean backlogRetryScheduled;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (Throwable e) {
+                logger.error("push registry changes exception", e);
+            }
+        }
+    };
+
+    /**
+     * @param coalesceMillis how long the changes are collected before they are pushed
+     */
+    public RegistryChangePusher(ServerNode serverNode, RouteInstanceToSlotRegistry registry, long coalesceMillis) {
+        this.serverNode = serverNode;
+        this.registry = registry;
+        this.coalesceMillis = Math.max(0, coalesceMillis);
+    }
+
+    @Override
+    public void onChange(int shardId, long version) {
+        flushedVersions.putIfAbsent(shardId, version - 1);
+        dirtyShards.add(shardId);
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                pushExecutor.schedule(flushTask, coalesceMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("pusher is shut down, changes of shard {} not pushed", shardId);
+            }
+        }
+    }
+
+    private void flush() {
+        // a change from now on schedules the next flush
+        flushScheduled.set(false);
+        Set<PushOutbox> outboxes = new HashSet<PushOutbox>();
+        int shards = 0;
+        for (Iterator<Integer> it = dirtyShards.iterator(); it.hasNext(); ) {
+            int shardId = it.next();
+            it.remove();
+            ShardChange change = readChange(shardId, flushedVersions.get(shardId));
+            if (change == null) {
+                continue;
+            }
+            shards++;
+            flushedVersions.put(shardId, change.toVersion);
+            lastChanges.put(shardId, change);
+            Set<Channel> channels = change.delta == null
+                    ? serverNode.getConsumerInfoManager().getRegistrySubscribers()
+                    : serverNode.getConsumerInfoManager().findSubscriberChannels(change.getSlots());
+            for (Channel channel : channels) {
+                if (channel.isActive()) {
+                    PushOutbox outbox = outbox(channel);
+                    outbox.add(shardId, change.fromVersion);
+                    outboxes.add(outbox);
+                }
+            }
+        }
+        for (PushOutbox outbox : outboxes) {
+            drain(outbox);
+        }
+        logger.debug("flushed changes of {} shards to {} channels", shards, outboxes.size());
+    }
+
+    /**
+     * The reconcile hash code sent along is the one of the whole registry, shards are internal to the server so the
+     * client has no hash of its own to compare a shard hash with. A change in another shard not yet pushed to the
+     * client makes the hashes differ, and the client fetches the deltas of all shards to catch up, which it would
+     * have been pushed a moment later anyway.
+     *
+     * @return the changes of the shard after the version, null if there is none
+     */
+    private ShardChange readChange(int shardId, long fromVersion) {
+        Applications delta = new Applications();
+        long toVersion = registry.getApplicationDeltasSince(shardId, fromVersion, delta);
+        if (toVersion == fromVersion) {
+            return null;
+        }
+        if (toVersion == ChangeLog.TOO_OLD) {
+            delta = null;
+            toVersion = registry.getVersion(shardId);
+        }
+        return new ShardChange(registry.getIncarnation(), shardId, fromVersion, toVersion, delta, registry.getReconcileHashCode());
+    }
+
+    private static PushOutbox outbox(Channel channel) {
+        Attribute<PushOutbox> attribute = channel.attr(PUSH_OUTBOX);
+        PushOutbox outbox = attribute.get();
+        if (outbox == null) {
+            outbox = new PushOutbox(channel);
+            attribute.set(outbox);
+        }
+        return outbox;
+    }
+
+    /**
+     * push the next shard of the outbox, if nothing is in flight and the channel is writable
+     */
+    private void drain(final PushOutbox outbox) {
+        final Channel channel = outbox.channel;
+        if (!channel.isActive()) {
+            backlog.remove(outbox);
+            return;
+        }
+        if (outbox.inFlight) {
+            return;
+        }
+        if (!channel.isWritable()) {
+            if (!outbox.pending.isEmpty()) {
+                backlog.add(outbox);
+                scheduleBacklogRetry();
+            }
+            return;
+        }
+        backlog.remove(outbox);
+
+        ShardChange change = null;
+        while (change == null && !outbox.pending.isEmpty()) {
+            Iterator<Map.Entry<Integer, Long>> it = outbox.pending.entrySet().iterator();
+            Map.Entry<Integer, Long> next = it.next();
+            it.remove();
+            change = lastChanges.get(next.getKey());
+            if (change == null || change.fromVersion != next.getValue()) {
+                // the client fell behind, all the changes since the version it was pushed last in one delta
+                change = readChange(next.getKey(), next.getValue());
+            }
+        }
+        if (change == null) {
+            return;
+        }
+
+        final ShardChange pushed = change;
+        outbox.inFlight = true;
+        outbox.pushedVersions.put(pushed.shardId, pushed.toVersion);
+        try {
+            ChannelFuture future = serverNode.getServerToClient().notifyClient(channel, pushed.toRequest());
+            future.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(final ChannelFuture f) throws Exception {
+                    try {
+                        pushExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                outbox.inFlight = false;
+                                if (!f.isSuccess()) {
+                                    logger.warn("push changes of shard {} to {} failed", pushed.shardId,
+                                            RemotingHelper.parseChannelRemoteAddr(channel));
+                                }
+                                drain(outbox);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // shut down
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            outbox.inFlight = false;
+            logger.error("push changes of shard " + pushed.shardId + " exception", e);
+        }
+    }
+
+    /**
+     * channel writability is not reported to the server processors, so look at the unwritable channels again after a
+     * window
+     */
+    private void scheduleBacklogRetry() {
+        if (backlogRetryScheduled) {
+            return;
+        }
+        backlogRetryScheduled = true;
+        pushExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                backlogRetryScheduled = false;
+                for (PushOutbox outbox : new ArrayList<PushOutbox>(backlog)) {
+                    drain(outbox);
+                }
+            }
+        }, Math.max(10, coalesceMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        registry.removeChangeListener(this);
+        pushExecutor.shutdown();
+    }
+
+    /**
+     * the changes of one shard between two versions, encoded once for all the channels they are pushed to
+     */
+    private static class ShardChange {
+        private final long incarnation;
+        private final int shardId;
+        private final long fromVersion;
+        private final long toVersion;
+        // null if the change log no longer keeps the changes
+        private final Applications delta;
+        private final String appsHashCode;
+        private byte[] body;
+
+        private ShardChange(long incarnation, int shardId, long fromVersion, long toVersion, Applications delta,
+                            String appsHashCode) {
+            this.incarnation = incarnation;
+            this.shardId = shardId;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.delta = delta;
+            this.appsHashCode = appsHashCode;
+        }
+
+        private Set<Integer> getSlots() {
+            Set<Integer> slots = new HashSet<Integer>();
+            for (Application app : delta.getRegisteredApplications()) {
+                slots.add(SlotManager.getInstance().routeSlot(app.getName()));
+            }
+            return slots;
+        }
+
+        private RemotingCommand toRequest() {
+            RegistryChangedRequestHeader requestHeader = new RegistryChangedRequestHeader();
+            requestHeader.setIncarnation(incarnation);
+            requestHeader.setShardId(shardId);
+            requestHeader.setFromVersion(fromVersion);
+            requestHeader.setToVersion(toVersion);
+            requestHeader.setAppsHashCode(appsHashCode);
+            RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.NOTIFY_REGISTRY_CHANGED, requestHeader);
+            if (delta != null) {
+                if (body == null) {
+                    body = delta.encode(request.getSerializeTypeCurrentRPC());
+                }
+                request.setBody(body);
+            }
+            return request;
+        }
+    }
+
+    /**
+     * what is still to be pushed to one channel, kept on the channel
+     */
+    private static class PushOutbox {
+        private final Channel channel;
+        // shard -> version the changes to push start after, in the order the shards changed
+        private final Map<Integer, Long> pending = new LinkedHashMap<Integer, Long>();
+        // shard -> version pushed last
+        private final Map<Integer, Long> pushedVersions = new HashMap<Integer, Long>();
+        private boolean inFlight;
+
+        private PushOutbox(Channel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * changes still waiting merge with these, a client that was pushed the shard before gets every change since
+         */
+        private void add(int shardId, long fromVersion) {
+            if (!pending.containsKey(shardId)) {
+                Long pushed = pushedVersions.get(shardId);
+                pending.put(shardId, pushed == null ? fromVersion : pushed);
+            }
+        }
+    }
+}
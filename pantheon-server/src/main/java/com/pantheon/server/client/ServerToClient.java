@@ -6,6 +6,7 @@ import com.pantheon.remoting.exception.RemotingTimeoutException;
 import com.pantheon.remoting.protocol.RemotingCommand;
 import com.pantheon.server.ServerNode;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 
 /**
  * @author Anthony
@@ -32,4 +33,15 @@ public class ServerToClient {
         return null;
     }
 
+    /**
+     * send a request the client does not answer, like a registry change. It does not wait for the oneway permits, the
+     * caller limits what it has in flight on the channel
+     *
+     * @return completed once the request is written
+     */
+    public ChannelFuture notifyClient(final Channel channel, final RemotingCommand request) {
+        request.markOnewayRPC();
+        return channel.writeAndFlush(request).addListener(request.releaseBodyOnFailure());
+    }
+
 }
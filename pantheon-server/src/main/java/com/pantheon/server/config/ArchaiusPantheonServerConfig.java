@@ -58,10 +58,60 @@ public class ArchaiusPantheonServerConfig implements PantheonServerConfig {
     final String CONFIG_KEY_CONTROLLER_CANDIDATE_SERVERS = namespace + "controllerCandidateServers";
     final String CONFIG_KEY_HEART_CHECK_INTERVAL = namespace + "heartbeatCheckInterval";
     final String CONFIG_KEY_HEART_TIMEOUT_PERIOD = namespace + "heartbeatTimeoutPeriod";
+    final String CONFIG_KEY_REGISTRY_SLOTS_PER_SHARD = namespace + "registrySlotsPerShard";
+    final String CONFIG_KEY_CHANGE_LOG_CAPACITY = namespace + "changeLogCapacity";
+    final String CONFIG_KEY_PAYLOAD_REBUILD_DEBOUNCE_MS = namespace + "payloadRebuildDebounceMs";
+    final String CONFIG_KEY_COMPRESSION_CODECS = namespace + "compressionCodecs";
+    final String CONFIG_KEY_COMPRESSION_MIN_SIZE = namespace + "compressionMinSize";
+    final String CONFIG_KEY_DEFLATE_LEVEL = namespace + "deflateLevel";
+    final String CONFIG_KEY_EVICTION_BATCH_SIZE = namespace + "evictionBatchSize";
+    final String CONFIG_KEY_ENABLE_SELF_PRESERVATION = namespace + "enableSelfPreservation";
+    final String CONFIG_KEY_ENABLE_REGISTRY_PUSH = namespace + "enableRegistryPush";
+    final String CONFIG_KEY_REGISTRY_PUSH_COALESCE_MS = namespace + "registryPushCoalesceMs";
+    final String CONFIG_KEY_DELTA_MAX_HOLD_MS = namespace + "deltaMaxHoldMs";
+    final String CONFIG_KEY_SUBSCRIBED_PAYLOAD_CACHE_SIZE = namespace + "subscribedPayloadCacheSize";
+    final String CONFIG_KEY_RENEWAL_PERCENT_THRESHOLD = namespace + "renewalPercentThreshold";
+    final String CONFIG_KEY_HEARTBEAT_THREAD_POOL_NUMS = namespace + "heartbeatThreadPoolNums";
+    final String CONFIG_KEY_HEARTBEAT_THREAD_POOL_QUEUE_CAPACITY = namespace + "heartbeatThreadPoolQueueCapacity";
+    final String CONFIG_KEY_HEARTBEAT_THREAD_PRIORITY = namespace + "heartbeatThreadPriority";
+    final String CONFIG_KEY_WRITE_THREAD_POOL_NUMS = namespace + "writeThreadPoolNums";
+    final String CONFIG_KEY_WRITE_THREAD_POOL_QUEUE_CAPACITY = namespace + "writeThreadPoolQueueCapacity";
+    final String CONFIG_KEY_WRITE_THREAD_PRIORITY = namespace + "writeThreadPriority";
+    final String CONFIG_KEY_READ_THREAD_POOL_NUMS = namespace + "readThreadPoolNums";
+    final String CONFIG_KEY_READ_THREAD_POOL_QUEUE_CAPACITY = namespace + "readThreadPoolQueueCapacity";
+    final String CONFIG_KEY_READ_THREAD_PRIORITY = namespace + "readThreadPriority";
+    final String CONFIG_KEY_THREAD_POOL_STATS_INTERVAL_MS = namespace + "threadPoolStatsIntervalMs";
+    final String CONFIG_KEY_ADMISSION_TARGET_DELAY_MS = namespace + "admissionTargetDelayMs";
+    final String CONFIG_KEY_ADMISSION_INTERVAL_MS = namespace + "admissionIntervalMs";
 
 
     public static final Integer DEFAULT_HEARTBEAT_CHECK_INTERVAL = 3;
     public static final Integer DEFAULT_HEARTBEAT_TIMEOUT_PERIOD = 5;
+    public static final Integer DEFAULT_REGISTRY_SLOTS_PER_SHARD = 16;
+    public static final Integer DEFAULT_CHANGE_LOG_CAPACITY = 4096;
+    public static final Integer DEFAULT_PAYLOAD_REBUILD_DEBOUNCE_MS = 100;
+    public static final String DEFAULT_COMPRESSION_CODECS = "deflate,gzip,lz4,none";
+    public static final Integer DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+    public static final Integer DEFAULT_DEFLATE_LEVEL = 1;
+    public static final Integer DEFAULT_EVICTION_BATCH_SIZE = 1000;
+    public static final Boolean DEFAULT_ENABLE_SELF_PRESERVATION = true;
+    public static final Boolean DEFAULT_ENABLE_REGISTRY_PUSH = true;
+    public static final Integer DEFAULT_REGISTRY_PUSH_COALESCE_MS = 100;
+    public static final Long DEFAULT_DELTA_MAX_HOLD_MS = 30 * 1000L;
+    public static final Integer DEFAULT_SUBSCRIBED_PAYLOAD_CACHE_SIZE = 1024;
+    public static final Double DEFAULT_RENEWAL_PERCENT_THRESHOLD = 0.85;
+    public static final Integer DEFAULT_HEARTBEAT_THREAD_POOL_NUMS = 2;
+    public static final Integer DEFAULT_HEARTBEAT_THREAD_POOL_QUEUE_CAPACITY = 50000;
+    public static final Integer DEFAULT_HEARTBEAT_THREAD_PRIORITY = Thread.MAX_PRIORITY;
+    public static final Integer DEFAULT_WRITE_THREAD_POOL_NUMS = 1;
+    public static final Integer DEFAULT_WRITE_THREAD_POOL_QUEUE_CAPACITY = 10000;
+    public static final Integer DEFAULT_WRITE_THREAD_PRIORITY = Thread.NORM_PRIORITY;
+    public static final Integer DEFAULT_READ_THREAD_POOL_NUMS = 4;
+    public static final Integer DEFAULT_READ_THREAD_POOL_QUEUE_CAPACITY = 5000;
+    public static final Integer DEFAULT_READ_THREAD_PRIORITY = Thread.MIN_PRIORITY;
+    public static final Integer DEFAULT_THREAD_POOL_STATS_INTERVAL_MS = 10000;
+    public static final Integer DEFAULT_ADMISSION_TARGET_DELAY_MS = 50;
+    public static final Integer DEFAULT_ADMISSION_INTERVAL_MS = 500;
 
 
 
@@ -269,6 +319,48 @@ public class ArchaiusPantheonServerConfig implements PantheonServerConfig {
                 CONFIG_KEY_HEART_TIMEOUT_PERIOD, DEFAULT_HEARTBEAT_TIMEOUT_PERIOD).get();
     }
 
+    @Override
+    public Integer getEvictionBatchSize() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_EVICTION_BATCH_SIZE, DEFAULT_EVICTION_BATCH_SIZE).get();
+    }
+
+    @Override
+    public Boolean shouldEnableSelfPreservation() {
+        return configInstance.getBooleanProperty(
+                CONFIG_KEY_ENABLE_SELF_PRESERVATION, DEFAULT_ENABLE_SELF_PRESERVATION).get();
+    }
+
+    @Override
+    public Boolean shouldEnableRegistryPush() {
+        return configInstance.getBooleanProperty(
+                CONFIG_KEY_ENABLE_REGISTRY_PUSH, DEFAULT_ENABLE_REGISTRY_PUSH).get();
+    }
+
+    @Override
+    public int getRegistryPushCoalesceMs() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_REGISTRY_PUSH_COALESCE_MS, DEFAULT_REGISTRY_PUSH_COALESCE_MS).get();
+    }
+
+    @Override
+    public long getDeltaMaxHoldMs() {
+        return configInstance.getLongProperty(
+                CONFIG_KEY_DELTA_MAX_HOLD_MS, DEFAULT_DELTA_MAX_HOLD_MS).get();
+    }
+
+    @Override
+    public int getSubscribedPayloadCacheSize() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_SUBSCRIBED_PAYLOAD_CACHE_SIZE, DEFAULT_SUBSCRIBED_PAYLOAD_CACHE_SIZE).get();
+    }
+
+    @Override
+    public Double getRenewalPercentThreshold() {
+        return configInstance.getDoubleProperty(
+                CONFIG_KEY_RENEWAL_PERCENT_THRESHOLD, DEFAULT_RENEWAL_PERCENT_THRESHOLD).get();
+    }
+
 
     @Override
     public String getNodeIp() {
@@ -315,23 +407,121 @@ public class ArchaiusPantheonServerConfig implements PantheonServerConfig {
     }
 
     @Override
-    public long getResponseCacheAutoExpirationInSeconds() {
+    public long getRetentionTimeInMSInDeltaQueue() {
         return 180;
     }
 
     @Override
-    public long getResponseCacheUpdateIntervalMs() {
+    public long getDeltaRetentionTimerIntervalInMs() {
         return 30;
     }
 
     @Override
-    public long getRetentionTimeInMSInDeltaQueue() {
-        return 180;
+    public Integer getRegistrySlotsPerShard() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_REGISTRY_SLOTS_PER_SHARD, DEFAULT_REGISTRY_SLOTS_PER_SHARD).get();
     }
 
     @Override
-    public long getDeltaRetentionTimerIntervalInMs() {
-        return 30;
+    public Integer getChangeLogCapacity() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_CHANGE_LOG_CAPACITY, DEFAULT_CHANGE_LOG_CAPACITY).get();
+    }
+
+    @Override
+    public Integer getPayloadRebuildDebounceMs() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_PAYLOAD_REBUILD_DEBOUNCE_MS, DEFAULT_PAYLOAD_REBUILD_DEBOUNCE_MS).get();
+    }
+
+    @Override
+    public String getCompressionCodecs() {
+        return configInstance.getStringProperty(
+                CONFIG_KEY_COMPRESSION_CODECS, DEFAULT_COMPRESSION_CODECS).get();
+    }
+
+    @Override
+    public Integer getCompressionMinSize() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_COMPRESSION_MIN_SIZE, DEFAULT_COMPRESSION_MIN_SIZE).get();
+    }
+
+    @Override
+    public Integer getDeflateLevel() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_DEFLATE_LEVEL, DEFAULT_DEFLATE_LEVEL).get();
+    }
+
+    @Override
+    public Integer getHeartbeatThreadPoolNums() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_HEARTBEAT_THREAD_POOL_NUMS, DEFAULT_HEARTBEAT_THREAD_POOL_NUMS).get();
+    }
+
+    @Override
+    public Integer getHeartbeatThreadPoolQueueCapacity() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_HEARTBEAT_THREAD_POOL_QUEUE_CAPACITY, DEFAULT_HEARTBEAT_THREAD_POOL_QUEUE_CAPACITY).get();
+    }
+
+    @Override
+    public Integer getHeartbeatThreadPriority() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_HEARTBEAT_THREAD_PRIORITY, DEFAULT_HEARTBEAT_THREAD_PRIORITY).get();
+    }
+
+    @Override
+    public Integer getWriteThreadPoolNums() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_WRITE_THREAD_POOL_NUMS, DEFAULT_WRITE_THREAD_POOL_NUMS).get();
+    }
+
+    @Override
+    public Integer getWriteThreadPoolQueueCapacity() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_WRITE_THREAD_POOL_QUEUE_CAPACITY, DEFAULT_WRITE_THREAD_POOL_QUEUE_CAPACITY).get();
+    }
+
+    @Override
+    public Integer getWriteThreadPriority() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_WRITE_THREAD_PRIORITY, DEFAULT_WRITE_THREAD_PRIORITY).get();
+    }
+
+    @Override
+    public Integer getReadThreadPoolNums() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_READ_THREAD_POOL_NUMS, DEFAULT_READ_THREAD_POOL_NUMS).get();
+    }
+
+    @Override
+    public Integer getReadThreadPoolQueueCapacity() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_READ_THREAD_POOL_QUEUE_CAPACITY, DEFAULT_READ_THREAD_POOL_QUEUE_CAPACITY).get();
+    }
+
+    @Override
+    public Integer getReadThreadPriority() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_READ_THREAD_PRIORITY, DEFAULT_READ_THREAD_PRIORITY).get();
+    }
+
+    @Override
+    public Integer getThreadPoolStatsIntervalMs() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_THREAD_POOL_STATS_INTERVAL_MS, DEFAULT_THREAD_POOL_STATS_INTERVAL_MS).get();
+    }
+
+    @Override
+    public Integer getAdmissionTargetDelayMs() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_ADMISSION_TARGET_DELAY_MS, DEFAULT_ADMISSION_TARGET_DELAY_MS).get();
+    }
+
+    @Override
+    public Integer getAdmissionIntervalMs() {
+        return configInstance.getIntProperty(
+                CONFIG_KEY_ADMISSION_INTERVAL_MS, DEFAULT_ADMISSION_INTERVAL_MS).get();
     }
 }
 
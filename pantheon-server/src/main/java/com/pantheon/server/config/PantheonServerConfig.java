@@ -26,11 +26,117 @@ public interface PantheonServerConfig {
 
     Integer getHeartBeatCheckInterval();
 
-    long getResponseCacheAutoExpirationInSeconds();
+    /**
+     * max count of expired leases evicted in one heartbeat check
+     */
+    Integer getEvictionBatchSize();
 
-    long getResponseCacheUpdateIntervalMs();
+    /**
+     * whether stop evicting when renewals of last minute drop below {@link #getRenewalPercentThreshold()}
+     */
+    Boolean shouldEnableSelfPreservation();
+
+    /**
+     * whether push the registry changes to the clients that subscribe to them when fetching
+     */
+    Boolean shouldEnableRegistryPush();
+
+    /**
+     * how long the registry changes are collected before they are pushed, so a burst of changes goes out as one push
+     */
+    int getRegistryPushCoalesceMs();
+
+    /**
+     * longest a delta fetch is held while nothing changed since the versions of the client, 0 to answer at once
+     */
+    long getDeltaMaxHoldMs();
+
+    /**
+     * most payloads of the applications of the services clients depend on kept, one for every set of services and
+     * format, the least recently used goes first
+     */
+    int getSubscribedPayloadCacheSize();
+
+    Double getRenewalPercentThreshold();
 
     long getRetentionTimeInMSInDeltaQueue();
 
     long getDeltaRetentionTimerIntervalInMs();
+
+    /**
+     * count of adjacent slots sharing one registry shard, which owns one delta queue and one response cache
+     */
+    Integer getRegistrySlotsPerShard();
+
+    /**
+     * count of the latest changes every registry shard keeps for "changes since version" delta fetches,
+     * clients lagging further behind have to do a full fetch
+     */
+    Integer getChangeLogCapacity();
+
+    /**
+     * milliseconds the response payloads are rebuilt after the first change of the registry, all changes within
+     * the window are picked up by one rebuild
+     */
+    Integer getPayloadRebuildDebounceMs();
+
+    /**
+     * comma separated compression codecs of fetch responses, most preferred first, a client gets the first one it
+     * accepts. Known codecs are none, gzip, deflate and lz4
+     */
+    String getCompressionCodecs();
+
+    /**
+     * payloads smaller than this many bytes are sent uncompressed
+     */
+    Integer getCompressionMinSize();
+
+    /**
+     * level 1-9 of the deflate codec, 1 is the fastest
+     */
+    Integer getDeflateLevel();
+
+    /**
+     * thread count, queue capacity and thread priority of the lane which processes heartbeats,
+     * kept apart from the other lanes so that a renew never waits behind a registry fetch
+     */
+    Integer getHeartbeatThreadPoolNums();
+
+    Integer getHeartbeatThreadPoolQueueCapacity();
+
+    Integer getHeartbeatThreadPriority();
+
+    /**
+     * lane for register / unregister / status update
+     */
+    Integer getWriteThreadPoolNums();
+
+    Integer getWriteThreadPoolQueueCapacity();
+
+    Integer getWriteThreadPriority();
+
+    /**
+     * lane for full and delta registry fetch
+     */
+    Integer getReadThreadPoolNums();
+
+    Integer getReadThreadPoolQueueCapacity();
+
+    Integer getReadThreadPriority();
+
+    /**
+     * interval to print queue size of every lane, in milliseconds
+     */
+    Integer getThreadPoolStatsIntervalMs();
+
+    /**
+     * queueing delay a lane may keep for a whole interval before it counts as overloaded, in milliseconds,
+     * 0 to admit every request
+     */
+    Integer getAdmissionTargetDelayMs();
+
+    /**
+     * interval over which the smallest queueing delay of a lane is compared to the target, in milliseconds
+     */
+    Integer getAdmissionIntervalMs();
 }
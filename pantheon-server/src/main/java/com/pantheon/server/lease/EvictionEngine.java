@@ -0,0 +1,190 @@
+package com.pantheon.server.lease;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Anthony
+ * @create 2021/12/20
+ * @desc evicts expired items with a {@link TimingWheel} keyed by expiry.
+ * <p>
+ * Items are scheduled once at their expiry and renewals do not touch the wheel. When an item is due it is checked
+ * again: a renewed item is put back at its new expiry, an item that is no longer tracked is dropped, and an
+ * expired one waits in the expired queue until it gets evicted.
+ * <p>
+ * Evictions run in batches of at most {@code evictionBatchSize}. Like Eureka's self preservation, nothing is evicted
+ * while the renewals of the last minute are not above {@code renewalPercentThreshold} of the expected ones, and a
+ * single round never evicts more than {@code 1 - renewalPercentThreshold} of the tracked items, so a network blip
+ * cannot wipe out the registry.
+ */
+public class EvictionEngine<T> {
+    private static final Logger logger = LoggerFactory.getLogger(EvictionEngine.class);
+    private static final long ONE_MINUTE_MS = 60 * 1000;
+
+    /**
+     * connects the engine with the structure holding the items
+     */
+    public interface Handler<T> {
+        /**
+         * @return the time after which the item is considered expired
+         */
+        long getExpiryTimestamp(T item);
+
+        /**
+         * @return false if the item was cancelled or replaced and must be dropped silently
+         */
+        boolean isTracked(T item);
+
+        void evict(T item);
+    }
+
+    private final String name;
+    private final Handler<T> handler;
+    private final long tickMs;
+    private final int evictionBatchSize;
+    private final boolean selfPreservationEnabled;
+    private final double renewalPercentThreshold;
+    private final TimingWheel<T> timingWheel;
+    private final ArrayDeque<T> expiredQueue = new ArrayDeque<T>();
+
+    private final AtomicInteger trackedCount = new AtomicInteger(0);
+    private final AtomicInteger expectedRenewsPerMin = new AtomicInteger(0);
+    private final AtomicLong currentMinuteRenews = new AtomicLong(0);
+    private volatile long lastMinuteRenews = 0;
+    private volatile long currentMinuteStart = System.currentTimeMillis();
+
+    public EvictionEngine(String name, Handler<T> handler, long tickMs, int wheelSize, int evictionBatchSize,
+                          boolean selfPreservationEnabled, double renewalPercentThreshold) {
+        this.name = name;
+        this.handler = handler;
+        this.tickMs = tickMs;
+        this.evictionBatchSize = evictionBatchSize;
+        this.selfPreservationEnabled = selfPreservationEnabled;
+        this.renewalPercentThreshold = renewalPercentThreshold;
+        this.timingWheel = new TimingWheel<T>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    /**
+     * start watching a new item
+     *
+     * @param renewsPerMin renewals the item is expected to send every minute
+     */
+    public void track(T item, int renewsPerMin) {
+        trackedCount.incrementAndGet();
+        expectedRenewsPerMin.addAndGet(renewsPerMin);
+        schedule(item);
+    }
+
+    /**
+     * the item is gone, it will be dropped from the wheel when it is due
+     */
+    public void untrack(int renewsPerMin) {
+        trackedCount.decrementAndGet();
+        expectedRenewsPerMin.addAndGet(-renewsPerMin);
+    }
+
+    public void recordRenewal() {
+        currentMinuteRenews.incrementAndGet();
+    }
+
+    /**
+     * advance the wheel to now and evict one batch of expired items
+     *
+     * @return count of evicted items
+     */
+    public int evict() {
+        long now = System.currentTimeMillis();
+        rollRenewalCounter(now);
+
+        List<T> candidates = new ArrayList<T>();
+        synchronized (this) {
+            List<T> due = new ArrayList<T>();
+            timingWheel.advanceClock(now, due);
+            for (T item : due) {
+                if (!handler.isTracked(item)) {
+                    continue;
+                }
+                if (handler.getExpiryTimestamp(item) >= now) {
+                    schedule(item);
+                } else {
+                    expiredQueue.add(item);
+                }
+            }
+            if (expiredQueue.isEmpty()) {
+                return 0;
+            }
+            if (!isEvictionEnabled()) {
+                Object[] args = {name, expiredQueue.size(), lastMinuteRenews, expectedRenewsPerMin.get()};
+                logger.warn("{} self preservation, {} expired items are kept, renews of last minute: {}, expected: {}", args);
+                return 0;
+            }
+
+            int tracked = trackedCount.get();
+            int evictionLimit = Math.min(evictionBatchSize, tracked - (int) (tracked * renewalPercentThreshold));
+            T item;
+            while (candidates.size() < evictionLimit && (item = expiredQueue.poll()) != null) {
+                //renewed or cancelled while waiting for its batch
+                if (!handler.isTracked(item)) {
+                    continue;
+                }
+                if (handler.getExpiryTimestamp(item) >= now) {
+                    schedule(item);
+                    continue;
+                }
+                candidates.add(item);
+            }
+        }
+
+        for (T item : candidates) {
+            try {
+                handler.evict(item);
+            } catch (Throwable e) {
+                logger.error(name + " evict item exception", e);
+            }
+        }
+        if (!candidates.isEmpty()) {
+            Object[] args = {name, candidates.size(), getExpiredQueueSize()};
+            logger.info("{} evicted {} items, {} expired items left for next round", args);
+        }
+        return candidates.size();
+    }
+
+    private synchronized void schedule(T item) {
+        //one extra tick so that an item is never seen before its expiry
+        if (!timingWheel.add(item, handler.getExpiryTimestamp(item) + tickMs)) {
+            expiredQueue.add(item);
+        }
+    }
+
+    private boolean isEvictionEnabled() {
+        if (!selfPreservationEnabled) {
+            return true;
+        }
+        return lastMinuteRenews > (long) (expectedRenewsPerMin.get() * renewalPercentThreshold);
+    }
+
+    private void rollRenewalCounter(long now) {
+        if (now - currentMinuteStart >= ONE_MINUTE_MS) {
+            lastMinuteRenews = currentMinuteRenews.getAndSet(0);
+            currentMinuteStart = now;
+        }
+    }
+
+    public int getTrackedCount() {
+        return trackedCount.get();
+    }
+
+    public long getLastMinuteRenews() {
+        return lastMinuteRenews;
+    }
+
+    public synchronized int getExpiredQueueSize() {
+        return expiredQueue.size();
+    }
+}
@@ -28,6 +28,10 @@ public class Lease<T> {
     // Make it volatile so that the expiration task would see this quicker
     private volatile long lastUpdateTimestamp;
     private long duration;
+    // handle a heartbeat can renew the lease by, assigned by the registry shard
+    private volatile long handle = -1;
+    // status the holder is counted with in the registry digest, null if not counted, guarded by the lease
+    private InstanceInfo.InstanceStatus digestStatus;
 
     public Lease(T r, int durationInSecs) {
         holder = r;
@@ -94,6 +98,17 @@ public class Lease<T> {
         return (evictionTimestamp > 0 || System.currentTimeMillis() > (lastUpdateTimestamp + duration + additionalLeaseMs));
     }
 
+    /**
+     * Gets the milliseconds since epoch after which {@link #isExpired()} turns true, consistent with the
+     * 2 * duration behavior described there.
+     */
+    public long getExpiryTimestamp() {
+        if (evictionTimestamp > 0) {
+            return evictionTimestamp;
+        }
+        return lastUpdateTimestamp + duration;
+    }
+
     /**
      * Gets the milliseconds since epoch when the lease was registered.
      *
@@ -131,6 +146,22 @@ public class Lease<T> {
         return serviceUpTimestamp;
     }
 
+    public long getHandle() {
+        return handle;
+    }
+
+    public void setHandle(long handle) {
+        this.handle = handle;
+    }
+
+    public InstanceInfo.InstanceStatus getDigestStatus() {
+        return digestStatus;
+    }
+
+    public void setDigestStatus(InstanceInfo.InstanceStatus digestStatus) {
+        this.digestStatus = digestStatus;
+    }
+
     /**
      * Returns the holder of the lease.
      */
@@ -0,0 +1,153 @@
+package com.pantheon.server.lease;
+
+import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.client.appinfo.LeaseInfo;
+import com.pantheon.server.config.CachedPantheonServerConfig;
+import com.pantheon.server.config.PantheonServerConfig;
+import com.pantheon.server.registry.InstanceRegistry;
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Anthony
+ * @create 2021/12/20
+ * @desc {@link LeaseManager} of the instance leases of this node, expired leases are evicted by an {@link EvictionEngine}.
+ * <p>
+ * Leases are tracked by appName and instance id, the current {@link Lease} is looked up from the registry when it is
+ * due, so a re-registration that replaces the lease needs no rescheduling.
+ * Other engines can be attached to get evicted by the same heartbeat check.
+ */
+public class LeaseEvictionManager implements LeaseManager<InstanceInfo> {
+    private static final Logger logger = LoggerFactory.getLogger(LeaseEvictionManager.class);
+    private static final int WHEEL_SIZE = 512;
+
+    private final PantheonServerConfig serverConfig;
+    private final ConcurrentHashMap<String/*appName:instanceId*/, TrackedLease> trackedLeases = new ConcurrentHashMap<>();
+    private final EvictionEngine<TrackedLease> evictionEngine;
+    private final List<EvictionEngine<?>> attachedEngines = new CopyOnWriteArrayList<>();
+
+    private LeaseEvictionManager() {
+        this.serverConfig = CachedPantheonServerConfig.getInstance();
+        this.evictionEngine = newEvictionEngine("LeaseEviction", new EvictionEngine.Handler<TrackedLease>() {
+            @Override
+            public long getExpiryTimestamp(TrackedLease item) {
+                Lease<InstanceInfo> lease = getRegistry().getLease(item.appName, item.id);
+                return lease == null ? 0 : lease.getExpiryTimestamp();
+            }
+
+            @Override
+            public boolean isTracked(TrackedLease item) {
+                return trackedLeases.get(item.key) == item;
+            }
+
+            @Override
+            public void evict(TrackedLease item) {
+                logger.warn("Registry: expired lease for {}/{}", item.appName, item.id);
+                getRegistry().cancel(item.appName, item.id);
+                //lease may already be gone from the registry
+                cancel(item.appName, item.id);
+            }
+        });
+    }
+
+    private static class Singleton {
+        static LeaseEvictionManager instance = new LeaseEvictionManager();
+    }
+
+    public static LeaseEvictionManager getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * build an engine ticking with the heartbeat check interval
+     */
+    public <T> EvictionEngine<T> newEvictionEngine(String name, EvictionEngine.Handler<T> handler) {
+        return new EvictionEngine<T>(name, handler,
+                serverConfig.getHeartBeatCheckInterval() * 1000L,
+                WHEEL_SIZE,
+                serverConfig.getEvictionBatchSize(),
+                serverConfig.shouldEnableSelfPreservation(),
+                serverConfig.getRenewalPercentThreshold());
+    }
+
+    /**
+     * evict the engine together with the instance leases
+     */
+    public void attach(EvictionEngine<?> evictionEngine) {
+        attachedEngines.add(evictionEngine);
+    }
+
+    private InstanceRegistry getRegistry() {
+        return RouteInstanceToSlotRegistry.getInstance();
+    }
+
+    @Override
+    public void register(InstanceInfo r, int leaseDuration) {
+        int renewalInterval = LeaseInfo.DEFAULT_LEASE_RENEWAL_INTERVAL;
+        if (r.getLeaseInfo() != null && r.getLeaseInfo().getRenewalIntervalInSecs() > 0) {
+            renewalInterval = r.getLeaseInfo().getRenewalIntervalInSecs();
+        }
+        TrackedLease trackedLease = new TrackedLease(r.getAppName(), r.getId(), Math.max(1, 60 / renewalInterval));
+        if (trackedLeases.putIfAbsent(trackedLease.key, trackedLease) == null) {
+            evictionEngine.track(trackedLease, trackedLease.renewsPerMin);
+        }
+    }
+
+    @Override
+    public boolean cancel(String appName, String id) {
+        TrackedLease trackedLease = trackedLeases.remove(getKey(appName, id));
+        if (trackedLease != null) {
+            evictionEngine.untrack(trackedLease.renewsPerMin);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean renew(String appName, String id) {
+        evictionEngine.recordRenewal();
+        return trackedLeases.containsKey(getKey(appName, id));
+    }
+
+    /**
+     * count a renewal of a lease known to be tracked, without looking it up
+     */
+    public void recordRenewal() {
+        evictionEngine.recordRenewal();
+    }
+
+    @Override
+    public void evict() {
+        evictionEngine.evict();
+        for (EvictionEngine<?> attachedEngine : attachedEngines) {
+            attachedEngine.evict();
+        }
+    }
+
+    public EvictionEngine<?> getEvictionEngine() {
+        return evictionEngine;
+    }
+
+    private static String getKey(String appName, String id) {
+        return appName + ":" + id;
+    }
+
+    private static final class TrackedLease {
+        private final String key;
+        private final String appName;
+        private final String id;
+        private final int renewsPerMin;
+
+        TrackedLease(String appName, String id, int renewsPerMin) {
+            this.key = getKey(appName, id);
+            this.appName = appName;
+            this.id = id;
+            this.renewsPerMin = renewsPerMin;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.pantheon.server.lease;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * @author Anthony
+ * @create 2021/12/20
+ * @desc hierarchical timing wheel keyed by deadline, reference from Kafka's TimingWheel.
+ * <p>
+ * The first level holds deadlines in {@code [currentTime, currentTime + tickMs * wheelSize)}, every bucket covers one
+ * tick. Deadlines beyond that range go to an overflow wheel whose tick is the interval of the level below, and are
+ * cascaded down when the clock reaches their bucket. Advancing the clock only touches the buckets that are passed,
+ * so the cost of a tick depends on the entries that are due instead of on everything that is scheduled.
+ * <p>
+ * Not thread safe, callers have to guard it.
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final ArrayDeque<Entry<T>>[] buckets;
+    private long currentTime;
+    private TimingWheel<T> overflowWheel;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<Entry<T>>[] buckets = new ArrayDeque[wheelSize];
+        this.buckets = buckets;
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<Entry<T>>();
+        }
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    /**
+     * @return false if the deadline has already passed, the item is due and has not been scheduled
+     */
+    public boolean add(T item, long deadline) {
+        return add(new Entry<T>(item, deadline));
+    }
+
+    private boolean add(Entry<T> entry) {
+        if (entry.deadline < currentTime) {
+            return false;
+        } else if (entry.deadline < currentTime + interval) {
+            long virtualId = entry.deadline / tickMs;
+            buckets[(int) (virtualId % wheelSize)].add(entry);
+            return true;
+        } else {
+            return getOverflowWheel().add(entry);
+        }
+    }
+
+    /**
+     * move the clock to timeMs and hand every item whose deadline was reached over to expired
+     */
+    public void advanceClock(long timeMs, Collection<T> expired) {
+        advanceClock(timeMs, expired, this);
+    }
+
+    private void advanceClock(long timeMs, Collection<T> expired, TimingWheel<T> root) {
+        if (timeMs >= currentTime + tickMs) {
+            //after a full round every bucket has been drained, no need to walk further
+            long ticks = Math.min((timeMs - currentTime) / tickMs, wheelSize);
+            for (long i = 0; i < ticks; i++) {
+                ArrayDeque<Entry<T>> bucket;
+                if (this == root) {
+                    //bucket of the tick that just passed, all of its deadlines are reached
+                    bucket = buckets[(int) ((currentTime / tickMs) % wheelSize)];
+                    currentTime += tickMs;
+                } else {
+                    //bucket the clock moves into, its deadlines now fit into the lower level
+                    currentTime += tickMs;
+                    bucket = buckets[(int) ((currentTime / tickMs) % wheelSize)];
+                }
+                Entry<T> entry;
+                while ((entry = bucket.poll()) != null) {
+                    if (this == root || !root.add(entry)) {
+                        expired.add(entry.item);
+                    }
+                }
+            }
+            currentTime = timeMs - (timeMs % tickMs);
+        }
+        if (overflowWheel != null) {
+            overflowWheel.advanceClock(timeMs, expired, root);
+        }
+    }
+
+    private TimingWheel<T> getOverflowWheel() {
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel<T>(interval, wheelSize, currentTime);
+        }
+        return overflowWheel;
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long deadline;
+
+        Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
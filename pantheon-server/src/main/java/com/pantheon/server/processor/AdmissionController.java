@@ -0,0 +1,152 @@
+package com.pantheon.server.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Anthony
+ * @create 2021/12/30
+ * @desc admission of the requests of every lane by the time they wait in its queue, CoDel-style.
+ * <p>
+ * The queueing delay of every request is sampled when a worker takes it. A lane whose delay stays above the target
+ * for a whole interval has a standing queue rather than a burst, and is overloaded until a request waits less than the
+ * target again. Requests of an overloaded lane, and of every lane less important than it, are rejected before they are
+ * queued, and the ones already waiting more than twice the target are dropped when they are taken, so the lane drains
+ * instead of working on requests whose clients have given up. The queue is kept around the target, short but never
+ * empty. Heartbeats are never shed, a lost renew ends up in an eviction.
+ * <p>
+ * A lane without samples for an interval is no longer overloaded, so it recovers even if all its requests were
+ * rejected.
+ */
+public class AdmissionController {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    /**
+     * the lanes, most important first
+     */
+    public enum Lane {
+        HEARTBEAT, WRITE, ROUTING, READ
+    }
+
+    private final long targetDelayMillis;
+    private final long intervalMillis;
+    private final LaneState[] states = new LaneState[Lane.values().length];
+    private final Map<Integer, Lane> lanes = new ConcurrentHashMap<Integer, Lane>();
+
+    /**
+     * @param targetDelayMillis 0 to admit every request
+     */
+    public AdmissionController(long targetDelayMillis, long intervalMillis) {
+        if (targetDelayMillis < 0 || intervalMillis <= 0) {
+            throw new IllegalArgumentException("illegal admission target " + targetDelayMillis + "ms or interval " + intervalMillis + "ms");
+        }
+        this.targetDelayMillis = targetDelayMillis;
+        this.intervalMillis = intervalMillis;
+        for (Lane lane : Lane.values()) {
+            states[lane.ordinal()] = new LaneState(lane);
+        }
+    }
+
+    /**
+     * put the requests of a code into a lane, codes not assigned go to {@link Lane#ROUTING}
+     */
+    public void assign(int requestCode, Lane lane) {
+        lanes.put(requestCode, lane);
+    }
+
+    public Lane laneOf(int requestCode) {
+        Lane lane = lanes.get(requestCode);
+        return lane == null ? Lane.ROUTING : lane;
+    }
+
+    /**
+     * @return true if a request of the code should be rejected before it is queued
+     */
+    public boolean reject(int requestCode) {
+        Lane lane = laneOf(requestCode);
+        if (!isEnabled() || lane == Lane.HEARTBEAT) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i <= lane.ordinal(); i++) {
+            if (states[i].isOverloaded(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * sample the queueing delay of a request taken by a worker
+     *
+     * @return true if the request waited too long to be worth processing
+     */
+    public boolean drop(int requestCode, long queueingDelayMillis) {
+        Lane lane = laneOf(requestCode);
+        if (!isEnabled()) {
+            return false;
+        }
+        boolean overloaded = states[lane.ordinal()].sample(System.currentTimeMillis(), queueingDelayMillis);
+        return overloaded && lane != Lane.HEARTBEAT && queueingDelayMillis > 2 * targetDelayMillis;
+    }
+
+    /**
+     * @return how long a client should wait before it sends a request of the code again, longer for a less
+     * important lane
+     */
+    public long retryAfterMillis(int requestCode) {
+        return intervalMillis * (laneOf(requestCode).ordinal() + 1);
+    }
+
+    public boolean isOverloaded(Lane lane) {
+        return states[lane.ordinal()].isOverloaded(System.currentTimeMillis());
+    }
+
+    private boolean isEnabled() {
+        return targetDelayMillis > 0;
+    }
+
+    private class LaneState {
+        private final Lane lane;
+        // when the delay would have stayed above the target for an interval, 0 while it is below
+        private long firstAboveTime;
+        private long lastSampleTime;
+        private boolean overloaded;
+
+        private LaneState(Lane lane) {
+            this.lane = lane;
+        }
+
+        private synchronized boolean isOverloaded(long now) {
+            if (overloaded && now - lastSampleTime >= intervalMillis) {
+                // every request was rejected for an interval, nothing is left in the queue
+                setOverloaded(false, 0);
+            }
+            return overloaded;
+        }
+
+        private synchronized boolean sample(long now, long delay) {
+            lastSampleTime = now;
+            if (delay <= targetDelayMillis) {
+                firstAboveTime = 0;
+                setOverloaded(false, delay);
+            } else if (firstAboveTime == 0) {
+                firstAboveTime = now + intervalMillis;
+            } else if (now >= firstAboveTime) {
+                setOverloaded(true, delay);
+            }
+            return overloaded;
+        }
+
+        private void setOverloaded(boolean overloaded, long delay) {
+            if (overloaded != this.overloaded) {
+                this.overloaded = overloaded;
+                logger.warn("[ADMISSION] lane {} {}, queueing delay {}ms", new Object[]{lane,
+                        overloaded ? "overloaded" : "recovered", delay});
+            }
+        }
+    }
+}
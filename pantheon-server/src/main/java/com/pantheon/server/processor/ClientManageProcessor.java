@@ -2,30 +2,47 @@ package com.pantheon.server.processor;
 
 
 import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.Applications;
 import com.pantheon.client.appinfo.InstanceInfo;
 import com.pantheon.common.ObjectUtils;
+import com.pantheon.common.protocol.RegistryVersions;
 import com.pantheon.common.protocol.RequestCode;
 import com.pantheon.common.protocol.ResponseCode;
+import com.pantheon.common.protocol.header.GetAllAppRequestHeader;
 import com.pantheon.common.protocol.header.GetConsumerRunningInfoRequestHeader;
+import com.pantheon.common.protocol.header.GetDeltaAppRequestHeader;
+import com.pantheon.common.protocol.header.GetInNeedAppRequestHeader;
+import com.pantheon.common.protocol.header.LeaseHandleResponseHeader;
+import com.pantheon.common.protocol.header.RegistryVersionsResponseHeader;
 import com.pantheon.common.protocol.heartBeat.HeartBeat;
+import com.pantheon.common.protocol.heartBeat.LeaseHeartBeat;
+import com.pantheon.common.protocol.heartBeat.SubscriptionData;
 import com.pantheon.common.protocol.heartBeat.ServiceUnregister;
 import com.pantheon.remoting.common.RemotingHelper;
+import com.pantheon.remoting.compression.CompressedPayload;
+import com.pantheon.remoting.compression.CompressionCodec;
+import com.pantheon.remoting.compression.CompressionCodecs;
 import com.pantheon.remoting.exception.RemotingCommandException;
 import com.pantheon.remoting.exception.RemotingTimeoutException;
 import com.pantheon.remoting.netty.AsyncNettyRequestProcessor;
 import com.pantheon.remoting.netty.NettyRequestProcessor;
+import com.pantheon.remoting.netty.RemotingResponseCallback;
 import com.pantheon.remoting.protocol.RemotingCommand;
 import com.pantheon.server.ServerNode;
 import com.pantheon.server.client.ClientChannelInfo;
+import com.pantheon.server.lease.Lease;
 import com.pantheon.server.registry.*;
-import com.pantheon.server.slot.SlotManager;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
 
 /**
  * @author Anthony
@@ -54,7 +71,8 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
                 return this.getApplications(ctx, request);
             case RequestCode.GET_DELTA_APP:
                 return this.getDeltaApplications(ctx, request);
-            //todo case only load some apps
+            case RequestCode.GET_IN_NEED_APP:
+                return this.getInNeedApplications(ctx, request);
             case RequestCode.SERVICE_UNREGISTER:
                 return this.serviceUnregister(ctx, request);
 
@@ -66,6 +84,57 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
         return null;
     }
 
+    /**
+     * a delta fetch of a client that is up to date is held, if the client asks for it, and answered by
+     * {@link DeltaLongPollHolder} once the registry changes or the hold is over, no thread waits for it meanwhile.
+     * A fetch of some services only that the change leaves not modified is held again for the rest of its hold.
+     */
+    @Override
+    public void asyncProcessRequest(final ChannelHandlerContext ctx, final RemotingCommand request,
+                                    final RemotingResponseCallback responseCallback) throws Exception {
+        if (request.getCode() != RequestCode.GET_DELTA_APP) {
+            super.asyncProcessRequest(ctx, request, responseCallback);
+            return;
+        }
+        final GetDeltaAppRequestHeader requestHeader =
+                (GetDeltaAppRequestHeader) request.decodeCommandCustomHeader(GetDeltaAppRequestHeader.class);
+        RemotingCommand response = getDeltaApplications(ctx, request, requestHeader);
+        Long holdMillis = requestHeader.getHoldMillis();
+        long deadline = holdMillis == null ? 0
+                : System.currentTimeMillis() + Math.min(holdMillis, serverNode.getServerConfig().getDeltaMaxHoldMs());
+        holdDeltaFetch(ctx, request, requestHeader, response, deadline, responseCallback);
+    }
+
+    /**
+     * hold a not modified response until the deadline, answer any other at once
+     */
+    private void holdDeltaFetch(final ChannelHandlerContext ctx, final RemotingCommand request,
+                                final GetDeltaAppRequestHeader requestHeader, RemotingCommand response,
+                                final long deadline, final RemotingResponseCallback responseCallback) {
+        long holdMillis = deadline - System.currentTimeMillis();
+        if (holdMillis <= 0 || response.getCode() != ResponseCode.NOT_MODIFIED) {
+            responseCallback.callback(response);
+            return;
+        }
+        RegistryVersionsResponseHeader responseHeader = (RegistryVersionsResponseHeader) response.readCustomHeader();
+        serverNode.getDeltaLongPollHolder().hold(RegistryVersions.decode(responseHeader.getRegistryVersions()),
+                holdMillis, new Runnable() {
+                    @Override
+                    public void run() {
+                        RemotingCommand heldResponse;
+                        try {
+                            heldResponse = getDeltaApplications(ctx, request, requestHeader);
+                        } catch (Throwable e) {
+                            logger.error("answer held delta fetch exception", e);
+                            responseCallback.callback(RemotingCommand.createResponseCommand(ResponseCode.SYSTEM_ERROR,
+                                    RemotingHelper.exceptionSimpleDesc(e)));
+                            return;
+                        }
+                        holdDeltaFetch(ctx, request, requestHeader, heldResponse, deadline, responseCallback);
+                    }
+                });
+    }
+
     private RemotingCommand getConsumerInfo(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
         final GetConsumerRunningInfoRequestHeader requestHeader =
                 (GetConsumerRunningInfoRequestHeader) request.decodeCommandCustomHeader(GetConsumerRunningInfoRequestHeader.class);
@@ -73,26 +142,141 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
         return this.callConsumer(RequestCode.GET_CONSUMER_RUNNING_INFO, request, requestHeader.getClientId());
     }
 
-    private RemotingCommand getApplications(ChannelHandlerContext ctx, RemotingCommand request) {
-        String clientId = this.serverNode.getConsumerInfoManager().findClientId(ctx.channel());
-        SlotManager slotManager = SlotManager.getInstance();
-
-        RemotingCommand response = RemotingCommand.createResponseCommand(null);
+    /**
+     * full registry, or not modified without body if the registry versions the client sends are still current
+     */
+    private RemotingCommand getApplications(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException, IOException {
+        final GetAllAppRequestHeader requestHeader =
+                (GetAllAppRequestHeader) request.decodeCommandCustomHeader(GetAllAppRequestHeader.class);
+        RemotingCommand response = RemotingCommand.createResponseCommand(RegistryVersionsResponseHeader.class);
+        RegistryVersionsResponseHeader responseHeader = (RegistryVersionsResponseHeader) response.readCustomHeader();
         logger.info("getApplications request from : {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
-        response.setCode(ResponseCode.SUCCESS);
+        subscribeChanges(ctx, requestHeader.getSubscribeChanges(), responseHeader);
         response.setRemark(null);
-//        response.setBody(instanceRegistry.getApplicationsData());
         response.setOpaque(request.getOpaque());
+
+        CompressionCodec codec = routeInstanceToSlotRegistry.negotiateCompression(ctx.channel(),
+                requestHeader.getAcceptCompression());
+        RegistryPayloadCache.RegistryPayload payload = routeInstanceToSlotRegistry.getRegistryPayload(
+                request.getSerializeTypeCurrentRPC(), codec);
+        RegistryVersions clientVersions = RegistryVersions.decode(requestHeader.getRegistryVersions());
+        if (clientVersions != null && (clientVersions.equals(payload.getRegistryVersions())
+                || clientVersions.equals(routeInstanceToSlotRegistry.getVersions()))) {
+            return notModified(response, responseHeader, clientVersions, routeInstanceToSlotRegistry.getReconcileHashCode());
+        }
+        ByteBuf body = payload.retainedDuplicate();
+        while (body == null) {
+            // replaced by a newer payload since it was got
+            payload = routeInstanceToSlotRegistry.getRegistryPayload(request.getSerializeTypeCurrentRPC(), codec);
+            body = payload.retainedDuplicate();
+        }
+        responseHeader.setRegistryVersions(payload.getRegistryVersions().encode());
+        responseHeader.setCompression(payload.getCodec().getName());
+        response.setCode(ResponseCode.SUCCESS);
+        response.setBodyBuffer(body);
         return response;
     }
 
-    private RemotingCommand getDeltaApplications(ChannelHandlerContext ctx, RemotingCommand request) {
-        RemotingCommand response = RemotingCommand.createResponseCommand(null);
+    /**
+     * push the registry changes to the connection from now on if the client asks for it, and say so in the response
+     */
+    private void subscribeChanges(ChannelHandlerContext ctx, Boolean subscribeChanges, RegistryVersionsResponseHeader responseHeader) {
+        if (Boolean.TRUE.equals(subscribeChanges) && serverNode.getServerConfig().shouldEnableRegistryPush()) {
+            serverNode.getConsumerInfoManager().subscribeRegistry(ctx.channel());
+            responseHeader.setChangesPushed(true);
+        }
+    }
+
+    /**
+     * the client is up to date, only the versions and the hash code to reconcile with are sent back
+     */
+    private RemotingCommand notModified(RemotingCommand response, RegistryVersionsResponseHeader responseHeader,
+                                        RegistryVersions versions, String appsHashCode) {
+        responseHeader.setRegistryVersions(versions.encode());
+        responseHeader.setAppsHashCode(appsHashCode);
+        response.setCode(ResponseCode.NOT_MODIFIED);
+        return response;
+    }
+
+    /**
+     * changes since the registry versions the client sends, or the signal to do a full fetch if they are too old.
+     * A fetch of some services only is not modified as long as they did not change, and moves its versions
+     * forward over the changes of the others.
+     */
+    private RemotingCommand getDeltaApplications(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException, IOException {
+        final GetDeltaAppRequestHeader requestHeader =
+                (GetDeltaAppRequestHeader) request.decodeCommandCustomHeader(GetDeltaAppRequestHeader.class);
+        return getDeltaApplications(ctx, request, requestHeader);
+    }
+
+    private RemotingCommand getDeltaApplications(ChannelHandlerContext ctx, RemotingCommand request,
+                                                 GetDeltaAppRequestHeader requestHeader) throws IOException {
+        RemotingCommand response = RemotingCommand.createResponseCommand(RegistryVersionsResponseHeader.class);
+        RegistryVersionsResponseHeader responseHeader = (RegistryVersionsResponseHeader) response.readCustomHeader();
         logger.info("getDeltaApplications request from : {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+        SortedSet<String> serviceNames = GetInNeedAppRequestHeader.decodeServiceNames(requestHeader.getServiceNames());
+        if (serviceNames == null) {
+            // the changes pushed are the ones of the whole registry
+            subscribeChanges(ctx, requestHeader.getSubscribeChanges(), responseHeader);
+        }
         response.setCode(ResponseCode.SUCCESS);
         response.setRemark(null);
-//        response.setBody(instanceRegistry.getApplicationsDeltaData());
         response.setOpaque(request.getOpaque());
+
+        RegistryVersions sinceVersions = RegistryVersions.decode(requestHeader.getRegistryVersions());
+        if (sinceVersions == null) {
+            responseHeader.setFullFetchRequired(true);
+            return response;
+        }
+        RegistryVersions versions = new RegistryVersions(routeInstanceToSlotRegistry.getIncarnation());
+        Applications delta = routeInstanceToSlotRegistry.getApplicationDeltasSince(sinceVersions, versions, serviceNames);
+        if (delta == null) {
+            logger.info("registry versions {} are too old for a delta, full fetch required", sinceVersions);
+            responseHeader.setFullFetchRequired(true);
+            return response;
+        }
+        if (versions.equals(sinceVersions) || (serviceNames != null && delta.getRegisteredApplications().isEmpty())) {
+            return notModified(response, responseHeader, versions, delta.getAppsHashCode());
+        }
+        CompressionCodec codec = routeInstanceToSlotRegistry.negotiateCompression(ctx.channel(),
+                requestHeader.getAcceptCompression());
+        CompressedPayload body = CompressionCodecs.compress(codec, delta.encode(request.getSerializeTypeCurrentRPC()),
+                routeInstanceToSlotRegistry.getCompressionMinSize());
+        responseHeader.setRegistryVersions(versions.encode());
+        responseHeader.setCompression(body.getCodec().getName());
+        response.setBody(body.getData());
+        return response;
+    }
+
+    /**
+     * applications of the services the client depends on only, shared with the clients depending on the same
+     * services, or not modified without body if the registry versions the client sends are still current
+     */
+    private RemotingCommand getInNeedApplications(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException, IOException {
+        final GetInNeedAppRequestHeader requestHeader =
+                (GetInNeedAppRequestHeader) request.decodeCommandCustomHeader(GetInNeedAppRequestHeader.class);
+        RemotingCommand response = RemotingCommand.createResponseCommand(RegistryVersionsResponseHeader.class);
+        RegistryVersionsResponseHeader responseHeader = (RegistryVersionsResponseHeader) response.readCustomHeader();
+        logger.info("getInNeedApplications request from : {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+        response.setRemark(null);
+        response.setOpaque(request.getOpaque());
+
+        SortedSet<String> serviceNames = GetInNeedAppRequestHeader.decodeServiceNames(requestHeader.getServiceNames());
+        // versions are taken before the applications, so that no change can be missed by the next delta fetch
+        RegistryVersions versions = routeInstanceToSlotRegistry.getVersions();
+        RegistryVersions clientVersions = RegistryVersions.decode(requestHeader.getRegistryVersions());
+        if (versions.equals(clientVersions)) {
+            return notModified(response, responseHeader, versions, routeInstanceToSlotRegistry.getReconcileHashCode(serviceNames));
+        }
+        CompressionCodec codec = routeInstanceToSlotRegistry.negotiateCompression(ctx.channel(),
+                requestHeader.getAcceptCompression());
+        SubscribedPayloadCache.SubscribedPayload payload = routeInstanceToSlotRegistry.getSubscribedPayload(serviceNames,
+                request.getSerializeTypeCurrentRPC(), codec);
+        responseHeader.setRegistryVersions(versions.encode());
+        responseHeader.setAppsHashCode(payload.getAppsHashCode());
+        responseHeader.setCompression(payload.getCodec().getName());
+        response.setCode(ResponseCode.SUCCESS);
+        response.setBody(payload.getData());
         return response;
     }
 
@@ -107,7 +291,56 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
         return response;
     }
 
+    /**
+     * heartbeat with a {@link LeaseHeartBeat} body is renewed by lease handle, and by name only when the handle is
+     * stale, the handle of the lease is sent back then. Json heartbeats of older clients are renewed by name.
+     */
     private RemotingCommand heartBeat(ChannelHandlerContext ctx, RemotingCommand request) {
+        byte[] body = request.getBody();
+        if (!LeaseHeartBeat.isLeaseHeartBeat(body)) {
+            return jsonHeartBeat(ctx, request);
+        }
+        RemotingCommand response;
+        if (routeInstanceToSlotRegistry.renew(LeaseHeartBeat.getLeaseHandle(body))) {
+            response = RemotingCommand.createResponseCommand(null);
+            response.setCode(ResponseCode.SUCCESS);
+            response.setOpaque(request.getOpaque());
+            if (this.serverNode.getConsumerInfoManager().touchChannel(ctx.channel())) {
+                return response;
+            }
+        } else {
+            String serviceName = LeaseHeartBeat.getServiceName(body);
+            String instanceId = LeaseHeartBeat.getInstanceId(body);
+            logger.debug("stale lease handle from: {} / {}, renew by name", serviceName, instanceId);
+            response = RemotingCommand.createResponseCommand(LeaseHandleResponseHeader.class);
+            response.setOpaque(request.getOpaque());
+            String renewError = routeInstanceToSlotRegistry.renew(serviceName, instanceId);
+            if (renewError == null) {
+                response.setCode(ResponseCode.SUCCESS);
+                Lease<InstanceInfo> lease = routeInstanceToSlotRegistry.getLease(serviceName, instanceId);
+                if (lease != null) {
+                    ((LeaseHandleResponseHeader) response.readCustomHeader()).setLeaseHandle(lease.getHandle());
+                }
+            } else {
+                response.setCode(ResponseCode.SYSTEM_ERROR);
+                response.setRemark(renewError);
+            }
+        }
+
+        ClientChannelInfo clientChannelInfo = new ClientChannelInfo(
+                ctx.channel(),
+                LeaseHeartBeat.getInstanceId(body),
+                request.getLanguage(),
+                request.getVersion()
+        );
+        this.serverNode.getConsumerInfoManager().registerConsumer(clientChannelInfo, Collections.<SubscriptionData>emptySet());
+        return response;
+    }
+
+    /**
+     * heartbeat with a json or compact {@link HeartBeat} body, renewed by name
+     */
+    private RemotingCommand jsonHeartBeat(ChannelHandlerContext ctx, RemotingCommand request) {
         RemotingCommand response = RemotingCommand.createResponseCommand(null);
         HeartBeat heartBeat = HeartBeat.decode(request.getBody(), HeartBeat.class);
 
@@ -135,7 +368,7 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
     }
 
     private RemotingCommand serviceRegistry(ChannelHandlerContext ctx, RemotingCommand request) throws RemotingCommandException {
-        RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        RemotingCommand response = RemotingCommand.createResponseCommand(LeaseHandleResponseHeader.class);
         InstanceInfo instanceInfo = InstanceInfo.decode(request.getBody(), InstanceInfo.class);
         logger.debug("serviceRegistry called by {},receive instanceInfo: {} ", RemotingHelper.parseChannelRemoteAddr(ctx.channel()), instanceInfo.toString());
         if (ObjectUtils.isEmpty(instanceInfo)) {
@@ -144,6 +377,10 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
             response.setOpaque(request.getOpaque());
         } else {
             register(instanceInfo.getAppName(), instanceInfo);
+            Lease<InstanceInfo> lease = routeInstanceToSlotRegistry.getLease(instanceInfo.getAppName(), instanceInfo.getId());
+            if (lease != null) {
+                ((LeaseHandleResponseHeader) response.readCustomHeader()).setLeaseHandle(lease.getHandle());
+            }
             response.setCode(ResponseCode.SUCCESS);
             response.setRemark(null);
             response.setOpaque(request.getOpaque());
@@ -356,6 +593,21 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
         return false;
     }
 
+    @Override
+    public boolean rejectRequest(RemotingCommand request) {
+        return serverNode.getAdmissionController().reject(request.getCode());
+    }
+
+    @Override
+    public boolean dropRequest(RemotingCommand request, long queueingDelayMillis) {
+        return serverNode.getAdmissionController().drop(request.getCode(), queueingDelayMillis);
+    }
+
+    @Override
+    public long retryAfterMillis(RemotingCommand request) {
+        return serverNode.getAdmissionController().retryAfterMillis(request.getCode());
+    }
+
     public RemotingCommand callConsumer(
             final int requestCode,
             final RemotingCommand request,
@@ -404,6 +656,7 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
 
                 RemotingCommand remotingCommand = this.serverNode.getServerToClient().callClient(channel, newRequest);
                 if (remotingCommand != null) {
+                    remotingCommand.releaseBodyBuffer();
 //                    logger.info("getConsumerRunningInfo response from client: " + remotingCommand.getRemark());
                 }
             } catch (RemotingTimeoutException e) {
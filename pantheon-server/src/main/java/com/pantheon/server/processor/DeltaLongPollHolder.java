@@ -0,0 +1,150 @@
+package com.pantheon.server.processor;
+
+import com.pantheon.common.ThreadFactoryImpl;
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.server.registry.RegistryChangeListener;
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Anthony
+ * @create 2021/12/31
+ * @desc holds the delta fetches of the clients that are up to date until the registry changes, so a client that cannot
+ * take pushed changes still learns about them within the coalesce window instead of at its next poll.
+ * <p>
+ * A held fetch is only its response continuation and a timeout in a wheel, no thread waits for it. A change wakes all
+ * the held fetches once the coalesce window after it is over, so a burst of changes answers them once, and the
+ * responses are computed on the executor of the read requests. A fetch nothing woke is answered not modified when its
+ * hold is over.
+ */
+public class DeltaLongPollHolder implements RegistryChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(DeltaLongPollHolder.class);
+
+    private final RouteInstanceToSlotRegistry registry;
+    private final ExecutorService executor;
+    private final long maxHoldMillis;
+    private final long coalesceMillis;
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            new ThreadFactoryImpl("DeltaLongPollTimerThread", true), 10, TimeUnit.MILLISECONDS);
+    private final Set<HeldFetch> heldFetches = ConcurrentHashMap.<HeldFetch>newKeySet();
+    private final AtomicBoolean wakeScheduled = new AtomicBoolean(false);
+    private volatile boolean stopped = false;
+
+    private final TimerTask wakeTask = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+            // a change from now on schedules the next wake
+            wakeScheduled.set(false);
+            for (HeldFetch fetch : heldFetches) {
+                complete(fetch);
+            }
+        }
+    };
+
+    /**
+     * @param executor       computes the responses of the fetches that are woken
+     * @param maxHoldMillis  longest a fetch is held, 0 to answer every fetch at once
+     * @param coalesceMillis how long the changes are collected before the held fetches are woken
+     */
+    public DeltaLongPollHolder(RouteInstanceToSlotRegistry registry, ExecutorService executor, long maxHoldMillis,
+                               long coalesceMillis) {
+        this.registry = registry;
+        this.executor = executor;
+        this.maxHoldMillis = Math.max(0, maxHoldMillis);
+        this.coalesceMillis = Math.max(0, coalesceMillis);
+    }
+
+    /**
+     * hold a fetch of a client that is up to date with the versions
+     *
+     * @param respond computes and sends the response once the fetch is woken or its hold is over
+     */
+    public void hold(RegistryVersions since, long holdMillis, Runnable respond) {
+        long hold = Math.min(holdMillis, maxHoldMillis);
+        if (hold <= 0 || stopped) {
+            respond.run();
+            return;
+        }
+        final HeldFetch fetch = new HeldFetch(respond);
+        heldFetches.add(fetch);
+        try {
+            fetch.timeout = timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                    complete(fetch);
+                }
+            }, hold, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // the timer was stopped by a shutdown racing with this fetch
+            complete(fetch);
+            return;
+        }
+        if (stopped || !registry.getVersions().equals(since)) {
+            // changed before the fetch was held, nothing would wake it
+            complete(fetch);
+        }
+    }
+
+    @Override
+    public void onChange(int shardId, long version) {
+        if (!heldFetches.isEmpty() && wakeScheduled.compareAndSet(false, true)) {
+            timer.newTimeout(wakeTask, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void complete(HeldFetch fetch) {
+        if (!fetch.completed.compareAndSet(false, true)) {
+            return;
+        }
+        heldFetches.remove(fetch);
+        Timeout timeout = fetch.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        try {
+            executor.execute(fetch.respond);
+        } catch (RejectedExecutionException e) {
+            // the read lane is full, answer from here rather than leave the client waiting for its timeout
+            logger.warn("read executor rejected a held delta fetch, answer it on the timer thread");
+            fetch.respond.run();
+        }
+    }
+
+    public int getHeldFetchCount() {
+        return heldFetches.size();
+    }
+
+    /**
+     * answer every held fetch not modified right away, instead of leaving the clients waiting for their request
+     * timeout, and stop holding new ones
+     */
+    public void shutdown() {
+        stopped = true;
+        registry.removeChangeListener(this);
+        for (HeldFetch fetch : heldFetches) {
+            complete(fetch);
+        }
+        timer.stop();
+    }
+
+    private static class HeldFetch {
+        private final Runnable respond;
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+        private volatile Timeout timeout;
+
+        private HeldFetch(Runnable respond) {
+            this.respond = respond;
+        }
+    }
+}
@@ -54,6 +54,21 @@ public class ServerNodeProcessor extends AsyncNettyRequestProcessor implements N
         return false;
     }
 
+    @Override
+    public boolean rejectRequest(RemotingCommand request) {
+        return serverNode.getAdmissionController().reject(request.getCode());
+    }
+
+    @Override
+    public boolean dropRequest(RemotingCommand request, long queueingDelayMillis) {
+        return serverNode.getAdmissionController().drop(request.getCode(), queueingDelayMillis);
+    }
+
+    @Override
+    public long retryAfterMillis(RemotingCommand request) {
+        return serverNode.getAdmissionController().retryAfterMillis(request.getCode());
+    }
+
 
     private synchronized RemotingCommand getServerNodeId(ChannelHandlerContext ctx,
                                                          RemotingCommand request) throws RemotingCommandException {
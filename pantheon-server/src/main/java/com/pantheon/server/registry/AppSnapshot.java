@@ -0,0 +1,85 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.InstanceInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Anthony
+ * @create 2021/12/25
+ * @desc immutable view of the instances of one application, read by the fetch path without locking.
+ * <p>
+ * A writer never changes a published snapshot, it builds the next one by {@link #with(InstanceInfo)} or
+ * {@link #without(String)} and publishes it by compare and set, see {@link InstanceRegistryImpl}. The next snapshot
+ * shares every unchanged instance with the previous one, and the snapshots of unchanged applications are shared
+ * as a whole. The instances are copies of the lease holders taken when they were published, so a reader never sees
+ * a holder while it is being changed.
+ */
+public class AppSnapshot {
+    private final String appName;
+    private final long version;
+    private final Map<String/*instanceId*/, InstanceInfo> instances;
+    private final Application application;
+
+    private AppSnapshot(String appName, long version, Map<String, InstanceInfo> instances) {
+        this.appName = appName;
+        this.version = version;
+        this.instances = Collections.unmodifiableMap(instances);
+        this.application = new Application(appName, new ArrayList<InstanceInfo>(instances.values()));
+    }
+
+    public static AppSnapshot empty(String appName) {
+        return new AppSnapshot(appName, 0, new HashMap<String, InstanceInfo>());
+    }
+
+    /**
+     * @param instanceInfo copy of the lease holder, not changed after it is published
+     */
+    public AppSnapshot with(InstanceInfo instanceInfo) {
+        Map<String, InstanceInfo> newInstances = new HashMap<String, InstanceInfo>(instances);
+        newInstances.put(instanceInfo.getId(), instanceInfo);
+        return new AppSnapshot(appName, version + 1, newInstances);
+    }
+
+    /**
+     * @return this snapshot if it does not hold the instance
+     */
+    public AppSnapshot without(String instanceId) {
+        if (!instances.containsKey(instanceId)) {
+            return this;
+        }
+        Map<String, InstanceInfo> newInstances = new HashMap<String, InstanceInfo>(instances);
+        newInstances.remove(instanceId);
+        return new AppSnapshot(appName, version + 1, newInstances);
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    /**
+     * @return version of the snapshot, increased by every published change of the application
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public InstanceInfo getInstance(String instanceId) {
+        return instances.get(instanceId);
+    }
+
+    public boolean isEmpty() {
+        return instances.isEmpty();
+    }
+
+    /**
+     * @return the application built once for this snapshot, shared by all readers and never to be changed
+     */
+    public Application getApplication() {
+        return application;
+    }
+}
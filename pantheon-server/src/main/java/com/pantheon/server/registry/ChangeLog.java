@@ -0,0 +1,67 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.server.lease.Lease;
+
+import java.util.List;
+
+/**
+ * @author Anthony
+ * @create 2021/12/23
+ * @desc bounded change log of a registry shard, indexed by version.
+ * <p>
+ * Every change gets the next version of the shard and is kept in a ring buffer of {@code capacity} entries, so a
+ * client that sends the last version it has seen gets exactly the changes it misses. Once the entries after that
+ * version have been overwritten the client is too far behind and has to do a full fetch.
+ */
+public class ChangeLog {
+    public static final long TOO_OLD = -1L;
+
+    private final Lease<InstanceInfo>[] leases;
+    private final long[] versions;
+    private final int capacity;
+    private long version = 0;
+
+    public ChangeLog(int capacity) {
+        this.capacity = capacity;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Lease<InstanceInfo>[] leases = new Lease[capacity];
+        this.leases = leases;
+        this.versions = new long[capacity];
+    }
+
+    /**
+     * @return version of the change
+     */
+    public synchronized long append(Lease<InstanceInfo> lease) {
+        version++;
+        int index = (int) (version % capacity);
+        leases[index] = lease;
+        versions[index] = version;
+        return version;
+    }
+
+    /**
+     * collect the changes after {@code sinceVersion}, oldest first
+     *
+     * @return current version, which the client sends next time, or {@link #TOO_OLD} if some of the changes are
+     * no longer kept or the version is unknown to this log
+     */
+    public synchronized long getChangesSince(long sinceVersion, List<Lease<InstanceInfo>> changes) {
+        if (sinceVersion < 0 || sinceVersion > version || version - sinceVersion > capacity) {
+            return TOO_OLD;
+        }
+        for (long v = sinceVersion + 1; v <= version; v++) {
+            int index = (int) (v % capacity);
+            if (versions[index] != v) {
+                return TOO_OLD;
+            }
+            changes.add(leases[index]);
+        }
+        return version;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+}
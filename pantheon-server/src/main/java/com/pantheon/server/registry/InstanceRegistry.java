@@ -4,6 +4,7 @@ import com.pantheon.client.appinfo.Application;
 import com.pantheon.client.appinfo.Applications;
 import com.pantheon.client.appinfo.InstanceInfo;
 import com.pantheon.server.config.PantheonServerConfig;
+import com.pantheon.server.lease.Lease;
 import com.pantheon.server.lease.LeaseManager;
 
 
@@ -43,6 +44,11 @@ public interface InstanceRegistry {
 
     InstanceInfo getInstanceByAppAndId(String appName, String id);
 
+    /**
+     * @return current lease of the instance, null if not registered
+     */
+    Lease<InstanceInfo> getLease(String appName, String id);
+
     /**
      * Marks the given instance of the given app name as renewed
      *
@@ -5,9 +5,11 @@ import com.pantheon.client.appinfo.Application;
 import com.pantheon.client.appinfo.Applications;
 import com.pantheon.client.appinfo.InstanceInfo;
 import com.pantheon.client.appinfo.LeaseInfo;
+import com.pantheon.client.appinfo.RegistryDigest;
 import com.pantheon.server.config.CachedPantheonServerConfig;
 import com.pantheon.server.config.PantheonServerConfig;
 import com.pantheon.server.lease.Lease;
+import com.pantheon.server.lease.LeaseEvictionManager;
 import com.pantheon.server.lease.LeaseManager;
 import com.pantheon.server.rule.DownOrStartingRule;
 import com.pantheon.server.rule.FirstMatchWinsCompositeRule;
@@ -21,19 +23,26 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author Anthony
  * @create 2021/11/28
- * @desc the class that load and update data from Server Side cache
+ * @desc the class that load and update data from Server Side cache.
+ * One instance is a shard holding all services routed to a stripe of slots, see {@link RouteInstanceToSlotRegistry},
+ * its response cache refresh and delta retention are driven by the scheduler shared by all shards.
  */
 public class InstanceRegistryImpl implements InstanceRegistry {
     private static final Logger logger = LoggerFactory.getLogger(InstanceRegistryImpl.class);
     private final ConcurrentHashMap<String/*appName*/, Map<String/*instanceId*/, Lease<InstanceInfo>>> registry
             = new ConcurrentHashMap<String, Map<String, Lease<InstanceInfo>>>();
+    // published snapshots of the applications, read by the fetch path instead of the leases
+    private final ConcurrentHashMap<String/*appName*/, AtomicReference<AppSnapshot>> snapshots
+            = new ConcurrentHashMap<String, AtomicReference<AppSnapshot>>();
 
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final Lock read = readWriteLock.readLock();
@@ -48,14 +57,36 @@ public class InstanceRegistryImpl implements InstanceRegistry {
     private ConcurrentLinkedQueue<RecentlyChangedItem> recentlyChangedQueue = new ConcurrentLinkedQueue<RecentlyChangedItem>();
     protected volatile ResponseCache responseCache;
     CachedPantheonServerConfig serverConfig;
-    private Timer deltaRetentionTimer = new Timer("Pantheon-DeltaRetentionTimer", true);
+    private final LeaseEvictionManager leaseManager = LeaseEvictionManager.getInstance();
+    private final LeaseHandleTable leaseHandleTable = new LeaseHandleTable();
+    private final ChangeLog changeLog;
+    private final InstanceStatusOverrideRule instanceStatusOverrideRule;
+    private final RegistryDigest digest;
+    private final RegistryPayloadCache registryPayloadCache;
+    private final RegistryChangeListener changeListener;
+    private final int shardId;
 
-    public InstanceRegistryImpl() {
+    /**
+     * @param parentDigest         digest of the whole registry the digest of this shard hands its updates on to
+     * @param payloadBuilder       thread the response cache payloads are rebuilt by
+     * @param registryPayloadCache payload of the whole registry, marked dirty by every change of this shard
+     * @param changeListener       told about every change of this shard
+     */
+    public InstanceRegistryImpl(int shardId, RegistryDigest parentDigest, ScheduledExecutorService payloadBuilder,
+                                RegistryPayloadCache registryPayloadCache, RegistryChangeListener changeListener) {
+        this.shardId = shardId;
+        this.digest = new RegistryDigest(parentDigest);
+        this.registryPayloadCache = registryPayloadCache;
+        this.changeListener = changeListener;
         this.serverConfig = CachedPantheonServerConfig.getInstance();
-        responseCache = new ResponseCacheImpl(serverConfig, this);
-        this.deltaRetentionTimer.schedule(getDeltaRetentionTask(),
-                serverConfig.getDeltaRetentionTimerIntervalInMs(),
-                serverConfig.getDeltaRetentionTimerIntervalInMs());
+        this.instanceStatusOverrideRule = new FirstMatchWinsCompositeRule(new DownOrStartingRule(),
+                new OverrideExistsRule(overriddenInstanceStatusMap), new LeaseExistsRule());
+        this.changeLog = new ChangeLog(Math.max(1, serverConfig.getChangeLogCapacity()));
+        responseCache = new ResponseCacheImpl(serverConfig, this, payloadBuilder);
+    }
+
+    public int getShardId() {
+        return shardId;
     }
 
     public void register(final InstanceInfo info) {
@@ -105,7 +136,9 @@ public class InstanceRegistryImpl implements InstanceRegistry {
             if (existingLease != null) {
                 lease.setServiceUpTimestamp(existingLease.getServiceUpTimestamp());
             }
-            gMap.put(registrant.getId(), lease);
+            Lease<InstanceInfo> replacedLease = gMap.put(registrant.getId(), lease);
+            leaseHandleTable.assign(SlotManager.getInstance().routeSlot(registrant.getAppName()), lease, existingLease);
+            leaseManager.register(registrant, leaseDuration);
 
 //            // This is where the initial state transfer of overridden status happens
             if (!InstanceInfo.InstanceStatus.UNKNOWN.equals(registrant.getOverriddenStatus())) {
@@ -125,16 +158,21 @@ public class InstanceRegistryImpl implements InstanceRegistry {
             // Set the status based on the overridden status rules
             InstanceInfo.InstanceStatus overriddenInstanceStatus = getOverriddenInstanceStatus(registrant, existingLease);
             registrant.setStatusWithoutDirty(overriddenInstanceStatus);
+            if (replacedLease != null) {
+                digestRemove(replacedLease);
+            }
+            digestAdd(lease);
 
             // If the lease is registered with UP status, set lease service up timestamp
             if (InstanceInfo.InstanceStatus.UP.equals(registrant.getStatus())) {
                 lease.serviceUp();
             }
             registrant.setActionType(InstanceInfo.ActionType.ADDED);
-            recentlyChangedQueue.add(new RecentlyChangedItem(lease));
+            recordChange(lease);
             registrant.setLastUpdatedTimestamp();
+            publishSnapshot(registrant.getAppName(), registrant.getId());
             //todo one instance bind to one slot
-            responseCache.invalidate(registrant.getAppName());
+            invalidateCache(registrant.getAppName());
 
             logger.info("Registered instance {} with status {}",
                     registrant.getAppName() + "/" + registrant.getId(), registrant.getStatus());
@@ -145,41 +183,56 @@ public class InstanceRegistryImpl implements InstanceRegistry {
 
     public InstanceInfo.InstanceStatus getOverriddenInstanceStatus(InstanceInfo r,
                                                                    Lease<InstanceInfo> existingLease) {
-        InstanceStatusOverrideRule rule = new FirstMatchWinsCompositeRule(new DownOrStartingRule(),
-                new OverrideExistsRule(overriddenInstanceStatusMap), new LeaseExistsRule());
-        logger.debug("Processing override status using rule: {}", rule);
-        return rule.apply(r, existingLease).status();
+        logger.debug("Processing override status using rule: {}", instanceStatusOverrideRule);
+        return instanceStatusOverrideRule.apply(r, existingLease).status();
     }
 
 
     /**
-     * Get the registry information about all {@link Applications}.
+     * Get the registry information about all {@link Applications}, from the published snapshots.
      */
     public Applications getApplications() {
-
         Applications apps = new Applications();
-        for (Map.Entry<String, Map<String, Lease<InstanceInfo>>> entry : registry.entrySet()) {
-            Application app = null;
-
-            if (entry.getValue() != null) {
-                for (Map.Entry<String, Lease<InstanceInfo>> stringLeaseEntry : entry.getValue().entrySet()) {
-                    Lease<InstanceInfo> lease = stringLeaseEntry.getValue();
-                    if (app == null) {
-                        app = new Application(lease.getHolder().getAppName());
-                    }
-                    app.addInstance(decorateInstanceInfo(lease));
-                }
-            }
-            if (app != null) {
-                apps.addApplication(app);
+        for (AtomicReference<AppSnapshot> snapshotRef : snapshots.values()) {
+            AppSnapshot snapshot = snapshotRef.get();
+            if (!snapshot.isEmpty()) {
+                apps.addApplicationSnapshot(snapshot.getApplication());
             }
         }
-        apps.setAppsHashCode(apps.getReconcileHashCode());
+        apps.setAppsHashCode(digest.getReconcileHashCode());
         return apps;
     }
 
+    /**
+     * publish the current state of the instance to the snapshot of its application, or take it out of the
+     * snapshot if it is no longer registered. The lease is read again on every attempt, so the last writer always
+     * publishes the latest state.
+     */
+    private void publishSnapshot(String appName, String id) {
+        AtomicReference<AppSnapshot> snapshotRef = snapshots.get(appName);
+        if (snapshotRef == null) {
+            AtomicReference<AppSnapshot> newSnapshotRef = new AtomicReference<AppSnapshot>(AppSnapshot.empty(appName));
+            snapshotRef = snapshots.putIfAbsent(appName, newSnapshotRef);
+            if (snapshotRef == null) {
+                snapshotRef = newSnapshotRef;
+            }
+        }
+        while (true) {
+            AppSnapshot current = snapshotRef.get();
+            Map<String, Lease<InstanceInfo>> gMap = registry.get(appName);
+            Lease<InstanceInfo> lease = gMap == null ? null : gMap.get(id);
+            AppSnapshot next = lease == null ? current.without(id) : current.with(decorateInstanceInfo(lease));
+            if (next == current || snapshotRef.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return copy of the holder carrying the lease information, the holder itself is left untouched
+     */
     private InstanceInfo decorateInstanceInfo(Lease<InstanceInfo> lease) {
-        InstanceInfo info = lease.getHolder();
+        InstanceInfo info = new InstanceInfo(lease.getHolder());
 
         // client app settings
         int renewalInterval = LeaseInfo.DEFAULT_LEASE_RENEWAL_INTERVAL;
@@ -236,23 +289,80 @@ public class InstanceRegistryImpl implements InstanceRegistry {
             }
 
 
-            Applications allApps = getApplications();
-            apps.setAppsHashCode(allApps.getReconcileHashCode());
+            apps.setAppsHashCode(digest.getReconcileHashCode());
             return apps;
         } finally {
             write.unlock();
         }
     }
 
-    public InstanceInfo getInstanceByAppAndId(String appName, String id) {
+    /**
+     * Get the changes after the given version of this shard from the {@link ChangeLog}, without locking the
+     * registry and without looking at unchanged instances.
+     *
+     * @param sinceVersion last version of this shard the client has seen
+     * @param delta        the changed instances are added to it
+     * @return current version of this shard, or {@link ChangeLog#TOO_OLD} if the client has to do a full fetch
+     */
+    public long getApplicationDeltasSince(long sinceVersion, Applications delta) {
+        return getApplicationDeltasSince(sinceVersion, delta, null);
+    }
+
+    /**
+     * {@link #getApplicationDeltasSince(long, Applications)} of the applications only, the other changes are skipped
+     * before their instances are copied
+     *
+     * @param appNames null for the changes of all applications
+     */
+    public long getApplicationDeltasSince(long sinceVersion, Applications delta, Set<String> appNames) {
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        long version = changeLog.getChangesSince(sinceVersion, changes);
+        if (version == ChangeLog.TOO_OLD) {
+            return version;
+        }
+        for (Lease<InstanceInfo> lease : changes) {
+            if (appNames != null && !appNames.contains(lease.getHolder().getAppName())) {
+                continue;
+            }
+            InstanceInfo instanceInfo = decorateInstanceInfo(lease);
+            Application app = delta.getRegisteredApplications(instanceInfo.getAppName());
+            if (app == null) {
+                app = new Application(instanceInfo.getAppName());
+                delta.addApplication(app);
+            }
+            app.addInstance(instanceInfo);
+        }
+        return version;
+    }
+
+    public long getVersion() {
+        return changeLog.getVersion();
+    }
+
+    /**
+     * reconcile hash code of the instances of this shard, kept up to date by every change instead of counting them
+     */
+    public String getReconcileHashCode() {
+        return digest.getReconcileHashCode();
+    }
+
+    @Override
+    public Lease<InstanceInfo> getLease(String appName, String id) {
         Map<String, Lease<InstanceInfo>> leaseMap = registry.get(appName);
-        Lease<InstanceInfo> lease = null;
         if (leaseMap != null) {
-            lease = leaseMap.get(id);
+            return leaseMap.get(id);
         }
-        if (lease != null
-                && (!lease.isExpired())) {
-            return decorateInstanceInfo(lease);
+        return null;
+    }
+
+    /**
+     * @return the instance from the published snapshot, which must not be changed, null if the lease expired
+     */
+    public InstanceInfo getInstanceByAppAndId(String appName, String id) {
+        Lease<InstanceInfo> lease = getLease(appName, id);
+        AtomicReference<AppSnapshot> snapshotRef = snapshots.get(appName);
+        if (lease != null && !lease.isExpired() && snapshotRef != null) {
+            return snapshotRef.get().getInstance(id);
         }
         return null;
     }
@@ -265,43 +375,68 @@ public class InstanceRegistryImpl implements InstanceRegistry {
      * @see LeaseManager#renew(java.lang.String, java.lang.String)
      */
     public String renew(String appName, String id) {
-        String errorResponse = null;
         Map<String, Lease<InstanceInfo>> gMap = registry.get(appName);
         Lease<InstanceInfo> leaseToRenew = null;
         if (gMap != null) {
             leaseToRenew = gMap.get(id);
         }
         if (leaseToRenew == null) {
-            errorResponse = String.format("Registry: lease doesn't exist, registering resource: {} - {}", appName, id);
+            String errorResponse = String.format("Registry: lease doesn't exist, registering resource: {} - {}", appName, id);
             logger.warn(errorResponse);
             return errorResponse;
-        } else {
-            InstanceInfo instanceInfo = leaseToRenew.getHolder();
-            if (instanceInfo != null) {
-
-                InstanceInfo.InstanceStatus overriddenInstanceStatus = this.getOverriddenInstanceStatus(
-                        instanceInfo, leaseToRenew);
-                if (overriddenInstanceStatus == InstanceInfo.InstanceStatus.UNKNOWN) {
-                    errorResponse = String.format("Instance status UNKNOWN possibly due to deleted override for instance {}"
-                            + "; re-register required", instanceInfo.getId());
-                    logger.warn(errorResponse);
-                    return errorResponse;
-                }
-                if (!instanceInfo.getStatus().equals(overriddenInstanceStatus)) {
-                    Object[] args = {
-                            instanceInfo.getStatus().name(),
-                            instanceInfo.getOverriddenStatus().name(),
-                            instanceInfo.getId()
-                    };
-                    logger.info(
-                            "The instance status {} is different from overridden instance status {} for instance {}. "
-                                    + "Hence setting the status to overridden status", args);
-                    instanceInfo.setStatusWithoutDirty(overriddenInstanceStatus);
+        }
+        return renewLease(leaseToRenew);
+    }
+
+    /**
+     * Renews the lease by the handle given out on registration, which needs no lookup by name and allocates
+     * nothing when it succeeds.
+     *
+     * @return false if the handle is stale or the renewal failed, the caller should then renew by name
+     * @see LeaseHandleTable
+     */
+    public boolean renew(long leaseHandle) {
+        Lease<InstanceInfo> leaseToRenew = leaseHandleTable.get(leaseHandle);
+        return leaseToRenew != null && renewLease(leaseToRenew) == null;
+    }
+
+    private String renewLease(Lease<InstanceInfo> leaseToRenew) {
+        InstanceInfo instanceInfo = leaseToRenew.getHolder();
+        if (instanceInfo != null) {
+
+            InstanceInfo.InstanceStatus overriddenInstanceStatus = this.getOverriddenInstanceStatus(
+                    instanceInfo, leaseToRenew);
+            if (overriddenInstanceStatus == InstanceInfo.InstanceStatus.UNKNOWN) {
+                String errorResponse = String.format("Instance status UNKNOWN possibly due to deleted override for instance {}"
+                        + "; re-register required", instanceInfo.getId());
+                logger.warn(errorResponse);
+                return errorResponse;
+            }
+            if (!instanceInfo.getStatus().equals(overriddenInstanceStatus)) {
+                Object[] args = {
+                        instanceInfo.getStatus().name(),
+                        instanceInfo.getOverriddenStatus().name(),
+                        instanceInfo.getId()
+                };
+                logger.info(
+                        "The instance status {} is different from overridden instance status {} for instance {}. "
+                                + "Hence setting the status to overridden status", args);
+                try {
+                    read.lock();
+                    setStatus(leaseToRenew, overriddenInstanceStatus);
+                    instanceInfo.setActionType(InstanceInfo.ActionType.MODIFIED);
+                    recordChange(leaseToRenew);
+                    instanceInfo.setLastUpdatedTimestamp();
+                    publishSnapshot(instanceInfo.getAppName(), instanceInfo.getId());
+                    invalidateCache(instanceInfo.getAppName());
+                } finally {
+                    read.unlock();
                 }
             }
-            leaseToRenew.renew();
-            return null;
         }
+        leaseToRenew.renew();
+        leaseManager.recordRenewal();
+        return null;
     }
 
     /**
@@ -345,7 +480,7 @@ public class InstanceRegistryImpl implements InstanceRegistry {
                     // replica start up
                     info.setOverriddenStatus(newStatus);
                     long replicaDirtyTimestamp = 0;
-                    info.setStatusWithoutDirty(newStatus);
+                    setStatus(lease, newStatus);
                     if (lastDirtyTimestamp != null) {
                         replicaDirtyTimestamp = Long.valueOf(lastDirtyTimestamp);
                     }
@@ -355,9 +490,10 @@ public class InstanceRegistryImpl implements InstanceRegistry {
                         info.setLastDirtyTimestamp(replicaDirtyTimestamp);
                     }
                     info.setActionType(InstanceInfo.ActionType.MODIFIED);
-                    recentlyChangedQueue.add(new RecentlyChangedItem(lease));
+                    recordChange(lease);
                     info.setLastUpdatedTimestamp();
-                    responseCache.invalidate(appName);
+                    publishSnapshot(appName, id);
+                    invalidateCache(appName);
 
                 }
                 return true;
@@ -376,8 +512,22 @@ public class InstanceRegistryImpl implements InstanceRegistry {
             logger.info("Adding overridden status for instance id {} and the value is {}",
                     id, overriddenStatus.name());
             overriddenInstanceStatusMap.put(id, overriddenStatus);
-            InstanceInfo instanceInfo = this.getInstanceByAppAndId(appName, id);
-            instanceInfo.setOverriddenStatus(overriddenStatus);
+            Lease<InstanceInfo> lease = getLease(appName, id);
+            if (lease == null) {
+                return;
+            }
+            try {
+                read.lock();
+                InstanceInfo info = lease.getHolder();
+                info.setOverriddenStatus(overriddenStatus);
+                info.setActionType(InstanceInfo.ActionType.MODIFIED);
+                recordChange(lease);
+                info.setLastUpdatedTimestamp();
+                publishSnapshot(appName, id);
+                invalidateCache(appName);
+            } finally {
+                read.unlock();
+            }
             logger.info("Set the overridden status for instance (appname:{}} and the value is {} ",
                     appName + ",id:" + id, overriddenStatus.name());
         }
@@ -417,7 +567,7 @@ public class InstanceRegistryImpl implements InstanceRegistry {
                 InstanceInfo.InstanceStatus currentOverride = overriddenInstanceStatusMap.remove(id);
                 if (currentOverride != null && info != null) {
                     info.setOverriddenStatus(InstanceInfo.InstanceStatus.UNKNOWN);
-                    info.setStatusWithoutDirty(newStatus);
+                    setStatus(lease, newStatus);
                     long replicaDirtyTimestamp = 0;
                     if (lastDirtyTimestamp != null) {
                         replicaDirtyTimestamp = Long.valueOf(lastDirtyTimestamp);
@@ -428,9 +578,10 @@ public class InstanceRegistryImpl implements InstanceRegistry {
                         info.setLastDirtyTimestamp(replicaDirtyTimestamp);
                     }
                     info.setActionType(InstanceInfo.ActionType.MODIFIED);
-                    recentlyChangedQueue.add(new RecentlyChangedItem(lease));
+                    recordChange(lease);
                     info.setLastUpdatedTimestamp();
-                    responseCache.invalidate(appName);
+                    publishSnapshot(appName, id);
+                    invalidateCache(appName);
                 }
                 return true;
             }
@@ -463,18 +614,22 @@ public class InstanceRegistryImpl implements InstanceRegistry {
             if (instanceStatus != null) {
                 logger.debug("Removed instance id {} from the overridden map which has value {}", id, instanceStatus.name());
             }
+            leaseManager.cancel(appName, id);
             if (leaseToCancel == null) {
                 logger.warn("Registry: cancel failed because Lease is not registered for: {}/{}", appName, id);
                 return false;
             } else {
                 leaseToCancel.cancel();
+                digestRemove(leaseToCancel);
+                leaseHandleTable.release(leaseToCancel);
                 InstanceInfo instanceInfo = leaseToCancel.getHolder();
                 if (instanceInfo != null) {
                     instanceInfo.setActionType(InstanceInfo.ActionType.DELETED);
-                    recentlyChangedQueue.add(new RecentlyChangedItem(leaseToCancel));
+                    recordChange(leaseToCancel);
                     instanceInfo.setLastUpdatedTimestamp();
                 }
-                responseCache.invalidate(appName);
+                publishSnapshot(appName, id);
+                invalidateCache(appName);
                 logger.info("Cancelled instance {}/{} ", appName, id);
                 return true;
             }
@@ -483,20 +638,16 @@ public class InstanceRegistryImpl implements InstanceRegistry {
         }
     }
 
+    /**
+     * @return the application of the published snapshot, which must not be changed, null if it has no instances
+     */
     public Application getApplication(String appName) {
-        Application app = null;
-
-        Map<String, Lease<InstanceInfo>> leaseMap = registry.get(appName);
-
-        if (leaseMap != null && leaseMap.size() > 0) {
-            for (Map.Entry<String, Lease<InstanceInfo>> entry : leaseMap.entrySet()) {
-                if (app == null) {
-                    app = new Application(appName);
-                }
-                app.addInstance(decorateInstanceInfo(entry.getValue()));
-            }
+        AtomicReference<AppSnapshot> snapshotRef = snapshots.get(appName);
+        if (snapshotRef == null) {
+            return null;
         }
-        return app;
+        AppSnapshot snapshot = snapshotRef.get();
+        return snapshot.isEmpty() ? null : snapshot.getApplication();
     }
 
     private static final class RecentlyChangedItem {
@@ -518,25 +669,71 @@ public class InstanceRegistryImpl implements InstanceRegistry {
     }
 
     /**
-     * remove data from recentlyChangedQueue
+     * count the holder of a registered lease into the digest, unless the lease was cancelled meanwhile
      */
-    private TimerTask getDeltaRetentionTask() {
-        return new TimerTask() {
-
-            @Override
-            public void run() {
-                Iterator<RecentlyChangedItem> it = recentlyChangedQueue.iterator();
-                while (it.hasNext()) {
-                    if (it.next().getLastUpdateTime() <
-                            //default 180s
-                            System.currentTimeMillis() - serverConfig.getRetentionTimeInMSInDeltaQueue()) {
-                        it.remove();
-                    } else {
-                        break;
-                    }
-                }
+    private void digestAdd(Lease<InstanceInfo> lease) {
+        synchronized (lease) {
+            if (lease.getDigestStatus() == null && lease.getEvictionTimestamp() <= 0) {
+                InstanceInfo.InstanceStatus status = lease.getHolder().getStatus();
+                lease.setDigestStatus(status);
+                digest.add(lease.getHolder().getId(), status);
             }
-        };
+        }
+    }
+
+    private void digestRemove(Lease<InstanceInfo> lease) {
+        synchronized (lease) {
+            InstanceInfo.InstanceStatus status = lease.getDigestStatus();
+            if (status != null) {
+                lease.setDigestStatus(null);
+                digest.remove(lease.getHolder().getId(), status);
+            }
+        }
+    }
+
+    /**
+     * change the status of the holder, and of the holder in the digest if it is counted
+     */
+    private void setStatus(Lease<InstanceInfo> lease, InstanceInfo.InstanceStatus newStatus) {
+        synchronized (lease) {
+            lease.getHolder().setStatusWithoutDirty(newStatus);
+            InstanceInfo.InstanceStatus status = lease.getDigestStatus();
+            if (status != null) {
+                lease.setDigestStatus(newStatus);
+                digest.statusChanged(lease.getHolder().getId(), status, newStatus);
+            }
+        }
+    }
+
+    private void recordChange(Lease<InstanceInfo> lease) {
+        recentlyChangedQueue.add(new RecentlyChangedItem(lease));
+        long version = changeLog.append(lease);
+        changeListener.onChange(shardId, version);
+    }
+
+    /**
+     * remove data from recentlyChangedQueue, called by the registry shared scheduler
+     */
+    public void purgeRecentlyChangedQueue() {
+        Iterator<RecentlyChangedItem> it = recentlyChangedQueue.iterator();
+        while (it.hasNext()) {
+            if (it.next().getLastUpdateTime() <
+                    //default 180s
+                    System.currentTimeMillis() - serverConfig.getRetentionTimeInMSInDeltaQueue()) {
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void invalidateCache(String appName) {
+        responseCache.invalidate(appName);
+        registryPayloadCache.invalidate();
+    }
+
+    public PayloadBuildMetrics getPayloadBuildMetrics() {
+        return responseCache.getBuildMetrics();
     }
 
     /**
@@ -0,0 +1,120 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.common.protocol.heartBeat.LeaseHeartBeat;
+import com.pantheon.server.lease.Lease;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Anthony
+ * @create 2021/12/22
+ * @desc leases of one registry shard indexed by a compact handle, so a heartbeat can be renewed by array index
+ * instead of by appName and instance id.
+ * <pre>
+ * | generation(31) | slot(14) | index(18) |
+ * </pre>
+ * The slot routes the handle to its shard, the index locates the lease in the table and the generation, which is new
+ * for every allocation, makes a handle stale once its lease was cancelled or the index was reused.
+ * Lookups take no lock, allocation and release are guarded by the table.
+ */
+public class LeaseHandleTable {
+    private static final int INDEX_BITS = 18;
+    private static final int SLOT_BITS = 14;
+    private static final int MAX_CAPACITY = 1 << INDEX_BITS;
+    private static final int INDEX_MASK = MAX_CAPACITY - 1;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = Integer.MAX_VALUE;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<Lease<InstanceInfo>> leases =
+            new AtomicReferenceArray<Lease<InstanceInfo>>(INITIAL_CAPACITY);
+    private int[] freeIndexes = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int nextIndex = 0;
+    private int generation = 0;
+
+    /**
+     * give the lease a handle, the handle of the replaced lease is taken over if there is one
+     *
+     * @return the handle, or {@link LeaseHeartBeat#NO_LEASE_HANDLE} if the table is full
+     */
+    public synchronized long assign(int slotNo, Lease<InstanceInfo> lease, Lease<InstanceInfo> replacedLease) {
+        if (replacedLease != null && get(replacedLease.getHandle()) == replacedLease) {
+            long handle = replacedLease.getHandle();
+            lease.setHandle(handle);
+            leases.set(getIndex(handle), lease);
+            return handle;
+        }
+        int index;
+        if (freeCount > 0) {
+            index = freeIndexes[--freeCount];
+        } else if (nextIndex < MAX_CAPACITY) {
+            index = nextIndex++;
+        } else {
+            return LeaseHeartBeat.NO_LEASE_HANDLE;
+        }
+        if (index >= leases.length()) {
+            grow();
+        }
+        generation = (generation + 1) & GENERATION_MASK;
+        long handle = ((long) generation << (SLOT_BITS + INDEX_BITS))
+                | ((long) (slotNo & SLOT_MASK) << INDEX_BITS)
+                | index;
+        lease.setHandle(handle);
+        leases.set(index, lease);
+        return handle;
+    }
+
+    public synchronized void release(Lease<InstanceInfo> lease) {
+        long handle = lease.getHandle();
+        if (get(handle) != lease) {
+            return;
+        }
+        int index = getIndex(handle);
+        leases.set(index, null);
+        if (freeCount == freeIndexes.length) {
+            int[] newFreeIndexes = new int[freeIndexes.length * 2];
+            System.arraycopy(freeIndexes, 0, newFreeIndexes, 0, freeCount);
+            freeIndexes = newFreeIndexes;
+        }
+        freeIndexes[freeCount++] = index;
+    }
+
+    /**
+     * @return the lease of the handle, null if the handle is stale
+     */
+    public Lease<InstanceInfo> get(long handle) {
+        if (handle < 0) {
+            return null;
+        }
+        AtomicReferenceArray<Lease<InstanceInfo>> current = leases;
+        int index = getIndex(handle);
+        if (index >= current.length()) {
+            return null;
+        }
+        Lease<InstanceInfo> lease = current.get(index);
+        if (lease != null && lease.getHandle() == handle) {
+            return lease;
+        }
+        return null;
+    }
+
+    public static int getSlotNo(long handle) {
+        return (int) (handle >>> INDEX_BITS) & SLOT_MASK;
+    }
+
+    private static int getIndex(long handle) {
+        return (int) handle & INDEX_MASK;
+    }
+
+    private void grow() {
+        AtomicReferenceArray<Lease<InstanceInfo>> current = leases;
+        int newCapacity = Math.min(current.length() * 2, MAX_CAPACITY);
+        AtomicReferenceArray<Lease<InstanceInfo>> newLeases = new AtomicReferenceArray<Lease<InstanceInfo>>(newCapacity);
+        for (int i = 0; i < current.length(); i++) {
+            newLeases.set(i, current.get(i));
+        }
+        leases = newLeases;
+    }
+}
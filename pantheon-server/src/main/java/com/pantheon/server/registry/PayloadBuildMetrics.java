@@ -0,0 +1,60 @@
+package com.pantheon.server.registry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Anthony
+ * @create 2021/12/26
+ * @desc duration and lag of the background payload builds.
+ * <p>
+ * The duration is the time one build takes, the lag is the time from the first change a build picks up until the
+ * build is done, which is how long readers may get a payload older than the registry.
+ */
+public class PayloadBuildMetrics {
+    private final AtomicLong buildCount = new AtomicLong(0);
+    private volatile long lastBuildDurationMs;
+    private volatile long maxBuildDurationMs;
+    private volatile long lastBuildLagMs;
+    private volatile long maxBuildLagMs;
+
+    /**
+     * called by the single builder thread only
+     */
+    void record(long buildDurationMs, long buildLagMs) {
+        buildCount.incrementAndGet();
+        lastBuildDurationMs = buildDurationMs;
+        lastBuildLagMs = buildLagMs;
+        if (buildDurationMs > maxBuildDurationMs) {
+            maxBuildDurationMs = buildDurationMs;
+        }
+        if (buildLagMs > maxBuildLagMs) {
+            maxBuildLagMs = buildLagMs;
+        }
+    }
+
+    public long getBuildCount() {
+        return buildCount.get();
+    }
+
+    public long getLastBuildDurationMs() {
+        return lastBuildDurationMs;
+    }
+
+    public long getMaxBuildDurationMs() {
+        return maxBuildDurationMs;
+    }
+
+    public long getLastBuildLagMs() {
+        return lastBuildLagMs;
+    }
+
+    public long getMaxBuildLagMs() {
+        return maxBuildLagMs;
+    }
+
+    @Override
+    public String toString() {
+        return "builds: " + getBuildCount() + ", duration ms last/max: " + lastBuildDurationMs + "/" + maxBuildDurationMs
+                + ", lag ms last/max: " + lastBuildLagMs + "/" + maxBuildLagMs;
+    }
+}
@@ -0,0 +1,17 @@
+package com.pantheon.server.registry;
+
+/**
+ * @author Anthony
+ * @create 2021/12/31
+ * @desc told about every change of a registry shard once it is in the {@link ChangeLog}.
+ * <p>
+ * Called by the thread making the change, often with the registry locked, so it should only take note of the change
+ * and do the rest in a thread of its own.
+ */
+public interface RegistryChangeListener {
+
+    /**
+     * @param version version of the shard the change got
+     */
+    void onChange(int shardId, long version);
+}
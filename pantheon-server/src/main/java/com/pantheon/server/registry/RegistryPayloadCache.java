@@ -0,0 +1,266 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.compression.CompressionCodec;
+import com.pantheon.remoting.compression.CompressionCodecs;
+import com.pantheon.remoting.protocol.RemotingSerializable;
+import com.pantheon.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Anthony
+ * @create 2021/12/26
+ * @desc compressed payload of the full registry served to full fetches, with the registry versions it is up to date with.
+ * <p>
+ * A change of any shard marks the payload dirty, it is rebuilt by the background builder once the debounce window
+ * after the first change has passed. Readers get the last completed payload straight away, a client that gets an
+ * older one catches up by the delta fetch since its versions. A failed rebuild is retried after a delay doubling
+ * with every failure in a row, up to {@link #MAX_RETRY_DELAY_MS}.
+ * <p>
+ * The applications are serialized straight into a pooled direct buffer, without a string or byte array of the
+ * payload in between, and compressed from there into another one unless the payload is below the minimum size.
+ * Responses send retained duplicates of the buffer, which is given back to the pool once it is replaced and the last
+ * response using it is written.
+ * <p>
+ * There is one payload per {@link SerializeType} and {@link CompressionCodec} the clients ask for, a format is only
+ * built once a client has asked for it, and from then on rebuilt from the same applications as the others.
+ */
+public class RegistryPayloadCache {
+    private static final Logger logger = LoggerFactory.getLogger(RegistryPayloadCache.class);
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final long MIN_RETRY_DELAY_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 30000;
+
+    private final RouteInstanceToSlotRegistry registry;
+    private final ScheduledExecutorService payloadBuilder;
+    private final long rebuildDebounceMs;
+    private final int compressionMinSize;
+    private final ConcurrentMap<PayloadFormat, RegistryPayload> payloads = new ConcurrentHashMap<PayloadFormat, RegistryPayload>();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    // time of the first change not in the payload yet, 0 if there is none
+    private final AtomicLong dirtySince = new AtomicLong(0);
+    private final PayloadBuildMetrics buildMetrics = new PayloadBuildMetrics();
+    // rebuilds failed in a row, only touched by the builder thread
+    private int failedRebuilds = 0;
+
+    public RegistryPayloadCache(RouteInstanceToSlotRegistry registry, ScheduledExecutorService payloadBuilder,
+                                long rebuildDebounceMs, int compressionMinSize) {
+        this.registry = registry;
+        this.payloadBuilder = payloadBuilder;
+        this.rebuildDebounceMs = Math.max(0, rebuildDebounceMs);
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    /**
+     * @return the last completed payload of the format, built by the caller only if there has never been one
+     */
+    public RegistryPayload get(SerializeType serializeType, CompressionCodec codec) throws IOException {
+        PayloadFormat format = new PayloadFormat(serializeType, codec);
+        RegistryPayload current = payloads.get(format);
+        if (current == null) {
+            synchronized (this) {
+                current = payloads.get(format);
+                if (current == null) {
+                    // versions are taken before the applications, so that no change can be missed by the next delta fetch
+                    RegistryVersions versions = new RegistryVersions(registry.getIncarnation());
+                    Applications apps = registry.getApplications(versions);
+                    current = build(versions, apps, format);
+                    replace(format, current);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * mark the payload dirty, called on every change of the registry
+     */
+    public void invalidate() {
+        invalidate(rebuildDebounceMs);
+    }
+
+    /**
+     * @param delayMs time until the rebuild, unless one is scheduled already
+     */
+    private void invalidate(long delayMs) {
+        dirtySince.compareAndSet(0, System.currentTimeMillis());
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            try {
+                payloadBuilder.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        rebuild();
+                    }
+                }, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                rebuildScheduled.set(false);
+                logger.warn("payload builder is shut down, registry payload not rebuilt");
+            }
+        }
+    }
+
+    private void rebuild() {
+        rebuildScheduled.set(false);
+        long firstDirtyTime = dirtySince.getAndSet(0);
+        long start = System.currentTimeMillis();
+        try {
+            RegistryVersions versions = new RegistryVersions(registry.getIncarnation());
+            Applications apps = registry.getApplications(versions);
+            for (PayloadFormat format : payloads.keySet()) {
+                RegistryPayload newPayload = build(versions, apps, format);
+                synchronized (this) {
+                    replace(format, newPayload);
+                }
+            }
+            long end = System.currentTimeMillis();
+            buildMetrics.record(end - start, end - (firstDirtyTime == 0 ? start : firstDirtyTime));
+            failedRebuilds = 0;
+        } catch (Throwable t) {
+            long retryDelayMs = Math.min(MAX_RETRY_DELAY_MS,
+                    Math.max(MIN_RETRY_DELAY_MS, rebuildDebounceMs) << Math.min(failedRebuilds, 16));
+            failedRebuilds++;
+            logger.error("Cannot rebuild the registry payload, retrying in " + retryDelayMs + " ms", t);
+            if (firstDirtyTime != 0) {
+                dirtySince.compareAndSet(0, firstDirtyTime);
+            }
+            invalidate(retryDelayMs);
+        }
+    }
+
+    private void replace(PayloadFormat format, RegistryPayload newPayload) {
+        RegistryPayload oldPayload = payloads.put(format, newPayload);
+        if (oldPayload != null) {
+            oldPayload.release();
+        }
+    }
+
+    private RegistryPayload build(RegistryVersions versions, Applications apps, PayloadFormat format) throws IOException {
+        // the last payload sizes save the buffers from growing several times
+        RegistryPayload lastPayload = payloads.get(format);
+        ByteBuf raw = PooledByteBufAllocator.DEFAULT.directBuffer(
+                lastPayload == null ? STREAM_BUFFER_SIZE : lastPayload.getRawSize());
+        ByteBuf compressed = null;
+        try {
+            RemotingSerializable.writeTo(apps, format.serializeType, new ByteBufOutputStream(raw));
+            int rawSize = raw.readableBytes();
+            if (!CompressionCodecs.shouldCompress(format.codec, rawSize, compressionMinSize)) {
+                RegistryPayload payload = new RegistryPayload(versions, CompressionCodecs.NONE, raw, rawSize);
+                raw = null;
+                return payload;
+            }
+            compressed = PooledByteBufAllocator.DEFAULT.directBuffer(
+                    lastPayload == null ? STREAM_BUFFER_SIZE : lastPayload.getSize());
+            OutputStream out = format.codec.compress(new ByteBufOutputStream(compressed));
+            raw.readBytes(out, rawSize);
+            out.close();
+            RegistryPayload payload = new RegistryPayload(versions, format.codec, compressed, rawSize);
+            compressed = null;
+            return payload;
+        } finally {
+            if (raw != null) {
+                raw.release();
+            }
+            if (compressed != null) {
+                compressed.release();
+            }
+        }
+    }
+
+    public PayloadBuildMetrics getBuildMetrics() {
+        return buildMetrics;
+    }
+
+    private static class PayloadFormat {
+        private final SerializeType serializeType;
+        private final CompressionCodec codec;
+
+        private PayloadFormat(SerializeType serializeType, CompressionCodec codec) {
+            this.serializeType = serializeType;
+            this.codec = codec;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PayloadFormat)) {
+                return false;
+            }
+            PayloadFormat other = (PayloadFormat) o;
+            return serializeType == other.serializeType && codec == other.codec;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * serializeType.hashCode() + System.identityHashCode(codec);
+        }
+    }
+
+    public static class RegistryPayload {
+        private final RegistryVersions registryVersions;
+        private final CompressionCodec codec;
+        private final ByteBuf data;
+        private final int rawSize;
+        private boolean released = false;
+
+        public RegistryPayload(RegistryVersions registryVersions, CompressionCodec codec, ByteBuf data, int rawSize) {
+            this.registryVersions = registryVersions;
+            this.codec = codec;
+            this.data = data;
+            this.rawSize = rawSize;
+        }
+
+        public RegistryVersions getRegistryVersions() {
+            return registryVersions;
+        }
+
+        /**
+         * @return codec the payload is compressed with, none if it is below the minimum size
+         */
+        public CompressionCodec getCodec() {
+            return codec;
+        }
+
+        public int getSize() {
+            return data.readableBytes();
+        }
+
+        public int getRawSize() {
+            return rawSize;
+        }
+
+        /**
+         * @return duplicate of the payload holding a reference of its own, to be released by whoever writes
+         * it, null if the payload has been replaced and released meanwhile
+         */
+        public synchronized ByteBuf retainedDuplicate() {
+            if (released) {
+                return null;
+            }
+            return data.duplicate().retain();
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                data.release();
+            }
+        }
+    }
+}
@@ -31,4 +31,9 @@ public interface ResponseCache {
      * @return compressed payload which contains information about the applications.
      */
     byte[] getGZIP(Key key);
+
+    /**
+     * Get the duration and lag of the background payload builds.
+     */
+    PayloadBuildMetrics getBuildMetrics();
 }
@@ -1,23 +1,26 @@
 package com.pantheon.server.registry;
 
 import com.alibaba.fastjson.JSON;
-import com.google.common.cache.*;
 import com.pantheon.client.appinfo.Application;
 import com.pantheon.client.appinfo.Applications;
+import com.pantheon.remoting.compression.CompressedPayload;
+import com.pantheon.remoting.compression.CompressionCodec;
+import com.pantheon.remoting.compression.CompressionCodecs;
 import com.pantheon.server.config.CachedPantheonServerConfig;
 import com.pantheon.server.config.PantheonServerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Date;
-import java.util.TimerTask;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * @author Anthony
@@ -30,6 +33,12 @@ import java.util.zip.GZIPOutputStream;
  * categories of requests - all applications, delta changes and for individual
  * applications. The compressed form is probably the most efficient in terms of
  * network traffic especially when querying all applications.
+ * <p>
+ * A change of an application invalidates only the keys it is part of, and marks them dirty.
+ * <p>
+ * Payloads are not built on the request path. The dirty keys are rebuilt by the background builder once the
+ * debounce window after the first change has passed, so a burst of changes costs one build, and readers always get
+ * the last completed payload straight away. Only a key read for the first time is built by its reader.
  */
 public class ResponseCacheImpl implements ResponseCache {
     private final PantheonServerConfig serverConfig;
@@ -39,43 +48,32 @@ public class ResponseCacheImpl implements ResponseCache {
     public static final String ALL_APPS = "ALL_APPS";
     public static final String ALL_APPS_DELTA = "ALL_APPS_DELTA";
     private static final String EMPTY_PAYLOAD = "";
+    private static final long MIN_RETRY_DELAY_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 30000;
     private final AtomicLong versionDelta = new AtomicLong(0);
-    //map实现readOnlyCacheMap
-    private final ConcurrentMap<Key, Value> readOnlyCacheMap = new ConcurrentHashMap<Key, Value>();
-    //guava缓存
-    private final LoadingCache<Key, Value> readWriteCacheMap;
-    private final java.util.Timer timer = new java.util.Timer("Pantheon-CacheFillTimer", true);
+    // last completed payloads, replaced by the builder
+    private final ConcurrentMap<Key, Value> payloads = new ConcurrentHashMap<Key, Value>();
+    // keys whose payload is older than the registry, with the time they got dirty
+    private final ConcurrentMap<Key, Long> dirtyKeys = new ConcurrentHashMap<Key, Long>();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    // counts invalidations, tells a reader building a payload itself whether it may already be outdated
+    private final AtomicLong invalidationCount = new AtomicLong(0);
+    private final ScheduledExecutorService payloadBuilder;
+    private final long rebuildDebounceMs;
+    private final PayloadBuildMetrics buildMetrics = new PayloadBuildMetrics();
+    // rebuilds failed in a row, only touched by the builder thread
+    private int failedRebuilds = 0;
 
 
-    public ResponseCacheImpl(CachedPantheonServerConfig serverConfig, InstanceRegistryImpl instanceRegistryImpl) {
+    /**
+     * @param payloadBuilder single thread the payloads of all shards are rebuilt by
+     */
+    public ResponseCacheImpl(CachedPantheonServerConfig serverConfig, InstanceRegistryImpl instanceRegistryImpl,
+                             ScheduledExecutorService payloadBuilder) {
         this.serverConfig = serverConfig;
         this.instanceRegistryImpl = instanceRegistryImpl;
-        //default 30
-        long responseCacheUpdateIntervalMs = serverConfig.getResponseCacheUpdateIntervalMs();
-        this.readWriteCacheMap =
-                CacheBuilder.newBuilder().initialCapacity(1000)
-                        //default 180s
-                        .expireAfterWrite(serverConfig.getResponseCacheAutoExpirationInSeconds(), TimeUnit.SECONDS)
-                        .removalListener(new RemovalListener<Key, Value>() {
-                            @Override
-                            public void onRemoval(RemovalNotification<Key, Value> notification) {
-                                Key removedKey = notification.getKey();
-                            }
-                        })
-//If the cached information is not available it is generated on the first
-//request. After the first request, the information is then updated periodically by a background thread.
-                        .build(new CacheLoader<Key, Value>() {
-                            @Override
-                            public Value load(Key key) throws Exception {
-                                Value value = generatePayload(key);
-                                return value;
-                            }
-                        });
-
-        timer.schedule(getCacheUpdateTask(),
-                new Date(((System.currentTimeMillis() / responseCacheUpdateIntervalMs) * responseCacheUpdateIntervalMs)
-                        + responseCacheUpdateIntervalMs),
-                responseCacheUpdateIntervalMs);
+        this.payloadBuilder = payloadBuilder;
+        this.rebuildDebounceMs = Math.max(0, serverConfig.getPayloadRebuildDebounceMs());
     }
 
     private Value generatePayload(Key key) {
@@ -107,13 +105,15 @@ public class ResponseCacheImpl implements ResponseCache {
     }
 
     /**
-     * Invalidate the cache of a particular application.
+     * Invalidate the cache of a particular application, and of all applications.
      *
      * @param appName the application name of the application.
      */
     @Override
     public void invalidate(String appName) {
         invalidate(
+                new Key(appName, Key.ACCEPT.FULL),
+                new Key(appName, Key.ACCEPT.COMPACT),
                 new Key(ALL_APPS, Key.ACCEPT.FULL),
                 new Key(ALL_APPS, Key.ACCEPT.COMPACT),
                 new Key(ALL_APPS_DELTA, Key.ACCEPT.FULL),
@@ -131,7 +131,76 @@ public class ResponseCacheImpl implements ResponseCache {
             logger.debug("Invalidating the response cache key : {} {} ",
                     "Application", key.getName());
 
-            readWriteCacheMap.invalidate(key);
+            if (payloads.containsKey(key)) {
+                dirtyKeys.putIfAbsent(key, System.currentTimeMillis());
+            }
+        }
+        invalidationCount.incrementAndGet();
+        if (!dirtyKeys.isEmpty()) {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * schedule a rebuild at the end of the debounce window, unless one is scheduled already
+     */
+    private void scheduleRebuild() {
+        scheduleRebuild(rebuildDebounceMs);
+    }
+
+    private void scheduleRebuild(long delayMs) {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            try {
+                payloadBuilder.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        rebuild();
+                    }
+                }, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                rebuildScheduled.set(false);
+                logger.warn("payload builder is shut down, response cache not rebuilt");
+            }
+        }
+    }
+
+    /**
+     * rebuild the dirty keys, keys changed again while they are rebuilt stay dirty and schedule the next rebuild,
+     * keys that fail stay dirty and are retried after a delay doubling with every failed rebuild in a row
+     */
+    private void rebuild() {
+        rebuildScheduled.set(false);
+        long start = System.currentTimeMillis();
+        long firstDirtyTime = start;
+        int built = 0;
+        boolean failed = false;
+        for (Map.Entry<Key, Long> entry : dirtyKeys.entrySet()) {
+            Key key = entry.getKey();
+            Long dirtyTime = entry.getValue();
+            if (!dirtyKeys.remove(key, dirtyTime)) {
+                continue;
+            }
+            try {
+                payloads.put(key, generatePayload(key));
+                firstDirtyTime = Math.min(firstDirtyTime, dirtyTime);
+                built++;
+            } catch (Throwable t) {
+                logger.error("Cannot rebuild value for key :" + key, t);
+                dirtyKeys.putIfAbsent(key, dirtyTime);
+                failed = true;
+            }
+        }
+        if (failed) {
+            long retryDelayMs = Math.min(MAX_RETRY_DELAY_MS,
+                    Math.max(MIN_RETRY_DELAY_MS, rebuildDebounceMs) << Math.min(failedRebuilds, 16));
+            failedRebuilds++;
+            scheduleRebuild(retryDelayMs);
+        } else {
+            failedRebuilds = 0;
+        }
+        if (built > 0) {
+            long end = System.currentTimeMillis();
+            buildMetrics.record(end - start, end - firstDirtyTime);
         }
     }
 
@@ -159,16 +228,20 @@ public class ResponseCacheImpl implements ResponseCache {
      * Get the payload in both compressed and uncompressed form.
      */
     Value getValue(final Key key) {
-        Value payload = null;
+        Value payload = payloads.get(key);
+        if (payload != null) {
+            return payload;
+        }
         try {
-            //first cache
-            final Value currentPayload = readOnlyCacheMap.get(key);
-            if (currentPayload != null) {
-                payload = currentPayload;
-            } else {
-                //secondary cache
-                payload = readWriteCacheMap.get(key);
-                readOnlyCacheMap.put(key, payload);
+            // first read of the key, later ones are served from the payloads the builder keeps up to date
+            long invalidations = invalidationCount.get();
+            payload = generatePayload(key);
+            Value existingPayload = payloads.putIfAbsent(key, payload);
+            if (existingPayload != null) {
+                payload = existingPayload;
+            } else if (invalidationCount.get() != invalidations) {
+                dirtyKeys.putIfAbsent(key, System.currentTimeMillis());
+                scheduleRebuild();
             }
         } catch (Throwable t) {
             logger.error("Cannot get value for key :" + key, t);
@@ -178,77 +251,62 @@ public class ResponseCacheImpl implements ResponseCache {
 
     @Override
     public byte[] getGZIP(Key key) {
+        CompressedPayload compressed = getCompressed(key, CompressionCodecs.LEGACY_GZIP);
+        return compressed == null ? null : compressed.getData();
+    }
+
+    private CompressedPayload getCompressed(Key key, CompressionCodec codec) {
         Value payload = getValue(key);
-        logger.info("send all apps info info: {}, with size:{} " ,payload.getPayload(),payload.getGzipped().length);
         if (payload == null || payload.getPayload().equals(EMPTY_PAYLOAD)) {
             return null;
-        } else {
-            return payload.getGzipped();
+        }
+        try {
+            return payload.getCompressed(codec);
+        } catch (IOException e) {
+            logger.error("Cannot compress value for key :" + key + " with " + codec.getName(), e);
+            return null;
         }
     }
 
 
-    /**
-     * transfer cache data from readWriteCacheMap to readOnlyCacheMap
-     */
-    private TimerTask getCacheUpdateTask() {
-        return new TimerTask() {
-            @Override
-            public void run() {
-//                logger.debug("Updating the client cache from response cache");
-                for (Key key : readOnlyCacheMap.keySet()) {
-//                    if (logger.isDebugEnabled()) {
-//                        logger.debug("Updating the client cache from response cache for key : {}", key.getName());
-//                    }
-                    try {
-                        Value cacheValue = readWriteCacheMap.get(key);
-                        Value currentCacheValue = readOnlyCacheMap.get(key);
-                        if (cacheValue != currentCacheValue) {
-                            readOnlyCacheMap.put(key, cacheValue);
-                        }
-                    } catch (Throwable th) {
-                        logger.error("Error while updating the client cache from response cache", th);
-                    }
-                }
-            }
-        };
+    @Override
+    public PayloadBuildMetrics getBuildMetrics() {
+        return buildMetrics;
     }
 
 
     /**
-     * The class that stores payload in both compressed and uncompressed form.
+     * The class that stores payload in uncompressed form, and the forms compressed with the codecs asked for so far.
      */
     public class Value {
         private final String payload;
-        private byte[] gzipped;
+        private final byte[] rawBytes;
+        private final ConcurrentMap<CompressionCodec, CompressedPayload> compressed =
+                new ConcurrentHashMap<CompressionCodec, CompressedPayload>();
 
         public Value(String payload) {
             this.payload = payload;
-            if (!EMPTY_PAYLOAD.equals(payload)) {
-                try {
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                    GZIPOutputStream out = new GZIPOutputStream(bos);
-                    byte[] rawBytes = payload.getBytes();
-                    out.write(rawBytes);
-                    // Finish creation of gzip file
-                    out.finish();
-                    out.close();
-                    bos.close();
-                    gzipped = bos.toByteArray();
-                } catch (IOException e) {
-                    gzipped = null;
-                }
-            } else {
-                gzipped = null;
-            }
+            rawBytes = EMPTY_PAYLOAD.equals(payload) ? null : payload.getBytes(StandardCharsets.UTF_8);
         }
 
         public String getPayload() {
             return payload;
         }
 
-        public byte[] getGzipped() {
-            return gzipped;
+        /**
+         * @return the payload compressed with the codec, compressed on the first call for the codec, uncompressed if
+         * it is below the minimum size
+         */
+        public CompressedPayload getCompressed(CompressionCodec codec) throws IOException {
+            CompressedPayload result = compressed.get(codec);
+            if (result == null) {
+                result = CompressionCodecs.compress(codec, rawBytes, serverConfig.getCompressionMinSize());
+                CompressedPayload existing = compressed.putIfAbsent(codec, result);
+                if (existing != null) {
+                    result = existing;
+                }
+            }
+            return result;
         }
     }
 
@@ -258,6 +316,6 @@ public class ResponseCacheImpl implements ResponseCache {
      * @return int value representing the number of items in response cache.
      */
     public int getCurrentSize() {
-        return readWriteCacheMap.asMap().size();
+        return payloads.size();
     }
 }
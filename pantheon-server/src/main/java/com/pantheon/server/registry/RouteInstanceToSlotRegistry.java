@@ -3,10 +3,34 @@ package com.pantheon.server.registry;
 import com.pantheon.client.appinfo.Application;
 import com.pantheon.client.appinfo.Applications;
 import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.client.appinfo.RegistryDigest;
+import com.pantheon.common.ThreadFactoryImpl;
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.compression.CompressionCodec;
+import com.pantheon.remoting.compression.CompressionCodecs;
+import com.pantheon.remoting.compression.DeflateCompressionCodec;
+import com.pantheon.remoting.protocol.SerializeType;
+import com.pantheon.server.config.CachedPantheonServerConfig;
+import com.pantheon.server.config.PantheonServerConfig;
+import com.pantheon.server.lease.Lease;
 import com.pantheon.server.slot.Slot;
 import com.pantheon.server.slot.SlotManager;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * @author Anthony
@@ -14,36 +38,167 @@ import java.util.concurrent.ConcurrentHashMap;
  * @desc service route to corresponding slot ,
  * Slot mechanism is reference from Redis, in which the client instance will be route to a slot after name hash
  * and there are {@link SlotManager#SLOT_COUNT} slot count
- *
+ * <p>
+ * Every {@link PantheonServerConfig#getRegistrySlotsPerShard()} adjacent slots share one {@link InstanceRegistryImpl}
+ * shard, and one scheduler drives response cache refresh and delta retention of all shards, so the thread count
+ * does not grow with the service count.
+ * <p>
+ * Routing takes no lock: slots are mapped to shards by an immutable {@link ShardRoutingTable}, and the shard of a
+ * service is cached in {@link #instanceRouteMap} together with the epoch of the table it was resolved with. A route
+ * of an older epoch is resolved again, which also links the shard to the {@link Slot} owned by this node.
  **/
 public class RouteInstanceToSlotRegistry implements InstanceRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(RouteInstanceToSlotRegistry.class);
     public final SlotManager slotManager;
-    public final ConcurrentHashMap<String/*serviceName*/, InstanceRegistryImpl> instanceRouteMap = new ConcurrentHashMap<>();
+    public final ConcurrentHashMap<String/*serviceName*/, ServiceRoute> instanceRouteMap = new ConcurrentHashMap<>();
     public final ConcurrentHashMap<Integer/*slot*/, String/*serviceName*/> slotServicesMap = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<InstanceRegistryImpl> shards;
+    private final PantheonServerConfig serverConfig;
+    private volatile ShardRoutingTable routingTable;
+    /**
+     * tells the registry versions of this run from the ones of another server or an earlier run
+     */
+    private final long incarnation = System.currentTimeMillis();
+    // digest of all shards, every shard digest hands its updates on to it
+    private final RegistryDigest digest = new RegistryDigest();
+    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryImpl("RegistryShardScheduledThread", true));
+    // rebuilds the response payloads of all shards and of the whole registry off the request path
+    private final ScheduledExecutorService payloadBuilder = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryImpl("RegistryPayloadBuilderThread", true));
+    private final RegistryPayloadCache registryPayloadCache;
+    private final SubscribedPayloadCache subscribedPayloadCache;
+    // codecs of the server, most preferred first
+    private final List<CompressionCodec> compressionPreference;
+    private final int compressionMinSize;
+    private final List<RegistryChangeListener> changeListeners = new CopyOnWriteArrayList<RegistryChangeListener>();
+    // hands the changes of every shard on to the listeners
+    private final RegistryChangeListener changeDispatcher = new RegistryChangeListener() {
+        @Override
+        public void onChange(int shardId, long version) {
+            for (RegistryChangeListener listener : changeListeners) {
+                try {
+                    listener.onChange(shardId, version);
+                } catch (Throwable e) {
+                    logger.error("registry change listener exception", e);
+                }
+            }
+        }
+    };
 
     private static RouteInstanceToSlotRegistry instance = new RouteInstanceToSlotRegistry();
 
     private RouteInstanceToSlotRegistry() {
         slotManager = SlotManager.getInstance();
+        serverConfig = CachedPantheonServerConfig.getInstance();
+        routingTable = new ShardRoutingTable(0, Math.max(1, serverConfig.getRegistrySlotsPerShard()));
+        shards = new AtomicReferenceArray<InstanceRegistryImpl>(routingTable.getShardCount());
+        CompressionCodecs.register(new DeflateCompressionCodec(serverConfig.getDeflateLevel()));
+        compressionPreference = CompressionCodecs.parse(serverConfig.getCompressionCodecs());
+        compressionMinSize = serverConfig.getCompressionMinSize();
+        registryPayloadCache = new RegistryPayloadCache(this, payloadBuilder, serverConfig.getPayloadRebuildDebounceMs(),
+                compressionMinSize);
+        subscribedPayloadCache = new SubscribedPayloadCache(this, serverConfig.getSubscribedPayloadCacheSize(),
+                compressionMinSize);
+        startScheduledTask();
     }
 
     public static RouteInstanceToSlotRegistry getInstance() {
         return instance;
     }
+
+    private void startScheduledTask() {
+        this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (InstanceRegistryImpl shard : getShards()) {
+                    try {
+                        shard.purgeRecentlyChangedQueue();
+                    } catch (Throwable e) {
+                        logger.error("purge delta queue of shard " + shard.getShardId() + " exception", e);
+                    }
+                }
+            }
+        }, serverConfig.getDeltaRetentionTimerIntervalInMs(), serverConfig.getDeltaRetentionTimerIntervalInMs(), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        this.scheduledExecutorService.shutdown();
+        this.payloadBuilder.shutdown();
+    }
+
     @Override
     public void register(InstanceInfo info) {
         InstanceRegistryImpl instanceRegistry = getSpecificInstanceRegistry(info.getAppName());
         instanceRegistry.register(info);
     }
 
-    public synchronized InstanceRegistryImpl getSpecificInstanceRegistry(String instanceName) {
-        InstanceRegistryImpl instanceRegistry = instanceRouteMap.get(instanceName);
-        if (instanceRegistry == null) {
-            Slot slot = slotManager.getSlot(instanceName);
-            slotServicesMap.put(slot.getSlotNo(),instanceName);
-            instanceRouteMap.put(instanceName, new InstanceRegistryImpl());
+    public InstanceRegistryImpl getSpecificInstanceRegistry(String instanceName) {
+        ShardRoutingTable table = routingTable;
+        ServiceRoute route = instanceRouteMap.get(instanceName);
+        if (route != null && route.epoch == table.getEpoch()) {
+            return route.shard;
+        }
+        return resolveRoute(instanceName, route, table);
+    }
+
+    /**
+     * route a service met for the first time or routed with an older table, racing threads end up with the same shard
+     */
+    private InstanceRegistryImpl resolveRoute(String instanceName, ServiceRoute oldRoute, ShardRoutingTable table) {
+        Integer slotNo = slotManager.routeSlot(instanceName);
+        InstanceRegistryImpl shard = getShard(table.getShardId(slotNo));
+        Slot slot = slotManager.getSlot(slotNo);
+        if (slot != null && slot.getInstanceRegistry() == null) {
+            slot.setInstanceRegistry(shard);
+        }
+        ServiceRoute newRoute = new ServiceRoute(table.getEpoch(), shard);
+        if (oldRoute == null) {
+            if (instanceRouteMap.putIfAbsent(instanceName, newRoute) == null) {
+                slotServicesMap.put(slotNo, instanceName);
+            }
+        } else {
+            instanceRouteMap.replace(instanceName, oldRoute, newRoute);
         }
-        return instanceRegistry;
+        return shard;
+    }
+
+    /**
+     * publish a new routing epoch after the slots of this node changed, every service is routed again on its next
+     * request
+     */
+    public synchronized void refreshRoutingTable() {
+        ShardRoutingTable newTable = routingTable.nextEpoch();
+        routingTable = newTable;
+        logger.info("routing table refreshed, epoch: {}", newTable.getEpoch());
+    }
+
+    /**
+     * shard created on first use
+     */
+    private InstanceRegistryImpl getShard(int shardId) {
+        InstanceRegistryImpl shard = shards.get(shardId);
+        if (shard == null) {
+            InstanceRegistryImpl newShard = new InstanceRegistryImpl(shardId, digest, payloadBuilder, registryPayloadCache,
+                    changeDispatcher);
+            if (shards.compareAndSet(shardId, null, newShard)) {
+                shard = newShard;
+            } else {
+                shard = shards.get(shardId);
+            }
+        }
+        return shard;
+    }
+
+    private List<InstanceRegistryImpl> getShards() {
+        List<InstanceRegistryImpl> createdShards = new ArrayList<InstanceRegistryImpl>();
+        for (int i = 0; i < shards.length(); i++) {
+            InstanceRegistryImpl shard = shards.get(i);
+            if (shard != null) {
+                createdShards.add(shard);
+            }
+        }
+        return createdShards;
     }
 
     @Override
@@ -52,14 +207,210 @@ public class RouteInstanceToSlotRegistry implements InstanceRegistry {
         instanceRegistry.register(info, leaseDuration);
     }
 
+    /**
+     * merge applications of all shards
+     */
     @Override
     public Applications getApplications() {
-        return null;
+        return getApplications(new RegistryVersions(incarnation));
+    }
+
+    /**
+     * merge applications of all shards
+     *
+     * @param versions the shard versions the applications are up to date with are put into it, they are taken
+     *                 before the applications so that no change can be missed by the next delta fetch
+     */
+    public Applications getApplications(RegistryVersions versions) {
+        List<InstanceRegistryImpl> createdShards = getShards();
+        for (InstanceRegistryImpl shard : createdShards) {
+            versions.putVersion(shard.getShardId(), shard.getVersion());
+        }
+        Applications apps = new Applications();
+        for (InstanceRegistryImpl shard : createdShards) {
+            for (Application app : shard.getApplications().getRegisteredApplications()) {
+                apps.addApplicationSnapshot(app);
+            }
+        }
+        apps.setAppsHashCode(apps.getReconcileHashCode());
+        return apps;
+    }
+
+    /**
+     * payload of the applications of the services, shared by the clients depending on the same services, see
+     * {@link SubscribedPayloadCache}. Take the versions it is sent with before, so that no change can be missed by
+     * the next delta fetch.
+     */
+    public SubscribedPayloadCache.SubscribedPayload getSubscribedPayload(SortedSet<String> appNames,
+                                                                         SerializeType serializeType,
+                                                                         CompressionCodec codec) throws IOException {
+        return subscribedPayloadCache.get(appNames, serializeType, codec);
+    }
+
+    /**
+     * @return the applications of the published snapshots, null for a service without instances
+     */
+    private List<Application> findApplications(Collection<String> appNames) {
+        List<Application> apps = new ArrayList<Application>(appNames.size());
+        for (String appName : appNames) {
+            apps.add(findApplication(appName));
+        }
+        return apps;
+    }
+
+    /**
+     * {@link #getApplication(String)} without routing a service that never registered
+     */
+    Application findApplication(String appName) {
+        return instanceRouteMap.containsKey(appName) ? getApplication(appName) : null;
+    }
+
+    /**
+     * @param apps snapshot applications, which are counted without being changed, null for a service without instances
+     * @return the applications with their reconcile hash code
+     */
+    static Applications toApplications(List<Application> apps) {
+        Applications applications = new Applications();
+        for (Application app : apps) {
+            if (app != null) {
+                applications.addApplicationSnapshot(app);
+            }
+        }
+        applications.setAppsHashCode(applications.getReconcileHashCode());
+        return applications;
+    }
+
+    /**
+     * @return reconcile hash code of the applications of the services only
+     */
+    public String getReconcileHashCode(Collection<String> appNames) {
+        return toApplications(findApplications(appNames)).getAppsHashCode();
+    }
+
+    /**
+     * @return last completed payload of the full registry in the serialize type and codec, see {@link RegistryPayloadCache}
+     */
+    public RegistryPayloadCache.RegistryPayload getRegistryPayload(SerializeType serializeType, CompressionCodec codec)
+            throws IOException {
+        return registryPayloadCache.get(serializeType, codec);
+    }
+
+    /**
+     * @param accepted codecs the client accepts, null for a client that does not say
+     * @return codec of the responses to the connection, see {@link CompressionCodecs#negotiate(Channel, String, List)}
+     */
+    public CompressionCodec negotiateCompression(Channel channel, String accepted) {
+        return CompressionCodecs.negotiate(channel, accepted, compressionPreference);
     }
 
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    public PayloadBuildMetrics getRegistryPayloadBuildMetrics() {
+        return registryPayloadCache.getBuildMetrics();
+    }
+
+    /**
+     * @return current versions of all shards, equal to the versions a client holds if nothing changed since
+     */
+    public RegistryVersions getVersions() {
+        RegistryVersions versions = new RegistryVersions(incarnation);
+        for (InstanceRegistryImpl shard : getShards()) {
+            versions.putVersion(shard.getShardId(), shard.getVersion());
+        }
+        return versions;
+    }
+
+    /**
+     * merge application deltas of all shards, hash code is the one of all applications
+     */
     @Override
     public Applications getApplicationDeltas() {
-        return null;
+        Applications apps = new Applications();
+        for (InstanceRegistryImpl shard : getShards()) {
+            for (Application app : shard.getApplicationDeltas().getRegisteredApplications()) {
+                apps.addApplicationSnapshot(app);
+            }
+        }
+        apps.setAppsHashCode(getReconcileHashCode());
+        return apps;
+    }
+
+    /**
+     * changes of every shard after the version the client has seen, read from the shard change logs, so the cost
+     * depends on the changes instead of on the registry size
+     *
+     * @param sinceVersions versions the client has seen
+     * @param versions      the shard versions the delta is up to date with are put into it
+     * @return null if the versions belong to another incarnation or a shard no longer keeps the changes, the client
+     * has to do a full fetch then
+     */
+    public Applications getApplicationDeltasSince(RegistryVersions sinceVersions, RegistryVersions versions) {
+        return getApplicationDeltasSince(sinceVersions, versions, null);
+    }
+
+    /**
+     * {@link #getApplicationDeltasSince(RegistryVersions, RegistryVersions)} of the services only, the versions still
+     * move forward for the changes of the others, and the hash code is the one of the applications of the services
+     *
+     * @param appNames null for the changes of the whole registry
+     */
+    public Applications getApplicationDeltasSince(RegistryVersions sinceVersions, RegistryVersions versions,
+                                                  Set<String> appNames) {
+        if (sinceVersions.getIncarnation() != incarnation) {
+            return null;
+        }
+        Applications apps = new Applications();
+        for (InstanceRegistryImpl shard : getShards()) {
+            long version = shard.getApplicationDeltasSince(sinceVersions.getVersion(shard.getShardId()), apps, appNames);
+            if (version == ChangeLog.TOO_OLD) {
+                return null;
+            }
+            versions.putVersion(shard.getShardId(), version);
+        }
+        apps.setAppsHashCode(appNames == null ? getReconcileHashCode() : getReconcileHashCode(appNames));
+        return apps;
+    }
+
+    /**
+     * changes of one shard after the version, see {@link InstanceRegistryImpl#getApplicationDeltasSince(long, Applications)}
+     *
+     * @return current version of the shard, or {@link ChangeLog#TOO_OLD}
+     */
+    public long getApplicationDeltasSince(int shardId, long sinceVersion, Applications delta) {
+        InstanceRegistryImpl shard = shardId >= 0 && shardId < shards.length() ? shards.get(shardId) : null;
+        return shard == null ? ChangeLog.TOO_OLD : shard.getApplicationDeltasSince(sinceVersion, delta);
+    }
+
+    /**
+     * @return current version of the shard, 0 if it has not been created
+     */
+    public long getVersion(int shardId) {
+        InstanceRegistryImpl shard = shardId >= 0 && shardId < shards.length() ? shards.get(shardId) : null;
+        return shard == null ? 0 : shard.getVersion();
+    }
+
+    /**
+     * tell the listener about every change of every shard from now on
+     */
+    public void addChangeListener(RegistryChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(RegistryChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * reconcile hash code of all shards, read from the digest kept up to date by the shards
+     */
+    public String getReconcileHashCode() {
+        return digest.getReconcileHashCode();
+    }
+
+    public long getIncarnation() {
+        return incarnation;
     }
 
     @Override
@@ -68,12 +419,32 @@ public class RouteInstanceToSlotRegistry implements InstanceRegistry {
         return instanceRegistry.getInstanceByAppAndId(appName,id);
     }
 
+    @Override
+    public Lease<InstanceInfo> getLease(String appName, String id) {
+        InstanceRegistryImpl instanceRegistry = getSpecificInstanceRegistry(appName);
+        return instanceRegistry.getLease(appName, id);
+    }
+
     @Override
     public String renew(String appName, String id) {
         InstanceRegistryImpl instanceRegistry = getSpecificInstanceRegistry(appName);
         return instanceRegistry.renew(appName,id);
     }
 
+    /**
+     * renew by lease handle, the slot inside the handle leads to the shard
+     *
+     * @return false if the handle is stale, renew by name instead
+     * @see LeaseHandleTable
+     */
+    public boolean renew(long leaseHandle) {
+        if (leaseHandle < 0) {
+            return false;
+        }
+        InstanceRegistryImpl shard = shards.get(routingTable.getShardId(LeaseHandleTable.getSlotNo(leaseHandle)));
+        return shard != null && shard.renew(leaseHandle);
+    }
+
     @Override
     public boolean statusUpdate(String appName, String id, InstanceInfo.InstanceStatus newStatus, String lastDirtyTimestamp) {
         InstanceRegistryImpl instanceRegistry = getSpecificInstanceRegistry(appName);
@@ -103,4 +474,14 @@ public class RouteInstanceToSlotRegistry implements InstanceRegistry {
         InstanceRegistryImpl instanceRegistry = getSpecificInstanceRegistry(appName);
         return instanceRegistry.getApplication(appName);
     }
+
+    private static final class ServiceRoute {
+        private final long epoch;
+        private final InstanceRegistryImpl shard;
+
+        ServiceRoute(long epoch, InstanceRegistryImpl shard) {
+            this.epoch = epoch;
+            this.shard = shard;
+        }
+    }
 }
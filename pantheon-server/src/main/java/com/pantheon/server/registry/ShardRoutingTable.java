@@ -0,0 +1,51 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.server.slot.SlotManager;
+
+/**
+ * @author Anthony
+ * @create 2021/12/21
+ * @desc immutable slot to shard table of {@link RouteInstanceToSlotRegistry}.
+ * <p>
+ * The table is computed once and never changed afterwards, a new table with a higher epoch is published when the
+ * slots of this node change, so readers only need a volatile read to route and can tell stale routes by the epoch.
+ */
+public final class ShardRoutingTable {
+    private final long epoch;
+    private final int shardCount;
+    private final int[] slotToShard;
+
+    public ShardRoutingTable(long epoch, int slotsPerShard) {
+        this.epoch = epoch;
+        this.slotToShard = new int[SlotManager.SLOT_COUNT];
+        for (int slotNo = 0; slotNo < slotToShard.length; slotNo++) {
+            slotToShard[slotNo] = slotNo / slotsPerShard;
+        }
+        this.shardCount = (SlotManager.SLOT_COUNT + slotsPerShard - 1) / slotsPerShard;
+    }
+
+    /**
+     * derive the table of the next epoch with the same layout
+     */
+    public ShardRoutingTable nextEpoch() {
+        return new ShardRoutingTable(epoch + 1, slotToShard, shardCount);
+    }
+
+    private ShardRoutingTable(long epoch, int[] slotToShard, int shardCount) {
+        this.epoch = epoch;
+        this.slotToShard = slotToShard;
+        this.shardCount = shardCount;
+    }
+
+    public int getShardId(int slotNo) {
+        return slotToShard[slotNo];
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+}
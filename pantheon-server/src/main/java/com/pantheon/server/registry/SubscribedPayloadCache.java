@@ -0,0 +1,154 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.remoting.compression.CompressedPayload;
+import com.pantheon.remoting.compression.CompressionCodec;
+import com.pantheon.remoting.compression.CompressionCodecs;
+import com.pantheon.remoting.protocol.SerializeType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * @author Anthony
+ * @create 2022/01/01
+ * @desc compressed payloads of the applications of the services clients depend on, one for every set of services
+ * and format, so the clients depending on the same services share one payload instead of every fetch encoding it.
+ * <p>
+ * A payload remembers the published application snapshots it was built from. Snapshots are never changed, every
+ * change of an application publishes a new one, so a payload is still current as long as the registry returns the
+ * same snapshots, and is rebuilt by the reader that finds one of them replaced. A change of any other application
+ * leaves it alone.
+ * <p>
+ * At most {@code maxSize} payloads are kept, the least recently used goes first.
+ */
+public class SubscribedPayloadCache {
+    private final RouteInstanceToSlotRegistry registry;
+    private final int compressionMinSize;
+    private final Map<PayloadKey, SubscribedPayload> payloads;
+
+    public SubscribedPayloadCache(RouteInstanceToSlotRegistry registry, final int maxSize, int compressionMinSize) {
+        this.registry = registry;
+        this.compressionMinSize = compressionMinSize;
+        this.payloads = new LinkedHashMap<PayloadKey, SubscribedPayload>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PayloadKey, SubscribedPayload> eldest) {
+                return size() > Math.max(1, maxSize);
+            }
+        };
+    }
+
+    /**
+     * @return the payload of the current applications of the services
+     */
+    public SubscribedPayload get(SortedSet<String> serviceNames, SerializeType serializeType, CompressionCodec codec)
+            throws IOException {
+        List<Application> apps = new ArrayList<Application>(serviceNames.size());
+        for (String serviceName : serviceNames) {
+            apps.add(registry.findApplication(serviceName));
+        }
+        PayloadKey key = new PayloadKey(serviceNames, serializeType, codec);
+        SubscribedPayload payload;
+        synchronized (payloads) {
+            payload = payloads.get(key);
+        }
+        if (payload != null && payload.isBuiltFrom(apps)) {
+            return payload;
+        }
+        payload = build(apps, serializeType, codec);
+        synchronized (payloads) {
+            payloads.put(key, payload);
+        }
+        return payload;
+    }
+
+    private SubscribedPayload build(List<Application> apps, SerializeType serializeType, CompressionCodec codec)
+            throws IOException {
+        Applications applications = RouteInstanceToSlotRegistry.toApplications(apps);
+        CompressedPayload body = CompressionCodecs.compress(codec, applications.encode(serializeType), compressionMinSize);
+        return new SubscribedPayload(apps, body, applications.getAppsHashCode());
+    }
+
+    public int size() {
+        synchronized (payloads) {
+            return payloads.size();
+        }
+    }
+
+    private static class PayloadKey {
+        private final SortedSet<String> serviceNames;
+        private final SerializeType serializeType;
+        private final CompressionCodec codec;
+
+        private PayloadKey(SortedSet<String> serviceNames, SerializeType serializeType, CompressionCodec codec) {
+            this.serviceNames = serviceNames;
+            this.serializeType = serializeType;
+            this.codec = codec;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PayloadKey)) {
+                return false;
+            }
+            PayloadKey other = (PayloadKey) o;
+            return serializeType == other.serializeType && codec == other.codec && serviceNames.equals(other.serviceNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * serializeType.hashCode() + System.identityHashCode(codec)) + serviceNames.hashCode();
+        }
+    }
+
+    public static class SubscribedPayload {
+        // snapshots the payload was built from, null for a service without instances
+        private final List<Application> apps;
+        private final CompressedPayload body;
+        private final String appsHashCode;
+
+        private SubscribedPayload(List<Application> apps, CompressedPayload body, String appsHashCode) {
+            this.apps = apps;
+            this.body = body;
+            this.appsHashCode = appsHashCode;
+        }
+
+        private boolean isBuiltFrom(List<Application> currentApps) {
+            for (int i = 0; i < apps.size(); i++) {
+                if (apps.get(i) != currentApps.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return codec the payload is compressed with, none if it is below the minimum size
+         */
+        public CompressionCodec getCodec() {
+            return body.getCodec();
+        }
+
+        /**
+         * @return the payload, shared by all responses and never to be changed
+         */
+        public byte[] getData() {
+            return body.getData();
+        }
+
+        /**
+         * @return reconcile hash code of the applications of the payload
+         */
+        public String getAppsHashCode() {
+            return appsHashCode;
+        }
+    }
+}
@@ -11,8 +11,22 @@ public class StatusOverrideResult {
 
     public static StatusOverrideResult NO_MATCH = new StatusOverrideResult(false, null);
 
+    // results are immutable, one per status is enough
+    private static final StatusOverrideResult[] MATCHING_RESULTS;
+
+    static {
+        InstanceInfo.InstanceStatus[] statuses = InstanceInfo.InstanceStatus.values();
+        MATCHING_RESULTS = new StatusOverrideResult[statuses.length];
+        for (InstanceInfo.InstanceStatus status : statuses) {
+            MATCHING_RESULTS[status.ordinal()] = new StatusOverrideResult(true, status);
+        }
+    }
+
     public static StatusOverrideResult matchingStatus(InstanceInfo.InstanceStatus status) {
-        return new StatusOverrideResult(true, status);
+        if (status == null) {
+            return new StatusOverrideResult(true, null);
+        }
+        return MATCHING_RESULTS[status.ordinal()];
     }
 
     // Does the rule match?
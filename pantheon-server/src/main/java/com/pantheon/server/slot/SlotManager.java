@@ -5,6 +5,7 @@ import com.pantheon.common.MessageType;
 import com.pantheon.server.network.ServerMessageReceiver;
 import com.pantheon.server.network.ServerNetworkManager;
 import com.pantheon.server.persist.FilePersistUtils;
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
 import com.pantheon.server.slot.registry.ServiceInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +70,7 @@ public class SlotManager {
             slots.init(slotScope);
         }
         FilePersistUtils.persist(JSONObject.toJSONString(slotsList).getBytes(), NODE_SLOTS_FILENAME);
+        RouteInstanceToSlotRegistry.getInstance().refreshRoutingTable();
 
         LOGGER.info("initialization of current node slots allocation finish......");
     }
@@ -125,6 +127,16 @@ public class SlotManager {
         return slots.getSlot(routeSlot(serviceName));
     }
 
+    /**
+     * get slot by slot num
+     *
+     * @param slotNo
+     * @return null if the slot is not in current node
+     */
+    public Slot getSlot(Integer slotNo) {
+        return slots.getSlot(slotNo);
+    }
+
     /**
      * get slot replica
      *
@@ -169,6 +181,7 @@ public class SlotManager {
         for (String replicaSlots : replicaSlotsList) {
             slotsReplicas.remove(replicaSlots);
         }
+        RouteInstanceToSlotRegistry.getInstance().refreshRoutingTable();
 
         LOGGER.info("slots replica （" + replicaSlotsList + "）regularized......");
     }
@@ -222,6 +235,7 @@ public class SlotManager {
 
             this.slots.removeSlot(slotNo);
         }
+        RouteInstanceToSlotRegistry.getInstance().refreshRoutingTable();
     }
 
     /**
@@ -230,7 +244,7 @@ public class SlotManager {
      * @param serviceName
      * @return
      */
-    private Integer routeSlot(String serviceName) {
+    public Integer routeSlot(String serviceName) {
         int hashCode = serviceName.hashCode() & Integer.MAX_VALUE;
         Integer slot = hashCode % SLOT_COUNT;
 
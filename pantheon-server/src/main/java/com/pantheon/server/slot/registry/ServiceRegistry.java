@@ -1,8 +1,10 @@
 package com.pantheon.server.slot.registry;
 
 import com.alibaba.fastjson.JSONObject;
-import com.pantheon.server.config.ArchaiusPantheonServerConfig;
+import com.pantheon.client.appinfo.LeaseInfo;
 import com.pantheon.server.config.CachedPantheonServerConfig;
+import com.pantheon.server.lease.EvictionEngine;
+import com.pantheon.server.lease.LeaseEvictionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,11 +15,17 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ServiceRegistry {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceRegistry.class);
+
     boolean isReplica;
+    private final EvictionEngine<ServiceInstance> evictionEngine;
 
     public ServiceRegistry(boolean isReplica) {
         this.isReplica = isReplica;
-        new HeartbeatCheckThread().start();
+        //heartbeat check runs on the shared lease eviction engine instead of scanning all instances
+        LeaseEvictionManager leaseEvictionManager = LeaseEvictionManager.getInstance();
+        this.evictionEngine = leaseEvictionManager.newEvictionEngine("ServiceRegistryEviction", new HeartbeatCheckHandler());
+        leaseEvictionManager.attach(evictionEngine);
     }
 
     /**
@@ -39,7 +47,7 @@ public class ServiceRegistry {
             }
             serviceRegistryData.get(serviceName).add(serviceInstance);
 
-            serviceInstanceData.put(serviceInstance.getServiceInstanceId(), serviceInstance);
+            trackServiceInstance(serviceInstance);
         }
     }
 
@@ -74,8 +82,7 @@ public class ServiceRegistry {
         }
         serviceInstances.add(serviceInstance);
 
-        serviceInstanceData.put(serviceInstance.getServiceInstanceId(),
-                serviceInstance);
+        trackServiceInstance(serviceInstance);
 
         // notify service changed
 
@@ -119,7 +126,7 @@ public class ServiceRegistry {
                 if (serviceInstance == null) {
                     serviceInstance = new ServiceInstance(
                             serviceName, serviceInstanceIp, serviceInstancePort);
-                    serviceInstanceData.put(serviceInstanceId, serviceInstance);
+                    trackServiceInstance(serviceInstance);
 
                     List<ServiceInstance> serviceInstances = serviceRegistryData.get(serviceName);
                     if (serviceInstances == null) {
@@ -131,6 +138,7 @@ public class ServiceRegistry {
         }
 
         serviceInstance.setLatestHeartbeatTime(new Date().getTime());
+        evictionEngine.recordRenewal();
         System.out.println("receive heart beat from " + serviceInstanceId + "......");
     }
 
@@ -158,61 +166,57 @@ public class ServiceRegistry {
         return serviceRegistryData.get(serviceName);
     }
 
+    private void trackServiceInstance(ServiceInstance serviceInstance) {
+        if (serviceInstance.getLatestHeartbeatTime() == null) {
+            serviceInstance.setLatestHeartbeatTime(new Date().getTime());
+        }
+        ServiceInstance previous = serviceInstanceData.put(serviceInstance.getServiceInstanceId(), serviceInstance);
+        if (previous != null) {
+            evictionEngine.untrack(RENEWS_PER_MIN);
+        }
+        evictionEngine.track(serviceInstance, RENEWS_PER_MIN);
+    }
+
+    private static final int RENEWS_PER_MIN = 60 / LeaseInfo.DEFAULT_LEASE_RENEWAL_INTERVAL;
+
     /**
-     * heartbeat check
+     * heartbeat check, instances without heartbeat for heartbeatTimeoutPeriod get removed
      */
-    class HeartbeatCheckThread extends Thread {
-
-        private final Logger LOGGER = LoggerFactory.getLogger(HeartbeatCheckThread.class);
+    class HeartbeatCheckHandler implements EvictionEngine.Handler<ServiceInstance> {
+        private final Integer heartbeatTimeoutPeriod = CachedPantheonServerConfig.getInstance().getHeartbeatTimeoutPeriod();
 
         @Override
-        public void run() {
-            ArchaiusPantheonServerConfig config = CachedPantheonServerConfig.getInstance();
-
-            Integer heartbeatCheckInterval = config.getHeartBeatCheckInterval();
-            Integer heartbeatTimeoutPeriod = config.getHeartbeatTimeoutPeriod();
-
-            while (true) {
-                long now = new Date().getTime();
-
-                List<String> removeServiceInstanceIds = new ArrayList<String>();
-                Set<String> changedServiceNames = new HashSet<String>();
-
-                for (ServiceInstance serviceInstance : serviceInstanceData.values()) {
-                    if (now - serviceInstance.getLatestHeartbeatTime() > heartbeatTimeoutPeriod * 1000L) {
-                        List<ServiceInstance> serviceInstances =
-                                serviceRegistryData.get(serviceInstance.getServiceName());
-                        serviceInstances.remove(serviceInstance);
-                        removeServiceInstanceIds.add(serviceInstance.getServiceInstanceId());
-                        LOGGER.info("service instance {} get removed after 5s without heartbeat" ,serviceInstance);
-
-                        changedServiceNames.add(serviceInstance.getServiceName());
-                    }
-                }
+        public long getExpiryTimestamp(ServiceInstance serviceInstance) {
+            return serviceInstance.getLatestHeartbeatTime() + heartbeatTimeoutPeriod * 1000L;
+        }
 
-                for (String serviceInstanceId : removeServiceInstanceIds) {
-                    serviceInstanceData.remove(serviceInstanceId);
-                }
+        @Override
+        public boolean isTracked(ServiceInstance serviceInstance) {
+            return serviceInstanceData.get(serviceInstance.getServiceInstanceId()) == serviceInstance;
+        }
 
-                // notify service changed
-                if (!isReplica) {
-                    for (String serviceName : changedServiceNames) {
-                        List<ServiceChangedListener> serviceChangedListeners =
-                                serviceChangedListenerData.get(serviceName);
-                        for (ServiceChangedListener serviceChangedListener : serviceChangedListeners) {
-                            serviceChangedListener.onChange(serviceName, serviceRegistryData.get(serviceName));
-                        }
+        @Override
+        public void evict(ServiceInstance serviceInstance) {
+            String serviceName = serviceInstance.getServiceName();
+            if (!serviceInstanceData.remove(serviceInstance.getServiceInstanceId(), serviceInstance)) {
+                return;
+            }
+            evictionEngine.untrack(RENEWS_PER_MIN);
+            List<ServiceInstance> serviceInstances = serviceRegistryData.get(serviceName);
+            if (serviceInstances != null) {
+                serviceInstances.remove(serviceInstance);
+            }
+            LOGGER.info("service instance {} get removed after {}s without heartbeat", serviceInstance, heartbeatTimeoutPeriod);
+
+            // notify service changed
+            if (!isReplica) {
+                List<ServiceChangedListener> serviceChangedListeners =
+                        serviceChangedListenerData.get(serviceName);
+                if (serviceChangedListeners != null) {
+                    for (ServiceChangedListener serviceChangedListener : serviceChangedListeners) {
+                        serviceChangedListener.onChange(serviceName, serviceRegistryData.get(serviceName));
                     }
                 }
-
-                removeServiceInstanceIds.clear();
-                changedServiceNames.clear();
-
-                try {
-                    Thread.sleep(heartbeatCheckInterval * 1000L);
-                } catch (InterruptedException e) {
-                    LOGGER.error("heartbeat check with InterruptedException ！！！", e);
-                }
             }
         }
     }
@@ -0,0 +1,77 @@
+package com.pantheon.server.lease;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class EvictionEngineTest {
+    private final Map<String, Long> expiries = new ConcurrentHashMap<String, Long>();
+    private final List<String> evicted = new ArrayList<String>();
+
+    private EvictionEngine<String> engine() {
+        return new EvictionEngine<String>("test", new EvictionEngine.Handler<String>() {
+            @Override
+            public long getExpiryTimestamp(String item) {
+                return expiries.get(item);
+            }
+
+            @Override
+            public boolean isTracked(String item) {
+                return expiries.containsKey(item);
+            }
+
+            @Override
+            public void evict(String item) {
+                expiries.remove(item);
+                evicted.add(item);
+            }
+        }, 10, 8, 100, false, 0.85);
+    }
+
+    @Test
+    public void aRenewedLeaseIsRescheduledInsteadOfEvicted() throws InterruptedException {
+        EvictionEngine<String> engine = engine();
+        expiries.put("renewed", System.currentTimeMillis() + 50);
+        engine.track("renewed", 2);
+        expiries.put("expired", System.currentTimeMillis() + 50);
+        engine.track("expired", 2);
+
+        // renewed before its first expiry, far beyond the first level of the wheel
+        expiries.put("renewed", System.currentTimeMillis() + 400);
+        Thread.sleep(120);
+        engine.evict();
+        assertEquals(1, evicted.size());
+        assertEquals("expired", evicted.get(0));
+        assertTrue(expiries.containsKey("renewed"));
+
+        Thread.sleep(200);
+        assertEquals(0, engine.evict());
+        Thread.sleep(250);
+        engine.evict();
+        assertEquals(2, evicted.size());
+        assertEquals("renewed", evicted.get(1));
+    }
+
+    @Test
+    public void anUntrackedLeaseIsDroppedSilently() throws InterruptedException {
+        EvictionEngine<String> engine = engine();
+        expiries.put("cancelled", System.currentTimeMillis() + 20);
+        engine.track("cancelled", 2);
+        expiries.remove("cancelled");
+        engine.untrack(2);
+        Thread.sleep(60);
+        assertEquals(0, engine.evict());
+        assertEquals(0, engine.getExpiredQueueSize());
+    }
+}
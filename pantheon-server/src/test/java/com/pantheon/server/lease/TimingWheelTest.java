@@ -0,0 +1,96 @@
+package com.pantheon.server.lease;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void dueItemsExpireInDeadlineOrder() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 8, 0);
+        for (long deadline : new long[]{75, 5, 42, 13, 43}) {
+            assertTrue(wheel.add(deadline, deadline));
+        }
+        List<Long> expired = new ArrayList<Long>();
+        for (long now = 10; now <= 100; now += 10) {
+            int before = expired.size();
+            wheel.advanceClock(now, expired);
+            for (Long deadline : expired.subList(before, expired.size())) {
+                assertTrue("expired before its deadline " + deadline + " at " + now, deadline < now);
+                assertTrue("expired late " + deadline + " at " + now, deadline >= now - 10);
+            }
+        }
+        assertEquals(Arrays.asList(5L, 13L, 42L, 43L, 75L), expired);
+    }
+
+    @Test
+    public void deadlinesBeyondTheWheelCascadeDownAndExpireOnTime() {
+        // levels cover 4, 16 and 64 ms
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1, 4, 0);
+        long[] deadlines = {2, 10, 17, 50, 63, 64, 200};
+        for (long deadline : deadlines) {
+            assertTrue(wheel.add(deadline, deadline));
+        }
+        List<Long> expired = new ArrayList<Long>();
+        for (long now = 1; now <= 300; now++) {
+            int before = expired.size();
+            wheel.advanceClock(now, expired);
+            for (Long deadline : expired.subList(before, expired.size())) {
+                assertEquals("expiry time of " + deadline, deadline + 1, now);
+            }
+        }
+        assertEquals(deadlines.length, expired.size());
+    }
+
+    @Test
+    public void aJumpOverAllLevelsExpiresEverything() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1, 4, 0);
+        for (long deadline : new long[]{3, 30, 300}) {
+            wheel.add(deadline, deadline);
+        }
+        List<Long> expired = new ArrayList<Long>();
+        wheel.advanceClock(299, expired);
+        assertEquals(2, expired.size());
+        assertTrue(expired.containsAll(Arrays.asList(3L, 30L)));
+        wheel.advanceClock(1000, expired);
+        assertEquals(3, expired.size());
+    }
+
+    @Test
+    public void aPassedDeadlineIsNotScheduled() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 8, 1000);
+        assertFalse(wheel.add("late", 999));
+        List<String> expired = new ArrayList<String>();
+        wheel.advanceClock(5000, expired);
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void anItemAddedAgainExpiresAtItsNewDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 8, 0);
+        wheel.add("lease", 25);
+        List<String> expired = new ArrayList<String>();
+        wheel.advanceClock(30, expired);
+        assertEquals(Arrays.asList("lease"), expired);
+
+        // renewed, put back at the new expiry which lies beyond the first level
+        expired.clear();
+        assertTrue(wheel.add("lease", 500));
+        wheel.advanceClock(490, expired);
+        assertTrue(expired.isEmpty());
+        wheel.advanceClock(510, expired);
+        assertEquals(Arrays.asList("lease"), expired);
+    }
+}
@@ -0,0 +1,113 @@
+package com.pantheon.server.processor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class AdmissionControllerTest {
+    private static final long TARGET = 10;
+    private static final long INTERVAL = 50;
+    private static final int HEARTBEAT = 1;
+    private static final int WRITE = 2;
+    private static final int ROUTING = 3;
+    private static final int READ = 4;
+
+    private AdmissionController controller;
+
+    @Before
+    public void assignLanes() {
+        controller = new AdmissionController(TARGET, INTERVAL);
+        controller.assign(HEARTBEAT, AdmissionController.Lane.HEARTBEAT);
+        controller.assign(WRITE, AdmissionController.Lane.WRITE);
+        controller.assign(READ, AdmissionController.Lane.READ);
+    }
+
+    /**
+     * keep the delay of the lane of the code above the target for a whole interval
+     */
+    private void standingQueue(int requestCode) throws InterruptedException {
+        controller.drop(requestCode, 3 * TARGET);
+        Thread.sleep(INTERVAL + 10);
+        controller.drop(requestCode, 3 * TARGET);
+    }
+
+    @Test
+    public void unassignedCodesGoToTheRoutingLane() {
+        assertEquals(AdmissionController.Lane.ROUTING, controller.laneOf(ROUTING));
+        assertEquals(AdmissionController.Lane.READ, controller.laneOf(READ));
+    }
+
+    @Test
+    public void aBurstShorterThanTheIntervalIsAdmitted() {
+        assertFalse(controller.drop(ROUTING, 3 * TARGET));
+        assertFalse(controller.drop(ROUTING, 3 * TARGET));
+        assertFalse(controller.isOverloaded(AdmissionController.Lane.ROUTING));
+        assertFalse(controller.reject(ROUTING));
+    }
+
+    @Test
+    public void aStandingQueueOverloadsTheLaneAndTheLessImportantOnes() throws InterruptedException {
+        standingQueue(ROUTING);
+        assertTrue(controller.isOverloaded(AdmissionController.Lane.ROUTING));
+        assertTrue(controller.reject(ROUTING));
+        assertTrue(controller.reject(READ));
+        assertFalse(controller.reject(WRITE));
+        assertFalse(controller.reject(HEARTBEAT));
+    }
+
+    @Test
+    public void onlyRequestsWaitingTwiceTheTargetAreDropped() throws InterruptedException {
+        standingQueue(ROUTING);
+        assertTrue(controller.drop(ROUTING, 2 * TARGET + 1));
+        assertFalse(controller.drop(ROUTING, 2 * TARGET));
+    }
+
+    @Test
+    public void heartbeatsAreNeverShed() throws InterruptedException {
+        standingQueue(HEARTBEAT);
+        assertTrue(controller.isOverloaded(AdmissionController.Lane.HEARTBEAT));
+        assertFalse(controller.reject(HEARTBEAT));
+        assertFalse(controller.drop(HEARTBEAT, 10 * TARGET));
+        // every other lane is less important than the heartbeats
+        assertTrue(controller.reject(WRITE));
+    }
+
+    @Test
+    public void aRequestUnderTheTargetRecoversTheLane() throws InterruptedException {
+        standingQueue(ROUTING);
+        assertFalse(controller.drop(ROUTING, TARGET));
+        assertFalse(controller.isOverloaded(AdmissionController.Lane.ROUTING));
+        assertFalse(controller.reject(READ));
+    }
+
+    @Test
+    public void aLaneWithoutSamplesForAnIntervalRecovers() throws InterruptedException {
+        standingQueue(ROUTING);
+        assertTrue(controller.reject(ROUTING));
+        Thread.sleep(INTERVAL + 10);
+        assertFalse(controller.reject(ROUTING));
+    }
+
+    @Test
+    public void aZeroTargetAdmitsEveryRequest() throws InterruptedException {
+        controller = new AdmissionController(0, INTERVAL);
+        controller.drop(ROUTING, 1000);
+        Thread.sleep(INTERVAL + 10);
+        assertFalse(controller.drop(ROUTING, 1000));
+        assertFalse(controller.reject(ROUTING));
+    }
+
+    @Test
+    public void lessImportantLanesRetryLater() {
+        assertEquals(INTERVAL, controller.retryAfterMillis(HEARTBEAT));
+        assertEquals(4 * INTERVAL, controller.retryAfterMillis(READ));
+    }
+}
@@ -0,0 +1,57 @@
+package com.pantheon.server.processor;
+
+import com.pantheon.server.registry.RouteInstanceToSlotRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class DeltaLongPollHolderTest {
+
+    @Test
+    public void shutdownAnswersTheHeldFetches() throws Exception {
+        RouteInstanceToSlotRegistry registry = RouteInstanceToSlotRegistry.getInstance();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        DeltaLongPollHolder holder = new DeltaLongPollHolder(registry, executor, 60000, 0);
+        try {
+            final CountDownLatch answered = new CountDownLatch(2);
+            Runnable respond = new Runnable() {
+                @Override
+                public void run() {
+                    answered.countDown();
+                }
+            };
+            holder.hold(registry.getVersions(), 60000, respond);
+            holder.hold(registry.getVersions(), 60000, respond);
+            assertEquals(2, holder.getHeldFetchCount());
+
+            holder.shutdown();
+            assertTrue(answered.await(1, TimeUnit.SECONDS));
+            assertEquals(0, holder.getHeldFetchCount());
+
+            // not held once shut down
+            final AtomicInteger late = new AtomicInteger();
+            holder.hold(registry.getVersions(), 60000, new Runnable() {
+                @Override
+                public void run() {
+                    late.incrementAndGet();
+                }
+            });
+            assertEquals(1, late.get());
+            assertEquals(0, holder.getHeldFetchCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.server.lease.Lease;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class ChangeLogTest {
+    private static final int CAPACITY = 4;
+
+    private static List<Lease<InstanceInfo>> append(ChangeLog log, int count) {
+        List<Lease<InstanceInfo>> appended = new ArrayList<Lease<InstanceInfo>>();
+        for (int i = 0; i < count; i++) {
+            InstanceInfo info = InstanceInfo.Builder.newBuilder().setAppName("app").setInstanceId("i" + log.getVersion())
+                    .setHostName("host").setIPAddr("10.0.0.1").setPort(8080).build();
+            Lease<InstanceInfo> lease = new Lease<InstanceInfo>(info, 30);
+            log.append(lease);
+            appended.add(lease);
+        }
+        return appended;
+    }
+
+    @Test
+    public void versionsCountUpFromOne() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        assertEquals(0, log.getVersion());
+        append(log, 3);
+        assertEquals(3, log.getVersion());
+    }
+
+    @Test
+    public void changesSinceAVersionComeOldestFirst() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        List<Lease<InstanceInfo>> appended = append(log, 3);
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        assertEquals(3, log.getChangesSince(1, changes));
+        assertEquals(2, changes.size());
+        assertSame(appended.get(1), changes.get(0));
+        assertSame(appended.get(2), changes.get(1));
+    }
+
+    @Test
+    public void theCurrentVersionHasNoChanges() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        append(log, 2);
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        assertEquals(2, log.getChangesSince(2, changes));
+        assertTrue(changes.isEmpty());
+        assertEquals(0, new ChangeLog(CAPACITY).getChangesSince(0, changes));
+    }
+
+    @Test
+    public void changesAcrossTheWrapAroundOfTheRing() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        List<Lease<InstanceInfo>> appended = append(log, 7);
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        // versions 4 to 7 sit at indexes 0, 1, 2, 3 after wrapping over 1 to 3
+        assertEquals(7, log.getChangesSince(4, changes));
+        assertEquals(appended.subList(4, 7), changes);
+    }
+
+    @Test
+    public void exactlyCapacityChangesBehindIsStillADelta() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        List<Lease<InstanceInfo>> appended = append(log, 10);
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        assertEquals(10, log.getChangesSince(10 - CAPACITY, changes));
+        assertEquals(appended.subList(10 - CAPACITY, 10), changes);
+    }
+
+    @Test
+    public void oneMoreThanCapacityBehindIsTooOld() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        append(log, 10);
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        assertEquals(ChangeLog.TOO_OLD, log.getChangesSince(10 - CAPACITY - 1, changes));
+        assertTrue(changes.isEmpty());
+        assertEquals(ChangeLog.TOO_OLD, log.getChangesSince(0, changes));
+    }
+
+    @Test
+    public void unknownVersionsAreTooOld() {
+        ChangeLog log = new ChangeLog(CAPACITY);
+        append(log, 2);
+        List<Lease<InstanceInfo>> changes = new ArrayList<Lease<InstanceInfo>>();
+        assertEquals(ChangeLog.TOO_OLD, log.getChangesSince(-1, changes));
+        assertEquals(ChangeLog.TOO_OLD, log.getChangesSince(3, changes));
+        assertTrue(changes.isEmpty());
+    }
+}
@@ -0,0 +1,102 @@
+package com.pantheon.server.registry;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.client.appinfo.InstanceInfo;
+import com.pantheon.common.protocol.RegistryVersions;
+import com.pantheon.remoting.compression.CompressionCodecs;
+import com.pantheon.remoting.protocol.SerializeType;
+import io.netty.buffer.ByteBuf;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class InstanceRegistryImplTest {
+
+    private static final String APP_NAME = "renew-override-app";
+    private static final String INSTANCE_ID = "renew-override-1";
+    private static final long PAYLOAD_WAIT_MILLIS = 5000;
+
+    @Test
+    public void statusOverriddenOnRenewReachesTheDeltaAndTheFullPayloads() throws Exception {
+        RouteInstanceToSlotRegistry registry = RouteInstanceToSlotRegistry.getInstance();
+        InstanceRegistryImpl shard = registry.getSpecificInstanceRegistry(APP_NAME);
+        registry.register(InstanceInfo.Builder.newBuilder().setAppName(APP_NAME).setInstanceId(INSTANCE_ID)
+                .setHostName("host").setIPAddr("10.0.0.1").setPort(8080)
+                .setStatus(InstanceInfo.InstanceStatus.UP).build());
+        // the full payloads are built on first read, later ones are only rebuilt once invalidated
+        assertEquals(InstanceInfo.InstanceStatus.UP, registryPayloadStatus(registry));
+        assertEquals(InstanceInfo.InstanceStatus.UP, shardPayloadStatus(shard));
+        long sinceVersion = shard.getVersion();
+
+        registry.storeOverriddenStatusIfRequired(APP_NAME, INSTANCE_ID, InstanceInfo.InstanceStatus.OUT_OF_SERVICE);
+        assertNull(registry.renew(APP_NAME, INSTANCE_ID));
+
+        Applications delta = new Applications();
+        long version = shard.getApplicationDeltasSince(sinceVersion, delta);
+        assertTrue(version > sinceVersion);
+        Application app = delta.getRegisteredApplications(APP_NAME);
+        assertNotNull(app);
+        assertEquals(InstanceInfo.InstanceStatus.OUT_OF_SERVICE, app.getByInstanceId(INSTANCE_ID).getStatus());
+
+        long deadline = System.currentTimeMillis() + PAYLOAD_WAIT_MILLIS;
+        while ((registryPayloadStatus(registry) != InstanceInfo.InstanceStatus.OUT_OF_SERVICE
+                || shardPayloadStatus(shard) != InstanceInfo.InstanceStatus.OUT_OF_SERVICE)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(InstanceInfo.InstanceStatus.OUT_OF_SERVICE, registryPayloadStatus(registry));
+        assertEquals(InstanceInfo.InstanceStatus.OUT_OF_SERVICE, shardPayloadStatus(shard));
+        RegistryVersions payloadVersions = registry.getRegistryPayload(SerializeType.JSON, CompressionCodecs.NONE)
+                .getRegistryVersions();
+        assertEquals(version, payloadVersions.getVersion(shard.getShardId()));
+    }
+
+    private static InstanceInfo.InstanceStatus registryPayloadStatus(RouteInstanceToSlotRegistry registry) throws Exception {
+        ByteBuf data = registry.getRegistryPayload(SerializeType.JSON, CompressionCodecs.NONE).retainedDuplicate();
+        try {
+            byte[] bytes = new byte[data.readableBytes()];
+            data.readBytes(bytes);
+            return statusOf(new String(bytes, "UTF-8"));
+        } finally {
+            data.release();
+        }
+    }
+
+    private static InstanceInfo.InstanceStatus shardPayloadStatus(InstanceRegistryImpl shard) {
+        String payload = shard.responseCache.get(new Key(ResponseCacheImpl.ALL_APPS, Key.ACCEPT.FULL));
+        return statusOf(payload);
+    }
+
+    /**
+     * read from the json itself, decoding an instance lets its instance status win over the status
+     */
+    private static InstanceInfo.InstanceStatus statusOf(String payload) {
+        JSONArray apps = JSON.parseObject(payload).getJSONArray("registeredApplications");
+        for (int i = 0; apps != null && i < apps.size(); i++) {
+            JSONObject app = apps.getJSONObject(i);
+            if (!APP_NAME.equals(app.getString("name"))) {
+                continue;
+            }
+            JSONArray instances = app.getJSONArray("instances");
+            for (int j = 0; j < instances.size(); j++) {
+                JSONObject instance = instances.getJSONObject(j);
+                if (INSTANCE_ID.equals(instance.getString("instanceId"))) {
+                    return InstanceInfo.InstanceStatus.valueOf(instance.getString("status"));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.pantheon.server.registry;
+
+import com.pantheon.client.appinfo.Application;
+import com.pantheon.client.appinfo.Applications;
+import com.pantheon.client.appinfo.InstanceInfo;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author Anthony
+ * @create 2022/01/03
+ * @desc
+ */
+public class RouteInstanceToSlotRegistryTest {
+
+    private static InstanceInfo instance(String appName, String id) {
+        return InstanceInfo.Builder.newBuilder().setAppName(appName).setInstanceId(id).setHostName("host")
+                .setIPAddr("10.0.0.1").setPort(8080).build();
+    }
+
+    @Test
+    public void scopedApplicationsLeaveTheSnapshotsWithTheirShard() {
+        Application a = new Application("a");
+        a.addInstance(instance("a", "a1"));
+        Applications shard = new Applications();
+        shard.addApplication(a);
+        String before = shard.getReconcileHashCode();
+
+        Applications scoped = RouteInstanceToSlotRegistry.toApplications(Arrays.asList(a, null));
+        assertEquals(before, scoped.getAppsHashCode());
+        assertEquals(1, scoped.size());
+
+        // the shard list still follows its application after it was counted into the scoped list
+        a.addInstance(instance("a", "a2"));
+        assertNotEquals(before, shard.getReconcileHashCode());
+        assertEquals(before, scoped.getReconcileHashCode());
+    }
+}